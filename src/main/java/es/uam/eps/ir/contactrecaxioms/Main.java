@@ -50,6 +50,10 @@ public class Main
      * Name for the program used for comparing accuracy vs. degree.
      */
     private final static String DEGREE = "degree";
+    /**
+     * Name for the benchmark of recommenders using mutual neighborhoods.
+     */
+    private final static String MUTUAL = "mutual-benchmark";
 
     /**
      * Main method. Executes the main method in the class specified by the first
@@ -87,6 +91,9 @@ public class Main
                 case VALID:
                     className = "es.uam.eps.ir.contactrecaxioms.main.Validation";
                     break;
+                case MUTUAL:
+                    className = "es.uam.eps.ir.contactrecaxioms.main.MutualBenchmark";
+                    break;
                 default:
                     System.err.println("ERROR: Unknown program.");
                     return;
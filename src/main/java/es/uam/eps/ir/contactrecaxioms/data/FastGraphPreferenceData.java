@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.data;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
+import org.ranksys.fast.preference.StreamsAbstractFastPreferenceData;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of FastPreferenceData backed by a graph. Instead of copying the edges, it
+ * reads them directly from the adjacency of the graph: the preferences of a user are its outgoing
+ * edges, and the preferences of an item are its incoming edges.
+ *
+ * @param <U> Type of the users.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class FastGraphPreferenceData<U> extends StreamsAbstractFastPreferenceData<U, U>
+{
+    /**
+     * The graph containing the preferences.
+     */
+    private final FastGraph<U> graph;
+
+    /**
+     * Constructor.
+     *
+     * @param graph the graph.
+     */
+    public FastGraphPreferenceData(FastGraph<U> graph)
+    {
+        this(graph, new FastGraphIndex<>(graph));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param graph the graph.
+     * @param index the index of the graph.
+     */
+    private FastGraphPreferenceData(FastGraph<U> graph, GraphIndex<U> index)
+    {
+        super(index, index);
+        this.graph = graph;
+    }
+
+    @Override
+    public int numUsers(int iidx)
+    {
+        return (int) this.graph.getNeighborhoodSize(iidx, EdgeOrientation.IN);
+    }
+
+    @Override
+    public int numItems(int uidx)
+    {
+        return (int) this.graph.getNeighborhoodSize(uidx, EdgeOrientation.OUT);
+    }
+
+    @Override
+    public IntStream getUidxWithPreferences()
+    {
+        return this.graph.getNodesWithEdgesIds(EdgeOrientation.OUT);
+    }
+
+    @Override
+    public IntStream getIidxWithPreferences()
+    {
+        return this.graph.getNodesWithEdgesIds(EdgeOrientation.IN);
+    }
+
+    @Override
+    public Stream<? extends IdxPref> getUidxPreferences(int uidx)
+    {
+        return this.graph.getNeighborhoodWeights(uidx, EdgeOrientation.OUT);
+    }
+
+    @Override
+    public Stream<? extends IdxPref> getIidxPreferences(int iidx)
+    {
+        return this.graph.getNeighborhoodWeights(iidx, EdgeOrientation.IN);
+    }
+
+    @Override
+    public int numPreferences()
+    {
+        return (int) this.graph.getAllNodesIds().mapToLong(uidx -> this.graph.getNeighborhoodSize(uidx, EdgeOrientation.OUT)).sum();
+    }
+}
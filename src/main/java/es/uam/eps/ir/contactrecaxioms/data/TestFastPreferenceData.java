@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.data;
+
+import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntIterators;
+import org.ranksys.fast.preference.StreamsAbstractFastPreferenceData;
+import org.ranksys.formats.parsing.Parser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Compact, read-only preference data for storing the test edges of a network. The edges are stored
+ * as sorted arrays of neighbors (one for the outgoing and one for the incoming edges of each user),
+ * and every edge has value 1.0. Only users in the training index are considered.
+ *
+ * @param <U> Type of the users.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class TestFastPreferenceData<U> extends StreamsAbstractFastPreferenceData<U, U>
+{
+    /**
+     * Value of the test edges.
+     */
+    private static final double VALUE = 1.0;
+
+    /**
+     * Position of the first outgoing edge of each user (plus one final position).
+     */
+    private final int[] uOffsets;
+    /**
+     * Targets of the outgoing edges, sorted by user.
+     */
+    private final int[] uTargets;
+    /**
+     * Position of the first incoming edge of each user (plus one final position).
+     */
+    private final int[] iOffsets;
+    /**
+     * Origins of the incoming edges, sorted by user.
+     */
+    private final int[] iTargets;
+
+    /**
+     * Constructor.
+     *
+     * @param index    the user index.
+     * @param uOffsets position of the first outgoing edge of each user.
+     * @param uTargets targets of the outgoing edges.
+     * @param iOffsets position of the first incoming edge of each user.
+     * @param iTargets origins of the incoming edges.
+     */
+    protected TestFastPreferenceData(GraphIndex<U> index, int[] uOffsets, int[] uTargets, int[] iOffsets, int[] iTargets)
+    {
+        super(index, index);
+        this.uOffsets = uOffsets;
+        this.uTargets = uTargets;
+        this.iOffsets = iOffsets;
+        this.iTargets = iTargets;
+    }
+
+    /**
+     * Reads the test edges from a file. Each line of the file contains the origin and destination of an edge,
+     * separated by a delimiter. Edges where any of the users are not in the training index and autoloops are
+     * discarded while reading. The file is processed in parallel.
+     *
+     * @param <U>       Type of the users.
+     * @param file      the file containing the test edges.
+     * @param index     the index of the training users.
+     * @param directed  true if the network is directed, false otherwise.
+     * @param delimiter the delimiter between the fields of each line.
+     * @param uParser   parser for reading the users.
+     *
+     * @return the test data if everything went OK, null otherwise.
+     */
+    public static <U> TestFastPreferenceData<U> load(String file, GraphIndex<U> index, boolean directed, String delimiter, Parser<U> uParser)
+    {
+        long[] edges;
+        try (Stream<String> lines = Files.lines(Paths.get(file)))
+        {
+            edges = lines.parallel().flatMapToLong(line ->
+            {
+                String[] splits = line.split(delimiter);
+                U u = uParser.parse(splits[0]);
+                U v = uParser.parse(splits[1]);
+                if (!index.containsUser(u) || !index.containsUser(v) || u.equals(v))
+                {
+                    return LongStream.empty();
+                }
+
+                int uidx = index.user2uidx(u);
+                int vidx = index.user2uidx(v);
+                return directed ? LongStream.of(pack(uidx, vidx)) : LongStream.of(pack(uidx, vidx), pack(vidx, uidx));
+            }).toArray();
+        }
+        catch (IOException ioe)
+        {
+            ioe.printStackTrace();
+            return null;
+        }
+
+        // Sort the edges by origin and destination, and remove duplicates.
+        Arrays.parallelSort(edges);
+        int numEdges = 0;
+        for (int i = 0; i < edges.length; ++i)
+        {
+            if (i == 0 || edges[i] != edges[i - 1])
+            {
+                edges[numEdges++] = edges[i];
+            }
+        }
+
+        int numUsers = index.numUsers();
+        int[] uOffsets = new int[numUsers + 1];
+        int[] iOffsets = new int[numUsers + 1];
+        for (int i = 0; i < numEdges; ++i)
+        {
+            uOffsets[origin(edges[i]) + 1]++;
+            iOffsets[destination(edges[i]) + 1]++;
+        }
+        for (int uidx = 0; uidx < numUsers; ++uidx)
+        {
+            uOffsets[uidx + 1] += uOffsets[uidx];
+            iOffsets[uidx + 1] += iOffsets[uidx];
+        }
+
+        // As edges are sorted by origin, the incoming lists are filled in increasing order.
+        int[] uTargets = new int[numEdges];
+        int[] iTargets = new int[numEdges];
+        int[] iPositions = Arrays.copyOf(iOffsets, numUsers);
+        for (int i = 0; i < numEdges; ++i)
+        {
+            int uidx = origin(edges[i]);
+            int vidx = destination(edges[i]);
+            uTargets[i] = vidx;
+            iTargets[iPositions[vidx]++] = uidx;
+        }
+
+        return new TestFastPreferenceData<>(index, uOffsets, uTargets, iOffsets, iTargets);
+    }
+
+    /**
+     * Packs an edge into a single long value, so that edges are sorted by origin, and then by destination.
+     *
+     * @param uidx the origin of the edge.
+     * @param vidx the destination of the edge.
+     *
+     * @return the packed edge.
+     */
+    private static long pack(int uidx, int vidx)
+    {
+        return (((long) uidx) << 32) | (vidx & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Obtains the origin of a packed edge.
+     *
+     * @param edge the packed edge.
+     *
+     * @return the origin of the edge.
+     */
+    private static int origin(long edge)
+    {
+        return (int) (edge >>> 32);
+    }
+
+    /**
+     * Obtains the destination of a packed edge.
+     *
+     * @param edge the packed edge.
+     *
+     * @return the destination of the edge.
+     */
+    private static int destination(long edge)
+    {
+        return (int) edge;
+    }
+
+    /**
+     * Checks whether an edge belongs to the test set, by binary search over the neighbors of the origin.
+     *
+     * @param uidx identifier of the origin user.
+     * @param iidx identifier of the destination user.
+     *
+     * @return true if the edge is in the test set, false otherwise.
+     */
+    public boolean containsPreference(int uidx, int iidx)
+    {
+        return Arrays.binarySearch(this.uTargets, this.uOffsets[uidx], this.uOffsets[uidx + 1], iidx) >= 0;
+    }
+
+    /**
+     * Checks whether an edge belongs to the test set.
+     *
+     * @param u the origin user.
+     * @param v the destination user.
+     *
+     * @return true if the edge is in the test set, false otherwise.
+     */
+    public boolean containsPreference(U u, U v)
+    {
+        int uidx = this.user2uidx(u);
+        int iidx = this.item2iidx(v);
+        return uidx >= 0 && iidx >= 0 && this.containsPreference(uidx, iidx);
+    }
+
+    @Override
+    public int numUsers(int iidx)
+    {
+        return this.iOffsets[iidx + 1] - this.iOffsets[iidx];
+    }
+
+    @Override
+    public int numItems(int uidx)
+    {
+        return this.uOffsets[uidx + 1] - this.uOffsets[uidx];
+    }
+
+    @Override
+    public IntStream getUidxWithPreferences()
+    {
+        return IntStream.range(0, this.numUsers()).filter(uidx -> this.numItems(uidx) > 0);
+    }
+
+    @Override
+    public IntStream getIidxWithPreferences()
+    {
+        return IntStream.range(0, this.numItems()).filter(iidx -> this.numUsers(iidx) > 0);
+    }
+
+    @Override
+    public Stream<? extends IdxPref> getUidxPreferences(int uidx)
+    {
+        return IntStream.range(this.uOffsets[uidx], this.uOffsets[uidx + 1]).mapToObj(i -> new IdxPref(this.uTargets[i], VALUE));
+    }
+
+    @Override
+    public Stream<? extends IdxPref> getIidxPreferences(int iidx)
+    {
+        return IntStream.range(this.iOffsets[iidx], this.iOffsets[iidx + 1]).mapToObj(i -> new IdxPref(this.iTargets[i], VALUE));
+    }
+
+    @Override
+    public IntIterator getUidxIidxs(int uidx)
+    {
+        return IntIterators.wrap(this.uTargets, this.uOffsets[uidx], this.numItems(uidx));
+    }
+
+    @Override
+    public IntIterator getIidxUidxs(int iidx)
+    {
+        return IntIterators.wrap(this.iTargets, this.iOffsets[iidx], this.numUsers(iidx));
+    }
+
+    @Override
+    public int numPreferences()
+    {
+        return this.uTargets.length;
+    }
+}
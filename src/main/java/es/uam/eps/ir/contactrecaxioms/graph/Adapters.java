@@ -9,6 +9,9 @@
  */
 package es.uam.eps.ir.contactrecaxioms.graph;
 
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastDirectedUnweightedGraphView;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastUndirectedUnweightedGraphView;
 import es.uam.eps.ir.contactrecaxioms.graph.generator.EmptyGraphGenerator;
 import es.uam.eps.ir.contactrecaxioms.graph.generator.GeneratorBadConfiguredException;
 import es.uam.eps.ir.contactrecaxioms.graph.generator.GeneratorNotConfiguredException;
@@ -24,6 +27,31 @@ import es.uam.eps.ir.contactrecaxioms.graph.generator.GraphGenerator;
  */
 public class Adapters
 {
+    /**
+     * Given a graph, obtains an unweighted view of it. The view shares the nodes and edges of the
+     * original graph, so no copy is made. If the graph is already unweighted, it is returned as it is.
+     *
+     * @param <U>   Type of the users.
+     * @param graph the original graph.
+     *
+     * @return a read-only view of the graph where every edge has the default weight.
+     */
+    public static <U> FastGraph<U> unweightedView(FastGraph<U> graph)
+    {
+        if (!graph.isWeighted())
+        {
+            return graph;
+        }
+        else if (graph.isDirected())
+        {
+            return new FastDirectedUnweightedGraphView<>(graph);
+        }
+        else
+        {
+            return new FastUndirectedUnweightedGraphView<>(graph);
+        }
+    }
+
     /**
      * Given a graph, obtains a version of it without autoloops.
      *
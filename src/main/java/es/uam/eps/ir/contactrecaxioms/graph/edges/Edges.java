@@ -240,6 +240,54 @@ public interface Edges
      */
     long getMutualCount(int node);
 
+    /**
+     * Gets the sum of the weights of the adjacent edges of a node.
+     *
+     * @param node The node.
+     *
+     * @return the sum of the weights of the adjacent edges.
+     */
+    default double getAdjacentWeightSum(int node)
+    {
+        return this.getAdjacentWeights(node).mapToDouble(w -> w.v2).sum();
+    }
+
+    /**
+     * Gets the sum of the weights of the incident edges of a node.
+     *
+     * @param node The node.
+     *
+     * @return the sum of the weights of the incident edges.
+     */
+    default double getIncidentWeightSum(int node)
+    {
+        return this.getIncidentWeights(node).mapToDouble(w -> w.v2).sum();
+    }
+
+    /**
+     * Gets the sum of the weights of the edges between a node and its neighbours.
+     *
+     * @param node The node.
+     *
+     * @return the sum of the weights of the neighbour edges.
+     */
+    default double getNeighbourWeightSum(int node)
+    {
+        return this.getNeighbourWeights(node).mapToDouble(w -> w.v2).sum();
+    }
+
+    /**
+     * Gets the sum of the weights of the edges between a node and its mutual neighbours.
+     *
+     * @param node The node.
+     *
+     * @return the sum of the weights of the mutual edges.
+     */
+    default double getMutualWeightSum(int node)
+    {
+        return this.getMutualWeights(node).mapToDouble(w -> w.v2).sum();
+    }
+
     /**
      * Adds a user to the edges.
      *
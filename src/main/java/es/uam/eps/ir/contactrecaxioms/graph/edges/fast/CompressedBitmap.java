@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.graph.edges.fast;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Compressed bitmap for storing a set of non-negative integers, following the design of Roaring bitmaps.
+ * The integers are grouped by their 16 most significant bits, and each group is stored in a container:
+ * a sorted array of the 16 least significant bits if the group is sparse, or a bitset with 2^16 bits
+ * if it is dense. The bitmap cannot be modified.
+ *
+ * <p>Chambi, S., Lemire, D., Kaser, O., Godin, R.: Better bitmap performance with Roaring bitmaps. Software: Practice and
+ * Experience 46(5), 709-719 (2016).</p>
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class CompressedBitmap
+{
+    /**
+     * Maximum number of elements of an array container.
+     */
+    private static final int ARRAY_MAX = 4096;
+    /**
+     * Number of words of a bitset container.
+     */
+    private static final int BITSET_WORDS = 1024;
+
+    /**
+     * The 16 most significant bits of the elements in each container, in increasing order.
+     */
+    private final char[] keys;
+    /**
+     * The containers: sorted arrays (char[]) or bitsets (long[]).
+     */
+    private final Object[] containers;
+    /**
+     * Number of elements of the bitmap.
+     */
+    private final int cardinality;
+
+    /**
+     * Constructor.
+     *
+     * @param values the elements of the bitmap, sorted in increasing order and without repetitions.
+     */
+    public CompressedBitmap(int[] values)
+    {
+        int numContainers = 0;
+        for (int i = 0; i < values.length; ++i)
+        {
+            if (i == 0 || (values[i] >>> 16) != (values[i - 1] >>> 16))
+            {
+                ++numContainers;
+            }
+        }
+
+        this.keys = new char[numContainers];
+        this.containers = new Object[numContainers];
+        this.cardinality = values.length;
+
+        int c = 0;
+        int start = 0;
+        while (start < values.length)
+        {
+            char key = (char) (values[start] >>> 16);
+            int end = start;
+            while (end < values.length && (values[end] >>> 16) == key)
+            {
+                ++end;
+            }
+
+            this.keys[c] = key;
+            if (end - start > ARRAY_MAX)
+            {
+                long[] bitset = new long[BITSET_WORDS];
+                for (int i = start; i < end; ++i)
+                {
+                    int low = values[i] & 0xFFFF;
+                    bitset[low >>> 6] |= 1L << low;
+                }
+                this.containers[c] = bitset;
+            }
+            else
+            {
+                char[] array = new char[end - start];
+                for (int i = start; i < end; ++i)
+                {
+                    array[i - start] = (char) (values[i] & 0xFFFF);
+                }
+                this.containers[c] = array;
+            }
+            ++c;
+            start = end;
+        }
+    }
+
+    /**
+     * Obtains the number of elements of the bitmap.
+     *
+     * @return the number of elements.
+     */
+    public int cardinality()
+    {
+        return this.cardinality;
+    }
+
+    /**
+     * Checks whether the bitmap contains an element.
+     *
+     * @param value the element.
+     *
+     * @return true if the bitmap contains the element, false otherwise.
+     */
+    public boolean contains(int value)
+    {
+        if (value < 0)
+        {
+            return false;
+        }
+        int c = Arrays.binarySearch(this.keys, (char) (value >>> 16));
+        return c >= 0 && containerContains(this.containers[c], (char) (value & 0xFFFF));
+    }
+
+    /**
+     * Checks whether the bitmap has any element in common with another one.
+     *
+     * @param other the other bitmap.
+     *
+     * @return true if both bitmaps share, at least, one element.
+     */
+    public boolean intersects(CompressedBitmap other)
+    {
+        int i = 0;
+        int j = 0;
+        while (i < this.keys.length && j < other.keys.length)
+        {
+            if (this.keys[i] < other.keys[j])
+            {
+                ++i;
+            }
+            else if (this.keys[i] > other.keys[j])
+            {
+                ++j;
+            }
+            else
+            {
+                if (containersIntersect(this.containers[i], other.containers[j]))
+                {
+                    return true;
+                }
+                ++i;
+                ++j;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Obtains the elements shared with another bitmap.
+     *
+     * @param other the other bitmap.
+     *
+     * @return the common elements, in increasing order.
+     */
+    public int[] and(CompressedBitmap other)
+    {
+        int[] result = new int[Math.min(this.cardinality, other.cardinality)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < this.keys.length && j < other.keys.length)
+        {
+            if (this.keys[i] < other.keys[j])
+            {
+                ++i;
+            }
+            else if (this.keys[i] > other.keys[j])
+            {
+                ++j;
+            }
+            else
+            {
+                int high = this.keys[i] << 16;
+                Object x = this.containers[i];
+                Object y = other.containers[j];
+                if (x instanceof long[] && y instanceof long[])
+                {
+                    long[] bx = (long[]) x;
+                    long[] by = (long[]) y;
+                    for (int w = 0; w < BITSET_WORDS; ++w)
+                    {
+                        long word = bx[w] & by[w];
+                        while (word != 0)
+                        {
+                            result[size++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                            word &= word - 1;
+                        }
+                    }
+                }
+                else
+                {
+                    // Probe the elements of the array container in the other one.
+                    char[] array = (char[]) (x instanceof char[] ? x : y);
+                    Object probed = x instanceof char[] ? y : x;
+                    for (char low : array)
+                    {
+                        if (containerContains(probed, low))
+                        {
+                            result[size++] = high | low;
+                        }
+                    }
+                }
+                ++i;
+                ++j;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Obtains the elements of the bitmap.
+     *
+     * @return the elements, in increasing order.
+     */
+    public int[] toArray()
+    {
+        int[] values = new int[this.cardinality];
+        int size = 0;
+        for (int c = 0; c < this.keys.length; ++c)
+        {
+            int high = this.keys[c] << 16;
+            if (this.containers[c] instanceof char[])
+            {
+                for (char low : (char[]) this.containers[c])
+                {
+                    values[size++] = high | low;
+                }
+            }
+            else
+            {
+                long[] bitset = (long[]) this.containers[c];
+                for (int w = 0; w < BITSET_WORDS; ++w)
+                {
+                    long word = bitset[w];
+                    while (word != 0)
+                    {
+                        values[size++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Obtains the elements of the bitmap.
+     *
+     * @return a stream containing the elements, in increasing order.
+     */
+    public IntStream stream()
+    {
+        return Arrays.stream(this.toArray());
+    }
+
+    /**
+     * Obtains the memory used by the bitmap.
+     *
+     * @return the memory (in bytes).
+     */
+    public long getMemoryUsage()
+    {
+        long memory = Character.BYTES * (long) this.keys.length;
+        for (Object container : this.containers)
+        {
+            memory += container instanceof char[] ? Character.BYTES * (long) ((char[]) container).length : Long.BYTES * (long) BITSET_WORDS;
+        }
+        return memory;
+    }
+
+    /**
+     * Checks whether a container contains an element.
+     *
+     * @param container the container.
+     * @param low       the 16 least significant bits of the element.
+     *
+     * @return true if the container contains the element, false otherwise.
+     */
+    private static boolean containerContains(Object container, char low)
+    {
+        if (container instanceof char[])
+        {
+            return Arrays.binarySearch((char[]) container, low) >= 0;
+        }
+        return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    /**
+     * Checks whether two containers share any element.
+     *
+     * @param x the first container.
+     * @param y the second container.
+     *
+     * @return true if they share, at least, one element.
+     */
+    private static boolean containersIntersect(Object x, Object y)
+    {
+        if (x instanceof long[] && y instanceof long[])
+        {
+            long[] bx = (long[]) x;
+            long[] by = (long[]) y;
+            for (int w = 0; w < BITSET_WORDS; ++w)
+            {
+                if ((bx[w] & by[w]) != 0)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        char[] array = (char[]) (x instanceof char[] ? x : y);
+        Object probed = x instanceof char[] ? y : x;
+        for (char low : array)
+        {
+            if (containerContains(probed, low))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -95,7 +95,7 @@ public class FastDirectedUnweightedEdges extends FastEdges implements DirectedEd
 
             if (currentNeigh != tuple.v1())
             {
-                if (currentNeigh > 0)
+                if (currentNeigh != -1)
                 {
                     neighbors.add(new IdxPref(currentNeigh, currentValue));
                     currentValue = 0.0;
@@ -123,9 +123,32 @@ public class FastDirectedUnweightedEdges extends FastEdges implements DirectedEd
         return neighbors.stream();
     }
 
+    @Override
+    public Stream<Integer> getNeighbourNodes(int node)
+    {
+        HybridAdjacency adjacency = this.getHybridAdjacency();
+        if (adjacency != null && adjacency.isHub(node))
+        {
+            return adjacency.getNeighbourNodes(node).boxed();
+        }
+        return DirectedEdges.super.getNeighbourNodes(node);
+    }
+
+    @Override
+    public Stream<Integer> getMutualNodes(int node)
+    {
+        HybridAdjacency adjacency = this.getHybridAdjacency();
+        if (adjacency != null && adjacency.isHub(node))
+        {
+            return adjacency.getMutualNodes(node).boxed();
+        }
+        return DirectedEdges.super.getMutualNodes(node);
+    }
+
     @Override
     public boolean addEdge(int orig, int dest, double weight, int type)
     {
+        this.invalidateHybridAdjacency();
         if (this.weights.addRelation(orig, dest, weight) && this.types.addRelation(orig, dest, type))
         {
             this.numEdges++;
@@ -143,6 +166,7 @@ public class FastDirectedUnweightedEdges extends FastEdges implements DirectedEd
     @Override
     public boolean removeNode(int idx)
     {
+        this.invalidateHybridAdjacency();
         int toDel = 0;
         if (this.weights.containsPair(idx, idx))
         {
@@ -188,11 +212,7 @@ public class FastDirectedUnweightedEdges extends FastEdges implements DirectedEd
         while (iteratorIncident.hasNext())
         {
             int idx = iteratorIncident.next();
-            Stream<Integer> incident = this.getIncidentNodes(idx);
-            Stream<Integer> adjacent = this.getAdjacentNodes(idx);
-
-            boolean value = OrderedListCombiner.intersectionHaslements(incident, adjacent, Comparator.naturalOrder());
-            if (value)
+            if (this.hasMutualEdges(idx))
             {
                 users.add(idx);
             }
@@ -77,9 +77,32 @@ public class FastDirectedWeightedEdges extends FastEdges implements DirectedEdge
         return this.weights.getIdsSecond(node).map(weight -> new EdgeWeight(weight.getIdx(), weight.getValue()));
     }
 
+    @Override
+    public Stream<Integer> getNeighbourNodes(int node)
+    {
+        HybridAdjacency adjacency = this.getHybridAdjacency();
+        if (adjacency != null && adjacency.isHub(node))
+        {
+            return adjacency.getNeighbourNodes(node).boxed();
+        }
+        return DirectedEdges.super.getNeighbourNodes(node);
+    }
+
+    @Override
+    public Stream<Integer> getMutualNodes(int node)
+    {
+        HybridAdjacency adjacency = this.getHybridAdjacency();
+        if (adjacency != null && adjacency.isHub(node))
+        {
+            return adjacency.getMutualNodes(node).boxed();
+        }
+        return DirectedEdges.super.getMutualNodes(node);
+    }
+
     @Override
     public boolean addEdge(int orig, int dest, double weight, int type)
     {
+        this.invalidateHybridAdjacency();
         if (this.weights.addRelation(orig, dest, weight) && this.types.addRelation(orig, dest, type))
         {
             numEdges++;
@@ -124,7 +147,7 @@ public class FastDirectedWeightedEdges extends FastEdges implements DirectedEdge
 
             if (tuple.v1().v1() != currentNeigh)
             {
-                if (currentNeigh > 0)
+                if (currentNeigh != -1)
                 {
                     neighbors.add(new EdgeWeight(currentNeigh, currentValue));
                     currentValue = 0.0;
@@ -155,6 +178,7 @@ public class FastDirectedWeightedEdges extends FastEdges implements DirectedEdge
     @Override
     public boolean removeNode(int idx)
     {
+        this.invalidateHybridAdjacency();
         int toDel = 0;
         if (this.weights.containsPair(idx, idx))
         {
@@ -203,11 +227,7 @@ public class FastDirectedWeightedEdges extends FastEdges implements DirectedEdge
         while (iteratorIncident.hasNext())
         {
             int idx = iteratorIncident.next();
-            Stream<Integer> incident = this.getIncidentNodes(idx);
-            Stream<Integer> adjacent = this.getAdjacentNodes(idx);
-
-            boolean value = OrderedListCombiner.intersectionHaslements(incident, adjacent, Comparator.naturalOrder());
-            if (value)
+            if (this.hasMutualEdges(idx))
             {
                 users.add(idx);
             }
@@ -9,6 +9,7 @@
  */
 package es.uam.eps.ir.contactrecaxioms.graph.edges.fast;
 
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeType;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeWeight;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.Edges;
@@ -41,6 +42,16 @@ public abstract class FastEdges implements Edges
      * Current number of edges.
      */
     protected long numEdges = 0L;
+    /**
+     * Hybrid representation of the neighborhoods of the hubs, for fast membership tests and intersections (null if it
+     * has not been built, or the edges have been modified since).
+     */
+    private volatile HybridAdjacency hybrid;
+    /**
+     * Precomputed statistics of the neighborhoods, which replace the ones computed from the stored edges
+     * (null if they have not been attached, or the edges have been modified since).
+     */
+    private volatile NeighborhoodStatistics statistics;
 
     /**
      * Constructor.
@@ -54,9 +65,57 @@ public abstract class FastEdges implements Edges
         this.types = types;
     }
 
+    /**
+     * Builds the hybrid representation of the neighborhoods (see {@link HybridAdjacency}), which is used by
+     * membership tests and mutual neighborhoods involving hubs until the edges are modified.
+     *
+     * @param directed  true if the edges are directed, false otherwise.
+     * @param threshold the minimum degree for storing a neighborhood as a compressed bitmap.
+     */
+    public void buildHybridAdjacency(boolean directed, int threshold)
+    {
+        this.hybrid = new HybridAdjacency(this, this.weights.numFirst(), directed, threshold);
+    }
+
+    /**
+     * Obtains the hybrid representation of the neighborhoods.
+     *
+     * @return the hybrid representation, or null if it has not been built, or the edges have been modified since.
+     */
+    protected HybridAdjacency getHybridAdjacency()
+    {
+        return this.hybrid;
+    }
+
+    /**
+     * Attaches precomputed statistics of the neighborhoods (see {@link NeighborhoodStatistics}). Until the edges
+     * are modified, the sizes and total weights of the neighborhoods are taken from them.
+     *
+     * @param statistics the statistics.
+     */
+    public void setStatistics(NeighborhoodStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Discards the hybrid representation of the neighborhoods and the precomputed statistics, once the edges
+     * are modified.
+     */
+    protected void invalidateHybridAdjacency()
+    {
+        this.hybrid = null;
+        this.statistics = null;
+    }
+
     @Override
     public boolean containsEdge(int orig, int dest)
     {
+        HybridAdjacency adjacency = this.hybrid;
+        if (adjacency != null && adjacency.covers(orig, dest))
+        {
+            return adjacency.containsEdge(orig, dest);
+        }
         return this.weights.containsPair(orig, dest);
     }
 
@@ -92,6 +151,7 @@ public abstract class FastEdges implements Edges
     @Override
     public boolean addUser(int node)
     {
+        this.invalidateHybridAdjacency();
         return this.weights.addFirstItem(node) && this.types.addFirstItem(node);
     }
 
@@ -104,6 +164,7 @@ public abstract class FastEdges implements Edges
     @Override
     public boolean removeEdge(int orig, int dest)
     {
+        this.invalidateHybridAdjacency();
         if (this.weights.removePair(orig, dest) && this.types.removePair(orig, dest))
         {
             this.numEdges--;
@@ -115,27 +176,91 @@ public abstract class FastEdges implements Edges
     @Override
     public long getIncidentCount(int node)
     {
+        NeighborhoodStatistics stats = this.statistics;
+        if (stats != null)
+        {
+            return stats.getSize(node, EdgeOrientation.IN);
+        }
         return this.types.numFirst(node);
     }
 
     @Override
     public long getAdjacentCount(int node)
     {
+        NeighborhoodStatistics stats = this.statistics;
+        if (stats != null)
+        {
+            return stats.getSize(node, EdgeOrientation.OUT);
+        }
         return this.types.numSecond(node);
     }
 
     @Override
     public long getNeighbourCount(int node)
     {
+        NeighborhoodStatistics stats = this.statistics;
+        if (stats != null)
+        {
+            return stats.getSize(node, EdgeOrientation.UND);
+        }
         return this.getNeighbourNodes(node).count();
     }
 
     @Override
     public long getMutualCount(int node)
     {
+        NeighborhoodStatistics stats = this.statistics;
+        if (stats != null)
+        {
+            return stats.getSize(node, EdgeOrientation.MUTUAL);
+        }
         return this.getMutualNodes(node).count();
     }
 
+    @Override
+    public double getIncidentWeightSum(int node)
+    {
+        NeighborhoodStatistics stats = this.statistics;
+        if (stats != null)
+        {
+            return stats.getWeightSum(node, EdgeOrientation.IN);
+        }
+        return Edges.super.getIncidentWeightSum(node);
+    }
+
+    @Override
+    public double getAdjacentWeightSum(int node)
+    {
+        NeighborhoodStatistics stats = this.statistics;
+        if (stats != null)
+        {
+            return stats.getWeightSum(node, EdgeOrientation.OUT);
+        }
+        return Edges.super.getAdjacentWeightSum(node);
+    }
+
+    @Override
+    public double getNeighbourWeightSum(int node)
+    {
+        NeighborhoodStatistics stats = this.statistics;
+        if (stats != null)
+        {
+            return stats.getWeightSum(node, EdgeOrientation.UND);
+        }
+        return Edges.super.getNeighbourWeightSum(node);
+    }
+
+    @Override
+    public double getMutualWeightSum(int node)
+    {
+        NeighborhoodStatistics stats = this.statistics;
+        if (stats != null)
+        {
+            return stats.getWeightSum(node, EdgeOrientation.MUTUAL);
+        }
+        return Edges.super.getMutualWeightSum(node);
+    }
+
     @Override
     public IntStream getIsolatedNodes()
     {
@@ -163,6 +288,12 @@ public abstract class FastEdges implements Edges
     @Override
     public boolean hasMutualEdges(int node)
     {
+        HybridAdjacency adjacency = this.hybrid;
+        if (adjacency != null && adjacency.isHub(node))
+        {
+            return adjacency.hasMutualEdges(node);
+        }
+
         Stream<Integer> incident = this.getIncidentNodes(node);
         Stream<Integer> adjacent = this.getAdjacentNodes(node);
 
@@ -72,6 +72,7 @@ public class FastUndirectedUnweightedEdges extends FastEdges implements Undirect
     @Override
     public boolean addEdge(int orig, int dest, double weight, int type)
     {
+        this.invalidateHybridAdjacency();
         if (orig != dest)
         {
             if (this.weights.addRelation(orig, dest, weight) &&
@@ -103,6 +104,7 @@ public class FastUndirectedUnweightedEdges extends FastEdges implements Undirect
     @Override
     public boolean removeNode(int idx)
     {
+        this.invalidateHybridAdjacency();
         long toDel = this.getAdjacentCount(idx);
         if (this.weights.remove(idx) && this.types.remove(idx))
         {
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.graph.edges.fast;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.Edges;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Read-only hybrid representation of the adjacency of a set of edges. Only the incident and adjacent neighborhoods
+ * of the nodes with a degree above a threshold (the hubs) are stored, as compressed bitmaps (see
+ * {@link CompressedBitmap}). The rest of the neighborhoods are read from the edges themselves, so no copy of them
+ * is kept. Membership tests and set operations are only answered by this representation when one of the operands
+ * is a bitmap:
+ * <ul>
+ *     <li>Bitmap and bitmap: container-wise intersection.</li>
+ *     <li>List and bitmap: every element of the list is looked up in the bitmap.</li>
+ * </ul>
+ * Otherwise (see {@link #isHub(int)} and {@link #covers(int, int)}), the sorted lists of the edges should be used.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class HybridAdjacency
+{
+    /**
+     * Default minimum degree for storing a neighborhood as a compressed bitmap.
+     */
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    /**
+     * The edges.
+     */
+    private final Edges edges;
+    /**
+     * Incident neighborhood of each node (null if the node is not a hub).
+     */
+    private final CompressedBitmap[] incident;
+    /**
+     * Adjacent neighborhood of each node (null if the node is not a hub).
+     */
+    private final CompressedBitmap[] adjacent;
+
+    /**
+     * Constructor.
+     *
+     * @param edges     the edges.
+     * @param numNodes  the number of nodes.
+     * @param directed  true if the edges are directed, false otherwise (incident and adjacent neighborhoods are shared).
+     * @param threshold the minimum degree for storing a neighborhood as a compressed bitmap.
+     */
+    public HybridAdjacency(Edges edges, int numNodes, boolean directed, int threshold)
+    {
+        this.edges = edges;
+        this.incident = new CompressedBitmap[numNodes];
+        this.adjacent = directed ? new CompressedBitmap[numNodes] : this.incident;
+        IntStream.range(0, numNodes).parallel().forEach(node ->
+        {
+            this.incident[node] = compress(edges.getIncidentCount(node), edges.getIncidentNodes(node), threshold);
+            if (directed)
+            {
+                this.adjacent[node] = compress(edges.getAdjacentCount(node), edges.getAdjacentNodes(node), threshold);
+            }
+        });
+    }
+
+    /**
+     * Checks whether a node is a hub, i.e. whether any of its neighborhoods is stored as a compressed bitmap.
+     *
+     * @param node the node.
+     *
+     * @return true if the node is a hub, false otherwise.
+     */
+    public boolean isHub(int node)
+    {
+        return node >= 0 && node < this.incident.length && (this.incident[node] != null || this.adjacent[node] != null);
+    }
+
+    /**
+     * Checks whether the existence of an edge can be answered by this representation, i.e. whether the adjacent
+     * neighborhood of the origin or the incident neighborhood of the destination are stored as bitmaps.
+     *
+     * @param orig the origin node.
+     * @param dest the destination node.
+     *
+     * @return true if {@link #containsEdge(int, int)} can be used for the pair, false otherwise.
+     */
+    public boolean covers(int orig, int dest)
+    {
+        return orig >= 0 && dest >= 0 && orig < this.adjacent.length && dest < this.incident.length &&
+               (this.adjacent[orig] != null || this.incident[dest] != null);
+    }
+
+    /**
+     * Checks whether an edge exists. It can only be used for the pairs covered by this representation
+     * (see {@link #covers(int, int)}).
+     *
+     * @param orig the origin node.
+     * @param dest the destination node.
+     *
+     * @return true if the edge exists, false otherwise.
+     */
+    public boolean containsEdge(int orig, int dest)
+    {
+        CompressedBitmap out = this.adjacent[orig];
+        return out != null ? out.contains(dest) : this.incident[dest].contains(orig);
+    }
+
+    /**
+     * Obtains the nodes which are both incident and adjacent to a hub.
+     *
+     * @param node the node (a hub).
+     *
+     * @return the mutual neighbors, in increasing order.
+     */
+    public IntStream getMutualNodes(int node)
+    {
+        CompressedBitmap in = this.incident[node];
+        CompressedBitmap out = this.adjacent[node];
+        if (in != null && out != null)
+        {
+            return Arrays.stream(in.and(out));
+        }
+        else if (in != null)
+        {
+            return this.edges.getAdjacentNodes(node).mapToInt(Integer::intValue).filter(in::contains);
+        }
+        return this.edges.getIncidentNodes(node).mapToInt(Integer::intValue).filter(out::contains);
+    }
+
+    /**
+     * Obtains the nodes which are incident or adjacent to a hub.
+     *
+     * @param node the node (a hub).
+     *
+     * @return the neighbors, in increasing order.
+     */
+    public IntStream getNeighbourNodes(int node)
+    {
+        int[] in = this.incident[node] != null ? this.incident[node].toArray() : this.edges.getIncidentNodes(node).mapToInt(Integer::intValue).toArray();
+        int[] out = this.adjacent[node] != null ? this.adjacent[node].toArray() : this.edges.getAdjacentNodes(node).mapToInt(Integer::intValue).toArray();
+        return Arrays.stream(union(in, out));
+    }
+
+    /**
+     * Checks whether a hub has, at least, one mutual neighbor.
+     *
+     * @param node the node (a hub).
+     *
+     * @return true if the node has mutual neighbors, false otherwise.
+     */
+    public boolean hasMutualEdges(int node)
+    {
+        CompressedBitmap in = this.incident[node];
+        CompressedBitmap out = this.adjacent[node];
+        if (in != null && out != null)
+        {
+            return in.intersects(out);
+        }
+        else if (in != null)
+        {
+            return this.edges.getAdjacentNodes(node).anyMatch(in::contains);
+        }
+        return this.edges.getIncidentNodes(node).anyMatch(out::contains);
+    }
+
+    /**
+     * Obtains the memory used by the bitmaps of the hubs.
+     *
+     * @return the memory (in bytes).
+     */
+    public long getMemoryUsage()
+    {
+        long memory = 0L;
+        for (int node = 0; node < this.incident.length; ++node)
+        {
+            memory += this.incident[node] != null ? this.incident[node].getMemoryUsage() : 0L;
+            if (this.adjacent != this.incident && this.adjacent[node] != null)
+            {
+                memory += this.adjacent[node].getMemoryUsage();
+            }
+        }
+        return memory;
+    }
+
+    /**
+     * Stores the neighborhood of a node as a compressed bitmap if the node is a hub.
+     *
+     * @param size      the size of the neighborhood.
+     * @param neighbors the neighbors, in increasing order (only read if the node is a hub).
+     * @param threshold the minimum degree for storing a neighborhood as a compressed bitmap.
+     *
+     * @return the compressed bitmap if the neighborhood is large enough, null otherwise.
+     */
+    private static CompressedBitmap compress(long size, Stream<Integer> neighbors, int threshold)
+    {
+        // The size might come from precomputed statistics, so it is checked again over the stored neighbors.
+        if (size < threshold)
+        {
+            return null;
+        }
+        int[] values = neighbors.mapToInt(Integer::intValue).toArray();
+        return values.length >= threshold ? new CompressedBitmap(values) : null;
+    }
+
+    /**
+     * Joins two neighborhoods.
+     *
+     * @param a the first neighborhood, in increasing order.
+     * @param b the second neighborhood, in increasing order.
+     *
+     * @return the nodes in any of them, in increasing order.
+     */
+    private static int[] union(int[] a, int[] b)
+    {
+        int[] result = new int[a.length + b.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length)
+        {
+            if (j >= b.length || (i < a.length && a[i] < b[j]))
+            {
+                result[size++] = a[i++];
+            }
+            else if (i >= a.length || b[j] < a[i])
+            {
+                result[size++] = b[j++];
+            }
+            else
+            {
+                result[size++] = a[i++];
+                ++j;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+}
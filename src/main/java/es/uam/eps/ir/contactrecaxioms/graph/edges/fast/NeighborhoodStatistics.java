@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.graph.edges.fast;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+
+/**
+ * Precomputed size and total weight of the neighborhoods of every node, for every orientation. When they are
+ * attached to a set of edges (see {@link FastEdges#setStatistics(NeighborhoodStatistics)}), they replace the
+ * values computed from the stored neighborhoods. This way, a graph containing only a part of the edges of a
+ * network (for instance, the ego networks of some target users) reports the statistics of the whole network.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class NeighborhoodStatistics
+{
+    /**
+     * Size of the neighborhood of each node, for each orientation.
+     */
+    private final long[][] sizes;
+    /**
+     * Sum of the weights of the neighborhood of each node, for each orientation.
+     */
+    private final double[][] weights;
+
+    /**
+     * Constructor. Initializes all the statistics to zero.
+     *
+     * @param numNodes the number of nodes.
+     */
+    public NeighborhoodStatistics(int numNodes)
+    {
+        int numOrientations = EdgeOrientation.values().length;
+        this.sizes = new long[numOrientations][numNodes];
+        this.weights = new double[numOrientations][numNodes];
+    }
+
+    /**
+     * Sets the statistics of the neighborhood of a node.
+     *
+     * @param node        the node.
+     * @param orientation the orientation of the neighborhood.
+     * @param size        the size of the neighborhood.
+     * @param weight      the sum of the weights of the neighborhood.
+     */
+    public void set(int node, EdgeOrientation orientation, long size, double weight)
+    {
+        this.sizes[orientation.ordinal()][node] = size;
+        this.weights[orientation.ordinal()][node] = weight;
+    }
+
+    /**
+     * Obtains the size of the neighborhood of a node.
+     *
+     * @param node        the node.
+     * @param orientation the orientation of the neighborhood.
+     *
+     * @return the size of the neighborhood.
+     */
+    public long getSize(int node, EdgeOrientation orientation)
+    {
+        return this.sizes[orientation.ordinal()][node];
+    }
+
+    /**
+     * Obtains the sum of the weights of the neighborhood of a node.
+     *
+     * @param node        the node.
+     * @param orientation the orientation of the neighborhood.
+     *
+     * @return the sum of the weights.
+     */
+    public double getWeightSum(int node, EdgeOrientation orientation)
+    {
+        return this.weights[orientation.ordinal()][node];
+    }
+
+    /**
+     * Obtains the number of nodes.
+     *
+     * @return the number of nodes.
+     */
+    public int numNodes()
+    {
+        return this.sizes[0].length;
+    }
+}
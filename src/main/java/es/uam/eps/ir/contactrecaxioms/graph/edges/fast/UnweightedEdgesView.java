@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.graph.edges.fast;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeType;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeWeight;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.Edges;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.UnweightedEdges;
+import es.uam.eps.ir.contactrecaxioms.utils.OrderedListCombiner;
+import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
+
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Read-only view of a set of edges, where every edge has the default weight (binary weights).
+ * The view does not copy the edges: every structural query is delegated to the underlying set of edges.
+ * The view cannot be modified.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class UnweightedEdgesView implements UnweightedEdges
+{
+    /**
+     * The underlying set of edges.
+     */
+    private final Edges edges;
+    /**
+     * Whether the edges are directed or not.
+     */
+    private final boolean directed;
+
+    /**
+     * Constructor.
+     *
+     * @param edges    the underlying set of edges.
+     * @param directed true if the edges are directed, false otherwise.
+     */
+    public UnweightedEdgesView(Edges edges, boolean directed)
+    {
+        this.edges = edges;
+        this.directed = directed;
+    }
+
+    @Override
+    public boolean containsEdge(int orig, int dest)
+    {
+        return this.edges.containsEdge(orig, dest);
+    }
+
+    @Override
+    public int getEdgeType(int orig, int dest)
+    {
+        return this.edges.getEdgeType(orig, dest);
+    }
+
+    @Override
+    public Stream<Integer> getIncidentNodes(int node)
+    {
+        return this.edges.getIncidentNodes(node);
+    }
+
+    @Override
+    public Stream<Integer> getAdjacentNodes(int node)
+    {
+        return this.edges.getAdjacentNodes(node);
+    }
+
+    @Override
+    public Stream<Integer> getNeighbourNodes(int node)
+    {
+        return this.edges.getNeighbourNodes(node);
+    }
+
+    @Override
+    public Stream<Integer> getMutualNodes(int node)
+    {
+        return this.edges.getMutualNodes(node);
+    }
+
+    @Override
+    public Stream<EdgeType> getIncidentTypes(int node)
+    {
+        return this.edges.getIncidentTypes(node);
+    }
+
+    @Override
+    public Stream<EdgeType> getAdjacentTypes(int node)
+    {
+        return this.edges.getAdjacentTypes(node);
+    }
+
+    @Override
+    public Stream<EdgeType> getNeighbourTypes(int node)
+    {
+        return this.edges.getNeighbourTypes(node);
+    }
+
+    @Override
+    public Stream<EdgeType> getMutualAdjacentTypes(int node)
+    {
+        return this.edges.getMutualAdjacentTypes(node);
+    }
+
+    @Override
+    public Stream<EdgeType> getMutualIncidentTypes(int node)
+    {
+        return this.edges.getMutualIncidentTypes(node);
+    }
+
+    @Override
+    public Stream<EdgeType> getMutualTypes(int node)
+    {
+        return this.edges.getMutualTypes(node);
+    }
+
+    @Override
+    public Stream<IdxPref> getNeighbourWeights(int node)
+    {
+        if (this.directed)
+        {
+            // As in directed unweighted graphs, each direction of the edge adds the default weight.
+            return OrderedListCombiner.mergeLists(this.getIncidentWeights(node), this.getAdjacentWeights(node), Comparator.comparingInt(x -> x.v1), (x, y) -> new IdxPref(x.v1, x.v2 + y.v2)).stream();
+        }
+        return this.getNeighbourNodes(node).map(val -> new EdgeWeight(val, EdgeWeight.getDefaultValue()));
+    }
+
+    @Override
+    public Stream<IdxPref> getMutualAdjacentWeights(int node)
+    {
+        return this.getMutualWeights(node);
+    }
+
+    @Override
+    public Stream<IdxPref> getMutualIncidentWeights(int node)
+    {
+        return this.getMutualWeights(node);
+    }
+
+    @Override
+    public Stream<IdxPref> getMutualWeights(int node)
+    {
+        return this.getMutualNodes(node).map(val -> new EdgeWeight(val, EdgeWeight.getDefaultValue()));
+    }
+
+    @Override
+    public long getAdjacentCount(int node)
+    {
+        return this.edges.getAdjacentCount(node);
+    }
+
+    @Override
+    public long getIncidentCount(int node)
+    {
+        return this.edges.getIncidentCount(node);
+    }
+
+    @Override
+    public long getNeighbourCount(int node)
+    {
+        return this.edges.getNeighbourCount(node);
+    }
+
+    @Override
+    public long getMutualCount(int node)
+    {
+        return this.edges.getMutualCount(node);
+    }
+
+    // Every edge has the default weight, so the total weights are derived from the sizes of the neighborhoods
+    // (which the underlying edges may take from precomputed statistics).
+
+    @Override
+    public double getAdjacentWeightSum(int node)
+    {
+        return this.getAdjacentCount(node) * EdgeWeight.getDefaultValue();
+    }
+
+    @Override
+    public double getIncidentWeightSum(int node)
+    {
+        return this.getIncidentCount(node) * EdgeWeight.getDefaultValue();
+    }
+
+    @Override
+    public double getNeighbourWeightSum(int node)
+    {
+        if (this.directed)
+        {
+            return (this.getIncidentCount(node) + this.getAdjacentCount(node)) * EdgeWeight.getDefaultValue();
+        }
+        return this.getNeighbourCount(node) * EdgeWeight.getDefaultValue();
+    }
+
+    @Override
+    public double getMutualWeightSum(int node)
+    {
+        return this.getMutualCount(node) * EdgeWeight.getDefaultValue();
+    }
+
+    @Override
+    public boolean addUser(int idx)
+    {
+        throw new UnsupportedOperationException("Views cannot be modified");
+    }
+
+    @Override
+    public boolean addEdge(int orig, int dest, double weight, int type)
+    {
+        throw new UnsupportedOperationException("Views cannot be modified");
+    }
+
+    @Override
+    public boolean removeEdge(int orig, int dest)
+    {
+        throw new UnsupportedOperationException("Views cannot be modified");
+    }
+
+    @Override
+    public boolean removeNode(int idx)
+    {
+        throw new UnsupportedOperationException("Views cannot be modified");
+    }
+
+    @Override
+    public boolean updateEdgeWeight(int orig, int dest, double weight)
+    {
+        throw new UnsupportedOperationException("Views cannot be modified");
+    }
+
+    @Override
+    public long getNumEdges()
+    {
+        return this.edges.getNumEdges();
+    }
+
+    @Override
+    public IntStream getIsolatedNodes()
+    {
+        return this.edges.getIsolatedNodes();
+    }
+
+    @Override
+    public IntStream getNodesWithIncidentEdges()
+    {
+        return this.edges.getNodesWithIncidentEdges();
+    }
+
+    @Override
+    public IntStream getNodesWithAdjacentEdges()
+    {
+        return this.edges.getNodesWithAdjacentEdges();
+    }
+
+    @Override
+    public IntStream getNodesWithEdges()
+    {
+        return this.edges.getNodesWithEdges();
+    }
+
+    @Override
+    public IntStream getNodesWithMutualEdges()
+    {
+        return this.edges.getNodesWithMutualEdges();
+    }
+
+    @Override
+    public boolean hasAdjacentEdges(int idx)
+    {
+        return this.edges.hasAdjacentEdges(idx);
+    }
+
+    @Override
+    public boolean hasIncidentEdges(int idx)
+    {
+        return this.edges.hasIncidentEdges(idx);
+    }
+
+    @Override
+    public boolean hasEdges(int idx)
+    {
+        return this.edges.hasEdges(idx);
+    }
+
+    @Override
+    public boolean hasMutualEdges(int idx)
+    {
+        return this.edges.hasMutualEdges(idx);
+    }
+}
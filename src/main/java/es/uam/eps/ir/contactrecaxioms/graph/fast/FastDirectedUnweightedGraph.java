@@ -13,7 +13,9 @@ import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.impl.SparseDoubleMatrix2D;
 import es.uam.eps.ir.contactrecaxioms.graph.DirectedUnweightedGraph;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.Edges;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.fast.FastDirectedUnweightedEdges;
+import es.uam.eps.ir.contactrecaxioms.graph.index.Index;
 import es.uam.eps.ir.contactrecaxioms.graph.index.fast.FastIndex;
 import no.uib.cipr.matrix.Matrix;
 import no.uib.cipr.matrix.sparse.LinkedSparseMatrix;
@@ -38,6 +40,17 @@ public class FastDirectedUnweightedGraph<V> extends FastGraph<V> implements Dire
         super(new FastIndex<>(), new FastDirectedUnweightedEdges());
     }
 
+    /**
+     * Constructor.
+     *
+     * @param vertices the index of the vertices.
+     * @param edges    the edges of the graph.
+     */
+    protected FastDirectedUnweightedGraph(Index<V> vertices, Edges edges)
+    {
+        super(vertices, edges);
+    }
+
     @Override
     public DoubleMatrix2D getAdjacencyMatrix(EdgeOrientation direction)
     {
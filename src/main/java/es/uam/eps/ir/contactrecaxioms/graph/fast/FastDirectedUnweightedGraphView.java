@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.graph.fast;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.fast.UnweightedEdgesView;
+
+/**
+ * Unweighted view of a directed fast graph. It shares the vertices and edges of the original graph
+ * (no copy is made), but every edge has the default weight. The view cannot be modified.
+ *
+ * @param <V> Type of the vertices.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class FastDirectedUnweightedGraphView<V> extends FastDirectedUnweightedGraph<V>
+{
+    /**
+     * Constructor.
+     *
+     * @param graph the original (possibly weighted) directed graph.
+     */
+    public FastDirectedUnweightedGraphView(FastGraph<V> graph)
+    {
+        super(graph.vertices, new UnweightedEdgesView(graph.edges, true));
+    }
+
+    @Override
+    public boolean addNode(V node)
+    {
+        throw new UnsupportedOperationException("Views cannot be modified");
+    }
+}
@@ -14,6 +14,9 @@ import es.uam.eps.ir.contactrecaxioms.graph.Weight;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeType;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.Edges;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.fast.FastEdges;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.fast.HybridAdjacency;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.fast.NeighborhoodStatistics;
 import es.uam.eps.ir.contactrecaxioms.graph.index.Index;
 import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
 
@@ -54,6 +57,35 @@ public abstract class FastGraph<V> implements Graph<V>, Serializable
         this.edges = edges;
     }
 
+    /**
+     * Builds a hybrid representation of the neighborhoods (see {@link HybridAdjacency}), speeding up edge
+     * membership tests and mutual neighborhoods when some of the nodes are hubs. It should be built once the
+     * graph is complete: modifying the graph discards it.
+     */
+    public void buildHybridAdjacency()
+    {
+        if (this.edges instanceof FastEdges)
+        {
+            ((FastEdges) this.edges).buildHybridAdjacency(this.isDirected(), HybridAdjacency.DEFAULT_THRESHOLD);
+        }
+    }
+
+    /**
+     * Attaches precomputed statistics of the neighborhoods (see {@link NeighborhoodStatistics}), which replace
+     * the sizes and total weights of the neighborhoods computed from the edges in the graph. It allows a graph
+     * containing only a part of a network to report the statistics of the whole network. Modifying the graph
+     * discards them.
+     *
+     * @param statistics the statistics.
+     */
+    public void setNeighborhoodStatistics(NeighborhoodStatistics statistics)
+    {
+        if (this.edges instanceof FastEdges)
+        {
+            ((FastEdges) this.edges).setStatistics(statistics);
+        }
+    }
+
     @Override
     public boolean addNode(V node)
     {
@@ -436,6 +468,74 @@ public abstract class FastGraph<V> implements Graph<V>, Serializable
         }
     }
 
+    /**
+     * Obtains the size of the neighborhood of a node, using ids.
+     *
+     * @param uidx        Identifier of the node.
+     * @param orientation Orientation of the neighborhood.
+     *
+     * @return the number of neighbors of the node.
+     */
+    public long getNeighborhoodSize(int uidx, EdgeOrientation orientation)
+    {
+        switch (orientation)
+        {
+            case OUT:
+                return this.edges.getAdjacentCount(uidx);
+            case IN:
+                return this.edges.getIncidentCount(uidx);
+            case MUTUAL:
+                return this.edges.getMutualCount(uidx);
+            default:
+                return this.edges.getNeighbourCount(uidx);
+        }
+    }
+
+    /**
+     * Obtains the sum of the weights of the neighborhood of a node, using ids.
+     *
+     * @param uidx        Identifier of the node.
+     * @param orientation Orientation of the neighborhood.
+     *
+     * @return the sum of the weights of the edges between the node and its neighbors.
+     */
+    public double getNeighborhoodWeightSum(int uidx, EdgeOrientation orientation)
+    {
+        switch (orientation)
+        {
+            case OUT:
+                return this.edges.getAdjacentWeightSum(uidx);
+            case IN:
+                return this.edges.getIncidentWeightSum(uidx);
+            case MUTUAL:
+                return this.edges.getMutualWeightSum(uidx);
+            default:
+                return this.edges.getNeighbourWeightSum(uidx);
+        }
+    }
+
+    /**
+     * Obtains the identifiers of the nodes with at least one neighbor in the given orientation.
+     *
+     * @param orientation Orientation of the neighborhood.
+     *
+     * @return the identifiers of the nodes with neighbors.
+     */
+    public IntStream getNodesWithEdgesIds(EdgeOrientation orientation)
+    {
+        switch (orientation)
+        {
+            case OUT:
+                return this.edges.getNodesWithAdjacentEdges();
+            case IN:
+                return this.edges.getNodesWithIncidentEdges();
+            case MUTUAL:
+                return this.edges.getNodesWithMutualEdges();
+            default:
+                return this.edges.getNodesWithEdges();
+        }
+    }
+
     public IntStream getAllNodesIds()
     {
         return this.vertices.getAllObjectsIds();
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.graph.io;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeType;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import java.io.*;
+import java.util.Iterator;
+
+/**
+ * Writes a graph into a binary snapshot, which allows reading the neighborhoods of a few nodes without loading
+ * the whole graph (see {@link EgoNetworkReader}). The file (big-endian) contains the following sections:
+ * <ol>
+ *     <li><b>Header:</b> magic number, version, directed and weighted flags, number of nodes, number of
+ *     edges, and number of adjacency records of each orientation.</li>
+ *     <li><b>Statistics:</b> for each node, and for each orientation (in the order of {@link EdgeOrientation}),
+ *     the size of the neighborhood and the sum of its weights, as computed by
+ *     {@link FastGraph#getNeighborhoodSize(int, EdgeOrientation)} and
+ *     {@link FastGraph#getNeighborhoodWeightSum(int, EdgeOrientation)}.</li>
+ *     <li><b>Offsets:</b> position of the first adjacency record of each node (plus the total number of
+ *     records), for the adjacent neighborhoods and, if the graph is directed, for the incident ones.</li>
+ *     <li><b>Adjacency:</b> the records of the adjacent neighborhoods and, if the graph is directed, the ones of
+ *     the incident neighborhoods. Each record contains the identifier of the neighbor, the weight and the type
+ *     of the edge.</li>
+ *     <li><b>Nodes:</b> the nodes, in the order of their identifiers, written as strings.</li>
+ * </ol>
+ *
+ * @param <V> Type of the vertices.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class BinaryGraphWriter<V>
+{
+    /**
+     * Magic number identifying the snapshots.
+     */
+    static final int MAGIC = 0x43524753;
+    /**
+     * Version of the format.
+     */
+    static final int VERSION = 1;
+    /**
+     * Size of the header (in bytes).
+     */
+    static final int HEADER_BYTES = 2 * Integer.BYTES + 2 + Integer.BYTES + 3 * Long.BYTES;
+    /**
+     * Size of the statistics of a node (in bytes).
+     */
+    static final int STATISTICS_BYTES = EdgeOrientation.values().length * (Long.BYTES + Double.BYTES);
+    /**
+     * Size of an adjacency record (in bytes).
+     */
+    static final int RECORD_BYTES = Integer.BYTES + Double.BYTES + Integer.BYTES;
+
+    /**
+     * Writes a graph into a file. The graph must contain all its edges (it cannot be the result of reading
+     * ego networks).
+     *
+     * @param graph the graph.
+     * @param file  the file.
+     *
+     * @return true if everything went OK, false otherwise.
+     */
+    public boolean write(FastGraph<V> graph, String file)
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+        {
+            boolean directed = graph.isDirected();
+            int numNodes = Long.valueOf(graph.getVertexCount()).intValue();
+            EdgeOrientation outSel = directed ? EdgeOrientation.OUT : EdgeOrientation.UND;
+
+            long numOut = 0L;
+            long numIn = 0L;
+            for (int uidx = 0; uidx < numNodes; ++uidx)
+            {
+                numOut += graph.getNeighborhoodSize(uidx, outSel);
+                numIn += directed ? graph.getNeighborhoodSize(uidx, EdgeOrientation.IN) : 0L;
+            }
+
+            // Header.
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(directed);
+            out.writeBoolean(graph.isWeighted());
+            out.writeInt(numNodes);
+            out.writeLong(graph.getEdgeCount());
+            out.writeLong(numOut);
+            out.writeLong(numIn);
+
+            // Statistics.
+            for (int uidx = 0; uidx < numNodes; ++uidx)
+            {
+                for (EdgeOrientation orient : EdgeOrientation.values())
+                {
+                    out.writeLong(graph.getNeighborhoodSize(uidx, orient));
+                    out.writeDouble(graph.getNeighborhoodWeightSum(uidx, orient));
+                }
+            }
+
+            // Offsets.
+            this.writeOffsets(graph, outSel, numNodes, out);
+            if (directed)
+            {
+                this.writeOffsets(graph, EdgeOrientation.IN, numNodes, out);
+            }
+
+            // Adjacency.
+            this.writeRecords(graph, outSel, numNodes, out);
+            if (directed)
+            {
+                this.writeRecords(graph, EdgeOrientation.IN, numNodes, out);
+            }
+
+            // Nodes.
+            for (int uidx = 0; uidx < numNodes; ++uidx)
+            {
+                out.writeUTF(graph.idx2object(uidx).toString());
+            }
+            return true;
+        }
+        catch (IOException ioe)
+        {
+            ioe.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the position of the first adjacency record of each node.
+     *
+     * @param graph    the graph.
+     * @param orient   the orientation of the neighborhoods.
+     * @param numNodes the number of nodes.
+     * @param out      the output stream.
+     *
+     * @throws IOException if something fails while writing.
+     */
+    private void writeOffsets(FastGraph<V> graph, EdgeOrientation orient, int numNodes, DataOutputStream out) throws IOException
+    {
+        long offset = 0L;
+        for (int uidx = 0; uidx < numNodes; ++uidx)
+        {
+            out.writeLong(offset);
+            offset += graph.getNeighborhoodSize(uidx, orient);
+        }
+        out.writeLong(offset);
+    }
+
+    /**
+     * Writes the adjacency records of the nodes.
+     *
+     * @param graph    the graph.
+     * @param orient   the orientation of the neighborhoods.
+     * @param numNodes the number of nodes.
+     * @param out      the output stream.
+     *
+     * @throws IOException if something fails while writing.
+     */
+    private void writeRecords(FastGraph<V> graph, EdgeOrientation orient, int numNodes, DataOutputStream out) throws IOException
+    {
+        Int2IntOpenHashMap types = new Int2IntOpenHashMap();
+        for (int uidx = 0; uidx < numNodes; ++uidx)
+        {
+            types.clear();
+            graph.getNeighborhoodTypes(uidx, orient).forEach(type -> types.put(type.getIdx(), type.getValue().intValue()));
+
+            Iterator<IdxPref> iterator = graph.getNeighborhoodWeights(uidx, orient).iterator();
+            while (iterator.hasNext())
+            {
+                IdxPref neigh = iterator.next();
+                out.writeInt(neigh.v1);
+                out.writeDouble(neigh.v2);
+                out.writeInt(types.getOrDefault(neigh.v1, EdgeType.getDefaultValue()));
+            }
+        }
+    }
+}
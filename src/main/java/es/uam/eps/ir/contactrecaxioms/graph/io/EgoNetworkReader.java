@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.graph.io;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.fast.NeighborhoodStatistics;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.contactrecaxioms.graph.generator.EmptyGraphGenerator;
+import es.uam.eps.ir.contactrecaxioms.graph.generator.GeneratorNotConfiguredException;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.ranksys.formats.parsing.Parser;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Reads the ego networks of a set of target users from a binary snapshot of a graph (see {@link BinaryGraphWriter}).
+ * Only the neighborhoods of the nodes at less than a number of hops from the targets are read, using the offsets
+ * of the snapshot. The resulting graph contains every node of the snapshot (so identifiers and node counts are
+ * preserved), but only the edges with an endpoint at less than that number of hops from a target. The statistics of
+ * the whole graph are attached to it (see {@link FastGraph#setNeighborhoodStatistics(NeighborhoodStatistics)}), so
+ * the sizes and total weights of every neighborhood are the original ones.
+ *
+ * <p>With the default two hops, the neighborhoods of the targets and of their neighbors are complete, which is
+ * all the recommenders based on common neighbors and on neighborhood statistics (BM25, query likelihood, VSM,
+ * Jaccard, Adamic-Adar, cosine, etc.) need: their scores for the targets are the same as over the whole graph.
+ * Graph-wide measures which are not neighborhood statistics (as the number of edges) are not preserved.</p>
+ *
+ * @param <V> Type of the vertices.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class EgoNetworkReader<V>
+{
+    /**
+     * Default number of hops of the ego networks.
+     */
+    public static final int DEFAULT_HOPS = 2;
+
+    /**
+     * Parser for reading the vertices.
+     */
+    private final Parser<V> uParser;
+
+    /**
+     * Constructor.
+     *
+     * @param uParser Parser for reading the vertices.
+     */
+    public EgoNetworkReader(Parser<V> uParser)
+    {
+        this.uParser = uParser;
+    }
+
+    /**
+     * Checks whether a file is a binary snapshot of a graph.
+     *
+     * @param file the file.
+     *
+     * @return true if the file is a snapshot, false otherwise.
+     */
+    public static boolean isSnapshot(String file)
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ))
+        {
+            return channel.size() >= BinaryGraphWriter.HEADER_BYTES && read(channel, 0L, Integer.BYTES).getInt() == BinaryGraphWriter.MAGIC;
+        }
+        catch (IOException ioe)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the ego networks of a set of target users, with the default number of hops.
+     *
+     * @param file    the snapshot.
+     * @param targets the target users.
+     *
+     * @return the graph if everything goes ok, null otherwise.
+     */
+    public FastGraph<V> read(String file, Collection<V> targets)
+    {
+        return this.read(file, targets, DEFAULT_HOPS);
+    }
+
+    /**
+     * Reads the ego networks of a set of target users.
+     *
+     * @param file    the snapshot.
+     * @param targets the target users. Those which are not in the graph are ignored.
+     * @param hops    the number of hops of the ego networks: the neighborhoods of the nodes at less than this
+     *                number of hops from a target are read.
+     *
+     * @return the graph if everything goes ok, null otherwise.
+     */
+    public FastGraph<V> read(String file, Collection<V> targets, int hops)
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ))
+        {
+            // Header.
+            ByteBuffer header = read(channel, 0L, BinaryGraphWriter.HEADER_BYTES);
+            if (header.getInt() != BinaryGraphWriter.MAGIC || header.getInt() != BinaryGraphWriter.VERSION)
+            {
+                System.err.println("ERROR: " + file + " is not a graph snapshot");
+                return null;
+            }
+            boolean directed = header.get() != 0;
+            boolean weighted = header.get() != 0;
+            int numNodes = header.getInt();
+            header.getLong(); // Number of edges.
+            long numOut = header.getLong();
+            long numIn = header.getLong();
+
+            // Positions of the different sections.
+            long statisticsPos = BinaryGraphWriter.HEADER_BYTES;
+            long outOffsetsPos = statisticsPos + (long) numNodes * BinaryGraphWriter.STATISTICS_BYTES;
+            long inOffsetsPos = directed ? outOffsetsPos + (numNodes + 1L) * Long.BYTES : outOffsetsPos;
+            long outRecordsPos = inOffsetsPos + (numNodes + 1L) * Long.BYTES;
+            long inRecordsPos = directed ? outRecordsPos + numOut * BinaryGraphWriter.RECORD_BYTES : outRecordsPos;
+            long nodesPos = outRecordsPos + (numOut + numIn) * BinaryGraphWriter.RECORD_BYTES;
+
+            // Nodes: all of them are added, in the order of their identifiers.
+            EmptyGraphGenerator<V> gg = new EmptyGraphGenerator<>();
+            gg.configure(directed, weighted);
+            FastGraph<V> graph = (FastGraph<V>) gg.generate();
+
+            DataInputStream nodes = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(nodesPos))));
+            for (int uidx = 0; uidx < numNodes; ++uidx)
+            {
+                graph.addNode(this.uParser.parse(nodes.readUTF()));
+            }
+
+            // Edges of the nodes at less than the given number of hops from the targets.
+            boolean[] visited = new boolean[numNodes];
+            IntArrayList frontier = new IntArrayList();
+            for (V target : targets)
+            {
+                int uidx = graph.object2idx(target);
+                if (uidx >= 0 && !visited[uidx])
+                {
+                    visited[uidx] = true;
+                    frontier.add(uidx);
+                }
+            }
+
+            for (int hop = 0; hop < hops && !frontier.isEmpty(); ++hop)
+            {
+                IntArrayList next = new IntArrayList();
+                int[] current = frontier.toIntArray();
+                IntArrays.quickSort(current);
+                for (int uidx : current)
+                {
+                    ByteBuffer records = this.readRecords(channel, outOffsetsPos, outRecordsPos, uidx);
+                    while (records.hasRemaining())
+                    {
+                        int vidx = records.getInt();
+                        graph.addEdge(uidx, vidx, records.getDouble(), records.getInt());
+                        if (!visited[vidx])
+                        {
+                            visited[vidx] = true;
+                            next.add(vidx);
+                        }
+                    }
+
+                    if (directed)
+                    {
+                        records = this.readRecords(channel, inOffsetsPos, inRecordsPos, uidx);
+                        while (records.hasRemaining())
+                        {
+                            int vidx = records.getInt();
+                            graph.addEdge(vidx, uidx, records.getDouble(), records.getInt());
+                            if (!visited[vidx])
+                            {
+                                visited[vidx] = true;
+                                next.add(vidx);
+                            }
+                        }
+                    }
+                }
+                frontier = next;
+            }
+
+            // Statistics of the whole graph (attached once the graph is complete, since modifying it discards them).
+            NeighborhoodStatistics statistics = new NeighborhoodStatistics(numNodes);
+            DataInputStream stats = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(statisticsPos))));
+            for (int uidx = 0; uidx < numNodes; ++uidx)
+            {
+                for (EdgeOrientation orient : EdgeOrientation.values())
+                {
+                    statistics.set(uidx, orient, stats.readLong(), stats.readDouble());
+                }
+            }
+            graph.setNeighborhoodStatistics(statistics);
+
+            return graph;
+        }
+        catch (IOException | GeneratorNotConfiguredException ex)
+        {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads the adjacency records of a node.
+     *
+     * @param channel    the channel of the snapshot.
+     * @param offsetsPos the position of the offsets.
+     * @param recordsPos the position of the records.
+     * @param uidx       the identifier of the node.
+     *
+     * @return a buffer containing the records.
+     *
+     * @throws IOException if something fails while reading.
+     */
+    private ByteBuffer readRecords(FileChannel channel, long offsetsPos, long recordsPos, int uidx) throws IOException
+    {
+        ByteBuffer offsets = read(channel, offsetsPos + (long) uidx * Long.BYTES, 2 * Long.BYTES);
+        long start = offsets.getLong();
+        long end = offsets.getLong();
+        return read(channel, recordsPos + start * BinaryGraphWriter.RECORD_BYTES, Math.toIntExact((end - start) * BinaryGraphWriter.RECORD_BYTES));
+    }
+
+    /**
+     * Reads a block of bytes from a channel.
+     *
+     * @param channel  the channel.
+     * @param position the position of the block.
+     * @param length   the length of the block.
+     *
+     * @return a buffer containing the block, ready for reading.
+     *
+     * @throws IOException if the block cannot be read.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new EOFException("Truncated graph snapshot");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -9,31 +9,22 @@
  */
 package es.uam.eps.ir.contactrecaxioms.main;
 
-import es.uam.eps.ir.contactrecaxioms.data.GraphSimpleFastPreferenceData;
-import es.uam.eps.ir.contactrecaxioms.graph.Adapters;
-import es.uam.eps.ir.contactrecaxioms.graph.Graph;
+import es.uam.eps.ir.contactrecaxioms.data.FastGraphPreferenceData;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.graph.io.TextGraphReader;
-import es.uam.eps.ir.contactrecaxioms.metrics.UserLength;
-import es.uam.eps.ir.contactrecaxioms.metrics.UserLengthNovelty;
 import es.uam.eps.ir.contactrecaxioms.data.FastGraphIndex;
 import es.uam.eps.ir.contactrecaxioms.data.GraphIndex;
+import es.uam.eps.ir.contactrecaxioms.data.TestFastPreferenceData;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator.Metric;
+import es.uam.eps.ir.contactrecaxioms.recommender.BlockedRecommenderRunner;
 import es.uam.eps.ir.contactrecaxioms.recommender.SocialFastFilters;
 import es.uam.eps.ir.contactrecaxioms.main.grid.AlgorithmGridReader;
 import es.uam.eps.ir.contactrecaxioms.main.grid.AlgorithmGridSelector;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
-import es.uam.eps.ir.ranksys.metrics.SystemMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.AverageRecommendationMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.NDCG;
-import es.uam.eps.ir.ranksys.metrics.rank.NoDiscountModel;
-import es.uam.eps.ir.ranksys.metrics.rank.RankingDiscountModel;
-import es.uam.eps.ir.ranksys.metrics.rel.NoRelevanceModel;
-import es.uam.eps.ir.ranksys.metrics.rel.RelevanceModel;
 import es.uam.eps.ir.ranksys.rec.Recommender;
 import es.uam.eps.ir.ranksys.rec.runner.RecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilterRecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilters;
 import org.ranksys.formats.parsing.Parsers;
 import org.ranksys.formats.rec.RecommendationFormat;
 import org.ranksys.formats.rec.TRECRecommendationFormat;
@@ -113,14 +104,14 @@ public class AccuracyVSDegree
             System.err.println("ERROR: Could not read the training graph");
             return;
         }
+        graph.buildHybridAdjacency();
 
-        // Read the test graph.
-        TextGraphReader<Long> testGraphReader = new TextGraphReader<>(directed, false, false, "\t", Parsers.lp);
-        Graph<Long> auxgraph = testGraphReader.read(testDataPath, false, false);
-        FastGraph<Long> testGraph = (FastGraph<Long>) Adapters.onlyTrainUsers(auxgraph, graph);
-        if (testGraph == null)
+        // Read the test edges between training users.
+        GraphIndex<Long> index = new FastGraphIndex<>(graph);
+        TestFastPreferenceData<Long> testData = TestFastPreferenceData.load(testDataPath, index, directed, "\t", Parsers.lp);
+        if (testData == null)
         {
-            System.err.println("ERROR: Could not remove users from the test graph");
+            System.err.println("ERROR: Could not read the test edges");
             return;
         }
 
@@ -130,11 +121,7 @@ public class AccuracyVSDegree
 
         // Read the training and test data
         FastPreferenceData<Long, Long> trainData;
-        trainData = GraphSimpleFastPreferenceData.load(graph);
-
-        FastPreferenceData<Long, Long> testData;
-        testData = GraphSimpleFastPreferenceData.load(testGraph);
-        GraphIndex<Long> index = new FastGraphIndex<>(graph);
+        trainData = new FastGraphPreferenceData<>(graph);
 
         // Read the XML containing the parameter grid for each algorithm
         AlgorithmGridReader gridreader = new AlgorithmGridReader(algorithmsPath);
@@ -159,28 +146,22 @@ public class AccuracyVSDegree
         RecommendationFormat<Long, Long> format = new TRECRecommendationFormat<>(lp, lp);
 
         @SuppressWarnings("unchecked")
-        Function<Long, IntPredicate> filter = FastFilters.and(FastFilters.notInTrain(trainData), FastFilters.notSelf(index), SocialFastFilters.notReciprocal(graph, index));
+        Function<Long, IntPredicate> filter = SocialFastFilters.notInNeighbourhood(graph, index, EdgeOrientation.UND);
 
-        RecommenderRunner<Long, Long> runner = new FastFilterRecommenderRunner<>(index, index, targetUsers.stream(), filter, maxLength);
+        RecommenderRunner<Long, Long> runner = new BlockedRecommenderRunner<>(index, targetUsers.stream(), filter, true, maxLength);
+
+        // Prepare the evaluator, shared by all the configurations.
+        MultiMetricEvaluator<Long> evaluator = directed ?
+                new MultiMetricEvaluator<>(trainData, testData, maxLength, Metric.NDCG, Metric.IN_DEGREE, Metric.OUT_DEGREE, Metric.DEGREE) :
+                new MultiMetricEvaluator<>(trainData, testData, maxLength, Metric.NDCG, Metric.DEGREE);
 
         // Execute the recommendations
         recMap.forEach((name, recomm) ->
         {
             long a = System.currentTimeMillis();
 
-            // First, obtain the accuracy metric.
-            NDCG.NDCGRelevanceModel<Long, Long> ndcgModel = new NDCG.NDCGRelevanceModel<>(false, testData, 0.5);
-            SystemMetric<Long, Long> nDCG = new AverageRecommendationMetric<>(new NDCG<>(maxLength, ndcgModel), numUsers);
-
-            // Then, the average degree metrics.
-            RelevanceModel<Long, Long> noRel = new NoRelevanceModel<>();
-            RankingDiscountModel noDisc = new NoDiscountModel();
-            UserLengthNovelty<Long> inNovelty = new UserLengthNovelty<>(trainData, EdgeOrientation.IN);
-            SystemMetric<Long, Long> inDegree = new AverageRecommendationMetric<>(new UserLength<>(maxLength, inNovelty, noRel, noDisc), numUsers);
-            UserLengthNovelty<Long> outNovelty = new UserLengthNovelty<>(trainData, EdgeOrientation.OUT);
-            SystemMetric<Long, Long> outDegree = new AverageRecommendationMetric<>(new UserLength<>(maxLength, outNovelty, noRel, noDisc), numUsers);
-            UserLengthNovelty<Long> undNovelty = new UserLengthNovelty<>(trainData, EdgeOrientation.UND);
-            SystemMetric<Long, Long> degree = new AverageRecommendationMetric<>(new UserLength<>(maxLength, undNovelty, noRel, noDisc), numUsers);
+            // Accumulate the accuracy and average degree metrics in a single pass.
+            MultiMetricEvaluator<Long>.Average metrics = evaluator.newAverage(numUsers);
 
             // Prepare the recommender
             Recommender<Long, Long> rec = recomm.get();
@@ -194,57 +175,37 @@ public class AccuracyVSDegree
                 file.mkdir();
             }
 
-            // Write the recommendations
-            RecommendationFormat.Writer<Long, Long> writer;
-            RecommendationFormat.Reader<Long, Long> reader;
+            // Write the recommendations, evaluating them as they are generated.
             try
             {
                 if (printRecs)
                 {
-                    // Execute the recommendations
-                    writer = format.getWriter(directory + name + ".txt");
+                    try (RecommendationFormat.Writer<Long, Long> writer = format.getWriter(directory + name + ".txt"))
+                    {
+                        runner.run(rec, r ->
+                        {
+                            writer.accept(r);
+                            metrics.add(r);
+                        });
+                    }
                 }
                 else
                 {
-                    writer = new EmptyWriter<>();
+                    runner.run(rec, metrics);
                 }
-
-                runner.run(rec, writer);
                 long b = System.currentTimeMillis();
                 System.out.println("Done " + name + " (" + (b - a) + " ms.)");
+                AuxiliarMethods.releaseContributionCache(name, rec);
 
-                writer.close();
-
-                // Evaluate the recommendations
-                if (printRecs)
-                {
-                    reader = format.getReader(directory + name + ".txt");
-                }
-                else
-                {
-                    reader = (EmptyWriter<Long, Long>) writer;
-                }
-
-                reader.readAll().forEach(r ->
-                {
-                    nDCG.add(r);
-                    if (directed)
-                    {
-                        inDegree.add(r);
-                        outDegree.add(r);
-                    }
-                    degree.add(r);
-
-                });
-                nDCGvalues.put(name, nDCG.evaluate());
+                nDCGvalues.put(name, metrics.evaluate(Metric.NDCG));
                 if (directed)
                 {
-                    inDegreeValues.put(name, inDegree.evaluate());
-                    outDegreeValues.put(name, outDegree.evaluate());
+                    inDegreeValues.put(name, metrics.evaluate(Metric.IN_DEGREE));
+                    outDegreeValues.put(name, metrics.evaluate(Metric.OUT_DEGREE));
                 }
-                undDegreeValues.put(name, degree.evaluate());
+                undDegreeValues.put(name, metrics.evaluate(Metric.DEGREE));
             }
-            catch (IOException ioe)
+            catch (IOException | UncheckedIOException ioe)
             {
                 System.err.println("Algorithm " + name + " failed");
             }
@@ -9,7 +9,17 @@
  */
 package es.uam.eps.ir.contactrecaxioms.main;
 
-import es.uam.eps.ir.ranksys.metrics.SystemMetric;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.contactrecaxioms.graph.io.BinaryGraphWriter;
+import es.uam.eps.ir.contactrecaxioms.graph.io.EgoNetworkReader;
+import es.uam.eps.ir.contactrecaxioms.graph.io.TextGraphReader;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator;
+import es.uam.eps.ir.contactrecaxioms.metrics.PairedSignificanceTest;
+import es.uam.eps.ir.contactrecaxioms.metrics.UserMetricStore;
+import es.uam.eps.ir.contactrecaxioms.recommender.ContributionCache;
+import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.ranksys.core.Recommendation;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
 import es.uam.eps.ir.ranksys.rec.Recommender;
 import es.uam.eps.ir.ranksys.rec.runner.RecommenderRunner;
 import org.jooq.lambda.tuple.Tuple2;
@@ -17,13 +27,22 @@ import org.ranksys.formats.parsing.Parsers;
 import org.ranksys.formats.rec.RecommendationFormat;
 import org.ranksys.formats.rec.SimpleRecommendationFormat;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Class containing auxiliar methods for the Main functions.
@@ -47,31 +66,31 @@ public class AuxiliarMethods
      *
      * @throws IOException if something fails during the writing / reading of the recommendation file.
      */
-    public static double computeAndEvaluate(String output, Recommender<Long, Long> recommender, RecommenderRunner<Long, Long> runner, SystemMetric<Long, Long> metric) throws IOException
+    public static double computeAndEvaluate(String output, Recommender<Long, Long> recommender, RecommenderRunner<Long, Long> runner, MultiMetricEvaluator<Long>.Average metric) throws IOException
     {
         RecommendationFormat<Long, Long> format = new SimpleRecommendationFormat<>(Parsers.lp, Parsers.lp);
-        RecommendationFormat.Writer<Long, Long> writer;
-        RecommendationFormat.Reader<Long, Long> reader;
 
         metric.reset();
 
-        writer = format.getWriter(output);
-        runner.run(recommender, writer);
-        writer.close();
-
-        reader = format.getReader(output);
-        reader.readAll().forEach(rec ->
+        // The recommendations are evaluated as they are written, instead of reading the file back.
+        try (RecommendationFormat.Writer<Long, Long> writer = format.getWriter(output))
         {
-            if (rec != null && rec.getItems() != null && !rec.getItems().isEmpty())
+            runner.run(recommender, rec ->
             {
-                metric.add(rec);
-            }
-        });
+                writer.accept(rec);
+                AuxiliarMethods.evaluate(rec, metric);
+            });
+        }
+        catch (UncheckedIOException uioe)
+        {
+            throw uioe.getCause();
+        }
         return metric.evaluate();
     }
 
     /**
      * Computes a recommendation and evaluates it using nDCG metric. It does not write the recommendation.
+     * The recommendations are evaluated as they are generated, so they are not stored.
      *
      * @param recommender The recommender to apply.
      * @param runner      The recommender runner.
@@ -79,21 +98,292 @@ public class AuxiliarMethods
      *
      * @return the value of the metric.
      */
-    public static double computeAndEvaluate(Recommender<Long, Long> recommender, RecommenderRunner<Long, Long> runner, SystemMetric<Long, Long> metric)
+    public static double computeAndEvaluate(Recommender<Long, Long> recommender, RecommenderRunner<Long, Long> runner, MultiMetricEvaluator<Long>.Average metric)
     {
-        EmptyWriter<Long, Long> writer = new EmptyWriter<>();
-        runner.run(recommender, writer);
-
         metric.reset();
-        writer.readAll().forEach(rec ->
+        runner.run(recommender, rec -> AuxiliarMethods.evaluate(rec, metric));
+        return metric.evaluate();
+    }
+
+    /**
+     * Computes a recommendation and evaluates it using nDCG metric, unless its value is already in a cache.
+     * In that case, the recommender is not even built, and the metric is left empty or, if it keeps the values
+     * of the users, filled with the values stored in the cache (if the cache does not contain them, the
+     * recommendation is computed). Otherwise, the new value (and the values of the users, if the metric keeps
+     * them) is added to the cache.
+     *
+     * @param cache       The cache of results.
+     * @param name        The name of the algorithm variant.
+     * @param trainData   The training data used by the recommender.
+     * @param recommender Supplier for the recommender to apply.
+     * @param runner      The recommender runner.
+     * @param metric      The metric.
+     * @param output      Route of the file in which to store the recommendation (null if it is not stored). If the
+     *                    file does not exist, the recommendation is computed even if its value is in the cache.
+     *
+     * @return the value of the metric.
+     *
+     * @throws IOException if something fails during the writing of the recommendation file or the cache.
+     */
+    public static double computeAndEvaluate(ResultCache cache, String name, FastPreferenceData<Long, Long> trainData, Supplier<Recommender<Long, Long>> recommender, RecommenderRunner<Long, Long> runner, MultiMetricEvaluator<Long>.Average metric, String output) throws IOException
+    {
+        if (output == null || new File(output).exists())
         {
-            if (rec != null && rec.getItems() != null && !rec.getItems().isEmpty())
+            OptionalDouble cached = cache.get(trainData, name);
+            if (cached.isPresent() && !metric.storesUsers())
             {
-                metric.add(rec);
+                metric.reset();
+                return cached.getAsDouble();
             }
-        });
+            else if (cached.isPresent())
+            {
+                double[] userValues = cache.getUserValues(trainData, name);
+                if (userValues != null)
+                {
+                    metric.load(userValues);
+                    return cached.getAsDouble();
+                }
+            }
+        }
 
-        return metric.evaluate();
+        Recommender<Long, Long> rec = recommender.get();
+        double value = output == null ? computeAndEvaluate(rec, runner, metric) : computeAndEvaluate(output, rec, runner, metric);
+        AuxiliarMethods.releaseContributionCache(name, rec);
+        cache.put(trainData, name, value, metric.storesUsers() ? metric.getUserValues() : null);
+        return value;
+    }
+
+    /**
+     * Reads the weighted training graph. If the file is a binary snapshot of the graph (see {@link BinaryGraphWriter}),
+     * only the ego networks of the target users (the origins of the test links, or both endpoints in undirected
+     * networks) are read (see {@link EgoNetworkReader}). The recommendations for the target users are the same,
+     * but reading the graph is much faster, and the graph takes much less memory.
+     *
+     * @param trainDataPath route to the training graph (a text file or a binary snapshot).
+     * @param testDataPath  route to the test links (only read for binary snapshots).
+     * @param directed      true if the network is directed, false otherwise.
+     *
+     * @return the graph, or null if it could not be read.
+     */
+    public static FastGraph<Long> readTrainingGraph(String trainDataPath, String testDataPath, boolean directed)
+    {
+        if (!EgoNetworkReader.isSnapshot(trainDataPath))
+        {
+            TextGraphReader<Long> weightedReader = new TextGraphReader<>(directed, true, false, "\t", Parsers.lp);
+            return (FastGraph<Long>) weightedReader.read(trainDataPath, true, false);
+        }
+
+        Set<Long> targets = new HashSet<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(testDataPath))))
+        {
+            br.lines().forEach(line ->
+            {
+                String[] splits = line.split("\t");
+                targets.add(Parsers.lp.parse(splits[0]));
+                if (!directed)
+                {
+                    targets.add(Parsers.lp.parse(splits[1]));
+                }
+            });
+        }
+        catch (IOException ioe)
+        {
+            ioe.printStackTrace();
+            return null;
+        }
+
+        FastGraph<Long> graph = new EgoNetworkReader<>(Parsers.lp).read(trainDataPath, targets);
+        if (graph != null && graph.isDirected() != directed)
+        {
+            System.err.println("ERROR: The graph snapshot is " + (graph.isDirected() ? "directed" : "undirected"));
+            return null;
+        }
+        else if (graph != null)
+        {
+            System.out.println("Ego networks of " + targets.size() + " target users read (" + graph.getEdgeCount() + " edges)");
+        }
+        return graph;
+    }
+
+    /**
+     * Opens the cache of results of the experiments.
+     *
+     * @param file      the file of the cache (if null, results are only cached in memory).
+     * @param testData  the test data.
+     * @param maxLength maximum number of recommendations per user.
+     *
+     * @return the cache. If the file cannot be opened, results are only cached in memory.
+     */
+    public static ResultCache openCache(String file, FastPreferenceData<Long, Long> testData, int maxLength)
+    {
+        try
+        {
+            ResultCache cache = ResultCache.open(file, testData, maxLength);
+            if (file != null)
+            {
+                System.out.println("Result cache " + file + ": " + cache.size() + " values read");
+            }
+            return cache;
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("ERROR: Could not open the result cache " + file);
+            try
+            {
+                return ResultCache.open(null, testData, maxLength);
+            }
+            catch (IOException ioe2)
+            {
+                throw new UncheckedIOException(ioe2);
+            }
+        }
+    }
+
+    /**
+     * Closes the cache of results of the experiments.
+     *
+     * @param cache the cache.
+     */
+    public static void closeCache(ResultCache cache)
+    {
+        try
+        {
+            cache.close();
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("ERROR: Something failed while closing the result cache");
+        }
+    }
+
+    /**
+     * Tests the significance of the difference between two variants, if the values of their users are available
+     * (they are not when no recommendation was evaluated).
+     *
+     * @param significance the map in which to store the result of the test.
+     * @param name         the name of the pair of variants.
+     * @param test         the significance test.
+     * @param first        the metric for the first variant.
+     * @param second       the metric for the second variant.
+     */
+    public static void test(Map<String, PairedSignificanceTest.Result> significance, String name, PairedSignificanceTest test, MultiMetricEvaluator<Long>.Average first, MultiMetricEvaluator<Long>.Average second)
+    {
+        if (first.getCount() > 0 && second.getCount() > 0)
+        {
+            significance.put(name, test.test(first.getUserValues(), second.getUserValues()));
+        }
+    }
+
+    /**
+     * Adds a recommendation to a metric. It might be called concurrently. Empty recommendations are added too:
+     * they do not change the averages, but the values of their users are stored as zero (as they are counted
+     * in the averages) instead of being missing.
+     *
+     * @param rec    the recommendation.
+     * @param metric the metric.
+     */
+    private static void evaluate(Recommendation<Long, Long> rec, MultiMetricEvaluator<Long>.Average metric)
+    {
+        if (rec != null && rec.getItems() != null)
+        {
+            metric.add(rec);
+        }
+    }
+
+    /**
+     * Opens a file for storing the value of a metric for each user and configuration.
+     *
+     * @param file     the file.
+     * @param numUsers the number of users in the index.
+     *
+     * @return the writer for the file, or null if it could not be created.
+     */
+    public static UserMetricStore.Writer openStore(String file, int numUsers)
+    {
+        try
+        {
+            return new UserMetricStore.Writer(file, numUsers);
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("ERROR: Could not create the file " + file);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the values of a metric for each user, as the column of a configuration.
+     *
+     * @param store  the store (if null, nothing is stored).
+     * @param name   the name of the configuration.
+     * @param metric the metric, which must keep the values of the users (if it is empty, nothing is stored).
+     *
+     * @throws IOException if something fails while writing the values.
+     */
+    public static void store(UserMetricStore.Writer store, String name, MultiMetricEvaluator<Long>.Average metric) throws IOException
+    {
+        if (store != null && metric.getCount() > 0)
+        {
+            store.write(name, metric.getUserValues());
+        }
+    }
+
+    /**
+     * Closes a store of values of a metric for each user.
+     *
+     * @param store the store (if null, nothing is done).
+     */
+    public static void closeStore(UserMetricStore.Writer store)
+    {
+        if (store != null)
+        {
+            try
+            {
+                store.close();
+            }
+            catch (IOException ioe)
+            {
+                System.err.println("ERROR: Something failed while closing the per-user values file");
+            }
+        }
+    }
+
+    /**
+     * Obtains the memory used by the edge impacts precomputed by a recommender.
+     *
+     * @param recommender the recommender.
+     *
+     * @return the memory used by the impacts (in bytes), or 0 if the recommender does not precompute them.
+     */
+    public static long getImpactMemory(Recommender<Long, Long> recommender)
+    {
+        if (recommender instanceof UserFastRankingRecommender)
+        {
+            return ((UserFastRankingRecommender<Long>) recommender).getImpactMemory();
+        }
+        return 0L;
+    }
+
+    /**
+     * Reports the statistics of the contribution cache of a recommender (if it uses one) once its run has
+     * finished, and empties the cache.
+     *
+     * @param name        the name of the variant.
+     * @param recommender the recommender.
+     */
+    public static void releaseContributionCache(String name, Recommender<Long, Long> recommender)
+    {
+        if (!(recommender instanceof UserFastRankingRecommender))
+        {
+            return;
+        }
+
+        ContributionCache cache = ((UserFastRankingRecommender<Long>) recommender).getContributionCache();
+        if (cache != null && cache.getHits() + cache.getMisses() > 0)
+        {
+            System.out.println("Algorithm " + name + ": contribution cache " + cache.getHits() + " hits, " + cache.getMisses() + " misses, " + cache.getEvictions() + " evictions (" + String.format("%.2f", cache.getMemoryUsage() / (1024.0 * 1024.0)) + " MB).");
+            cache.clear();
+        }
     }
 
     /**
@@ -107,6 +397,25 @@ public class AuxiliarMethods
      * @param maxLength maximum length of the recommendation.
      */
     public static void printFile(String output, Map<String, Double> first, Map<String, Double> second, String firstId, String secondId, int maxLength)
+    {
+        AuxiliarMethods.printFile(output, first, second, null, firstId, secondId, maxLength);
+    }
+
+    /**
+     * Given two maps with the same keys, generates a new file that prints the nDCG values for both, along with
+     * the results of a paired significance test over the nDCG of each user (including the number of users it
+     * compares, as the users which were not evaluated in any of the variants are left out of the test).
+     *
+     * @param output       The output file.
+     * @param first        the first map.
+     * @param second       the second map.
+     * @param significance the result of the significance test for each key (keys without it are printed with NaN
+     *                     values). If null, the significance columns are not printed.
+     * @param firstId      identifier for the first map.
+     * @param secondId     identifier for the second map.
+     * @param maxLength    maximum length of the recommendation.
+     */
+    public static void printFile(String output, Map<String, Double> first, Map<String, Double> second, Map<String, PairedSignificanceTest.Result> significance, String firstId, String secondId, int maxLength)
     {
         List<Tuple2<String, Double>> list = new ArrayList<>();
         int numVariants = 0;
@@ -128,11 +437,29 @@ public class AuxiliarMethods
         try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output))))
         {
             bw.write("Variant\t%\tnDCG@" + maxLength + "(" + firstId + ")\tnDCG@" + maxLength + "(" + secondId + ")\tDifference");
+            if (significance != null)
+            {
+                bw.write("\tUsers\tp-value\tCI lower\tCI upper");
+            }
             int i = 0;
             for (Tuple2<String, Double> tuple : list)
             {
                 ++i;
                 bw.write("\n" + tuple.v1 + "\t" + i / (numVariants + 0.0) + "\t" + first.get(tuple.v1) + "\t" + second.get(tuple.v1) + "\t" + tuple.v2);
+                if (significance == null)
+                {
+                    continue;
+                }
+
+                PairedSignificanceTest.Result result = significance.get(tuple.v1);
+                if (result != null)
+                {
+                    bw.write("\t" + result.getNumUsers() + "\t" + result.getPValue() + "\t" + result.getLowerBound() + "\t" + result.getUpperBound());
+                }
+                else
+                {
+                    bw.write("\t" + 0 + "\t" + Double.NaN + "\t" + Double.NaN + "\t" + Double.NaN);
+                }
             }
         }
         catch (IOException ioe)
@@ -9,30 +9,27 @@
  */
 package es.uam.eps.ir.contactrecaxioms.main;
 
-import es.uam.eps.ir.contactrecaxioms.data.GraphSimpleFastPreferenceData;
+import es.uam.eps.ir.contactrecaxioms.data.FastGraphPreferenceData;
 import es.uam.eps.ir.contactrecaxioms.graph.Adapters;
-import es.uam.eps.ir.contactrecaxioms.graph.Graph;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
-import es.uam.eps.ir.contactrecaxioms.graph.io.TextGraphReader;
 import es.uam.eps.ir.contactrecaxioms.data.FastGraphIndex;
 import es.uam.eps.ir.contactrecaxioms.data.GraphIndex;
+import es.uam.eps.ir.contactrecaxioms.data.TestFastPreferenceData;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator.Metric;
+import es.uam.eps.ir.contactrecaxioms.metrics.PairedSignificanceTest;
+import es.uam.eps.ir.contactrecaxioms.recommender.BlockedRecommenderRunner;
 import es.uam.eps.ir.contactrecaxioms.recommender.SocialFastFilters;
 import es.uam.eps.ir.contactrecaxioms.main.grid.*;
 import es.uam.eps.ir.contactrecaxioms.utils.Tuple2oo;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
-import es.uam.eps.ir.ranksys.metrics.SystemMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.AverageRecommendationMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.NDCG;
-import es.uam.eps.ir.ranksys.rec.Recommender;
 import es.uam.eps.ir.ranksys.rec.runner.RecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilterRecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilters;
 import org.ranksys.formats.parsing.Parsers;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -55,13 +52,16 @@ public class CLNCS
      *
      * @param args Execution arguments:
      *             <ol>
-     *               <li><b>Train:</b> Route to the file containing the training graph.</li>
+     *               <li><b>Train:</b> Route to the file containing the training graph, or to a binary snapshot of it (see {@link GraphSnapshot}),
+     *               in which case only the ego networks of the test users are read.</li>
      *               <li><b>Test:</b> Route to the file containing the test links.</li>
      *               <li><b>Algorithms:</b> Route to an XML file containing the recommender configurations</li>
      *               <li><b>Output directory:</b> Directory in which to store the recommendations and the output file.</li>
      *               <li><b>Directed:</b> True if the network is directed, false otherwise.</li>
      *               <li><b>Weighted:</b> True if the network is weighted, false otherwise.</li>
      *               <li><b>Max. Length:</b> Maximum number of recommendations per user.</li>
+     *               <li><b>Result cache:</b> (Optional) Route to a file in which the value of each variant is stored as soon as it is computed.
+     *               If a previous run (of this or another program) stored the value of a variant for the same data, it is not executed again.</li>
      *             </ol>
      */
     public static void main(String[] args)
@@ -70,12 +70,13 @@ public class CLNCS
         {
             System.err.println("Invalid arguments.");
             System.err.println("Usage:");
-            System.err.println("\tTrain: Training data.");
+            System.err.println("\tTrain: Training data, or a binary snapshot of it (only the ego networks of the test users are read).");
             System.err.println("\tTest: Test data.");
             System.err.println("\tAlgorithms: XML file containing the configuration for the BM25 algorithm.");
             System.err.println("\tOutput directory: Directory for storing the recommendations and the output file.");
             System.err.println("\tDirected: true if the graph is directed, false if not.");
             System.err.println("\tMaxLength: maximum length of the recommendation ranking.");
+            System.err.println("\tResult cache: (Optional) Route to a file in which the value of each variant is stored as soon as it is computed. Variants already stored for the same data are not executed again.");
             return;
         }
 
@@ -87,33 +88,29 @@ public class CLNCS
         boolean directed = args[4].equalsIgnoreCase("true");
         boolean weighted = args[5].equalsIgnoreCase("true");
         int maxLength = Parsers.ip.parse(args[6]);
+        String cachePath = args.length > 8 ? args[8] : null;
         boolean printRecs = args[7].equalsIgnoreCase("true");
 
         long timea = System.currentTimeMillis();
         // Read the training graph.
         // Read the training graph.
-        TextGraphReader<Long> weightedReader = new TextGraphReader<>(directed, true, false,"\t", Parsers.lp);
-        FastGraph<Long> weightedGraph = (FastGraph<Long>) weightedReader.read(trainDataPath, true, false);
+        FastGraph<Long> weightedGraph = AuxiliarMethods.readTrainingGraph(trainDataPath, testDataPath, directed);
         if (weightedGraph == null)
         {
             System.err.println("ERROR: Could not read the training graph");
             return;
         }
+        weightedGraph.buildHybridAdjacency();
 
-        TextGraphReader<Long> unweightedReader = new TextGraphReader<>(directed, false, false, "\t", Parsers.lp);
-        FastGraph<Long> unweightedGraph = (FastGraph<Long>) unweightedReader.read(trainDataPath, false, false);
-        if (unweightedGraph == null)
-        {
-            System.err.println("ERROR: Could not read the training graph");
-            return;
-        }
+        // The unweighted training graph is a view over the weighted one, so the training file is only read once.
+        FastGraph<Long> unweightedGraph = Adapters.unweightedView(weightedGraph);
 
-        // Read the test graph.
-        Graph<Long> auxgraph = unweightedReader.read(testDataPath, false, false);
-        FastGraph<Long> testGraph = (FastGraph<Long>) Adapters.onlyTrainUsers(auxgraph, unweightedGraph);
-        if (testGraph == null)
+        // Read the test edges between training users.
+        GraphIndex<Long> index = new FastGraphIndex<>(unweightedGraph);
+        TestFastPreferenceData<Long> testData = TestFastPreferenceData.load(testDataPath, index, directed, "\t", Parsers.lp);
+        if (testData == null)
         {
-            System.err.println("ERROR: Could not remove users from the test graph");
+            System.err.println("ERROR: Could not read the test edges");
             return;
         }
 
@@ -121,13 +118,14 @@ public class CLNCS
         System.out.println("Data read (" + (timeb - timea) + " ms.)");
 
         // Read the training and test data
-        FastPreferenceData<Long, Long> unweightedTrainData = GraphSimpleFastPreferenceData.load(unweightedGraph);
-        FastPreferenceData<Long, Long> weightedTrainData = GraphSimpleFastPreferenceData.load(weightedGraph);
+        FastPreferenceData<Long, Long> unweightedTrainData = new FastGraphPreferenceData<>(unweightedGraph);
+        FastPreferenceData<Long, Long> weightedTrainData = new FastGraphPreferenceData<>(weightedGraph);
 
-        FastPreferenceData<Long, Long> testData;
-        testData = GraphSimpleFastPreferenceData.load(testGraph);
-        GraphIndex<Long> index = new FastGraphIndex<>(unweightedGraph);
         int numUsers = testData.numUsersWithPreferences();
+        // Evaluator for nDCG, shared by all the configurations.
+        MultiMetricEvaluator<Long> evaluator = new MultiMetricEvaluator<>(unweightedTrainData, testData, maxLength, Metric.NDCG);
+        PairedSignificanceTest test = new PairedSignificanceTest();
+        ResultCache cache = AuxiliarMethods.openCache(cachePath, testData, maxLength);
 
         // Read the XML containing the parameter grid for each algorithm
         AlgorithmGridReader gridreader = new AlgorithmGridReader(algorithmsPath);
@@ -153,64 +151,48 @@ public class CLNCS
 
             Map<String, Double> lenNormValues = new HashMap<>();
             Map<String, Double> noLenNormValues = new HashMap<>();
+            Map<String, PairedSignificanceTest.Result> significance = new HashMap<>();
 
             if (noLenNormIdentifier != null) // If it exists
             {
                 System.out.println("-------- Starting algorithm " + lenNormIdentifier + " --------");
                 Grid grid = gridreader.getGrid(lenNormIdentifier);
-                Configurations confs = grid.getConfigurations();
                 AlgorithmGridSelector<Long> algorithmSelector = new AlgorithmGridSelector<>();
 
                 AtomicInteger counter = new AtomicInteger(0);
-                List<Parameters> configurations = confs.getConfigurations();
-                int totalCount = configurations.size();
+                long totalCount = grid.numConfigurations();
 
-                configurations.forEach(parameters ->
+                grid.getConfigurationStream().forEach(parameters ->
                 {
                     Tuple2oo<String, RecommendationAlgorithmFunction<Long>> lenNormSupp = algorithmSelector.getRecommender(lenNormIdentifier, parameters);
                     Tuple2oo<String, RecommendationAlgorithmFunction<Long>> noLenNormSupp = algorithmSelector.getRecommender(noLenNormIdentifier, parameters);
                     String lenNormName = lenNormSupp.v1();
                     String noLenNormName = noLenNormSupp.v1();
 
-                    // First, obtain the metric.
-                    NDCG.NDCGRelevanceModel<Long, Long> ndcgModel = new NDCG.NDCGRelevanceModel<>(false, testData, 0.5);
-                    SystemMetric<Long, Long> nDCG = new AverageRecommendationMetric<>(new NDCG<>(maxLength, ndcgModel), numUsers);
+                    // First, obtain the metrics (one per variant, keeping the nDCG of each user for the significance tests).
+                    MultiMetricEvaluator<Long>.Average weightedLenNormNDCG = evaluator.newAverage(numUsers, true);
+                    MultiMetricEvaluator<Long>.Average weightedNoLenNormNDCG = evaluator.newAverage(numUsers, true);
+                    MultiMetricEvaluator<Long>.Average unweightedLenNormNDCG = evaluator.newAverage(numUsers, true);
+                    MultiMetricEvaluator<Long>.Average unweightedNoLenNormNDCG = evaluator.newAverage(numUsers, true);
 
-                    @SuppressWarnings("unchecked") Function<Long, IntPredicate> filter = FastFilters.and(FastFilters.notInTrain(unweightedTrainData), FastFilters.notSelf(index), SocialFastFilters.notReciprocal(unweightedGraph, index));
-                    RecommenderRunner<Long, Long> runner = new FastFilterRecommenderRunner<>(index, index, testData.getUsersWithPreferences(), filter, maxLength);
+                    Function<Long, IntPredicate> filter = SocialFastFilters.notInNeighbourhood(unweightedGraph, index, EdgeOrientation.UND);
+                    RecommenderRunner<Long, Long> runner = new BlockedRecommenderRunner<>(index, testData.getUsersWithPreferences(), filter, true, maxLength);
 
                     try
                     {
-                        Recommender<Long, Long> unweightedLenNorm = lenNormSupp.v2().apply(unweightedGraph, unweightedTrainData);
-                        Recommender<Long, Long> unweightedNoLenNorm = noLenNormSupp.v2().apply(unweightedGraph, unweightedTrainData);
-                        Recommender<Long, Long> weightedLenNorm = lenNormSupp.v2().apply(weightedGraph, weightedTrainData);
-                        Recommender<Long, Long> weightedNoLenNorm = noLenNormSupp.v2().apply(weightedGraph, weightedTrainData);
-
                         double unweightedLenNormValue;
                         double unweightedNoLenNormValue;
                         double weightedLenNormValue = 0;
                         double weightedNoLenNormValue = 0;
 
-                        if(printRecs)
-                        {
-                            if(weighted)
-                            {
-                                weightedLenNormValue = AuxiliarMethods.computeAndEvaluate(lenNormDirectory + "wei_" + lenNormName + ".txt", weightedLenNorm, runner, nDCG);
-                                weightedNoLenNormValue = AuxiliarMethods.computeAndEvaluate(noLenNormDirectory + "wei_" + noLenNormName + ".txt", weightedNoLenNorm, runner, nDCG);
-                            }
-                            unweightedLenNormValue = AuxiliarMethods.computeAndEvaluate(lenNormDirectory + (weighted ? "unw_" : "") + lenNormName + ".txt", unweightedLenNorm, runner, nDCG);
-                            unweightedNoLenNormValue = AuxiliarMethods.computeAndEvaluate(noLenNormDirectory + noLenNormName + ".txt", unweightedNoLenNorm, runner, nDCG);
-                        }
-                        else
+                        // Variants already in the result cache are not executed again.
+                        if(weighted)
                         {
-                            if(weighted)
-                            {
-                                weightedLenNormValue = AuxiliarMethods.computeAndEvaluate(weightedLenNorm, runner, nDCG);
-                                weightedNoLenNormValue = AuxiliarMethods.computeAndEvaluate(weightedNoLenNorm, runner, nDCG);
-                            }
-                            unweightedLenNormValue = AuxiliarMethods.computeAndEvaluate(unweightedLenNorm, runner, nDCG);
-                            unweightedNoLenNormValue = AuxiliarMethods.computeAndEvaluate(unweightedNoLenNorm, runner, nDCG);
+                            weightedLenNormValue = AuxiliarMethods.computeAndEvaluate(cache, lenNormName, weightedTrainData, () -> lenNormSupp.v2().apply(weightedGraph, weightedTrainData), runner, weightedLenNormNDCG, printRecs ? lenNormDirectory + "wei_" + lenNormName + ".txt" : null);
+                            weightedNoLenNormValue = AuxiliarMethods.computeAndEvaluate(cache, noLenNormName, weightedTrainData, () -> noLenNormSupp.v2().apply(weightedGraph, weightedTrainData), runner, weightedNoLenNormNDCG, printRecs ? noLenNormDirectory + "wei_" + noLenNormName + ".txt" : null);
                         }
+                        unweightedLenNormValue = AuxiliarMethods.computeAndEvaluate(cache, lenNormName, unweightedTrainData, () -> lenNormSupp.v2().apply(unweightedGraph, unweightedTrainData), runner, unweightedLenNormNDCG, printRecs ? lenNormDirectory + (weighted ? "unw_" : "") + lenNormName + ".txt" : null);
+                        unweightedNoLenNormValue = AuxiliarMethods.computeAndEvaluate(cache, noLenNormName, unweightedTrainData, () -> noLenNormSupp.v2().apply(unweightedGraph, unweightedTrainData), runner, unweightedNoLenNormNDCG, printRecs ? noLenNormDirectory + noLenNormName + ".txt" : null);
 
                         if(weighted)
                         {
@@ -225,6 +207,17 @@ public class CLNCS
                             noLenNormValues.put(lenNormName, unweightedNoLenNormValue);
                         }
 
+                        // Test the significance of the differences.
+                        if(weighted)
+                        {
+                            AuxiliarMethods.test(significance, "wei_" + lenNormName, test, weightedLenNormNDCG, weightedNoLenNormNDCG);
+                            AuxiliarMethods.test(significance, "unw_" + lenNormName, test, unweightedLenNormNDCG, unweightedNoLenNormNDCG);
+                        }
+                        else
+                        {
+                            AuxiliarMethods.test(significance, lenNormName, test, unweightedLenNormNDCG, unweightedNoLenNormNDCG);
+                        }
+
                         long timebb = System.currentTimeMillis();
                         System.out.println("Algorithm " + counter.incrementAndGet() + "/" + totalCount + ": " + lenNormName + " finished (" + (timebb-timeaa) + " ms.)");
                     }
@@ -235,7 +228,7 @@ public class CLNCS
                 });
 
                 // Print the file for this algorithm.
-                AuxiliarMethods.printFile(outputPath + "clncs_" + lenNormIdentifier + ".txt", lenNormValues, noLenNormValues, "Len. Norm.", "No Len. Norm.", maxLength);
+                AuxiliarMethods.printFile(outputPath + "clncs_" + lenNormIdentifier + ".txt", lenNormValues, noLenNormValues, significance, "Len. Norm.", "No Len. Norm.", maxLength);
             }
             else
             {
@@ -246,7 +239,7 @@ public class CLNCS
             System.out.println("-------- Finished algorithm " + lenNormIdentifier + " (" + (timecc-timeaa) + " ms.) --------");
         });
 
-
+        AuxiliarMethods.closeCache(cache);
     }
 
     /**
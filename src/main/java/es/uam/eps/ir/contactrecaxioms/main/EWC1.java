@@ -9,27 +9,24 @@
  */
 package es.uam.eps.ir.contactrecaxioms.main;
 
-import es.uam.eps.ir.contactrecaxioms.data.GraphSimpleFastPreferenceData;
+import es.uam.eps.ir.contactrecaxioms.data.FastGraphPreferenceData;
 import es.uam.eps.ir.contactrecaxioms.graph.Adapters;
-import es.uam.eps.ir.contactrecaxioms.graph.Graph;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.graph.io.TextGraphReader;
 import es.uam.eps.ir.contactrecaxioms.data.FastGraphIndex;
 import es.uam.eps.ir.contactrecaxioms.data.GraphIndex;
+import es.uam.eps.ir.contactrecaxioms.data.TestFastPreferenceData;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator.Metric;
+import es.uam.eps.ir.contactrecaxioms.metrics.PairedSignificanceTest;
+import es.uam.eps.ir.contactrecaxioms.recommender.BlockedRecommenderRunner;
 import es.uam.eps.ir.contactrecaxioms.recommender.SocialFastFilters;
 import es.uam.eps.ir.contactrecaxioms.main.grid.AlgorithmGridReader;
 import es.uam.eps.ir.contactrecaxioms.main.grid.AlgorithmGridSelector;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
-import es.uam.eps.ir.ranksys.metrics.SystemMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.AverageRecommendationMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.NDCG;
-import es.uam.eps.ir.ranksys.rec.Recommender;
 import es.uam.eps.ir.ranksys.rec.runner.RecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilterRecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilters;
 import org.ranksys.formats.parsing.Parsers;
-import org.ranksys.formats.rec.RecommendationFormat;
-import org.ranksys.formats.rec.TRECRecommendationFormat;
 
 import java.io.File;
 import java.io.IOException;
@@ -38,10 +35,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.IntPredicate;
-import java.util.function.Supplier;
 import java.util.stream.Collectors;
-
-import static org.ranksys.formats.parsing.Parsers.lp;
+import java.util.stream.Stream;
 
 /**
  * Class for reproducing the experiments for the EWC1 axiom.
@@ -66,6 +61,8 @@ public class EWC1
      *               <li><b>Directed:</b> True if the network is directed, false otherwise.</li>
      *               <li><b>Rec. Length:</b> Maximum number of recommendations per user.</li>
      *               <li><b>Print recommendations:</b> True if, additionally to the results, you want to print the recommendations. False otherwise</li>
+     *               <li><b>Result cache:</b> (Optional) Route to a file in which the value of each variant is stored as soon as it is computed.
+     *               If a previous run (of this or another program) stored the value of a variant for the same data, it is not executed again.</li>
      *             </ol>
      */
     public static void main(String[] args)
@@ -81,6 +78,7 @@ public class EWC1
             System.err.println("\tDirected: True if the network is directed, false otherwise.");
             System.err.println("\tRec. Length: Maximum number of recommendations per user.");
             System.err.println("\tPrint recommendations: True if, additionally to the results, you want to print the recommendations. False otherwise");
+            System.err.println("\tResult cache: (Optional) Route to a file in which the value of each variant is stored as soon as it is computed. Variants already stored for the same data are not executed again.");
             return;
         }
 
@@ -92,15 +90,13 @@ public class EWC1
         boolean directed = args[4].equalsIgnoreCase("true");
         int maxLength = Parsers.ip.parse(args[5]);
         boolean printRecommenders = args[6].equalsIgnoreCase("true");
+        String cachePath = args.length > 7 ? args[7] : null;
 
         // Initialize the maps to store the accuracy values.
         Map<String, Double> weightedValues = new ConcurrentHashMap<>();
         Map<String, Double> unweightedValues = new ConcurrentHashMap<>();
-
-        // Store the different values of weighted / unweighted
-        List<Boolean> weightedVals = new ArrayList<>();
-        weightedVals.add(true);
-        weightedVals.add(false);
+        // And the results of the significance tests, run as soon as both variants of a configuration finish.
+        Map<String, PairedSignificanceTest.Result> significance = new ConcurrentHashMap<>();
 
         // First, we do create the directories.
         if (printRecommenders)
@@ -111,130 +107,112 @@ public class EWC1
             unweightedDirectory.mkdirs();
         }
 
-        // Read the test graph
-        TextGraphReader<Long> testGraphReader = new TextGraphReader<>(directed, false, false, "\t", Parsers.lp);
-        Graph<Long> auxTestGraph = testGraphReader.read(testDataPath, false, false);
+        long timea = System.currentTimeMillis();
 
-        if (auxTestGraph == null)
+        // Read the training graph.
+        TextGraphReader<Long> greader = new TextGraphReader<>(directed, true, false, "\t", Parsers.lp);
+        FastGraph<Long> weightedGraph = (FastGraph<Long>) greader.read(trainDataPath);
+        if (weightedGraph == null)
         {
-            System.err.println("ERROR: Could not read the test graph");
+            System.err.println("ERROR: Could not read the training graph");
             return;
         }
-        // Execute the loop for weighted and unweighted.
-        for (boolean weighted : weightedVals)
-        {
-            System.out.println("-------- Started " + (weighted ? "weighted" : "unweighted") + " variants --------");
-            long timea = System.currentTimeMillis();
+        weightedGraph.buildHybridAdjacency();
 
-            // Read the training graph.
-            TextGraphReader<Long> greader = new TextGraphReader<>(directed, weighted, false, "\t", Parsers.lp);
-            FastGraph<Long> graph = (FastGraph<Long>) greader.read(trainDataPath);
-            if (graph == null)
-            {
-                System.err.println("ERROR: Could not read the training graph");
-                return;
-            }
+        // The unweighted training graph is a view over the weighted one, so both variants of a configuration
+        // can be run together.
+        FastGraph<Long> unweightedGraph = Adapters.unweightedView(weightedGraph);
 
-            // Read the test graph.
+        // Read the test edges between training users.
+        GraphIndex<Long> index = new FastGraphIndex<>(unweightedGraph);
+        TestFastPreferenceData<Long> testData = TestFastPreferenceData.load(testDataPath, index, directed, "\t", Parsers.lp);
+        if (testData == null)
+        {
+            System.err.println("ERROR: Could not read the test edges");
+            return;
+        }
 
+        long timeb = System.currentTimeMillis();
+        System.out.println("Data read (" + (timeb - timea) + " ms.)");
+        timea = System.currentTimeMillis();
 
-            long timeb = System.currentTimeMillis();
-            System.out.println("Data read (" + (timeb - timea) + " ms.)");
-            timea = System.currentTimeMillis();
+        // Prepare the training and test data
+        FastPreferenceData<Long, Long> weightedTrainData = new FastGraphPreferenceData<>(weightedGraph);
+        FastPreferenceData<Long, Long> unweightedTrainData = new FastGraphPreferenceData<>(unweightedGraph);
 
-            // Prepare the training and test data
-            FastPreferenceData<Long, Long> trainData;
-            trainData = GraphSimpleFastPreferenceData.load(graph);
+        // Read the XML containing the parameter grid for each algorithm
+        AlgorithmGridReader gridreader = new AlgorithmGridReader(algorithmsPath);
+        gridreader.readDocument();
 
-            // Clean the test graph.
-            FastGraph<Long> testGraph = (FastGraph<Long>) Adapters.onlyTrainUsers(auxTestGraph, graph);
-            FastPreferenceData<Long, Long> testData;
-            testData = GraphSimpleFastPreferenceData.load(testGraph);
-            GraphIndex<Long> index = new FastGraphIndex<>(graph);
+        // Get the different algorithms to execute. Their variants are generated lazily from the grids.
+        AlgorithmGridSelector<Long> ags = new AlgorithmGridSelector<>();
+        List<String> algorithms = new ArrayList<>();
+        gridreader.getAlgorithms().forEach(algorithm ->
+        {
+            if (ags.selectGridSearch(algorithm) == null)
+            {
+                System.err.println("ERROR: Algorithm " + algorithm + " could not be read");
+            }
+            else
+            {
+                algorithms.add(algorithm);
+            }
+        });
+
+        timeb = System.currentTimeMillis();
+        System.out.println("Algorithms selected (" + (timeb - timea) + " ms.)");
+        // Select the set of users to be recommended, and the filters to apply to the recommendation
+        Set<Long> targetUsers = testData.getUsersWithPreferences().collect(Collectors.toCollection(HashSet::new));
+        System.out.println("Num. target users: " + targetUsers.size());
+
+        // Prepare the elements for the recommendation:
+        Function<Long, IntPredicate> filter = SocialFastFilters.notInNeighbourhood(unweightedGraph, index, EdgeOrientation.UND);
+        RecommenderRunner<Long, Long> runner = new BlockedRecommenderRunner<>(index, targetUsers.stream(), filter, true, maxLength);
+        int numUsers = testData.numUsersWithPreferences();
+        // Evaluator for nDCG, shared by all the configurations.
+        MultiMetricEvaluator<Long> evaluator = new MultiMetricEvaluator<>(unweightedTrainData, testData, maxLength, Metric.NDCG);
+        PairedSignificanceTest test = new PairedSignificanceTest();
+        ResultCache cache = AuxiliarMethods.openCache(cachePath, testData, maxLength);
+
+        AtomicInteger counter = new AtomicInteger(0);
+        long totalCount = algorithms.stream().mapToLong(algorithm -> gridreader.getGrid(algorithm).numConfigurations()).sum();
+        // Execute the recommendations
+        // (streams are concatenated rather than flat-mapped, so the configurations of each algorithm can be split between threads)
+        algorithms.stream()
+                .map(algorithm -> gridreader.getGrid(algorithm).getConfigurationStream().map(parameters -> ags.getRecommender(algorithm, parameters)))
+                .reduce(Stream::concat).orElseGet(Stream::empty).parallel().filter(Objects::nonNull).forEach(entry ->
+        {
+            long a = System.currentTimeMillis();
+            String name = entry.v1();
 
-            // Read the XML containing the parameter grid for each algorithm
-            AlgorithmGridReader gridreader = new AlgorithmGridReader(algorithmsPath);
-            gridreader.readDocument();
+            // First, create the nDCG metrics (keeping the nDCG of each user for the significance test)
+            MultiMetricEvaluator<Long>.Average weightedNDCG = evaluator.newAverage(numUsers, true);
+            MultiMetricEvaluator<Long>.Average unweightedNDCG = evaluator.newAverage(numUsers, true);
 
-            Map<String, Supplier<Recommender<Long, Long>>> recMap = new HashMap<>();
-            // Get the different recommenders to execute
-            gridreader.getAlgorithms().forEach(algorithm ->
+            // Obtain the nDCG values (the recommenders are only built if the values are not in the result cache)
+            try
             {
-                AlgorithmGridSelector<Long> ags = new AlgorithmGridSelector<>();
-                Map<String, Supplier<Recommender<Long, Long>>> suppliers = ags.getRecommenders(algorithm, gridreader.getGrid(algorithm), graph, trainData);
-                if (suppliers == null)
-                {
-                    System.err.println("ERROR: Algorithm " + algorithm + " could not be read");
-                }
-                else
-                {
-                    recMap.putAll(ags.getRecommenders(algorithm, gridreader.getGrid(algorithm), graph, trainData));
-                }
-            });
-
-            timeb = System.currentTimeMillis();
-            System.out.println("Algorithms selected (" + (timeb - timea) + " ms.)");
-            // Select the set of users to be recommended, the format, and the filters to apply to the recommendation
-            Set<Long> targetUsers = testData.getUsersWithPreferences().collect(Collectors.toCollection(HashSet::new));
-            System.out.println("Num. target users: " + targetUsers.size());
-
-            // Prepare the elements for the recommendation:
-            RecommendationFormat<Long, Long> format = new TRECRecommendationFormat<>(lp, lp);
-            @SuppressWarnings("unchecked") Function<Long, IntPredicate> filter = FastFilters.and(FastFilters.notInTrain(trainData), FastFilters.notSelf(index), SocialFastFilters.notReciprocal(graph, index));
-            RecommenderRunner<Long, Long> runner = new FastFilterRecommenderRunner<>(index, index, targetUsers.stream(), filter, maxLength);
-            int numUsers = testData.numUsersWithPreferences();
-
-            AtomicInteger counter = new AtomicInteger(0);
-            int totalCount = recMap.size();
-            // Execute the recommendations
-            recMap.entrySet().parallelStream().forEach(entry ->
+                double weightedValue = AuxiliarMethods.computeAndEvaluate(cache, name, weightedTrainData, () -> entry.v2().apply(weightedGraph, weightedTrainData), runner, weightedNDCG, printRecommenders ? outputPath + File.separator + "weighted" + File.separator + name + ".txt" : null);
+                double unweightedValue = AuxiliarMethods.computeAndEvaluate(cache, name, unweightedTrainData, () -> entry.v2().apply(unweightedGraph, unweightedTrainData), runner, unweightedNDCG, printRecommenders ? outputPath + File.separator + "unweighted" + File.separator + name + ".txt" : null);
+
+                weightedValues.put(name, weightedValue);
+                unweightedValues.put(name, unweightedValue);
+
+                // The values of the users are released with the metrics, once the pair has been tested.
+                AuxiliarMethods.test(significance, name, test, weightedNDCG, unweightedNDCG);
+            }
+            catch (IOException ioe)
             {
-                long a = System.currentTimeMillis();
-                String name = entry.getKey();
-
-                String path = outputPath + File.separator + (weighted ? "weighted" : "unweighted") + File.separator + name + ".txt";
-
-                // First, create the nDCG metric (for measuring accuracy)
-                NDCG.NDCGRelevanceModel<Long, Long> ndcgModel = new NDCG.NDCGRelevanceModel<>(false, testData, 0.5);
-                SystemMetric<Long, Long> nDCG = new AverageRecommendationMetric<>(new NDCG<>(maxLength, ndcgModel), numUsers);
-
-                // Prepare the recommender
-                Supplier<Recommender<Long, Long>> recomm = entry.getValue();
-                Recommender<Long, Long> rec = recomm.get();
-
-                // Obtain the nDCG value
-                double value;
-                try
-                {
-                    if (printRecommenders)
-                    {
-                        value = AuxiliarMethods.computeAndEvaluate(path, rec, runner, nDCG);
-                    }
-                    else
-                    {
-                        value = AuxiliarMethods.computeAndEvaluate(rec, runner, nDCG);
-                    }
-
-                    if (weighted)
-                    {
-                        weightedValues.put(name, value);
-                    }
-                    else
-                    {
-                        unweightedValues.put(name, value);
-                    }
-                }
-                catch (IOException ioe)
-                {
-                    System.err.println("Algorithm " + name + " failed");
-                }
-
-                long b = System.currentTimeMillis();
-                System.err.println("Algorithm " + counter.incrementAndGet() + "/" + totalCount + ": " + name + " finished (" + (b-a) + " ms.)");
-            });
-        }
+                System.err.println("Algorithm " + name + " failed");
+            }
+
+            long b = System.currentTimeMillis();
+            System.err.println("Algorithm " + counter.incrementAndGet() + "/" + totalCount + ": " + name + " finished (" + (b-a) + " ms.)");
+        });
+
+        AuxiliarMethods.closeCache(cache);
 
         // Print the file.
-        AuxiliarMethods.printFile(outputPath + "ewc1.txt", weightedValues, unweightedValues, "Weighted", "Unweighted", maxLength);
+        AuxiliarMethods.printFile(outputPath + "ewc1.txt", weightedValues, unweightedValues, significance, "Weighted", "Unweighted", maxLength);
     }
 }
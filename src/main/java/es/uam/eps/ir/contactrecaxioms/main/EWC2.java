@@ -9,30 +9,27 @@
  */
 package es.uam.eps.ir.contactrecaxioms.main;
 
-import es.uam.eps.ir.contactrecaxioms.data.GraphSimpleFastPreferenceData;
-import es.uam.eps.ir.contactrecaxioms.graph.Adapters;
-import es.uam.eps.ir.contactrecaxioms.graph.Graph;
+import es.uam.eps.ir.contactrecaxioms.data.FastGraphPreferenceData;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.graph.io.TextGraphReader;
 import es.uam.eps.ir.contactrecaxioms.data.FastGraphIndex;
 import es.uam.eps.ir.contactrecaxioms.data.GraphIndex;
+import es.uam.eps.ir.contactrecaxioms.data.TestFastPreferenceData;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator.Metric;
+import es.uam.eps.ir.contactrecaxioms.recommender.BlockedRecommenderRunner;
 import es.uam.eps.ir.contactrecaxioms.recommender.SocialFastFilters;
 import es.uam.eps.ir.contactrecaxioms.main.grid.*;
 import es.uam.eps.ir.contactrecaxioms.utils.Tuple2oo;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
-import es.uam.eps.ir.ranksys.metrics.SystemMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.AverageRecommendationMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.NDCG;
 import es.uam.eps.ir.ranksys.rec.Recommender;
 import es.uam.eps.ir.ranksys.rec.runner.RecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilterRecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilters;
 import org.ranksys.formats.parsing.Parsers;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
@@ -98,14 +95,13 @@ public class EWC2
             System.err.println("ERROR: Could not read the training graph");
             return;
         }
-        // Read the test graph.
-
-        TextGraphReader<Long> testGraphReader = new TextGraphReader<>(directed, false, false, "\t", Parsers.lp);
-        Graph<Long> auxgraph = testGraphReader.read(testDataPath, false, false);
-        FastGraph<Long> testGraph = (FastGraph<Long>) Adapters.onlyTrainUsers(auxgraph, graph);
-        if (testGraph == null)
+        graph.buildHybridAdjacency();
+        // Read the test edges between training users.
+        GraphIndex<Long> index = new FastGraphIndex<>(graph);
+        TestFastPreferenceData<Long> testData = TestFastPreferenceData.load(testDataPath, index, directed, "\t", Parsers.lp);
+        if (testData == null)
         {
-            System.err.println("ERROR: Could not remove users from the test graph");
+            System.err.println("ERROR: Could not read the test edges");
             return;
         }
 
@@ -114,13 +110,11 @@ public class EWC2
 
         // Read the training and test data
         FastPreferenceData<Long, Long> trainData;
-        trainData = GraphSimpleFastPreferenceData.load(graph);
-
-        FastPreferenceData<Long, Long> testData;
-        testData = GraphSimpleFastPreferenceData.load(testGraph);
-        GraphIndex<Long> index = new FastGraphIndex<>(graph);
+        trainData = new FastGraphPreferenceData<>(graph);
 
         int numUsers = testData.numUsersWithPreferences();
+        // Evaluator for nDCG, shared by all the configurations.
+        MultiMetricEvaluator<Long> evaluator = new MultiMetricEvaluator<>(trainData, testData, maxLength, Metric.NDCG);
         // Read the XML containing the parameter grid for each algorithm
         AlgorithmGridReader gridreader = new AlgorithmGridReader(algorithmsPath);
         gridreader.readDocument();
@@ -133,7 +127,6 @@ public class EWC2
         }
 
         // Obtain the configurations for BM25
-        Configurations confs = grid.getConfigurations();
         AlgorithmGridSelector<Long> algorithmSelector = new AlgorithmGridSelector<>();
 
         // Initialize the maps to store the accuracy values in.
@@ -148,12 +141,11 @@ public class EWC2
             file.mkdir();
         }
 
-        List<Parameters> configurations = confs.getConfigurations();
-        int totalCount = configurations.size();
+        long totalCount = grid.numConfigurations();
         AtomicInteger counter = new AtomicInteger(0);
 
         // For each configuration, execute the BM25/EBM25 pair, and store its values.
-        configurations.parallelStream().forEach(parameters ->
+        grid.getConfigurationStream().parallel().forEach(parameters ->
         {
             long timeaa = System.currentTimeMillis();
             // First, select the algorithms.
@@ -163,13 +155,12 @@ public class EWC2
             String ebm25name = ebm25Supp.v1();
 
             // Configure the nDCG metric.
-            NDCG.NDCGRelevanceModel<Long, Long> ndcgModel = new NDCG.NDCGRelevanceModel<>(false, testData, 0.5);
-            SystemMetric<Long, Long> nDCG = new AverageRecommendationMetric<>(new NDCG<>(maxLength, ndcgModel), numUsers);
+            MultiMetricEvaluator<Long>.Average nDCG = evaluator.newAverage(numUsers);
 
             // Configure the recommender runner.
             @SuppressWarnings("unchecked")
-            Function<Long, IntPredicate> filter = FastFilters.and(FastFilters.notInTrain(trainData), FastFilters.notSelf(index), SocialFastFilters.notReciprocal(graph, index));
-            RecommenderRunner<Long, Long> runner = new FastFilterRecommenderRunner<>(index, index, testData.getUsersWithPreferences(), filter, maxLength);
+            Function<Long, IntPredicate> filter = SocialFastFilters.notInNeighbourhood(graph, index, EdgeOrientation.UND);
+            RecommenderRunner<Long, Long> runner = new BlockedRecommenderRunner<>(index, testData.getUsersWithPreferences(), filter, true, maxLength);
 
             try
             {
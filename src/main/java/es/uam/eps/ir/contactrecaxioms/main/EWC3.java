@@ -9,23 +9,22 @@
  */
 package es.uam.eps.ir.contactrecaxioms.main;
 
-import es.uam.eps.ir.contactrecaxioms.graph.Graph;
+import es.uam.eps.ir.contactrecaxioms.data.FastGraphIndex;
+import es.uam.eps.ir.contactrecaxioms.data.TestFastPreferenceData;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.graph.io.GraphReader;
 import es.uam.eps.ir.contactrecaxioms.graph.io.TextGraphReader;
 import es.uam.eps.ir.contactrecaxioms.metrics.AUC;
-import es.uam.eps.ir.contactrecaxioms.utils.Tuple2oo;
+import es.uam.eps.ir.contactrecaxioms.metrics.UserMetricStore;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.CSRMatrix;
 import es.uam.eps.ir.ranksys.core.util.Stats;
-import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
-import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
-import org.jooq.lambda.tuple.Tuple3;
-import org.ranksys.core.util.tuples.Tuple2od;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import org.ranksys.formats.parsing.Parsers;
 
 import java.io.*;
 import java.util.*;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation.*;
 
@@ -74,8 +73,14 @@ public class EWC3
 
         // Read the graph
         GraphReader<Long> greader = new TextGraphReader<>(directed, false, false, "\t", Parsers.lp);
-        Graph<Long> train = greader.read(trainFile);
-        Graph<Long> test = greader.read(testFile);
+        FastGraph<Long> train = (FastGraph<Long>) greader.read(trainFile);
+        train.buildHybridAdjacency();
+        TestFastPreferenceData<Long> test = TestFastPreferenceData.load(testFile, new FastGraphIndex<>(train), directed, "\t", Parsers.lp);
+        if (test == null)
+        {
+            System.err.println("ERROR: Could not read the test edges");
+            return;
+        }
 
         // Obtain the possible EdgeOrientation values.
         EdgeOrientation[] eos;
@@ -89,99 +94,96 @@ public class EWC3
         }
 
         // Get users that appear in the training graph which create new outgoing edges in test:
-        Set<Long> users = train.getAllNodes().filter(test::hasAdjacentEdges).collect(Collectors.toSet());
-        int numUsers = users.size();
+        int[] users = test.getUidxWithPreferences().toArray();
 
         // If we choose to print the recommendations, create the folder to store them.
-        if(printRecs)
+        if (printRecs)
         {
             File file = new File(output + "mcncurves" + File.separator);
             file.mkdir();
         }
 
+        // Build the adjacency matrices for each orientation only once.
+        Map<EdgeOrientation, CSRMatrix> adjacency = new EnumMap<>(EdgeOrientation.class);
+        for (EdgeOrientation eo : eos)
+        {
+            adjacency.put(eo, CSRMatrix.adjacency(train, eo, (uidx, vidx, weight) -> 1.0));
+            adjacency.put(eo.invertSelection(), CSRMatrix.adjacency(train, eo.invertSelection(), (uidx, vidx, weight) -> 1.0));
+        }
+
+        // Reusable per-thread workspaces.
+        int numNodes = Long.valueOf(train.getVertexCount()).intValue();
+        ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(() -> new Workspace(numNodes));
+
         // For each pair of orientations, get the reachable users from the target ones:
-        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output + "ewc3.txt"))))
+        List<EdgeOrientation[]> pairs = new ArrayList<>();
+        for (EdgeOrientation eo : eos)
         {
-            bw.write("Target user orientation\tCandidate user orientation\tAUC");
-            for (EdgeOrientation eo : eos)
+            for (EdgeOrientation eo2 : eos)
             {
-                for (EdgeOrientation eo2 : eos)
-                {
-                    long timea = System.currentTimeMillis();
-                    System.out.println(eo + " " + eo2 + " started");
-                    Stats posStats = new Stats();
+                pairs.add(new EdgeOrientation[]{eo, eo2});
+            }
+        }
 
-                    Map<Long, PriorityQueue<Tuple3<Long, Double, Boolean>>> recs = new HashMap<>();
-                    // For each target user
-                    for (Long u : users)
-                    {
-                        // If the users have at least one neighbor
-                        if (train.getNeighbourhoodSize(u, eo) > 1)
-                        {
-                            Long2DoubleMap map = new Long2DoubleOpenHashMap();
-                            // First, we obtain the MCN values between u and the users at distance 2.
-                            train.getNeighbourhood(u, eo).forEach(v ->
-                                train.getNeighbourhood(v, eo2.invertSelection()).forEach(w ->
-                                {
-                                    long widx = w;
-                                    map.put(widx, map.getOrDefault(widx, 0.0) + 1.0);
-                                }));
-
-                            // Obtain the list for computing AUC.
-                            List<Tuple2oo<Double, Boolean>> values = new ArrayList<>();
-                            boolean include = false;
-                            PriorityQueue<Tuple3<Long, Double, Boolean>> rankingHeap = new PriorityQueue<>(numUsers, (o1, o2) -> Double.compare(o2.v2(),o1.v2()));
-
-                            // Fill the list.
-                            for (Entry<Long, Double> entry : map.long2DoubleEntrySet())
-                            {
-                                long v = entry.getKey();
-                                double val = entry.getValue();
-
-                                if (!train.containsEdge(u, v) && !train.containsEdge(v, u))
-                                {
-                                    if (test.containsEdge(u, v))
-                                    {
-                                        values.add(new Tuple2oo<>(val, true));
-                                        include = true;
-                                        if(printRecs)
-                                        {
-                                            rankingHeap.add(new Tuple3<>(v,val, true));
-                                        }
-                                    }
-                                    else
-                                    {
-                                        values.add(new Tuple2oo<>(val, false));
-                                        if(printRecs)
-                                        {
-                                            rankingHeap.add(new Tuple3<>(v,val, false));
-                                        }
-                                    }
-                                }
-                            }
-
-                            // If the user has, at least, one positive element...
-                            if (include)
-                            {
-                                AUC auc = new AUC();
-                                double aucValue = auc.compute(values);
-                                posStats.accept(aucValue);
-                                if(printRecs)
-                                    recs.put(u, rankingHeap);
-                            }
-                        }
-                    }
+        double[] aucs = new double[pairs.size()];
+        double[][] userAucs = new double[pairs.size()][];
+        IntStream.range(0, pairs.size()).parallel().forEach(i ->
+        {
+            EdgeOrientation eo = pairs.get(i)[0];
+            EdgeOrientation eo2 = pairs.get(i)[1];
+            long timea = System.currentTimeMillis();
+            System.out.println(eo + " " + eo2 + " started");
 
-                    // If we choose to print the recommendations, then, do it.
-                    if(printRecs)
+            CSRMatrix uAdj = adjacency.get(eo);
+            CSRMatrix vAdj = adjacency.get(eo2.invertSelection());
+
+            // For each target user, find the ranking of the candidate users
+            Ranking[] recs = new Ranking[users.length];
+            double[] values = new double[test.numUsers()];
+            Arrays.fill(values, Double.NaN);
+            Stats posStats = IntStream.range(0, users.length).parallel().collect(Stats::new, (stats, j) ->
+            {
+                Workspace ws = workspaces.get();
+                OptionalDouble aucValue = ws.evaluate(users[j], uAdj, vAdj, train, test);
+                if (aucValue.isPresent())
+                {
+                    stats.accept(aucValue.getAsDouble());
+                    values[users[j]] = aucValue.getAsDouble();
+                    if (printRecs)
                     {
-                        EWC3.printRecs(output + "mcncurves" + File.separator + "mcn_" + eo.toString() + "_" + eo2.toString() + ".txt", recs);
+                        recs[j] = ws.ranking();
                     }
+                }
+            }, Stats::combine);
 
-                    long timeb = System.currentTimeMillis();
-                    System.out.println(eo + " " + eo2 + " finished (" + (timeb-timea) + " ms.)");
-                    bw.write("\n" + eo + "\t" + eo2 + "\t" + posStats.getMean());
+            // If we choose to print the recommendations, then, do it.
+            if (printRecs)
+            {
+                try
+                {
+                    EWC3.printRecs(output + "mcncurves" + File.separator + "mcn_" + eo.toString() + "_" + eo2.toString() + ".txt", train, users, recs);
                 }
+                catch (IOException ioe)
+                {
+                    System.err.println("ERROR: Something failed while writing the rankings for " + eo + " " + eo2);
+                }
+            }
+
+            aucs[i] = posStats.getMean();
+            userAucs[i] = values;
+            long timeb = System.currentTimeMillis();
+            System.out.println(eo + " " + eo2 + " finished (" + (timeb - timea) + " ms.)");
+        });
+
+        // Write the average AUC, and the AUC of each user.
+        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output + "ewc3.txt")));
+             UserMetricStore.Writer store = new UserMetricStore.Writer(output + "ewc3.users", test.numUsers()))
+        {
+            bw.write("Target user orientation\tCandidate user orientation\tAUC");
+            for (int i = 0; i < pairs.size(); ++i)
+            {
+                bw.write("\n" + pairs.get(i)[0] + "\t" + pairs.get(i)[1] + "\t" + aucs[i]);
+                store.write(pairs.get(i)[0] + "_" + pairs.get(i)[1], userAucs[i]);
             }
         }
         catch (IOException ioe)
@@ -193,25 +195,215 @@ public class EWC3
 
     /**
      * Prints the recommendation.
-     * @param file File in which to store the recommendations.
-     * @param recs The recommendation rankings.
+     *
+     * @param file  File in which to store the recommendations.
+     * @param graph The training graph.
+     * @param users The identifiers of the target users.
+     * @param recs  The recommendation rankings of each target user (null if the user is not evaluated).
+     *
      * @throws IOException if something fails while writing the file.
      */
-    private static void printRecs(String file, Map<Long, PriorityQueue<Tuple3<Long, Double, Boolean>>> recs) throws IOException
+    private static void printRecs(String file, FastGraph<Long> graph, int[] users, Ranking[] recs) throws IOException
     {
-        try(BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file))))
+        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file))))
         {
             bw.write("Target\tCandidate\tValue\tRelevant");
-            for(long u : recs.keySet())
+            for (int j = 0; j < users.length; ++j)
             {
-                PriorityQueue<Tuple3<Long, Double, Boolean>> ranking = recs.get(u);
-                while(!ranking.isEmpty())
+                Ranking ranking = recs[j];
+                if (ranking == null)
+                {
+                    continue;
+                }
+
+                long u = graph.idx2object(users[j]);
+                for (int i = 0; i < ranking.candidates.length; ++i)
                 {
-                    Tuple3<Long, Double, Boolean> tuple = ranking.poll();
-                    bw.write("\n"+ u + "\t" + tuple.v1 + "\t" + tuple.v2 + "\t" + (tuple.v3 ? "1" : "0"));
+                    bw.write("\n" + u + "\t" + graph.idx2object(ranking.candidates[i]) + "\t" + ranking.values[i] + "\t" + (ranking.relevant[i] ? "1" : "0"));
                 }
             }
         }
     }
-}
 
+    /**
+     * Ranking of the candidate users for a target user, sorted by decreasing MCN value.
+     */
+    private static class Ranking
+    {
+        /**
+         * Identifiers of the candidate users.
+         */
+        private final int[] candidates;
+        /**
+         * MCN values of the candidate users.
+         */
+        private final double[] values;
+        /**
+         * Whether each candidate user is relevant (appears in the test set) or not.
+         */
+        private final boolean[] relevant;
+
+        /**
+         * Constructor.
+         *
+         * @param candidates identifiers of the candidate users.
+         * @param values     MCN values of the candidate users.
+         * @param relevant   whether each candidate user is relevant or not.
+         */
+        private Ranking(int[] candidates, double[] values, boolean[] relevant)
+        {
+            this.candidates = candidates;
+            this.values = values;
+            this.relevant = relevant;
+        }
+    }
+
+    /**
+     * Workspace for evaluating target users, reused by a thread across users so that no array of the size
+     * of the whole network is allocated for each of them.
+     */
+    private static class Workspace
+    {
+        /**
+         * Number of common neighbors of each user with the current target user.
+         */
+        private final int[] counts;
+        /**
+         * Users reached from the current target user.
+         */
+        private final int[] touched;
+        /**
+         * Candidate users of the current target user.
+         */
+        private final int[] candidates;
+        /**
+         * MCN values of the candidate users.
+         */
+        private final double[] values;
+        /**
+         * Positions of the relevant candidate users.
+         */
+        private final BitSet relevant;
+        /**
+         * Computes the AUC, reusing its buffers across target users.
+         */
+        private final AUC auc = new AUC();
+        /**
+         * Number of users reached from the current target user.
+         */
+        private int numTouched;
+        /**
+         * Number of candidate users of the current target user.
+         */
+        private int numCandidates;
+
+        /**
+         * Constructor.
+         *
+         * @param numNodes the number of nodes in the network.
+         */
+        private Workspace(int numNodes)
+        {
+            this.counts = new int[numNodes];
+            this.touched = new int[numNodes];
+            this.candidates = new int[numNodes];
+            this.values = new double[numNodes];
+            this.relevant = new BitSet(numNodes);
+        }
+
+        /**
+         * Finds the MCN values of the candidate users of a target user, and computes the AUC.
+         *
+         * @param uidx  identifier of the target user.
+         * @param uAdj  adjacency matrix for the neighborhood of the target user.
+         * @param vAdj  adjacency matrix for the (inverted) neighborhood of the candidate users.
+         * @param train the training graph.
+         * @param test  the test data.
+         *
+         * @return the AUC value if the user has, at least, one relevant candidate, an empty value otherwise.
+         */
+        private OptionalDouble evaluate(int uidx, CSRMatrix uAdj, CSRMatrix vAdj, FastGraph<Long> train, TestFastPreferenceData<Long> test)
+        {
+            this.numCandidates = 0;
+            this.relevant.clear();
+
+            // If the users have at least one neighbor
+            if (uAdj.rowEnd(uidx) - uAdj.rowStart(uidx) <= 1)
+            {
+                return OptionalDouble.empty();
+            }
+
+            // First, we obtain the MCN values between u and the users at distance 2.
+            this.numTouched = 0;
+            for (int i = uAdj.rowStart(uidx); i < uAdj.rowEnd(uidx); ++i)
+            {
+                int widx = uAdj.column(i);
+                for (int j = vAdj.rowStart(widx); j < vAdj.rowEnd(widx); ++j)
+                {
+                    int vidx = vAdj.column(j);
+                    if (this.counts[vidx]++ == 0)
+                    {
+                        this.touched[this.numTouched++] = vidx;
+                    }
+                }
+            }
+
+            // Obtain the candidates for computing AUC.
+            boolean include = false;
+            for (int i = 0; i < this.numTouched; ++i)
+            {
+                int vidx = this.touched[i];
+                int count = this.counts[vidx];
+                this.counts[vidx] = 0;
+
+                if (!train.containsEdge(uidx, vidx) && !train.containsEdge(vidx, uidx))
+                {
+                    boolean rel = test.containsPreference(uidx, vidx);
+                    this.candidates[this.numCandidates] = vidx;
+                    this.values[this.numCandidates] = count;
+                    this.relevant.set(this.numCandidates, rel);
+                    this.numCandidates++;
+                    include |= rel;
+                }
+            }
+
+            // If the user has, at least, one positive element...
+            if (!include)
+            {
+                return OptionalDouble.empty();
+            }
+
+            return OptionalDouble.of(this.auc.compute(this.values, this.relevant, this.numCandidates));
+        }
+
+        /**
+         * Obtains the ranking of the candidates of the last evaluated target user.
+         *
+         * @return the ranking, using arrays of the size of the number of candidates.
+         */
+        private Ranking ranking()
+        {
+            int[] order = new int[this.numCandidates];
+            for (int i = 0; i < order.length; ++i)
+            {
+                order[i] = i;
+            }
+            IntArrays.quickSort(order, (i, j) ->
+            {
+                int cmp = Double.compare(this.values[j], this.values[i]);
+                return cmp != 0 ? cmp : Integer.compare(this.candidates[i], this.candidates[j]);
+            });
+
+            int[] rankCandidates = new int[order.length];
+            double[] rankValues = new double[order.length];
+            boolean[] rankRelevant = new boolean[order.length];
+            for (int i = 0; i < order.length; ++i)
+            {
+                rankCandidates[i] = this.candidates[order[i]];
+                rankValues[i] = this.values[order[i]];
+                rankRelevant[i] = this.relevant.get(order[i]);
+            }
+            return new Ranking(rankCandidates, rankValues, rankRelevant);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.main;
+
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.contactrecaxioms.graph.io.BinaryGraphWriter;
+import es.uam.eps.ir.contactrecaxioms.graph.io.EgoNetworkReader;
+import es.uam.eps.ir.contactrecaxioms.graph.io.TextGraphReader;
+import org.ranksys.formats.parsing.Parsers;
+
+/**
+ * Program that converts a training graph into a binary snapshot (see {@link BinaryGraphWriter}). The experiments
+ * which receive a snapshot instead of the training graph only read the ego networks of their target users
+ * (see {@link EgoNetworkReader}), obtaining the same recommendations for them.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class GraphSnapshot
+{
+    /**
+     * Main for converting the graph.
+     *
+     * @param args Execution arguments:
+     *             <ol>
+     *              <li><b>Train:</b> Route of a file containing the training graph.</li>
+     *              <li><b>Directed:</b> True if the graph is directed, false otherwise.</li>
+     *              <li><b>Output:</b> Route of the file in which to store the snapshot.</li>
+     *             </ol>
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 3)
+        {
+            System.err.println("ERROR: Invalid arguments");
+            System.err.println("Arguments:");
+            System.err.println("\tTrain: Route of a file containing the training graph.");
+            System.err.println("\tDirected: True if the graph is directed, false otherwise.");
+            System.err.println("\tOutput: Route of the file in which to store the snapshot.");
+            return;
+        }
+
+        // Read the arguments.
+        String trainDataPath = args[0];
+        boolean directed = args[1].equalsIgnoreCase("true");
+        String outputPath = args[2];
+
+        // Read the training graph.
+        long timea = System.currentTimeMillis();
+        TextGraphReader<Long> greader = new TextGraphReader<>(directed, true, false, "\t", Parsers.lp);
+        FastGraph<Long> graph = (FastGraph<Long>) greader.read(trainDataPath, true, false);
+        if (graph == null)
+        {
+            System.err.println("ERROR: Could not read the training graph");
+            return;
+        }
+        long timeb = System.currentTimeMillis();
+        System.out.println("Data read (" + (timeb - timea) + " ms.)");
+
+        // Write the snapshot.
+        if (!new BinaryGraphWriter<Long>().write(graph, outputPath))
+        {
+            System.err.println("ERROR: Could not write the snapshot");
+            return;
+        }
+        long timec = System.currentTimeMillis();
+        System.out.println("Snapshot written (" + (timec - timeb) + " ms.)");
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.main;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.fast.HybridAdjacency;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.contactrecaxioms.graph.io.TextGraphReader;
+import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.contactrecaxioms.recommender.foaf.AdamicAdar;
+import es.uam.eps.ir.contactrecaxioms.recommender.foaf.Jaccard;
+import es.uam.eps.ir.contactrecaxioms.recommender.foaf.MostCommonNeighbors;
+import org.ranksys.formats.parsing.Parsers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Benchmark of the hybrid adjacency representation (see {@link HybridAdjacency}) for recommenders using mutual
+ * neighborhoods. For each recommender with MUTUAL orientation, it measures the time needed for scoring every user,
+ * first over the sorted lists of the graph, and then over the hybrid representation, and checks that the scores
+ * are the same. It also measures the mutual edge and edge membership tests.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class MutualBenchmark
+{
+    /**
+     * Main for running the benchmark.
+     *
+     * @param args Execution arguments:
+     *             <ol>
+     *              <li><b>Train:</b> Route of a file containing the training graph.</li>
+     *              <li><b>Directed:</b> True if the graph is directed, false otherwise.</li>
+     *              <li><b>Repetitions:</b> Number of times each measure is repeated.</li>
+     *             </ol>
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 3)
+        {
+            System.err.println("ERROR: Invalid arguments");
+            System.err.println("Arguments:");
+            System.err.println("\tTrain: Route of a file containing the training graph.");
+            System.err.println("\tDirected: True if the graph is directed, false otherwise.");
+            System.err.println("\tRepetitions: Number of times each measure is repeated.");
+            return;
+        }
+
+        // Read the arguments.
+        String trainDataPath = args[0];
+        boolean directed = args[1].equalsIgnoreCase("true");
+        int repetitions = Integer.parseInt(args[2]);
+
+        // Read the training graph.
+        TextGraphReader<Long> greader = new TextGraphReader<>(directed, false, false, "\t", Parsers.lp);
+        FastGraph<Long> graph = (FastGraph<Long>) greader.read(trainDataPath, false, false);
+        if (graph == null)
+        {
+            System.err.println("ERROR: Could not read the training graph");
+            return;
+        }
+
+        Map<String, Function<FastGraph<Long>, UserFastRankingRecommender<Long>>> recommenders = new LinkedHashMap<>();
+        recommenders.put("mcn", g -> new MostCommonNeighbors<>(g, EdgeOrientation.MUTUAL, EdgeOrientation.MUTUAL));
+        recommenders.put("jaccard", g -> new Jaccard<>(g, EdgeOrientation.MUTUAL, EdgeOrientation.MUTUAL));
+        recommenders.put("adamic", g -> new AdamicAdar<>(g, EdgeOrientation.MUTUAL, EdgeOrientation.MUTUAL, EdgeOrientation.MUTUAL));
+
+        Map<String, ToDoubleFunction<FastGraph<Long>>> measures = new LinkedHashMap<>();
+        measures.put("hasMutualEdges", g -> g.getNodesWithMutualEdges().count());
+        measures.put("containsEdge", g -> g.getAllNodesIds().mapToLong(uidx ->
+                g.getNeighborhood(uidx, EdgeOrientation.UND).filter(vidx -> g.containsEdge(vidx, uidx)).count()).sum());
+        recommenders.forEach((name, rec) -> measures.put(name, g ->
+        {
+            UserFastRankingRecommender<Long> recommender = rec.apply(g);
+            return recommender.getAllUidx().mapToDouble(uidx -> recommender.getScoresMap(uidx).values().stream().mapToDouble(x -> x).sum()).sum();
+        }));
+
+        // First, over the sorted lists of the graph.
+        Map<String, Double> baseline = new LinkedHashMap<>();
+        measures.forEach((name, measure) -> baseline.put(name, run(name, "lists", graph, measure, repetitions)));
+
+        // Then, over the hybrid representation.
+        long a = System.currentTimeMillis();
+        graph.buildHybridAdjacency();
+        long b = System.currentTimeMillis();
+        System.out.println("Hybrid adjacency built (" + (b - a) + " ms.)");
+
+        measures.forEach((name, measure) ->
+        {
+            double value = run(name, "hybrid", graph, measure, repetitions);
+            if (Double.compare(value, baseline.get(name)) != 0)
+            {
+                System.err.println("ERROR: " + name + " differs between representations (" + baseline.get(name) + " vs. " + value + ")");
+            }
+        });
+    }
+
+    /**
+     * Runs a measure several times, and prints the average time.
+     *
+     * @param name        the name of the measure.
+     * @param repr        the name of the representation of the graph.
+     * @param graph       the graph.
+     * @param measure     the measure.
+     * @param repetitions the number of repetitions.
+     *
+     * @return the value of the measure (a checksum for comparing the representations).
+     */
+    private static double run(String name, String repr, FastGraph<Long> graph, ToDoubleFunction<FastGraph<Long>> measure, int repetitions)
+    {
+        double value = 0.0;
+        long total = 0L;
+        for (int i = 0; i < repetitions; ++i)
+        {
+            long a = System.currentTimeMillis();
+            value = measure.applyAsDouble(graph);
+            long b = System.currentTimeMillis();
+            total += b - a;
+        }
+        System.out.println(name + "\t" + repr + "\t" + (total / (double) Math.max(repetitions, 1)) + " ms.");
+        return value;
+    }
+}
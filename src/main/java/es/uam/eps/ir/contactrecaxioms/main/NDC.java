@@ -9,33 +9,29 @@
  */
 package es.uam.eps.ir.contactrecaxioms.main;
 
-import es.uam.eps.ir.contactrecaxioms.data.GraphSimpleFastPreferenceData;
+import es.uam.eps.ir.contactrecaxioms.data.FastGraphPreferenceData;
 import es.uam.eps.ir.contactrecaxioms.graph.Adapters;
-import es.uam.eps.ir.contactrecaxioms.graph.Graph;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
-import es.uam.eps.ir.contactrecaxioms.graph.io.TextGraphReader;
 import es.uam.eps.ir.contactrecaxioms.data.FastGraphIndex;
 import es.uam.eps.ir.contactrecaxioms.data.GraphIndex;
+import es.uam.eps.ir.contactrecaxioms.data.TestFastPreferenceData;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator.Metric;
+import es.uam.eps.ir.contactrecaxioms.metrics.PairedSignificanceTest;
+import es.uam.eps.ir.contactrecaxioms.recommender.BlockedRecommenderRunner;
 import es.uam.eps.ir.contactrecaxioms.recommender.SocialFastFilters;
-import es.uam.eps.ir.contactrecaxioms.recommender.basic.Random;
 import es.uam.eps.ir.contactrecaxioms.main.grid.*;
 import es.uam.eps.ir.contactrecaxioms.utils.Tuple2oo;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
-import es.uam.eps.ir.ranksys.metrics.SystemMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.AverageRecommendationMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.NDCG;
-import es.uam.eps.ir.ranksys.rec.Recommender;
 import es.uam.eps.ir.ranksys.rec.runner.RecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilterRecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilters;
 import org.ranksys.formats.parsing.Parsers;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.IntPredicate;
@@ -56,7 +52,8 @@ public class NDC
      *
      * @param args Execution arguments:
      *             <ol>
-     *               <li><b>Train:</b> Route to the file containing the training graph.</li>
+     *               <li><b>Train:</b> Route to the file containing the training graph, or to a binary snapshot of it (see {@link GraphSnapshot}),
+     *               in which case only the ego networks of the test users are read.</li>
      *               <li><b>Test:</b> Route to the file containing the test links.</li>
      *               <li><b>Algorithms:</b> Route to an XML file containing the recommender configurations. Only algorithms with a version without term discrimination will be executed</li>
      *               <li><b>Output directory:</b> Directory in which to store the recommendations and the output files.</li>
@@ -64,6 +61,8 @@ public class NDC
      *               <li><b>Weighted:</b> True if the network is weighted, false otherwise.</li>
      *               <li><b>Rec. Length:</b> Maximum number of recommendations per user.</li>
      *               <li><b>Print recommendations:</b> True if, additionally to the results, you want to print the recommendations. False otherwise</li>
+     *               <li><b>Result cache:</b> (Optional) Route to a file in which the value of each variant is stored as soon as it is computed.
+     *               If a previous run (of this or another program) stored the value of a variant for the same data, it is not executed again.</li>
      *             </ol>
      */
     public static void main(String[] args)
@@ -72,7 +71,7 @@ public class NDC
         {
             System.err.println("Invalid arguments.");
             System.err.println("Usage:");
-            System.err.println("\tTrain: Route to the file containing the training graph.");
+            System.err.println("\tTrain: Route to the file containing the training graph, or to a binary snapshot of it (only the ego networks of the test users are read).");
             System.err.println("\tTest: Route to the file containing the test links.");
             System.err.println("\tAlgorithms: Route to an XML file containing the recommender configuration. Only algorithms with a version without term discrimination will be executed.");
             System.err.println("\tOutput directory: Directory in which to store the recommendations and the output files.");
@@ -80,6 +79,7 @@ public class NDC
             System.err.println("\tWeighted: True if the network is weighted, false otherwise.");
             System.err.println("\tRec. Length: Maximum number of recommendations per user.");
             System.err.println("\tPrint recommendations: True if, additionally to the results, you want to print the recommendations. False otherwise");
+            System.err.println("\tResult cache: (Optional) Route to a file in which the value of each variant is stored as soon as it is computed. Variants already stored for the same data are not executed again.");
             return;
         }
 
@@ -91,32 +91,28 @@ public class NDC
         boolean directed = args[4].equalsIgnoreCase("true");
         boolean weighted = args[5].equalsIgnoreCase("true");
         int maxLength = Parsers.ip.parse(args[6]);
+        String cachePath = args.length > 8 ? args[8] : null;
         boolean printRecs = args[7].equalsIgnoreCase("true");
 
         long timea = System.currentTimeMillis();
         // Read the training graph.
-        TextGraphReader<Long> weightedReader = new TextGraphReader<>(directed, true, false,"\t", Parsers.lp);
-        FastGraph<Long> weightedGraph = (FastGraph<Long>) weightedReader.read(trainDataPath, true, false);
+        FastGraph<Long> weightedGraph = AuxiliarMethods.readTrainingGraph(trainDataPath, testDataPath, directed);
         if (weightedGraph == null)
         {
             System.err.println("ERROR: Could not read the training graph");
             return;
         }
+        weightedGraph.buildHybridAdjacency();
 
-        TextGraphReader<Long> unweightedReader = new TextGraphReader<>(directed, false, false, "\t", Parsers.lp);
-        FastGraph<Long> unweightedGraph = (FastGraph<Long>) unweightedReader.read(trainDataPath, false, false);
-        if (unweightedGraph == null)
-        {
-            System.err.println("ERROR: Could not read the training graph");
-            return;
-        }
+        // The unweighted training graph is a view over the weighted one, so the training file is only read once.
+        FastGraph<Long> unweightedGraph = Adapters.unweightedView(weightedGraph);
 
-        // Read the test graph.
-        Graph<Long> auxgraph = unweightedReader.read(testDataPath, false, false);
-        FastGraph<Long> testGraph = (FastGraph<Long>) Adapters.onlyTrainUsers(auxgraph, unweightedGraph);
-        if (testGraph == null)
+        // Read the test edges between training users.
+        GraphIndex<Long> index = new FastGraphIndex<>(unweightedGraph);
+        TestFastPreferenceData<Long> testData = TestFastPreferenceData.load(testDataPath, index, directed, "\t", Parsers.lp);
+        if (testData == null)
         {
-            System.err.println("ERROR: Could not remove users from the test graph");
+            System.err.println("ERROR: Could not read the test edges");
             return;
         }
 
@@ -124,12 +120,8 @@ public class NDC
         System.out.println("Data read (" + (timeb - timea) + " ms.)");
 
         // Read the training and test data
-        FastPreferenceData<Long, Long> unweightedTrainData = GraphSimpleFastPreferenceData.load(unweightedGraph);
-        FastPreferenceData<Long, Long> weightedTrainData = GraphSimpleFastPreferenceData.load(weightedGraph);
-
-        FastPreferenceData<Long, Long> testData;
-        testData = GraphSimpleFastPreferenceData.load(testGraph);
-        GraphIndex<Long> index = new FastGraphIndex<>(unweightedGraph);
+        FastPreferenceData<Long, Long> unweightedTrainData = new FastGraphPreferenceData<>(unweightedGraph);
+        FastPreferenceData<Long, Long> weightedTrainData = new FastGraphPreferenceData<>(weightedGraph);
 
         // Read the XML containing the parameter grid for each algorithm
         AlgorithmGridReader gridreader = new AlgorithmGridReader(algorithmsPath);
@@ -149,13 +141,18 @@ public class NDC
         }
 
         int numUsers = testData.numUsersWithPreferences();
+        // Evaluator for nDCG, shared by all the configurations.
+        MultiMetricEvaluator<Long> evaluator = new MultiMetricEvaluator<>(unweightedTrainData, testData, maxLength, Metric.NDCG);
+        PairedSignificanceTest test = new PairedSignificanceTest();
+        ResultCache cache = AuxiliarMethods.openCache(cachePath, testData, maxLength);
 
         // For each algorithm.
         algorithms.forEach(tdIdentifier ->
         {
             // First, create the maps for the values.
-            Map<String, Double> tdValues = new HashMap<>();
-            Map<String, Double> noTDValues = new HashMap<>();
+            Map<String, Double> tdValues = new ConcurrentHashMap<>();
+            Map<String, Double> noTDValues = new ConcurrentHashMap<>();
+            Map<String, PairedSignificanceTest.Result> significance = new ConcurrentHashMap<>();
 
             // Get the identifier of the version of the algorithm without term discrimination.
             String noTdIdentifier = NDC.getNoTermDiscriminationVersion(tdIdentifier);
@@ -165,70 +162,47 @@ public class NDC
                 System.out.println("-------- Starting algorithm " + tdIdentifier + " --------");
                 long timeaa = System.currentTimeMillis();
                 Grid grid = gridreader.getGrid(tdIdentifier);
-                Configurations confs = grid.getConfigurations();
                 AlgorithmGridSelector<Long> algorithmSelector = new AlgorithmGridSelector<>();
 
                 // Configure the recommender runner
                 @SuppressWarnings("unchecked")
-                Function<Long, IntPredicate> filter = FastFilters.and(FastFilters.notInTrain(unweightedTrainData), FastFilters.notSelf(index), SocialFastFilters.notReciprocal(unweightedGraph, index));
-                RecommenderRunner<Long, Long> runner = new FastFilterRecommenderRunner<>(index, index, testData.getUsersWithPreferences(), filter, maxLength);
+                Function<Long, IntPredicate> filter = SocialFastFilters.notInNeighbourhood(unweightedGraph, index, EdgeOrientation.UND);
+                RecommenderRunner<Long, Long> runner = new BlockedRecommenderRunner<>(index, testData.getUsersWithPreferences(), filter, true, maxLength);
 
                 AtomicInteger counter = new AtomicInteger(0);
-                List<Parameters> configurations = confs.getConfigurations();
-                int totalCount = configurations.size();
+                long totalCount = grid.numConfigurations();
 
                 // Now, execute each possible variant.
-                configurations.parallelStream().forEach(parameters ->
+                grid.getConfigurationStream().parallel().forEach(parameters ->
                 {
                     Tuple2oo<String, RecommendationAlgorithmFunction<Long>> tdSupp = algorithmSelector.getRecommender(tdIdentifier, parameters);
                     Tuple2oo<String, RecommendationAlgorithmFunction<Long>> noTdSupp = algorithmSelector.getRecommender(noTdIdentifier, parameters);
                     String tdName = tdSupp.v1();
                     String noTdName = noTdSupp.v1();
 
-                    // First, obtain the metric.
-                    NDCG.NDCGRelevanceModel<Long, Long> ndcgModel = new NDCG.NDCGRelevanceModel<>(false, testData, 0.5);
-                    SystemMetric<Long, Long> nDCG = new AverageRecommendationMetric<>(new NDCG<>(maxLength, ndcgModel), numUsers);
+                    // First, obtain the metrics (one per variant, keeping the nDCG of each user for the significance tests).
+                    MultiMetricEvaluator<Long>.Average weightedTdNDCG = evaluator.newAverage(numUsers, true);
+                    MultiMetricEvaluator<Long>.Average weightedNoTdNDCG = evaluator.newAverage(numUsers, true);
+                    MultiMetricEvaluator<Long>.Average unweightedTdNDCG = evaluator.newAverage(numUsers, true);
+                    MultiMetricEvaluator<Long>.Average unweightedNoTdNDCG = evaluator.newAverage(numUsers, true);
 
                     try
                     {
-                        Recommender<Long, Long> weightedTd = new Random<>(unweightedGraph);
-                        Recommender<Long, Long> weightedNoTd = new Random<>(unweightedGraph);
-                        Recommender<Long, Long> unweightedTd = tdSupp.v2().apply(unweightedGraph, unweightedTrainData);
-                        Recommender<Long, Long> unweightedNoTd = noTdSupp.v2().apply(unweightedGraph, unweightedTrainData);
-
-                        if(weighted)
-                        {
-                            weightedTd = tdSupp.v2().apply(weightedGraph, weightedTrainData);
-                            weightedNoTd = noTdSupp.v2().apply(weightedGraph, weightedTrainData);
-                        }
-
                         double weightedTdValue = 0;
                         double weightedNoTdValue = 0;
                         double unweightedTdValue;
                         double unweightedNoTdValue;
 
-                        if(printRecs) // If we want to print the recommendations
-                        {
-                            if(weighted)
-                            {
-                                weightedTdValue = AuxiliarMethods.computeAndEvaluate(tdDirectory + "wei_" + tdName + ".txt", weightedTd, runner, nDCG);
-                                weightedNoTdValue = AuxiliarMethods.computeAndEvaluate(noTdDirectory + "wei_" + noTdName + ".txt", weightedNoTd, runner, nDCG);
-                            }
-
-                            unweightedTdValue = AuxiliarMethods.computeAndEvaluate(tdDirectory + (weighted ? "unw_" : "") + tdName + ".txt", unweightedTd, runner, nDCG);
-                            unweightedNoTdValue = AuxiliarMethods.computeAndEvaluate(noTdDirectory + (weighted ? "unw_" : "") + noTdName + ".txt", unweightedNoTd, runner, nDCG);
-                        }
-                        else // Otherwise
+                        // Variants already in the result cache are not executed again.
+                        if(weighted)
                         {
-                            if(weighted)
-                            {
-                                weightedTdValue = AuxiliarMethods.computeAndEvaluate(weightedTd, runner, nDCG);
-                                weightedNoTdValue = AuxiliarMethods.computeAndEvaluate(weightedNoTd, runner, nDCG);
-                            }
-                            unweightedTdValue = AuxiliarMethods.computeAndEvaluate(unweightedTd, runner, nDCG);
-                            unweightedNoTdValue = AuxiliarMethods.computeAndEvaluate(unweightedNoTd, runner, nDCG);
+                            weightedTdValue = AuxiliarMethods.computeAndEvaluate(cache, tdName, weightedTrainData, () -> tdSupp.v2().apply(weightedGraph, weightedTrainData), runner, weightedTdNDCG, printRecs ? tdDirectory + "wei_" + tdName + ".txt" : null);
+                            weightedNoTdValue = AuxiliarMethods.computeAndEvaluate(cache, noTdName, weightedTrainData, () -> noTdSupp.v2().apply(weightedGraph, weightedTrainData), runner, weightedNoTdNDCG, printRecs ? noTdDirectory + "wei_" + noTdName + ".txt" : null);
                         }
 
+                        unweightedTdValue = AuxiliarMethods.computeAndEvaluate(cache, tdName, unweightedTrainData, () -> tdSupp.v2().apply(unweightedGraph, unweightedTrainData), runner, unweightedTdNDCG, printRecs ? tdDirectory + (weighted ? "unw_" : "") + tdName + ".txt" : null);
+                        unweightedNoTdValue = AuxiliarMethods.computeAndEvaluate(cache, noTdName, unweightedTrainData, () -> noTdSupp.v2().apply(unweightedGraph, unweightedTrainData), runner, unweightedNoTdNDCG, printRecs ? noTdDirectory + (weighted ? "unw_" : "") + noTdName + ".txt" : null);
+
                         long timebb = System.currentTimeMillis();
                         System.out.println("Algorithm " + counter.incrementAndGet() + "/" + totalCount + ": " + tdName + " finished (" + (timebb-timeaa) + " ms.)");
 
@@ -246,6 +220,17 @@ public class NDC
                             noTDValues.put(tdName, unweightedNoTdValue);
                         }
 
+                        // Test the significance of the differences.
+                        if(weighted)
+                        {
+                            AuxiliarMethods.test(significance, "wei_" + tdName, test, weightedTdNDCG, weightedNoTdNDCG);
+                            AuxiliarMethods.test(significance, "unw_" + tdName, test, unweightedTdNDCG, unweightedNoTdNDCG);
+                        }
+                        else
+                        {
+                            AuxiliarMethods.test(significance, tdName, test, unweightedTdNDCG, unweightedNoTdNDCG);
+                        }
+
                     }
                     catch (IOException ioe)
                     {
@@ -254,7 +239,7 @@ public class NDC
                 });
 
                 // Print the file for this algorithm.
-                AuxiliarMethods.printFile(outputPath + "ndc_" + tdIdentifier + ".txt", tdValues, noTDValues, "TD", "No TD", maxLength);
+                AuxiliarMethods.printFile(outputPath + "ndc_" + tdIdentifier + ".txt", tdValues, noTDValues, significance, "TD", "No TD", maxLength);
                 long timecc = System.currentTimeMillis();
                 System.out.println("-------- Finished algorithm " + tdIdentifier + " (" + (timecc-timeaa) + " ms.) --------");
             }
@@ -263,6 +248,8 @@ public class NDC
                 System.err.println("Algorithm " + tdIdentifier + " has no version without term discrimination");
             }
         });
+
+        AuxiliarMethods.closeCache(cache);
     }
 
     /**
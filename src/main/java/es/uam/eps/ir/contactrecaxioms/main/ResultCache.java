@@ -0,0 +1,487 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.main;
+
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Persistent cache for the results of the experiments. It stores the value of the metric for each algorithm
+ * variant as soon as it is computed, so that a run which is interrupted can be resumed without recomputing the
+ * finished variants, and different programs can reuse the values of identical variants.
+ *
+ * Each value is identified by the fingerprint of the training data, the fingerprint of the test data, the name of
+ * the metric, the maximum length of the recommendation rankings, and the name of the variant (which contains the
+ * identifier of the algorithm and its parameter values). Fingerprints are computed from the contents of the data,
+ * so the same network read from different files, or read as weighted and unweighted, is told apart correctly.
+ *
+ * Along with the value, the cache can keep the value of the metric for each user of the test data (identified
+ * by the user, not by its index), so that the runs which need them (for instance, to test the significance of
+ * the differences between variants) obtain the same results whether the variant was computed or taken from the
+ * cache. These values are not kept in memory: they are read from the file when they are requested.
+ *
+ * Values are appended to a text file (one tab-separated line per value, with an optional last field containing
+ * the values of the users), which is flushed after every line. Incomplete lines (for instance, those left by a
+ * run that was killed) are ignored when the file is read.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class ResultCache implements Closeable
+{
+    /**
+     * Name of the metric stored in the cache.
+     */
+    private static final String METRIC = "nDCG";
+    /**
+     * Number of fields in each line of the file, without the values of the users.
+     */
+    private static final int NUM_FIELDS = 6;
+
+    /**
+     * Fingerprint of the test data.
+     */
+    private final String testFingerprint;
+    /**
+     * Maximum length of the recommendation rankings.
+     */
+    private final int maxLength;
+    /**
+     * The test data.
+     */
+    private final FastPreferenceData<?, ?> testData;
+    /**
+     * The cached values, indexed by training fingerprint and variant name.
+     */
+    private final Map<String, Entry> values;
+    /**
+     * Fingerprints of the training data objects seen so far.
+     */
+    private final Map<FastPreferenceData<?, ?>, String> fingerprints;
+    /**
+     * Stream for appending to the file (null if the cache is not persistent).
+     */
+    private final OutputStream writer;
+    /**
+     * Channel for reading the values of the users from the file (null if the cache is not persistent).
+     */
+    private final FileChannel reader;
+    /**
+     * Current length of the file.
+     */
+    private long position;
+    /**
+     * Identifiers of the users of the test data, indexed by the text representation of the users (built when
+     * the values of the users are first read).
+     */
+    private Map<String, Integer> userIndex;
+
+    /**
+     * Constructor.
+     *
+     * @param testFingerprint fingerprint of the test data.
+     * @param testData        the test data.
+     * @param maxLength       maximum length of the recommendation rankings.
+     * @param values          the values read from the file.
+     * @param writer          stream for appending to the file (null if the cache is not persistent).
+     * @param reader          channel for reading the file (null if the cache is not persistent).
+     * @param position        current length of the file.
+     */
+    private ResultCache(String testFingerprint, FastPreferenceData<?, ?> testData, int maxLength, Map<String, Entry> values, OutputStream writer, FileChannel reader, long position)
+    {
+        this.testFingerprint = testFingerprint;
+        this.testData = testData;
+        this.maxLength = maxLength;
+        this.values = values;
+        this.fingerprints = Collections.synchronizedMap(new IdentityHashMap<>());
+        this.writer = writer;
+        this.reader = reader;
+        this.position = position;
+    }
+
+    /**
+     * Opens a cache. If the file exists, the values it contains for the given test data and ranking length are
+     * loaded. New values are appended to it.
+     *
+     * @param file      the file (if null, the values are only kept in memory).
+     * @param testData  the test data.
+     * @param maxLength maximum length of the recommendation rankings.
+     *
+     * @return the cache.
+     *
+     * @throws IOException if something fails while reading or opening the file.
+     */
+    public static ResultCache open(String file, FastPreferenceData<?, ?> testData, int maxLength) throws IOException
+    {
+        String testFingerprint = fingerprint(testData);
+        Map<String, Entry> values = new ConcurrentHashMap<>();
+        if (file == null)
+        {
+            return new ResultCache(testFingerprint, testData, maxLength, values, null, null, 0L);
+        }
+
+        File f = new File(file);
+        boolean complete = true;
+        if (f.exists())
+        {
+            byte[] content = Files.readAllBytes(f.toPath());
+
+            // Only lines ending in a line break were completely written.
+            int start = 0;
+            for (int end = indexOf(content, (byte) '\n', 0, content.length); end >= 0; end = indexOf(content, (byte) '\n', start, content.length))
+            {
+                // The values of the users (if any) are not read, only their position.
+                int usersStart = end;
+                for (int i = start, numTabs = 0; i < end; ++i)
+                {
+                    if (content[i] == '\t' && ++numTabs == NUM_FIELDS)
+                    {
+                        usersStart = i;
+                        break;
+                    }
+                }
+
+                String[] split = new String(content, start, usersStart - start, StandardCharsets.UTF_8).split("\t");
+                if (split.length == NUM_FIELDS && split[1].equals(testFingerprint) && split[2].equals(METRIC) && split[3].equals(String.valueOf(maxLength)))
+                {
+                    try
+                    {
+                        double value = Double.parseDouble(split[5]);
+                        values.put(key(split[0], split[4]), usersStart + 1 < end ? new Entry(value, usersStart + 1, end - usersStart - 1) : new Entry(value));
+                    }
+                    catch (NumberFormatException nfe)
+                    {
+                        // Malformed line: ignore it.
+                    }
+                }
+                start = end + 1;
+            }
+            complete = start == content.length;
+        }
+
+        OutputStream out = new FileOutputStream(f, true);
+        if (!complete)
+        {
+            // Finish the incomplete line, so it does not corrupt the next one.
+            out.write('\n');
+            out.flush();
+        }
+        return new ResultCache(testFingerprint, testData, maxLength, values, out, FileChannel.open(f.toPath(), StandardOpenOption.READ), f.length());
+    }
+
+    /**
+     * Obtains the cached value of a variant.
+     *
+     * @param trainData the training data used by the variant.
+     * @param variant   the name of the variant.
+     *
+     * @return the value, if it has been computed before.
+     */
+    public OptionalDouble get(FastPreferenceData<?, ?> trainData, String variant)
+    {
+        Entry entry = values.get(key(this.getFingerprint(trainData), variant));
+        return entry == null ? OptionalDouble.empty() : OptionalDouble.of(entry.value);
+    }
+
+    /**
+     * Obtains the cached value of the metric for each user of a variant.
+     *
+     * @param trainData the training data used by the variant.
+     * @param variant   the name of the variant.
+     *
+     * @return an array containing the value of the metric for each user (indexed by its identifier in the test
+     *         data), where the users without value have NaN values, or null if the values of the users were not
+     *         stored along with the value of the variant.
+     *
+     * @throws IOException if something fails while reading the values.
+     */
+    public double[] getUserValues(FastPreferenceData<?, ?> trainData, String variant) throws IOException
+    {
+        Entry entry = values.get(key(this.getFingerprint(trainData), variant));
+        if (entry == null || entry.length < 0)
+        {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        while (buffer.hasRemaining())
+        {
+            if (reader.read(buffer, entry.offset + buffer.position()) < 0)
+            {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+
+        Map<String, Integer> userIndex = this.getUserIndex();
+        double[] userValues = new double[testData.numUsers()];
+        Arrays.fill(userValues, Double.NaN);
+        for (String pair : new String(buffer.array(), StandardCharsets.UTF_8).split(","))
+        {
+            int colon = pair.lastIndexOf(':');
+            Integer uidx = userIndex.get(pair.substring(0, colon));
+            if (uidx == null)
+            {
+                return null;
+            }
+            userValues[uidx] = Double.parseDouble(pair.substring(colon + 1));
+        }
+        return userValues;
+    }
+
+    /**
+     * Stores the value of a variant. It might be called concurrently.
+     *
+     * @param trainData the training data used by the variant.
+     * @param variant   the name of the variant.
+     * @param value     the value of the metric.
+     *
+     * @throws IOException if something fails while writing the value.
+     */
+    public void put(FastPreferenceData<?, ?> trainData, String variant, double value) throws IOException
+    {
+        this.put(trainData, variant, value, null);
+    }
+
+    /**
+     * Stores the value of a variant, along with the value of the metric for each user. It might be called
+     * concurrently.
+     *
+     * @param trainData  the training data used by the variant.
+     * @param variant    the name of the variant.
+     * @param value      the value of the metric.
+     * @param userValues the value of the metric for each user, indexed by its identifier in the test data, where
+     *                   the users without value have NaN values (null if they are not stored).
+     *
+     * @throws IOException if something fails while writing the value.
+     */
+    public void put(FastPreferenceData<?, ?> trainData, String variant, double value, double[] userValues) throws IOException
+    {
+        String trainFingerprint = this.getFingerprint(trainData);
+        String key = key(trainFingerprint, variant);
+        if (writer == null)
+        {
+            values.put(key, new Entry(value));
+            return;
+        }
+
+        StringBuilder users = new StringBuilder();
+        if (userValues != null)
+        {
+            for (int uidx = 0; uidx < userValues.length; ++uidx)
+            {
+                if (!Double.isNaN(userValues[uidx]))
+                {
+                    users.append(users.length() > 0 ? "," : "").append(testData.uidx2user(uidx)).append(':').append(userValues[uidx]);
+                }
+            }
+        }
+
+        byte[] head = (trainFingerprint + "\t" + testFingerprint + "\t" + METRIC + "\t" + maxLength + "\t" + variant + "\t" + value + (users.length() > 0 ? "\t" : "")).getBytes(StandardCharsets.UTF_8);
+        byte[] tail = (users + "\n").getBytes(StandardCharsets.UTF_8);
+        byte[] line = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, line, head.length, tail.length);
+        synchronized (writer)
+        {
+            writer.write(line);
+            writer.flush();
+            values.put(key, users.length() > 0 ? new Entry(value, position + head.length, tail.length - 1) : new Entry(value));
+            position += line.length;
+        }
+    }
+
+    /**
+     * Obtains the number of cached values.
+     *
+     * @return the number of cached values.
+     */
+    public int size()
+    {
+        return values.size();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (writer != null)
+        {
+            synchronized (writer)
+            {
+                writer.close();
+            }
+            reader.close();
+        }
+    }
+
+    /**
+     * Obtains the fingerprint of some training data, computing it only the first time.
+     *
+     * @param trainData the training data.
+     *
+     * @return the fingerprint.
+     */
+    private String getFingerprint(FastPreferenceData<?, ?> trainData)
+    {
+        return fingerprints.computeIfAbsent(trainData, ResultCache::fingerprint);
+    }
+
+    /**
+     * Obtains the identifiers of the users of the test data, indexed by the text representation of the users.
+     *
+     * @return the identifiers of the users.
+     */
+    private synchronized Map<String, Integer> getUserIndex()
+    {
+        if (userIndex == null)
+        {
+            userIndex = new HashMap<>();
+            for (int uidx = 0; uidx < testData.numUsers(); ++uidx)
+            {
+                userIndex.put(String.valueOf(testData.uidx2user(uidx)), uidx);
+            }
+        }
+        return userIndex;
+    }
+
+    /**
+     * Finds the first occurrence of a byte in a fragment of an array.
+     *
+     * @param array the array.
+     * @param b     the byte.
+     * @param start the first position of the fragment.
+     * @param end   the position after the end of the fragment.
+     *
+     * @return the position of the byte, or -1 if it does not appear in the fragment.
+     */
+    private static int indexOf(byte[] array, byte b, int start, int end)
+    {
+        for (int i = start; i < end; ++i)
+        {
+            if (array[i] == b)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builds the key of a value.
+     *
+     * @param trainFingerprint the fingerprint of the training data.
+     * @param variant          the name of the variant.
+     *
+     * @return the key.
+     */
+    private static String key(String trainFingerprint, String variant)
+    {
+        return trainFingerprint + "\t" + variant;
+    }
+
+    /**
+     * Computes a fingerprint of the contents of some preference data: the identifiers of the users and items,
+     * and the values of the preferences between them. It does not depend on the order in which the users, items
+     * and preferences are stored.
+     *
+     * @param data the preference data.
+     *
+     * @return the fingerprint, as a hexadecimal string.
+     */
+    public static String fingerprint(FastPreferenceData<?, ?> data)
+    {
+        long hash = IntStream.range(0, data.numUsers()).parallel().mapToLong(uidx ->
+        {
+            long prefs = 0L;
+            IntIterator iidxs = data.getUidxIidxs(uidx);
+            DoubleIterator vs = data.getUidxVs(uidx);
+            while (iidxs.hasNext())
+            {
+                long item = mix(Objects.hashCode(data.iidx2item(iidxs.nextInt())));
+                prefs += mix(item ^ Double.doubleToLongBits(vs.nextDouble()));
+            }
+            return mix(mix(Objects.hashCode(data.uidx2user(uidx))) + prefs);
+        }).sum();
+
+        hash = mix(hash ^ mix(data.numUsers()));
+        hash = mix(hash ^ mix(data.numItems()));
+        hash = mix(hash ^ mix(data.numPreferences()));
+        return String.format("%016x", hash);
+    }
+
+    /**
+     * Mixes the bits of a value (finalizer of the SplitMix64 generator).
+     *
+     * @param value the value.
+     *
+     * @return the mixed value.
+     */
+    private static long mix(long value)
+    {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * A value of the cache, and the position of the values of the users in the file.
+     */
+    private static class Entry
+    {
+        /**
+         * The value of the metric.
+         */
+        private final double value;
+        /**
+         * Position of the values of the users in the file.
+         */
+        private final long offset;
+        /**
+         * Length (in bytes) of the values of the users in the file, or -1 if they are not stored.
+         */
+        private final int length;
+
+        /**
+         * Constructor, for values without the values of the users.
+         *
+         * @param value the value of the metric.
+         */
+        private Entry(double value)
+        {
+            this(value, -1L, -1);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param value  the value of the metric.
+         * @param offset position of the values of the users in the file.
+         * @param length length (in bytes) of the values of the users in the file.
+         */
+        private Entry(double value, long offset, int length)
+        {
+            this.value = value;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
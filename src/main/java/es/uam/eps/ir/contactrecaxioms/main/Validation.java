@@ -9,25 +9,23 @@
  */
 package es.uam.eps.ir.contactrecaxioms.main;
 
-import es.uam.eps.ir.contactrecaxioms.data.GraphSimpleFastPreferenceData;
+import es.uam.eps.ir.contactrecaxioms.data.FastGraphPreferenceData;
 import es.uam.eps.ir.contactrecaxioms.graph.Adapters;
-import es.uam.eps.ir.contactrecaxioms.graph.Graph;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
-import es.uam.eps.ir.contactrecaxioms.graph.io.TextGraphReader;
 import es.uam.eps.ir.contactrecaxioms.data.FastGraphIndex;
 import es.uam.eps.ir.contactrecaxioms.data.GraphIndex;
+import es.uam.eps.ir.contactrecaxioms.data.TestFastPreferenceData;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator;
+import es.uam.eps.ir.contactrecaxioms.metrics.MultiMetricEvaluator.Metric;
+import es.uam.eps.ir.contactrecaxioms.metrics.UserMetricStore;
+import es.uam.eps.ir.contactrecaxioms.recommender.BlockedRecommenderRunner;
 import es.uam.eps.ir.contactrecaxioms.recommender.SocialFastFilters;
-import es.uam.eps.ir.contactrecaxioms.recommender.basic.Random;
 import es.uam.eps.ir.contactrecaxioms.main.grid.*;
 import es.uam.eps.ir.contactrecaxioms.utils.Tuple2oo;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
-import es.uam.eps.ir.ranksys.metrics.SystemMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.AverageRecommendationMetric;
-import es.uam.eps.ir.ranksys.metrics.basic.NDCG;
 import es.uam.eps.ir.ranksys.rec.Recommender;
 import es.uam.eps.ir.ranksys.rec.runner.RecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilterRecommenderRunner;
-import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilters;
 import org.ranksys.core.util.tuples.Tuple2od;
 import org.ranksys.formats.parsing.Parsers;
 
@@ -37,6 +35,7 @@ import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
 
 /**
  * Class that executes the validation process for the different contact recommendation algorithms.
@@ -54,7 +53,8 @@ public class Validation
      *
      * @param args Execution arguments:
      *             <ol>
-     *               <li><b>Train:</b> Route to the file containing the training graph.</li>
+     *               <li><b>Train:</b> Route to the file containing the training graph, or to a binary snapshot of it (see {@link GraphSnapshot}),
+     *               in which case only the ego networks of the validation users are read.</li>
      *               <li><b>Validation:</b> Route to the file containing the validation links.</li>
      *               <li><b>Algorithms:</b> Route to an XML file containing the recommender configurations</li>
      *               <li><b>Output directory:</b> Directory in which to store the recommendations and the output file.</li>
@@ -62,6 +62,11 @@ public class Validation
      *               <li><b>Weighted:</b> True if the network is weighted, false otherwise.</li>
      *               <li><b>Max. Length:</b> Maximum number of recommendations per user.</li>
      *               <li><b>Print recommendations:</b> True if, additionally to the results, you want to print the recommendations. False otherwise</li>
+     *               <li><b>Halving sample:</b> (Optional) Number of users in the first sample of a successive halving search. If it is
+     *               not provided (or it is zero), every variant is evaluated over all the validation users. Variants discarded
+     *               before the last round are ranked after the rest, with their nDCG over the last sample they were evaluated on.</li>
+     *               <li><b>Result cache:</b> (Optional) Route to a file in which the value of each variant is stored as soon as it is computed.
+     *               If a previous run (of this or another program) stored the value of a variant for the same data, it is not executed again.</li>
      *             </ol>
      */
     public static void main(String[] args)
@@ -70,7 +75,7 @@ public class Validation
         {
             System.err.println("Invalid arguments.");
             System.err.println("Usage:");
-            System.err.println("\tTrain: Route to the file containing the training graph.");
+            System.err.println("\tTrain: Route to the file containing the training graph, or to a binary snapshot of it (only the ego networks of the validation users are read).");
             System.err.println("\tValidation: Route to the file containing the validation links.");
             System.err.println("\tAlgorithms: Route to an XML file containing the recommender configuration. Only algorithms with a version without term discrimination will be executed.");
             System.err.println("\tOutput directory: Directory in which to store the recommendations and the output files.");
@@ -78,6 +83,8 @@ public class Validation
             System.err.println("\tWeighted: True if the network is weighted, false otherwise.");
             System.err.println("\tRec. Length: Maximum number of recommendations per user.");
             System.err.println("\tPrint recommendations: True if, additionally to the results, you want to print the recommendations. False otherwise");
+            System.err.println("\tHalving sample: (Optional) Number of users in the first sample of a successive halving search. If it is not provided (or it is zero), every variant is evaluated over all the validation users.");
+            System.err.println("\tResult cache: (Optional) Route to a file in which the value of each variant is stored as soon as it is computed. Variants already stored for the same data are not executed again.");
             return;
         }
 
@@ -90,31 +97,28 @@ public class Validation
         boolean weighted = args[5].equalsIgnoreCase("true");
         int maxLength = Parsers.ip.parse(args[6]);
         boolean printRecs = args[7].equalsIgnoreCase("true");
+        int halvingUsers = args.length > 8 ? Parsers.ip.parse(args[8]) : 0;
+        String cachePath = args.length > 9 ? args[9] : null;
 
         long timea = System.currentTimeMillis();
         // Read the training graph.
-        TextGraphReader<Long> weightedReader = new TextGraphReader<>(directed, true, false,"\t", Parsers.lp);
-        FastGraph<Long> weightedGraph = (FastGraph<Long>) weightedReader.read(trainDataPath, true, false);
+        FastGraph<Long> weightedGraph = AuxiliarMethods.readTrainingGraph(trainDataPath, validationDataPath, directed);
         if (weightedGraph == null)
         {
             System.err.println("ERROR: Could not read the training graph");
             return;
         }
+        weightedGraph.buildHybridAdjacency();
 
-        TextGraphReader<Long> unweightedReader = new TextGraphReader<>(directed, false, false, "\t", Parsers.lp);
-        FastGraph<Long> unweightedGraph = (FastGraph<Long>) unweightedReader.read(trainDataPath, false, false);
-        if (unweightedGraph == null)
-        {
-            System.err.println("ERROR: Could not read the training graph");
-            return;
-        }
+        // The unweighted training graph is a view over the weighted one, so the training file is only read once.
+        FastGraph<Long> unweightedGraph = Adapters.unweightedView(weightedGraph);
 
-        // Read the test graph.
-        Graph<Long> auxgraph = unweightedReader.read(validationDataPath, false, false);
-        FastGraph<Long> validationGraph = (FastGraph<Long>) Adapters.onlyTrainUsers(auxgraph, unweightedGraph);
-        if (validationGraph == null)
+        // Read the test edges between training users.
+        GraphIndex<Long> index = new FastGraphIndex<>(unweightedGraph);
+        TestFastPreferenceData<Long> validationData = TestFastPreferenceData.load(validationDataPath, index, directed, "\t", Parsers.lp);
+        if (validationData == null)
         {
-            System.err.println("ERROR: Could not remove users from the test graph");
+            System.err.println("ERROR: Could not read the test edges");
             return;
         }
 
@@ -122,12 +126,8 @@ public class Validation
         System.out.println("Data read (" + (timeb - timea) + " ms.)");
 
         // Read the training and test data
-        FastPreferenceData<Long, Long> unweightedTrainData = GraphSimpleFastPreferenceData.load(unweightedGraph);
-        FastPreferenceData<Long, Long> weightedTrainData = GraphSimpleFastPreferenceData.load(weightedGraph);
-
-        FastPreferenceData<Long, Long> validationData;
-        validationData = GraphSimpleFastPreferenceData.load(validationGraph);
-        GraphIndex<Long> index = new FastGraphIndex<>(unweightedGraph);
+        FastPreferenceData<Long, Long> unweightedTrainData = new FastGraphPreferenceData<>(unweightedGraph);
+        FastPreferenceData<Long, Long> weightedTrainData = new FastGraphPreferenceData<>(weightedGraph);
 
         // Read the XML containing the parameter grid for each algorithm
         AlgorithmGridReader gridreader = new AlgorithmGridReader(algorithmsPath);
@@ -136,6 +136,10 @@ public class Validation
         Set<String> algorithms = gridreader.getAlgorithms();
 
         int numUsers = validationData.numUsersWithPreferences();
+        // Evaluator for nDCG, shared by all the configurations.
+        MultiMetricEvaluator<Long> evaluator = new MultiMetricEvaluator<>(unweightedTrainData, validationData, maxLength, Metric.NDCG);
+        ResultCache cache = AuxiliarMethods.openCache(cachePath, validationData, maxLength);
+        List<Long> validationUsers = validationData.getUsersWithPreferences().collect(Collectors.toList());
 
         // For each algorithm.
         algorithms.forEach(algorithm ->
@@ -150,90 +154,140 @@ public class Validation
             System.out.println("-------- Starting algorithm " + algorithm + " --------");
             long timeaa = System.currentTimeMillis();
             Grid grid = gridreader.getGrid(algorithm);
-            Configurations confs = grid.getConfigurations();
             AlgorithmGridSelector<Long> algorithmSelector = new AlgorithmGridSelector<>();
 
             // Configure the recommender runner
             @SuppressWarnings("unchecked")
-            Function<Long, IntPredicate> filter = FastFilters.and(FastFilters.notInTrain(unweightedTrainData), FastFilters.notSelf(index), SocialFastFilters.notReciprocal(unweightedGraph, index));
-            RecommenderRunner<Long, Long> runner = new FastFilterRecommenderRunner<>(index, index, validationData.getUsersWithPreferences(), filter, maxLength);
+            Function<Long, IntPredicate> filter = SocialFastFilters.notInNeighbourhood(unweightedGraph, index, EdgeOrientation.UND);
+            RecommenderRunner<Long, Long> runner = new BlockedRecommenderRunner<>(index, validationData.getUsersWithPreferences(), filter, true, maxLength);
 
             AtomicInteger counter = new AtomicInteger(0);
-            List<Parameters> configurations = confs.getConfigurations();
-            int totalCount = configurations.size();
+            long totalCount = grid.numConfigurations();
 
-            PriorityBlockingQueue<Tuple2od<String>> ranking = new PriorityBlockingQueue<>(totalCount, (x,y) -> Double.compare(y.v2, x.v2));
+            // Store the nDCG of each user for each variant.
+            UserMetricStore.Writer store = AuxiliarMethods.openStore(outputPath + "validation_" + algorithm + ".users", validationData.numUsers());
 
-            // Now, execute each possible variant.
-            configurations.parallelStream().forEach(parameters ->
+            List<Tuple2od<String>> ranking = new ArrayList<>();
+            if(halvingUsers > 0)
             {
-                Tuple2oo<String, RecommendationAlgorithmFunction<Long>> algSupp = algorithmSelector.getRecommender(algorithm, parameters);
-                String algorithmName = algSupp.v1();
-
-                // First, obtain the metric.
-                NDCG.NDCGRelevanceModel<Long, Long> ndcgModel = new NDCG.NDCGRelevanceModel<>(false, validationData, 0.5);
-                SystemMetric<Long, Long> nDCG = new AverageRecommendationMetric<>(new NDCG<>(maxLength, ndcgModel), numUsers);
-
-                try
+                // Obtain the variants of each configuration.
+                List<Variant> variants = new ArrayList<>();
+                grid.getConfigurationStream().forEach(parameters ->
                 {
-                    Recommender<Long, Long> weightedAlg = new Random<>(unweightedGraph);
-                    Recommender<Long, Long> unweightedAlg = algSupp.v2().apply(unweightedGraph, unweightedTrainData);
-
+                    Tuple2oo<String, RecommendationAlgorithmFunction<Long>> algSupp = algorithmSelector.getRecommender(algorithm, parameters);
                     if(weighted)
                     {
-                        weightedAlg = algSupp.v2().apply(weightedGraph, weightedTrainData);
+                        variants.add(new Variant("wei_" + algSupp.v1(), algSupp.v1(), algSupp.v2(), true));
+                        variants.add(new Variant("unw_" + algSupp.v1(), algSupp.v1(), algSupp.v2(), false));
                     }
+                    else
+                    {
+                        variants.add(new Variant(algSupp.v1(), algSupp.v1(), algSupp.v2(), false));
+                    }
+                });
 
-                    double weightedValue = 0;
-                    double unweightedValue;
+                // Find the best variants by successive halving. The recommendations and the nDCG of each
+                // user are only stored for the variants which are evaluated over the full set of users.
+                SuccessiveHalving halving = new SuccessiveHalving(halvingUsers);
+                halving.search(variants, validationUsers, (variant, users) ->
+                {
+                    long timebb = System.currentTimeMillis();
+                    boolean full = users.size() == validationUsers.size();
+                    MultiMetricEvaluator<Long>.Average nDCG = evaluator.newAverage(users.size(), full && store != null);
+                    RecommenderRunner<Long, Long> sampleRunner = new BlockedRecommenderRunner<>(index, users.stream(), filter, true, maxLength);
 
-                    if(printRecs) // If we want to print the recommendations
+                    double value;
+                    try
                     {
-                        if(weighted)
+                        FastGraph<Long> graph = variant.weighted ? weightedGraph : unweightedGraph;
+                        FastPreferenceData<Long, Long> trainData = variant.weighted ? weightedTrainData : unweightedTrainData;
+                        if(full) // Evaluations over the full set of users go through the result cache.
                         {
-                            weightedValue = AuxiliarMethods.computeAndEvaluate(directory + "wei_" + algorithmName + ".txt", weightedAlg, runner, nDCG);
+                            value = AuxiliarMethods.computeAndEvaluate(cache, variant.algorithmName, trainData, () -> Validation.build(variant.name, variant.function, graph, trainData), sampleRunner, nDCG, printRecs ? directory + variant.name + ".txt" : null);
+                            AuxiliarMethods.store(store, variant.name, nDCG);
                         }
-                        unweightedValue = AuxiliarMethods.computeAndEvaluate(directory + (weighted ? "unw_" : "") + algorithmName + ".txt", unweightedAlg, runner, nDCG);
+                        else
+                        {
+                            Recommender<Long, Long> recommender = variant.function.apply(graph, trainData);
+                            value = AuxiliarMethods.computeAndEvaluate(recommender, sampleRunner, nDCG);
+                            AuxiliarMethods.releaseContributionCache(variant.name, recommender);
+                        }
+                    }
+                    catch (IOException ioe)
+                    {
+                        System.err.println("ERROR: Something failed while executing " + variant.name);
+                        value = Double.NaN;
                     }
-                    else // Otherwise
+
+                    long timecc = System.currentTimeMillis();
+                    System.out.println("Algorithm " + counter.incrementAndGet() + ": " + variant.name + " finished over " + users.size() + " users (" + (timecc-timebb) + " ms.)");
+                    return value;
+                }).forEach(tuple -> ranking.add(new Tuple2od<>(tuple.v1.name, tuple.v2)));
+            }
+            else
+            {
+                PriorityBlockingQueue<Tuple2od<String>> queue = new PriorityBlockingQueue<>((int) Math.min(totalCount, 1024), (x,y) -> Double.compare(y.v2, x.v2));
+
+                // Now, execute each possible variant.
+                grid.getConfigurationStream().parallel().forEach(parameters ->
+                {
+                    Tuple2oo<String, RecommendationAlgorithmFunction<Long>> algSupp = algorithmSelector.getRecommender(algorithm, parameters);
+                    String algorithmName = algSupp.v1();
+
+                    // First, obtain the metric.
+                    MultiMetricEvaluator<Long>.Average nDCG = evaluator.newAverage(numUsers, store != null);
+
+                    try
                     {
+                        double weightedValue = 0;
+                        double unweightedValue;
+
+                        // Variants already in the result cache are not executed again.
                         if(weighted)
                         {
-                            weightedValue = AuxiliarMethods.computeAndEvaluate(weightedAlg, runner, nDCG);
+                            weightedValue = AuxiliarMethods.computeAndEvaluate(cache, algorithmName, weightedTrainData, () -> Validation.build("wei_" + algorithmName, algSupp.v2(), weightedGraph, weightedTrainData), runner, nDCG, printRecs ? directory + "wei_" + algorithmName + ".txt" : null);
+                            AuxiliarMethods.store(store, "wei_" + algorithmName, nDCG);
                         }
-                        unweightedValue = AuxiliarMethods.computeAndEvaluate(unweightedAlg, runner, nDCG);
-                    }
 
+                        unweightedValue = AuxiliarMethods.computeAndEvaluate(cache, algorithmName, unweightedTrainData, () -> Validation.build((weighted ? "unw_" : "") + algorithmName, algSupp.v2(), unweightedGraph, unweightedTrainData), runner, nDCG, printRecs ? directory + (weighted ? "unw_" : "") + algorithmName + ".txt" : null);
+                        AuxiliarMethods.store(store, (weighted ? "unw_" : "") + algorithmName, nDCG);
 
+                        // Store the nDCG values.
+                        if(weighted)
+                        {
+                            queue.add(new Tuple2od<>("wei_" + algorithmName, weightedValue));
+                            queue.add(new Tuple2od<>("unw_" + algorithmName, unweightedValue));
+                        }
+                        else
+                        {
+                            queue.add(new Tuple2od<>(algorithmName, unweightedValue));
+                        }
 
-                    // Store the nDCG values.
-                    if(weighted)
-                    {
-                        ranking.add(new Tuple2od<>("wei_" + algorithmName, weightedValue));
-                        ranking.add(new Tuple2od<>("unw_" + algorithmName, unweightedValue));
                     }
-                    else
+                    catch (IOException ioe)
                     {
-                        ranking.add(new Tuple2od<>(algorithmName, unweightedValue));
+                        System.err.println("ERROR: Something failed while executing " + algorithmName);
                     }
 
-                }
-                catch (IOException ioe)
+                    long timebb = System.currentTimeMillis();
+                    System.out.println("Algorithm " + counter.incrementAndGet() + "/" + totalCount + ": " + algorithmName + " finished (" + (timebb-timeaa) + " ms.)");
+                });
+
+                // Sort the variants by their nDCG value.
+                while(!queue.isEmpty())
                 {
-                    System.err.println("ERROR: Something failed while executing " + algorithmName);
+                    ranking.add(queue.poll());
                 }
+            }
 
-                long timebb = System.currentTimeMillis();
-                System.out.println("Algorithm " + counter.incrementAndGet() + "/" + totalCount + ": " + algorithmName + " finished (" + (timebb-timeaa) + " ms.)");
-            });
+            AuxiliarMethods.closeStore(store);
 
             try(BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputPath + "validation_" + algorithm + ".txt"))))
             {
                 bw.write("Ranking\tVariant\tnDCG@"+maxLength);
                 int i = 1;
-                while(!ranking.isEmpty())
+                for(Tuple2od<String> tuple : ranking)
                 {
-                    Tuple2od<String> tuple = ranking.poll();
                     bw.write("\n" + i + "\t" + tuple.v1 + "\t" + tuple.v2);
                     ++i;
                 }
@@ -246,5 +300,67 @@ public class Validation
             long timecc = System.currentTimeMillis();
             System.out.println("-------- Finished algorithm " + algorithm + " (" + (timecc-timeaa) + " ms.) --------");
         });
+
+        AuxiliarMethods.closeCache(cache);
+    }
+
+    /**
+     * Builds a recommender, and reports the memory used by its edge impacts.
+     *
+     * @param name      the name of the variant.
+     * @param function  the function for building the recommender.
+     * @param graph     the training graph.
+     * @param trainData the training data.
+     *
+     * @return the recommender.
+     */
+    private static Recommender<Long, Long> build(String name, RecommendationAlgorithmFunction<Long> function, FastGraph<Long> graph, FastPreferenceData<Long, Long> trainData)
+    {
+        Recommender<Long, Long> recommender = function.apply(graph, trainData);
+        long impactMemory = AuxiliarMethods.getImpactMemory(recommender);
+        if (impactMemory > 0)
+        {
+            System.out.println("Algorithm " + name + ": edge impacts use " + String.format("%.2f", impactMemory / (1024.0 * 1024.0)) + " MB.");
+        }
+        return recommender;
+    }
+
+    /**
+     * A variant of an algorithm, evaluated during the successive halving search.
+     */
+    private static class Variant
+    {
+        /**
+         * The name of the variant.
+         */
+        private final String name;
+        /**
+         * The name of the algorithm configuration (without the weighted / unweighted prefix).
+         */
+        private final String algorithmName;
+        /**
+         * The function for building the recommender.
+         */
+        private final RecommendationAlgorithmFunction<Long> function;
+        /**
+         * Whether the recommender uses the weighted graph or not.
+         */
+        private final boolean weighted;
+
+        /**
+         * Constructor.
+         *
+         * @param name          the name of the variant.
+         * @param algorithmName the name of the algorithm configuration.
+         * @param function      the function for building the recommender.
+         * @param weighted      whether the recommender uses the weighted graph or not.
+         */
+        Variant(String name, String algorithmName, RecommendationAlgorithmFunction<Long> function, boolean weighted)
+        {
+            this.name = name;
+            this.algorithmName = algorithmName;
+            this.function = function;
+            this.weighted = weighted;
+        }
     }
 }
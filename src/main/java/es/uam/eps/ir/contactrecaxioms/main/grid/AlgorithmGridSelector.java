@@ -25,7 +25,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static es.uam.eps.ir.contactrecaxioms.main.grid.AlgorithmIdentifiers.*;
 
@@ -167,6 +169,37 @@ public class AlgorithmGridSelector<U>
         return null;
     }
 
+    /**
+     * Obtains the algorithms for a stream of configurations, without storing them all in memory.
+     *
+     * @param algorithm the name of the algorithm.
+     * @param configs   the configurations for the algorithm (see {@link Grid#getConfigurationStream()}).
+     *
+     * @return a stream of tuples containing the name and a function for obtaining each algorithm. Configurations
+     * which do not produce an algorithm are skipped.
+     */
+    public Stream<Tuple2oo<String, RecommendationAlgorithmFunction<U>>> getRecommenders(String algorithm, Stream<Parameters> configs)
+    {
+        return configs.map(params -> this.getRecommender(algorithm, params)).filter(Objects::nonNull);
+    }
+
+    /**
+     * Given preference data and a graph, obtains the algorithms for a stream of configurations, without
+     * storing them all in memory.
+     *
+     * @param algorithm the name of the algorithm.
+     * @param configs   the configurations for the algorithm (see {@link Grid#getConfigurationStream()}).
+     * @param graph     the training graph.
+     * @param prefData  the training data.
+     *
+     * @return a stream of tuples containing the name and a supplier of each algorithm. Configurations which do
+     * not produce an algorithm are skipped.
+     */
+    public Stream<Tuple2oo<String, Supplier<Recommender<U, U>>>> getRecommenders(String algorithm, Stream<Parameters> configs, FastGraph<U> graph, FastPreferenceData<U, U> prefData)
+    {
+        return configs.map(params -> this.getRecommender(algorithm, params, graph, prefData)).filter(Objects::nonNull);
+    }
+
     /**
      * Obtains a single algorithm.
      *
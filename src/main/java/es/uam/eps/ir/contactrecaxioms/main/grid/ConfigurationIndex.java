@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.main.grid;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+import es.uam.eps.ir.contactrecaxioms.utils.Tuple2oo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Index over the configurations of a grid, which are not stored in memory. Every configuration is identified
+ * by a number between 0 and the number of configurations, which is decoded as a mixed-radix number whose digits
+ * are the positions of the values of the different parameters. The configurations follow the same order as the
+ * full Cartesian product of the values.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+class ConfigurationIndex
+{
+    /**
+     * The parameters of the grid, from the one which changes fastest to the one which changes slowest.
+     */
+    private final List<Dimension> dimensions;
+    /**
+     * The number of configurations.
+     */
+    private final long size;
+
+    /**
+     * Constructor.
+     *
+     * @param grid the grid.
+     *
+     * @throws ArithmeticException if the number of configurations does not fit in a long.
+     */
+    ConfigurationIndex(Grid grid)
+    {
+        this.dimensions = new ArrayList<>();
+        grid.getGridValues().forEach((param, values) ->
+        {
+            if (!values.isEmpty())
+            {
+                dimensions.add(new GridDimension(param, values));
+            }
+        });
+        addDimensions(grid.getLongValues(), b -> b.longs);
+        addDimensions(grid.getBooleanValues(), b -> b.booleans);
+        addDimensions(grid.getIntegerValues(), b -> b.integers);
+        addDimensions(grid.getStringValues(), b -> b.strings);
+        addDimensions(grid.getOrientationValues(), b -> b.orientations);
+        addDimensions(grid.getDoubleValues(), b -> b.doubles);
+
+        long count = 1L;
+        for (Dimension dimension : dimensions)
+        {
+            count = Math.multiplyExact(count, dimension.size());
+        }
+        this.size = count;
+    }
+
+    /**
+     * Adds the parameters of a single type.
+     *
+     * @param values the values of each parameter.
+     * @param target the map of the configurations where the values of the parameters are stored.
+     * @param <T>    the type of the parameters.
+     */
+    private <T> void addDimensions(Map<String, List<T>> values, Function<Builder, Map<String, T>> target)
+    {
+        values.forEach((param, list) ->
+        {
+            if (!list.isEmpty())
+            {
+                dimensions.add(new ValueDimension<>(param, list, target));
+            }
+        });
+    }
+
+    /**
+     * Obtains the number of configurations.
+     *
+     * @return the number of configurations.
+     */
+    long size()
+    {
+        return size;
+    }
+
+    /**
+     * Obtains a single configuration.
+     *
+     * @param idx the index of the configuration, between 0 and the number of configurations.
+     *
+     * @return the configuration.
+     */
+    Parameters get(long idx)
+    {
+        if (idx < 0 || idx >= size)
+        {
+            throw new IndexOutOfBoundsException("Configuration " + idx + " out of " + size);
+        }
+
+        Builder builder = new Builder();
+        long remaining = idx;
+        for (Dimension dimension : dimensions)
+        {
+            long dimSize = dimension.size();
+            dimension.assign(remaining % dimSize, builder);
+            remaining /= dimSize;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Maps for the values of a configuration, filled while decoding it.
+     */
+    private static class Builder
+    {
+        /**
+         * Double values.
+         */
+        private final Map<String, Double> doubles = new HashMap<>();
+        /**
+         * Edge orientation values.
+         */
+        private final Map<String, EdgeOrientation> orientations = new HashMap<>();
+        /**
+         * String values.
+         */
+        private final Map<String, String> strings = new HashMap<>();
+        /**
+         * Integer values.
+         */
+        private final Map<String, Integer> integers = new HashMap<>();
+        /**
+         * Boolean values.
+         */
+        private final Map<String, Boolean> booleans = new HashMap<>();
+        /**
+         * Long values.
+         */
+        private final Map<String, Long> longs = new HashMap<>();
+        /**
+         * Grid values.
+         */
+        private final Map<String, Tuple2oo<String, Parameters>> params = new HashMap<>();
+
+        /**
+         * Builds the configuration.
+         *
+         * @return the configuration.
+         */
+        Parameters build()
+        {
+            return new Parameters(doubles, orientations, strings, integers, booleans, longs, params);
+        }
+    }
+
+    /**
+     * A parameter of the grid.
+     */
+    private interface Dimension
+    {
+        /**
+         * Obtains the number of possible values of the parameter.
+         *
+         * @return the number of values.
+         */
+        long size();
+
+        /**
+         * Stores a value of the parameter in a configuration.
+         *
+         * @param digit   the position of the value.
+         * @param builder the configuration.
+         */
+        void assign(long digit, Builder builder);
+    }
+
+    /**
+     * A parameter taking simple values.
+     *
+     * @param <T> the type of the values.
+     */
+    private static class ValueDimension<T> implements Dimension
+    {
+        /**
+         * The name of the parameter.
+         */
+        private final String param;
+        /**
+         * The values of the parameter.
+         */
+        private final List<T> values;
+        /**
+         * The map of the configuration where the value is stored.
+         */
+        private final Function<Builder, Map<String, T>> target;
+
+        /**
+         * Constructor.
+         *
+         * @param param  the name of the parameter.
+         * @param values the values of the parameter.
+         * @param target the map of the configuration where the value is stored.
+         */
+        ValueDimension(String param, List<T> values, Function<Builder, Map<String, T>> target)
+        {
+            this.param = param;
+            this.values = values;
+            this.target = target;
+        }
+
+        @Override
+        public long size()
+        {
+            return values.size();
+        }
+
+        @Override
+        public void assign(long digit, Builder builder)
+        {
+            target.apply(builder).put(param, values.get((int) digit));
+        }
+    }
+
+    /**
+     * A parameter whose values are the configurations of other grids.
+     */
+    private static class GridDimension implements Dimension
+    {
+        /**
+         * The name of the parameter.
+         */
+        private final String param;
+        /**
+         * The names of the grids.
+         */
+        private final List<String> names;
+        /**
+         * The configurations of each grid.
+         */
+        private final List<ConfigurationIndex> indexes;
+        /**
+         * The position of the first configuration of each grid.
+         */
+        private final long[] offsets;
+
+        /**
+         * Constructor.
+         *
+         * @param param the name of the parameter.
+         * @param grids the grids, indexed by name.
+         */
+        GridDimension(String param, Map<String, Grid> grids)
+        {
+            this.param = param;
+            this.names = new ArrayList<>(grids.keySet());
+            this.indexes = new ArrayList<>();
+            this.offsets = new long[names.size() + 1];
+            for (int i = 0; i < names.size(); ++i)
+            {
+                ConfigurationIndex index = new ConfigurationIndex(grids.get(names.get(i)));
+                indexes.add(index);
+                offsets[i + 1] = Math.addExact(offsets[i], index.size());
+            }
+        }
+
+        @Override
+        public long size()
+        {
+            return offsets[names.size()];
+        }
+
+        @Override
+        public void assign(long digit, Builder builder)
+        {
+            int i = 0;
+            while (offsets[i + 1] <= digit)
+            {
+                ++i;
+            }
+            builder.params.put(param, new Tuple2oo<>(names.get(i), indexes.get(i).get(digit - offsets[i])));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.main.grid;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over a range of the configurations of a grid. The configurations are generated as they are
+ * consumed, and the range is split in halves, so they can be processed in parallel without storing the grid.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+class ConfigurationSpliterator implements Spliterator<Parameters>
+{
+    /**
+     * The index of the configurations.
+     */
+    private final ConfigurationIndex index;
+    /**
+     * The next configuration.
+     */
+    private long current;
+    /**
+     * The end of the range (exclusive).
+     */
+    private final long end;
+
+    /**
+     * Constructor.
+     *
+     * @param index the index of the configurations.
+     * @param start the start of the range (inclusive).
+     * @param end   the end of the range (exclusive).
+     */
+    ConfigurationSpliterator(ConfigurationIndex index, long start, long end)
+    {
+        this.index = index;
+        this.current = start;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Parameters> action)
+    {
+        if (current < end)
+        {
+            action.accept(index.get(current++));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Parameters> action)
+    {
+        while (current < end)
+        {
+            action.accept(index.get(current++));
+        }
+    }
+
+    @Override
+    public Spliterator<Parameters> trySplit()
+    {
+        long mid = current + (end - current) / 2;
+        if (mid <= current)
+        {
+            return null;
+        }
+        ConfigurationSpliterator prefix = new ConfigurationSpliterator(index, current, mid);
+        current = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return end - current;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+}
@@ -10,12 +10,14 @@
 package es.uam.eps.ir.contactrecaxioms.main.grid;
 
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
-import es.uam.eps.ir.contactrecaxioms.utils.Tuple2oo;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Search grid for a single algorithm.
@@ -236,119 +238,68 @@ public class Grid
      */
     public Configurations getConfigurations()
     {
-        return new Configurations(this.getListParameters());
+        return new Configurations(this.getConfigurationStream().collect(Collectors.toList()));
     }
 
-
-    private static <T> List<Map<String, T>> getMaps(Map<String, List<T>> allValues)
+    /**
+     * Obtains the number of possible configurations of the parameters, without generating them.
+     *
+     * @return the number of configurations.
+     *
+     * @throws ArithmeticException if the number of configurations does not fit in a long.
+     */
+    public long numConfigurations()
     {
-        List<Map<String, T>> mapsList = new ArrayList<>();
-        for (String variable : allValues.keySet())
-        {
-            List<Map<String, T>> aux = new ArrayList<>();
-            for (T value : allValues.get(variable))
-            {
-                if (!mapsList.isEmpty())
-                {
-                    for (Map<String, T> auxMap : mapsList)
-                    {
-                        Map<String, T> map = new HashMap<>(auxMap);
-                        map.put(variable, value);
-                        aux.add(map);
-                    }
-                }
-                else
-                {
-                    Map<String, T> map = new HashMap<>();
-                    map.put(variable, value);
-                    aux.add(map);
-                }
-            }
-            mapsList = aux;
-        }
-
-        if (mapsList.isEmpty()) mapsList.add(new HashMap<>());
-
-        return mapsList;
+        return new ConfigurationIndex(this).size();
     }
 
-    private static List<Map<String, Tuple2oo<String, Parameters>>> getMapsFromGrids(Map<String, Map<String, Grid>> allValues)
+    /**
+     * Obtains a single configuration of the parameters, without generating the rest. Configurations
+     * follow the same order as in {@link #getConfigurations()}.
+     *
+     * @param idx the index of the configuration, between 0 and the number of configurations.
+     *
+     * @return the configuration.
+     */
+    public Parameters getConfiguration(long idx)
     {
-        List<Map<String, Tuple2oo<String, Parameters>>> mapList = new ArrayList<>();
-        for (String variable : allValues.keySet())
-        {
-            List<Map<String, Tuple2oo<String, Parameters>>> aux = new ArrayList<>();
-
-            Map<String, Grid> values = allValues.get(variable);
-            for (String name : values.keySet())
-            {
-                Grid grid = values.get(name);
-                List<Parameters> parameters = grid.getListParameters();
-
-                for (Parameters params : parameters)
-                {
-                    if (!mapList.isEmpty())
-                    {
-                        for (Map<String, Tuple2oo<String, Parameters>> auxMap : mapList)
-                        {
-                            Map<String, Tuple2oo<String, Parameters>> map = new HashMap<>(auxMap);
-                            map.put(variable, new Tuple2oo<>(name, params));
-                            aux.add(map);
-                        }
-                    }
-                    else
-                    {
-                        Map<String, Tuple2oo<String, Parameters>> map = new HashMap<>();
-                        map.put(variable, new Tuple2oo<>(name, params));
-                        aux.add(map);
-                    }
-                }
-            }
-
-            mapList = aux;
-        }
-
-        if (mapList.isEmpty()) mapList.add(new HashMap<>());
-
-        return mapList;
+        return new ConfigurationIndex(this).get(idx);
     }
 
-    private List<Parameters> getListParameters()
+    /**
+     * Obtains a stream over the possible configurations of the parameters. Configurations are generated
+     * lazily, and the stream can be split efficiently when it is run in parallel.
+     *
+     * @return the stream of configurations.
+     */
+    public Stream<Parameters> getConfigurationStream()
     {
-        List<Map<String, Double>> doubleMapsList = getMaps(doubleValues);
-        List<Map<String, EdgeOrientation>> orientationMapsList = getMaps(orientationValues);
-        List<Map<String, String>> stringMapsList = getMaps(stringValues);
-        List<Map<String, Integer>> intMapsList = getMaps(integerValues);
-        List<Map<String, Boolean>> booleanMapsList = getMaps(booleanValues);
-        List<Map<String, Long>> longMapsList = getMaps(longValues);
-        List<Map<String, Tuple2oo<String, Parameters>>> parametersList = getMapsFromGrids(gridValues);
-
-        List<Parameters> parameterList = new ArrayList<>();
+        ConfigurationIndex index = new ConfigurationIndex(this);
+        return StreamSupport.stream(new ConfigurationSpliterator(index, 0, index.size()), false);
+    }
 
-        for (Map<String, Double> doubles : doubleMapsList)
+    /**
+     * Obtains a stream over a part of the possible configurations of the parameters. The configurations are
+     * divided in contiguous parts of (almost) equal size, so that several processes can share a grid by
+     * taking a different part each.
+     *
+     * @param part     the part to obtain, between 0 and the number of parts.
+     * @param numParts the number of parts.
+     *
+     * @return the stream of configurations in the part.
+     */
+    public Stream<Parameters> getConfigurationStream(int part, int numParts)
+    {
+        if (numParts <= 0 || part < 0 || part >= numParts)
         {
-            for (Map<String, EdgeOrientation> orientations : orientationMapsList)
-            {
-                for (Map<String, String> strings : stringMapsList)
-                {
-                    for (Map<String, Integer> integers : intMapsList)
-                    {
-                        for (Map<String, Boolean> booleans : booleanMapsList)
-                        {
-                            for (Map<String, Long> longs : longMapsList)
-                            {
-                                for (Map<String, Tuple2oo<String, Parameters>> parameters : parametersList)
-                                {
-                                    Parameters params = new Parameters(doubles, orientations, strings, integers, booleans, longs, parameters);
-                                    parameterList.add(params);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+            throw new IllegalArgumentException("Invalid part " + part + " out of " + numParts);
         }
 
-        return parameterList;
+        ConfigurationIndex index = new ConfigurationIndex(this);
+        long partSize = index.size() / numParts;
+        long remainder = index.size() % numParts;
+        long start = part * partSize + Math.min(part, remainder);
+        long end = start + partSize + (part < remainder ? 1 : 0);
+        return StreamSupport.stream(new ConfigurationSpliterator(index, start, end), false);
     }
 }
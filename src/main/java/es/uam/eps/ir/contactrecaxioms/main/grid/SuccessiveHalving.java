@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.main.grid;
+
+import org.ranksys.core.util.tuples.Tuple2od;
+
+import java.util.*;
+import java.util.function.ToDoubleBiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Successive halving search over the configurations of a grid. Instead of evaluating every configuration
+ * over the whole set of users, all of them are first evaluated over a small random sample of users. Then,
+ * only the best fraction of the configurations is kept, and the survivors are evaluated again over a sample
+ * twice as large, until the sample reaches the full set of users. The samples are nested: each of them
+ * contains the previous one.
+ *
+ * Reference: K. Jamieson, A. Talwalkar. Non-stochastic Best Arm Identification and Hyperparameter Optimization. AISTATS 2016.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class SuccessiveHalving
+{
+    /**
+     * Default fraction of the configurations kept after each round.
+     */
+    public static final double DEFAULT_KEEP_FRACTION = 0.5;
+    /**
+     * Default seed for sampling the users.
+     */
+    public static final long DEFAULT_SEED = 0L;
+
+    /**
+     * Number of users in the first sample.
+     */
+    private final int initialUsers;
+    /**
+     * Fraction of the configurations kept after each round.
+     */
+    private final double keepFraction;
+    /**
+     * Seed for sampling the users.
+     */
+    private final long seed;
+
+    /**
+     * Constructor.
+     *
+     * @param initialUsers number of users in the first sample.
+     */
+    public SuccessiveHalving(int initialUsers)
+    {
+        this(initialUsers, DEFAULT_KEEP_FRACTION, DEFAULT_SEED);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param initialUsers number of users in the first sample.
+     * @param keepFraction fraction of the configurations kept after each round.
+     * @param seed         seed for sampling the users.
+     */
+    public SuccessiveHalving(int initialUsers, double keepFraction, long seed)
+    {
+        if (initialUsers <= 0)
+        {
+            throw new IllegalArgumentException("The initial number of users must be positive");
+        }
+        if (keepFraction <= 0.0 || keepFraction >= 1.0)
+        {
+            throw new IllegalArgumentException("The fraction of kept configurations must be in (0,1)");
+        }
+        this.initialUsers = initialUsers;
+        this.keepFraction = keepFraction;
+        this.seed = seed;
+    }
+
+    /**
+     * Finds the best configurations. The configurations in each round are evaluated in parallel.
+     *
+     * @param candidates the configurations.
+     * @param users      the full set of users.
+     * @param evaluator  function that evaluates a configuration over a sample of users. Higher values are better,
+     *                   and NaN marks a failed evaluation.
+     * @param <C>        type of the configurations.
+     * @param <U>        type of the users.
+     *
+     * @return the ranking of the configurations. The configurations that reach the last round come first, sorted
+     * by their value over the full set of users. The rest follow, sorted by the last round they took part in,
+     * and then by their value over the sample of that round.
+     */
+    public <C, U> List<Tuple2od<C>> search(List<C> candidates, List<U> users, ToDoubleBiFunction<C, List<U>> evaluator)
+    {
+        List<U> sample = new ArrayList<>(users);
+        Collections.shuffle(sample, new java.util.Random(seed));
+
+        // The configurations discarded in each round.
+        Deque<List<Tuple2od<C>>> discarded = new ArrayDeque<>();
+
+        List<C> alive = new ArrayList<>(candidates);
+        int sampleSize = Math.min(initialUsers, users.size());
+        while (true)
+        {
+            List<U> subset = Collections.unmodifiableList(sample.subList(0, sampleSize));
+            List<Tuple2od<C>> round = alive.parallelStream()
+                    .map(c -> new Tuple2od<>(c, evaluator.applyAsDouble(c, subset)))
+                    .sorted(SuccessiveHalving::compare)
+                    .collect(Collectors.toList());
+
+            if (sampleSize == users.size())
+            {
+                List<Tuple2od<C>> ranking = new ArrayList<>(round);
+                discarded.forEach(ranking::addAll);
+                return ranking;
+            }
+
+            int keep = Math.max(1, (int) Math.ceil(round.size() * keepFraction));
+            discarded.addFirst(round.subList(keep, round.size()));
+            alive = round.subList(0, keep).stream().map(t -> t.v1).collect(Collectors.toList());
+
+            // A single survivor does not need further samples.
+            sampleSize = alive.size() == 1 ? users.size() : (int) Math.min(users.size(), 2L * sampleSize);
+        }
+    }
+
+    /**
+     * Compares two evaluated configurations, so that the best ones come first and failed ones come last.
+     *
+     * @param x the first configuration.
+     * @param y the second configuration.
+     * @param <C> type of the configurations.
+     *
+     * @return a negative value if the first configuration is better, a positive value if the second one is better, zero otherwise.
+     */
+    private static <C> int compare(Tuple2od<C> x, Tuple2od<C> y)
+    {
+        if (Double.isNaN(x.v2) || Double.isNaN(y.v2))
+        {
+            return Boolean.compare(Double.isNaN(x.v2), Double.isNaN(y.v2));
+        }
+        return Double.compare(y.v2, x.v2);
+    }
+}
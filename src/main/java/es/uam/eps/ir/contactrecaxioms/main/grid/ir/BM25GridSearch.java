@@ -58,6 +58,10 @@ public class BM25GridSearch<U> implements AlgorithmGridSearch<U>
      * Identifier for the orientation for the document length
      */
     private static final String DLSEL = "dlSel";
+    /**
+     * Identifier for precomputing the impacts of the edges (execution mode, it does not define a variant).
+     */
+    private static final String IMPACTS = "impacts";
 
     @Override
     public Map<String, Supplier<Recommender<U, U>>> grid(Grid grid, FastGraph<U> graph, FastPreferenceData<U, U> prefData)
@@ -67,6 +71,7 @@ public class BM25GridSearch<U> implements AlgorithmGridSearch<U>
         List<Double> ks = grid.getDoubleValues(K);
         List<EdgeOrientation> uSels = grid.getOrientationValues(USEL);
         List<EdgeOrientation> vSels = grid.getOrientationValues(VSEL);
+        boolean impacts = grid.getBooleanValues(IMPACTS).contains(true);
         List<EdgeOrientation> dlSels = grid.getOrientationValues(DLSEL);
 
         bs.forEach(b ->
@@ -74,7 +79,7 @@ public class BM25GridSearch<U> implements AlgorithmGridSearch<U>
                 uSels.forEach(uSel ->
                     vSels.forEach(vSel ->
                         dlSels.forEach(dlSel ->
-                            recs.put(AlgorithmIdentifiers.BM25 + "_" + uSel + "_" + vSel + "_" + dlSel + "_" + b + "_" + k, () -> new BM25<>(graph, uSel, vSel, dlSel, b, k)))))));
+                            recs.put(AlgorithmIdentifiers.BM25 + "_" + uSel + "_" + vSel + "_" + dlSel + "_" + b + "_" + k, () -> new BM25<>(graph, uSel, vSel, dlSel, b, k, impacts)))))));
 
         return recs;
     }
@@ -87,6 +92,7 @@ public class BM25GridSearch<U> implements AlgorithmGridSearch<U>
         List<Double> ks = grid.getDoubleValues(K);
         List<EdgeOrientation> uSels = grid.getOrientationValues(USEL);
         List<EdgeOrientation> vSels = grid.getOrientationValues(VSEL);
+        boolean impacts = grid.getBooleanValues(IMPACTS).contains(true);
         List<EdgeOrientation> dlSels = grid.getOrientationValues(DLSEL);
 
         bs.forEach(b ->
@@ -94,7 +100,7 @@ public class BM25GridSearch<U> implements AlgorithmGridSearch<U>
                 uSels.forEach(uSel ->
                     vSels.forEach(vSel ->
                         dlSels.forEach(dlSel ->
-                            recs.put(AlgorithmIdentifiers.BM25 + "_" + uSel + "_" + vSel + "_" + dlSel + "_" + b + "_" + k, (graph, prefData) -> new BM25<>(graph, uSel, vSel, dlSel, b, k)))))));
+                            recs.put(AlgorithmIdentifiers.BM25 + "_" + uSel + "_" + vSel + "_" + dlSel + "_" + b + "_" + k, (graph, prefData) -> new BM25<>(graph, uSel, vSel, dlSel, b, k, impacts)))))));
 
         return recs;
     }
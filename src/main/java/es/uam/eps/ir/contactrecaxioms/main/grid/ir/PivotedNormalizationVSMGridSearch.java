@@ -51,6 +51,10 @@ public class PivotedNormalizationVSMGridSearch<U> implements AlgorithmGridSearch
      * Identifier for the orientation of the target user neighborhood
      */
     private static final String VSEL = "vSel";
+    /**
+     * Identifier for precomputing the impacts of the edges (execution mode, it does not define a variant).
+     */
+    private static final String IMPACTS = "impacts";
 
     @Override
     public Map<String, Supplier<Recommender<U, U>>> grid(Grid grid, FastGraph<U> graph, FastPreferenceData<U, U> prefData)
@@ -59,11 +63,12 @@ public class PivotedNormalizationVSMGridSearch<U> implements AlgorithmGridSearch
         List<Double> ss = grid.getDoubleValues(S);
         List<EdgeOrientation> uSels = grid.getOrientationValues(USEL);
         List<EdgeOrientation> vSels = grid.getOrientationValues(VSEL);
+        boolean impacts = grid.getBooleanValues(IMPACTS).contains(true);
 
         ss.forEach(s ->
             uSels.forEach(uSel ->
                 vSels.forEach(vSel ->
-                    recs.put(PIVOTED + "_" + uSel + "_" + vSel + "_" + s, () -> new PivotedNormalizationVSM<>(graph, uSel, vSel, s)))));
+                    recs.put(PIVOTED + "_" + uSel + "_" + vSel + "_" + s, () -> new PivotedNormalizationVSM<>(graph, uSel, vSel, s, impacts)))));
 
         return recs;
     }
@@ -75,11 +80,12 @@ public class PivotedNormalizationVSMGridSearch<U> implements AlgorithmGridSearch
         List<Double> ss = grid.getDoubleValues(S);
         List<EdgeOrientation> uSels = grid.getOrientationValues(USEL);
         List<EdgeOrientation> vSels = grid.getOrientationValues(VSEL);
+        boolean impacts = grid.getBooleanValues(IMPACTS).contains(true);
 
         ss.forEach(s ->
             uSels.forEach(uSel ->
                 vSels.forEach(vSel ->
-                    recs.put(PIVOTED + "_" + uSel + "_" + vSel + "_" + s, (graph, prefData) -> new PivotedNormalizationVSM<>(graph, uSel, vSel, s)))));
+                    recs.put(PIVOTED + "_" + uSel + "_" + vSel + "_" + s, (graph, prefData) -> new PivotedNormalizationVSM<>(graph, uSel, vSel, s, impacts)))));
 
         return recs;
     }
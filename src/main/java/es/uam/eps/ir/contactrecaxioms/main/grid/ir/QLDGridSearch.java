@@ -52,6 +52,10 @@ public class QLDGridSearch<U> implements AlgorithmGridSearch<U>
      * Identifier for the orientation of the target user neighborhood
      */
     private static final String VSEL = "vSel";
+    /**
+     * Identifier for precomputing the impacts of the edges (execution mode, it does not define a variant).
+     */
+    private static final String IMPACTS = "impacts";
 
     @Override
     public Map<String, Supplier<Recommender<U, U>>> grid(Grid grid, FastGraph<U> graph, FastPreferenceData<U, U> prefData)
@@ -60,11 +64,12 @@ public class QLDGridSearch<U> implements AlgorithmGridSearch<U>
         List<Double> mus = grid.getDoubleValues(MU);
         List<EdgeOrientation> uSels = grid.getOrientationValues(USEL);
         List<EdgeOrientation> vSels = grid.getOrientationValues(VSEL);
+        boolean impacts = grid.getBooleanValues(IMPACTS).contains(true);
 
         mus.forEach(mu ->
             uSels.forEach(uSel ->
                 vSels.forEach(vSel ->
-                    recs.put(AlgorithmIdentifiers.QLD + "_" + uSel + "_" + vSel + "_" + mu, () -> new QLD<>(graph, uSel, vSel, mu)))));
+                    recs.put(AlgorithmIdentifiers.QLD + "_" + uSel + "_" + vSel + "_" + mu, () -> new QLD<>(graph, uSel, vSel, mu, impacts)))));
 
         return recs;
     }
@@ -76,11 +81,12 @@ public class QLDGridSearch<U> implements AlgorithmGridSearch<U>
         List<Double> mus = grid.getDoubleValues(MU);
         List<EdgeOrientation> uSels = grid.getOrientationValues(USEL);
         List<EdgeOrientation> vSels = grid.getOrientationValues(VSEL);
+        boolean impacts = grid.getBooleanValues(IMPACTS).contains(true);
 
         mus.forEach(mu ->
                 uSels.forEach(uSel ->
                         vSels.forEach(vSel ->
-                                recs.put(AlgorithmIdentifiers.QLD + "_" + uSel + "_" + vSel + "_" + mu, (graph, prefData) -> new QLD<>(graph, uSel, vSel, mu)))));
+                                recs.put(AlgorithmIdentifiers.QLD + "_" + uSel + "_" + vSel + "_" + mu, (graph, prefData) -> new QLD<>(graph, uSel, vSel, mu, impacts)))));
 
         return recs;
     }
@@ -51,6 +51,10 @@ public class QLLGridSearch<U> implements AlgorithmGridSearch<U>
      * Identifier for the orientation of the target user neighborhood
      */
     private static final String VSEL = "vSel";
+    /**
+     * Identifier for precomputing the impacts of the edges (execution mode, it does not define a variant).
+     */
+    private static final String IMPACTS = "impacts";
 
     @Override
     public Map<String, Supplier<Recommender<U, U>>> grid(Grid grid, FastGraph<U> graph, FastPreferenceData<U, U> prefData)
@@ -59,11 +63,12 @@ public class QLLGridSearch<U> implements AlgorithmGridSearch<U>
         List<Double> phis = grid.getDoubleValues(PHI);
         List<EdgeOrientation> uSels = grid.getOrientationValues(USEL);
         List<EdgeOrientation> vSels = grid.getOrientationValues(VSEL);
+        boolean impacts = grid.getBooleanValues(IMPACTS).contains(true);
 
         phis.forEach(phi ->
             uSels.forEach(uSel ->
                 vSels.forEach(vSel ->
-                    recs.put(AlgorithmIdentifiers.QLL + "_" + uSel + "_" + vSel + "_" + phi, () -> new QLL<>(graph, uSel, vSel, phi)))));
+                    recs.put(AlgorithmIdentifiers.QLL + "_" + uSel + "_" + vSel + "_" + phi, () -> new QLL<>(graph, uSel, vSel, phi, impacts)))));
 
         return recs;
     }
@@ -75,11 +80,12 @@ public class QLLGridSearch<U> implements AlgorithmGridSearch<U>
         List<Double> phis = grid.getDoubleValues(PHI);
         List<EdgeOrientation> uSels = grid.getOrientationValues(USEL);
         List<EdgeOrientation> vSels = grid.getOrientationValues(VSEL);
+        boolean impacts = grid.getBooleanValues(IMPACTS).contains(true);
 
         phis.forEach(phi ->
                 uSels.forEach(uSel ->
                         vSels.forEach(vSel ->
-                                recs.put(AlgorithmIdentifiers.QLL + "_" + uSel + "_" + vSel + "_" + phi, (graph, prefData) -> new QLL<>(graph, uSel, vSel, phi)))));
+                                recs.put(AlgorithmIdentifiers.QLL + "_" + uSel + "_" + vSel + "_" + phi, (graph, prefData) -> new QLL<>(graph, uSel, vSel, phi, impacts)))));
         return recs;
     }
 
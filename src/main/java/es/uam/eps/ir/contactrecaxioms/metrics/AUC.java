@@ -12,6 +12,8 @@ package es.uam.eps.ir.contactrecaxioms.metrics;
 import es.uam.eps.ir.contactrecaxioms.utils.Pair;
 import es.uam.eps.ir.contactrecaxioms.utils.Tuple2oo;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 /**
@@ -24,6 +26,54 @@ import java.util.List;
  */
 public class AUC
 {
+    /**
+     * Default number of bins for the approximate computation of the AUC.
+     */
+    public static final int DEFAULT_NUM_BINS = 1024;
+
+    /**
+     * Number of bins for the approximate computation of the AUC.
+     */
+    private final int numBins;
+    /**
+     * Buffer for the scores of the positive elements.
+     */
+    private double[] positiveScores = new double[0];
+    /**
+     * Buffer for the scores of the negative elements.
+     */
+    private double[] negativeScores = new double[0];
+    /**
+     * Number of positive elements in each bin.
+     */
+    private final long[] positiveBins;
+    /**
+     * Number of negative elements in each bin.
+     */
+    private final long[] negativeBins;
+
+    /**
+     * Constructor. Note that the buffers are reused between calls, so instances of this class must not be
+     * shared by different threads.
+     */
+    public AUC()
+    {
+        this(DEFAULT_NUM_BINS);
+    }
+
+    /**
+     * Constructor. Note that the buffers are reused between calls, so instances of this class must not be
+     * shared by different threads.
+     *
+     * @param numBins number of bins for the approximate computation of the AUC.
+     */
+    public AUC(int numBins)
+    {
+        this.numBins = numBins;
+        this.positiveBins = new long[numBins];
+        this.negativeBins = new long[numBins];
+    }
+
     /**
      * Computes the area under the ROC curve.
      *
@@ -50,4 +100,130 @@ public class AUC
         }
         return auc;
     }
+
+    /**
+     * Computes the area under the ROC curve as the normalized Mann-Whitney U statistic: the probability that a
+     * positive element is scored above a negative one, where ties count as one half.
+     *
+     * @param scores    the estimated value for each element.
+     * @param positives the positions of the positive elements.
+     * @param size      the number of elements.
+     *
+     * @return the area under the ROC curve (NaN if there are no positive or no negative elements).
+     */
+    public double compute(double[] scores, BitSet positives, int size)
+    {
+        if (this.positiveScores.length < size)
+        {
+            this.positiveScores = new double[size];
+            this.negativeScores = new double[size];
+        }
+
+        int numPos = 0;
+        int numNeg = 0;
+        for (int i = 0; i < size; ++i)
+        {
+            if (positives.get(i))
+            {
+                this.positiveScores[numPos++] = scores[i];
+            }
+            else
+            {
+                this.negativeScores[numNeg++] = scores[i];
+            }
+        }
+
+        if (numPos == 0 || numNeg == 0)
+        {
+            return Double.NaN;
+        }
+
+        Arrays.sort(this.positiveScores, 0, numPos);
+        Arrays.sort(this.negativeScores, 0, numNeg);
+
+        // For each group of tied positive elements, count the negative elements below and tied with them.
+        double sum = 0.0;
+        int lower = 0;
+        int i = 0;
+        while (i < numPos)
+        {
+            double val = this.positiveScores[i];
+            int j = i;
+            while (j < numPos && this.positiveScores[j] == val)
+            {
+                ++j;
+            }
+            while (lower < numNeg && this.negativeScores[lower] < val)
+            {
+                ++lower;
+            }
+            int upper = lower;
+            while (upper < numNeg && this.negativeScores[upper] == val)
+            {
+                ++upper;
+            }
+
+            sum += (j - i) * (lower + (upper - lower) / 2.0);
+            i = j;
+        }
+
+        return sum / ((double) numPos * numNeg);
+    }
+
+    /**
+     * Approximates the area under the ROC curve by distributing the elements into equal-width bins between the
+     * minimum and maximum scores, and considering all the elements in the same bin as tied. It runs in linear
+     * time, and it is exact when no bin contains different scores.
+     *
+     * @param scores    the estimated value for each element.
+     * @param positives the positions of the positive elements.
+     * @param size      the number of elements.
+     *
+     * @return the approximate area under the ROC curve (NaN if there are no positive or no negative elements).
+     */
+    public double computeApproximate(double[] scores, BitSet positives, int size)
+    {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; ++i)
+        {
+            if (Double.isFinite(scores[i]))
+            {
+                min = Math.min(min, scores[i]);
+                max = Math.max(max, scores[i]);
+            }
+        }
+
+        Arrays.fill(this.positiveBins, 0L);
+        Arrays.fill(this.negativeBins, 0L);
+        double width = max > min ? (max - min) / this.numBins : 1.0;
+        for (int i = 0; i < size; ++i)
+        {
+            int bin = Math.max(0, Math.min(this.numBins - 1, (int) ((scores[i] - min) / width)));
+            if (positives.get(i))
+            {
+                this.positiveBins[bin]++;
+            }
+            else
+            {
+                this.negativeBins[bin]++;
+            }
+        }
+
+        double sum = 0.0;
+        long numPos = 0;
+        long numNeg = 0;
+        for (int bin = 0; bin < this.numBins; ++bin)
+        {
+            sum += this.positiveBins[bin] * (numNeg + this.negativeBins[bin] / 2.0);
+            numPos += this.positiveBins[bin];
+            numNeg += this.negativeBins[bin];
+        }
+
+        if (numPos == 0 || numNeg == 0)
+        {
+            return Double.NaN;
+        }
+        return sum / ((double) numPos * numNeg);
+    }
 }
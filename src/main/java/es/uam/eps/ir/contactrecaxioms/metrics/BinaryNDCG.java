@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.metrics;
+
+import es.uam.eps.ir.ranksys.core.Recommendation;
+import es.uam.eps.ir.ranksys.metrics.AbstractRecommendationMetric;
+import es.uam.eps.ir.ranksys.metrics.rank.LogarithmicDiscountModel;
+import es.uam.eps.ir.ranksys.metrics.rank.RankingDiscountModel;
+import org.ranksys.core.util.tuples.Tuple2od;
+
+/**
+ * Normalized discounted cumulative gain (nDCG) for binary relevance, using the test edges as
+ * relevance judgements. Since every relevant user has the same gain, the ideal ranking is
+ * computed from the number of test edges of the target user, without sorting any gains. For
+ * test edges with a single relevance level, it is equivalent to RankSys' nDCG.
+ *
+ * @param <U> Type of the users.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class BinaryNDCG<U> extends AbstractRecommendationMetric<U, U>
+{
+    /**
+     * The relevance model.
+     */
+    private final TestRelevanceModel<U> relModel;
+    /**
+     * Maximum length of the recommendation ranking to consider.
+     */
+    private final int cutoff;
+    /**
+     * The ranking discount model.
+     */
+    private final RankingDiscountModel disc;
+
+    /**
+     * Constructor.
+     *
+     * @param cutoff   maximum length of the recommendation ranking to consider.
+     * @param relModel the relevance model.
+     */
+    public BinaryNDCG(int cutoff, TestRelevanceModel<U> relModel)
+    {
+        this.relModel = relModel;
+        this.cutoff = cutoff;
+        this.disc = new LogarithmicDiscountModel();
+    }
+
+    @Override
+    public double evaluate(Recommendation<U, U> recommendation)
+    {
+        TestRelevanceModel<U>.UserTestRelevanceModel userRelModel = this.relModel.getModel(recommendation.getUser());
+
+        double dcg = 0.0;
+        int rank = 0;
+        for (Tuple2od<U> pair : recommendation.getItems())
+        {
+            if (rank >= this.cutoff)
+            {
+                break;
+            }
+            dcg += userRelModel.gain(pair.v1) * this.disc.disc(rank);
+            rank++;
+        }
+
+        if (dcg > 0.0)
+        {
+            dcg /= this.idcg(userRelModel.getNumRelevant());
+        }
+        return dcg;
+    }
+
+    /**
+     * Computes the ideal discounted cumulative gain.
+     *
+     * @param numRelevant the number of relevant users.
+     *
+     * @return the ideal discounted cumulative gain.
+     */
+    private double idcg(int numRelevant)
+    {
+        double idcg = 0.0;
+        for (int rank = 0; rank < Math.min(numRelevant, this.cutoff); ++rank)
+        {
+            idcg += this.disc.disc(rank);
+        }
+        return idcg;
+    }
+}
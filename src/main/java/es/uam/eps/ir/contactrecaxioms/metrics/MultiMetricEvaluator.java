@@ -0,0 +1,615 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.metrics;
+
+import es.uam.eps.ir.contactrecaxioms.data.TestFastPreferenceData;
+import es.uam.eps.ir.ranksys.core.Recommendation;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.metrics.SystemMetric;
+import es.uam.eps.ir.ranksys.metrics.rank.LogarithmicDiscountModel;
+import es.uam.eps.ir.ranksys.metrics.rank.RankingDiscountModel;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.ranksys.core.util.tuples.Tuple2od;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Evaluates several metrics over a recommendation in a single pass: the relevance and degrees of each
+ * recommended user are looked up only once, and all the metrics are updated from them. The evaluator is
+ * immutable, so it can be shared by all the recommender configurations of an experiment (and by different
+ * threads): each configuration accumulates its values in its own {@link Average}, which can be fed
+ * concurrently by a parallel recommender runner.
+ * <p>
+ * The training and test data must share the same user index (as it happens when both are built over the
+ * index of the training graph).
+ *
+ * @param <U> Type of the users.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class MultiMetricEvaluator<U>
+{
+    /**
+     * Metrics supported by the evaluator.
+     */
+    public enum Metric
+    {
+        /**
+         * Normalized discounted cumulative gain, with binary relevance.
+         */
+        NDCG,
+        /**
+         * Precision.
+         */
+        PRECISION,
+        /**
+         * Recall.
+         */
+        RECALL,
+        /**
+         * Average precision (its average over the users is the MAP).
+         */
+        MAP,
+        /**
+         * Average in-degree of the recommended users.
+         */
+        IN_DEGREE,
+        /**
+         * Average out-degree of the recommended users.
+         */
+        OUT_DEGREE,
+        /**
+         * Average degree (in-degree plus out-degree) of the recommended users.
+         */
+        DEGREE,
+        /**
+         * Expected popularity complement of the recommended users: the average of one minus the proportion
+         * of users in the training data connected to them.
+         */
+        NOVELTY
+    }
+
+    /**
+     * The test data, providing the relevance judgements.
+     */
+    private final TestFastPreferenceData<U> testData;
+    /**
+     * The training data.
+     */
+    private final FastPreferenceData<U, U> trainData;
+    /**
+     * Maximum length of the recommendation ranking to consider.
+     */
+    private final int cutoff;
+    /**
+     * The metrics to compute.
+     */
+    private final Metric[] metrics;
+    /**
+     * Discount of each position of the ranking.
+     */
+    private final double[] disc;
+    /**
+     * Ideal discounted cumulative gain for each number of relevant users (up to the cutoff).
+     */
+    private final double[] idcg;
+    /**
+     * In-degree of each user (null if not needed).
+     */
+    private final double[] inDegree;
+    /**
+     * Out-degree of each user (null if not needed).
+     */
+    private final double[] outDegree;
+    /**
+     * Novelty of each user (null if not needed).
+     */
+    private final double[] novelty;
+
+    /**
+     * Constructor.
+     *
+     * @param trainData the training data.
+     * @param testData  the test data.
+     * @param cutoff    maximum length of the recommendation ranking to consider.
+     * @param metrics   the metrics to compute, in the order in which their values are returned.
+     */
+    public MultiMetricEvaluator(FastPreferenceData<U, U> trainData, TestFastPreferenceData<U> testData, int cutoff, Metric... metrics)
+    {
+        this.trainData = trainData;
+        this.testData = testData;
+        this.cutoff = cutoff;
+        this.metrics = metrics;
+
+        RankingDiscountModel discModel = new LogarithmicDiscountModel();
+        this.disc = new double[cutoff];
+        this.idcg = new double[cutoff + 1];
+        for (int rank = 0; rank < cutoff; ++rank)
+        {
+            this.disc[rank] = discModel.disc(rank);
+            this.idcg[rank + 1] = this.idcg[rank] + this.disc[rank];
+        }
+
+        Set<Metric> set = metrics.length == 0 ? EnumSet.noneOf(Metric.class) : EnumSet.copyOf(Arrays.asList(metrics));
+        int numItems = trainData.numItems();
+        if (set.contains(Metric.IN_DEGREE) || set.contains(Metric.DEGREE))
+        {
+            this.inDegree = new double[numItems];
+            trainData.getIidxWithPreferences().forEach(iidx -> this.inDegree[iidx] = trainData.getIidxPreferences(iidx).mapToDouble(pref -> pref.v2).sum());
+        }
+        else
+        {
+            this.inDegree = null;
+        }
+
+        if (set.contains(Metric.OUT_DEGREE) || set.contains(Metric.DEGREE))
+        {
+            this.outDegree = new double[numItems];
+            trainData.getUidxWithPreferences().forEach(uidx -> this.outDegree[uidx] = trainData.getUidxPreferences(uidx).mapToDouble(pref -> pref.v2).sum());
+        }
+        else
+        {
+            this.outDegree = null;
+        }
+
+        if (set.contains(Metric.NOVELTY))
+        {
+            this.novelty = new double[numItems];
+            double numUsers = trainData.numUsers();
+            trainData.getAllIidx().forEach(iidx -> this.novelty[iidx] = 1.0 - trainData.numUsers(iidx) / numUsers);
+        }
+        else
+        {
+            this.novelty = null;
+        }
+    }
+
+    /**
+     * Obtains the metrics computed by the evaluator.
+     *
+     * @return the metrics, in the order in which their values are returned.
+     */
+    public Metric[] getMetrics()
+    {
+        return this.metrics.clone();
+    }
+
+    /**
+     * Evaluates all the metrics over a recommendation, in a single pass over the ranking.
+     *
+     * @param recommendation the recommendation.
+     * @param values         array in which to store the value of each metric (in the order of the metrics).
+     *
+     * @return the identifier of the target user in the test data (-1 if it does not appear in it).
+     */
+    public int evaluate(Recommendation<U, U> recommendation, double[] values)
+    {
+        int uidx = this.testData.user2uidx(recommendation.getUser());
+        int numRelevant = uidx >= 0 ? this.testData.numItems(uidx) : 0;
+
+        double dcg = 0.0;
+        double ap = 0.0;
+        int numHits = 0;
+        int rank = 0;
+        double inSum = 0.0;
+        double outSum = 0.0;
+        double novSum = 0.0;
+        for (Tuple2od<U> pair : recommendation.getItems())
+        {
+            if (rank >= this.cutoff)
+            {
+                break;
+            }
+
+            int iidx = this.trainData.item2iidx(pair.v1);
+            if (uidx >= 0 && iidx >= 0 && this.testData.containsPreference(uidx, iidx))
+            {
+                numHits++;
+                dcg += this.disc[rank];
+                ap += numHits / (rank + 1.0);
+            }
+
+            if (iidx >= 0)
+            {
+                inSum += this.inDegree != null ? this.inDegree[iidx] : 0.0;
+                outSum += this.outDegree != null ? this.outDegree[iidx] : 0.0;
+                novSum += this.novelty != null ? this.novelty[iidx] : 0.0;
+            }
+            rank++;
+        }
+
+        for (int m = 0; m < this.metrics.length; ++m)
+        {
+            switch (this.metrics[m])
+            {
+                case NDCG:
+                    values[m] = dcg > 0.0 ? dcg / this.idcg[Math.min(numRelevant, this.cutoff)] : 0.0;
+                    break;
+                case PRECISION:
+                    values[m] = numHits / (double) this.cutoff;
+                    break;
+                case RECALL:
+                    values[m] = numRelevant > 0 ? numHits / (double) numRelevant : 0.0;
+                    break;
+                case MAP:
+                    values[m] = numRelevant > 0 ? ap / Math.min(numRelevant, this.cutoff) : 0.0;
+                    break;
+                case IN_DEGREE:
+                    values[m] = rank > 0 ? inSum / rank : 0.0;
+                    break;
+                case OUT_DEGREE:
+                    values[m] = rank > 0 ? outSum / rank : 0.0;
+                    break;
+                case DEGREE:
+                    values[m] = rank > 0 ? (inSum + outSum) / rank : 0.0;
+                    break;
+                case NOVELTY:
+                    values[m] = rank > 0 ? novSum / rank : 0.0;
+                    break;
+                default:
+                    values[m] = 0.0;
+            }
+        }
+        return uidx;
+    }
+
+    /**
+     * Creates a new accumulator for the averages of the metrics over a set of users.
+     *
+     * @param numUsers the number of users over which the metrics are averaged.
+     *
+     * @return the accumulator.
+     */
+    public Average newAverage(int numUsers)
+    {
+        return new Average(numUsers, false);
+    }
+
+    /**
+     * Creates a new accumulator for the averages of the metrics over a set of users.
+     *
+     * @param numUsers   the number of users over which the metrics are averaged.
+     * @param storeUsers whether to keep the value of the metrics for each user.
+     *
+     * @return the accumulator.
+     */
+    public Average newAverage(int numUsers, boolean storeUsers)
+    {
+        return new Average(numUsers, storeUsers);
+    }
+
+    /**
+     * Accumulates the averages of the metrics of the evaluator over a set of users. As a system metric, it
+     * evaluates to the average of the first metric of the evaluator.
+     * <p>
+     * Recommendations can be added concurrently (for instance, directly from a parallel recommender runner,
+     * without buffering them): each thread takes an idle set of partial sums owned by the accumulator and
+     * returns it after the addition, and the partial sums are merged when the metrics are evaluated.
+     * Evaluating and resetting must not overlap with the additions.
+     */
+    public class Average implements SystemMetric<U, U>, Consumer<Recommendation<U, U>>
+    {
+        /**
+         * Number of users over which the metrics are averaged.
+         */
+        private final int numUsers;
+        /**
+         * Whether to keep the value of the metrics for each user.
+         */
+        private final boolean storeUsers;
+        /**
+         * The partial sums of all the threads (and of the combined accumulators).
+         */
+        private final Queue<Partial> partials = new ConcurrentLinkedQueue<>();
+        /**
+         * The partial sums which are not being updated by any thread.
+         */
+        private final Queue<Partial> idle = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Constructor.
+         *
+         * @param numUsers   the number of users over which the metrics are averaged.
+         * @param storeUsers whether to keep the value of the metrics for each user.
+         */
+        private Average(int numUsers, boolean storeUsers)
+        {
+            this.numUsers = numUsers;
+            this.storeUsers = storeUsers;
+        }
+
+        @Override
+        public void add(Recommendation<U, U> recommendation)
+        {
+            Partial partial = this.idle.poll();
+            if (partial == null)
+            {
+                partial = new Partial(metrics.length);
+                this.partials.add(partial);
+            }
+
+            int uidx = MultiMetricEvaluator.this.evaluate(recommendation, partial.values);
+            partial.add(this.storeUsers ? uidx : -1);
+            this.idle.add(partial);
+        }
+
+        @Override
+        public void accept(Recommendation<U, U> recommendation)
+        {
+            this.add(recommendation);
+        }
+
+        /**
+         * Obtains the average value of a metric.
+         *
+         * @param metric the metric.
+         *
+         * @return the average value of the metric, or NaN if the evaluator does not compute it.
+         */
+        public double evaluate(Metric metric)
+        {
+            int m = indexOf(metric);
+            if (m < 0)
+            {
+                return Double.NaN;
+            }
+
+            double sum = 0.0;
+            for (Partial partial : this.partials)
+            {
+                sum += partial.sums[m];
+            }
+            return sum / this.numUsers;
+        }
+
+        @Override
+        public double evaluate()
+        {
+            return metrics.length > 0 ? this.evaluate(metrics[0]) : Double.NaN;
+        }
+
+        /**
+         * Obtains the number of recommendations added to the accumulator.
+         *
+         * @return the number of recommendations.
+         */
+        public long getCount()
+        {
+            long count = 0L;
+            for (Partial partial : this.partials)
+            {
+                count += partial.count;
+            }
+            return count;
+        }
+
+        /**
+         * Obtains the value of a metric for each user. It requires the values of the users to be stored.
+         *
+         * @param metric the metric.
+         *
+         * @return an array containing the value of the metric for each user (indexed by its identifier in the
+         *         test data), where the users without recommendation have NaN values.
+         *
+         * @throws IllegalStateException if the values of the users are not stored, or the metric is not computed.
+         */
+        public double[] getUserValues(Metric metric)
+        {
+            int m = indexOf(metric);
+            if (!this.storeUsers || m < 0)
+            {
+                throw new IllegalStateException("The values of " + metric + " for each user are not available");
+            }
+
+            double[] userValues = new double[testData.numUsers()];
+            Arrays.fill(userValues, Double.NaN);
+            for (Partial partial : this.partials)
+            {
+                for (int i = 0; i < partial.users.size(); ++i)
+                {
+                    userValues[partial.users.getInt(i)] = partial.userValues.getDouble(i * metrics.length + m);
+                }
+            }
+            return userValues;
+        }
+
+        /**
+         * Obtains the value of the first metric of the evaluator for each user. It requires the values of the
+         * users to be stored.
+         *
+         * @return an array containing the value of the metric for each user (indexed by its identifier in the
+         *         test data), where the users without recommendation have NaN values.
+         *
+         * @throws IllegalStateException if the values of the users are not stored, or the evaluator has no metrics.
+         */
+        public double[] getUserValues()
+        {
+            if (metrics.length == 0)
+            {
+                throw new IllegalStateException("The evaluator does not compute any metric");
+            }
+            return this.getUserValues(metrics[0]);
+        }
+
+        /**
+         * Checks whether the accumulator keeps the value of the metrics for each user.
+         *
+         * @return true if the values of the users are kept, false otherwise.
+         */
+        public boolean storesUsers()
+        {
+            return this.storeUsers;
+        }
+
+        /**
+         * Replaces the contents of the accumulator by previously computed values of the first metric of the
+         * evaluator for each user (for instance, values read from a cache of results). The rest of the metrics
+         * take NaN values.
+         *
+         * @param userValues an array containing the value of the metric for each user (indexed by its identifier
+         *                   in the test data), where the users without recommendation have NaN values.
+         *
+         * @throws IllegalStateException if the values of the users are not stored, or the evaluator has no metrics.
+         */
+        public void load(double[] userValues)
+        {
+            if (!this.storeUsers || metrics.length == 0)
+            {
+                throw new IllegalStateException("The values of the users cannot be loaded");
+            }
+
+            Partial loaded = new Partial(metrics.length);
+            Arrays.fill(loaded.values, Double.NaN);
+            for (int uidx = 0; uidx < userValues.length; ++uidx)
+            {
+                if (!Double.isNaN(userValues[uidx]))
+                {
+                    loaded.values[0] = userValues[uidx];
+                    loaded.add(uidx);
+                }
+            }
+
+            this.partials.clear();
+            this.idle.clear();
+            this.partials.add(loaded);
+        }
+
+        @Override
+        public void combine(SystemMetric<U, U> other)
+        {
+            Average average = (Average) other;
+            Partial merged = new Partial(metrics.length);
+            for (Partial partial : average.partials)
+            {
+                merged.merge(partial);
+            }
+            this.partials.add(merged);
+        }
+
+        @Override
+        public void reset()
+        {
+            this.partials.forEach(Partial::clear);
+        }
+    }
+
+    /**
+     * Partial sums of the metrics over some of the recommendations, updated by a single thread at a time.
+     */
+    private static class Partial
+    {
+        /**
+         * Sum of the values of each metric.
+         */
+        private final double[] sums;
+        /**
+         * Buffer for the values of the metrics for a single recommendation.
+         */
+        private final double[] values;
+        /**
+         * Identifiers of the users (empty if they are not stored).
+         */
+        private final IntArrayList users = new IntArrayList();
+        /**
+         * Values of the metrics for each user, one after the other (empty if they are not stored).
+         */
+        private final DoubleArrayList userValues = new DoubleArrayList();
+        /**
+         * Number of recommendations.
+         */
+        private long count = 0L;
+
+        /**
+         * Constructor.
+         *
+         * @param numMetrics the number of metrics.
+         */
+        private Partial(int numMetrics)
+        {
+            this.sums = new double[numMetrics];
+            this.values = new double[numMetrics];
+        }
+
+        /**
+         * Adds the values of the metrics for a recommendation, which have been stored in the buffer.
+         *
+         * @param uidx the identifier of the user to store the values for, or -1 if they are not stored.
+         */
+        private void add(int uidx)
+        {
+            for (int m = 0; m < this.sums.length; ++m)
+            {
+                this.sums[m] += this.values[m];
+            }
+            this.count++;
+
+            if (uidx >= 0)
+            {
+                this.users.add(uidx);
+                this.userValues.addElements(this.userValues.size(), this.values);
+            }
+        }
+
+        /**
+         * Adds the values of other partial sums.
+         *
+         * @param other the other partial sums.
+         */
+        private void merge(Partial other)
+        {
+            for (int m = 0; m < this.sums.length; ++m)
+            {
+                this.sums[m] += other.sums[m];
+            }
+            this.count += other.count;
+            this.users.addAll(other.users);
+            this.userValues.addAll(other.userValues);
+        }
+
+        /**
+         * Removes all the values.
+         */
+        private void clear()
+        {
+            Arrays.fill(this.sums, 0.0);
+            this.users.clear();
+            this.userValues.clear();
+            this.count = 0L;
+        }
+    }
+
+    /**
+     * Finds the position of a metric in the values returned by the evaluator.
+     *
+     * @param metric the metric.
+     *
+     * @return the position of the metric, or -1 if the evaluator does not compute it.
+     */
+    private int indexOf(Metric metric)
+    {
+        for (int m = 0; m < this.metrics.length; ++m)
+        {
+            if (this.metrics[m] == metric)
+            {
+                return m;
+            }
+        }
+        return -1;
+    }
+}
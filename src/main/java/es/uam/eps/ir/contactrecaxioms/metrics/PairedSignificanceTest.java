@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Paired significance tests over the values of a metric for each user in two systems: a two-sided
+ * randomization (sign-flipping permutation) test for the mean difference, and a bootstrap percentile
+ * confidence interval for it.
+ * <p>
+ * The resamples of each test are split into chunks that run in parallel, each with its own random generator
+ * split from a common seed, so the results do not depend on the number of threads. Many pairs of systems
+ * can also be tested in parallel with {@link #testAll(Map, Map)}.
+ * <p>
+ * Smucker, M.D., Allan, J., Carterette, B. A comparison of statistical significance tests for information
+ * retrieval evaluation. 16th ACM Conference on Information and Knowledge Management (CIKM 2007), Lisbon,
+ * Portugal, November 2007, pp. 623-632.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class PairedSignificanceTest
+{
+    /**
+     * Default number of resamples.
+     */
+    public static final int DEFAULT_NUM_RESAMPLES = 10000;
+    /**
+     * Default confidence level of the intervals.
+     */
+    public static final double DEFAULT_CONFIDENCE = 0.95;
+    /**
+     * Default seed for the random generators.
+     */
+    public static final long DEFAULT_SEED = 0L;
+    /**
+     * Number of chunks in which the resamples of a test are divided.
+     */
+    private static final int NUM_CHUNKS = 64;
+    /**
+     * Tolerance for comparing the resampled differences with the observed one.
+     */
+    private static final double EPSILON = 1e-12;
+
+    /**
+     * Number of resamples.
+     */
+    private final int numResamples;
+    /**
+     * Confidence level of the intervals.
+     */
+    private final double confidence;
+    /**
+     * Seed for the random generators.
+     */
+    private final long seed;
+
+    /**
+     * Constructor, using the default number of resamples, confidence level and seed.
+     */
+    public PairedSignificanceTest()
+    {
+        this(DEFAULT_NUM_RESAMPLES, DEFAULT_CONFIDENCE, DEFAULT_SEED);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param numResamples number of resamples (for both the randomization test and the bootstrap).
+     * @param confidence   confidence level of the intervals.
+     * @param seed         seed for the random generators.
+     */
+    public PairedSignificanceTest(int numResamples, double confidence, long seed)
+    {
+        this.numResamples = numResamples;
+        this.confidence = confidence;
+        this.seed = seed;
+    }
+
+    /**
+     * Tests the difference between two systems. The users with no value (NaN) in both systems were not evaluated,
+     * so they are ignored, and a missing value for one of them counts as zero. Therefore, the mean difference is
+     * computed over the evaluated users (see {@link Result#getNumUsers()}), as the averages of the systems are.
+     *
+     * @param first  the value of the metric for each user in the first system.
+     * @param second the value of the metric for each user in the second system.
+     *
+     * @return the result of the test.
+     */
+    public Result test(double[] first, double[] second)
+    {
+        int size = Math.min(first.length, second.length);
+        double[] diffs = new double[size];
+        int n = 0;
+        double sum = 0.0;
+        for (int i = 0; i < size; ++i)
+        {
+            if (!Double.isNaN(first[i]) || !Double.isNaN(second[i]))
+            {
+                double diff = (Double.isNaN(first[i]) ? 0.0 : first[i]) - (Double.isNaN(second[i]) ? 0.0 : second[i]);
+                diffs[n++] = diff;
+                sum += diff;
+            }
+        }
+
+        if (n == 0)
+        {
+            return new Result(0, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+
+        int numUsers = n;
+        double observed = Math.abs(sum);
+
+        SplittableRandom root = new SplittableRandom(this.seed);
+        SplittableRandom[] rngs = new SplittableRandom[NUM_CHUNKS];
+        for (int c = 0; c < NUM_CHUNKS; ++c)
+        {
+            rngs[c] = root.split();
+        }
+
+        double[] means = new double[this.numResamples];
+        long extreme = IntStream.range(0, NUM_CHUNKS).parallel().mapToLong(c ->
+        {
+            SplittableRandom rng = rngs[c];
+            int start = (int) ((long) this.numResamples * c / NUM_CHUNKS);
+            int end = (int) ((long) this.numResamples * (c + 1) / NUM_CHUNKS);
+            long count = 0L;
+            for (int r = start; r < end; ++r)
+            {
+                // Randomization test: flip the sign of the difference of each user at random.
+                double flipped = 0.0;
+                long bits = 0L;
+                for (int i = 0; i < numUsers; ++i)
+                {
+                    if ((i & 63) == 0)
+                    {
+                        bits = rng.nextLong();
+                    }
+                    flipped += (bits & 1L) != 0 ? diffs[i] : -diffs[i];
+                    bits >>>= 1;
+                }
+                if (Math.abs(flipped) + EPSILON >= observed)
+                {
+                    count++;
+                }
+
+                // Bootstrap: resample the users with replacement.
+                double resampled = 0.0;
+                for (int i = 0; i < numUsers; ++i)
+                {
+                    resampled += diffs[rng.nextInt(numUsers)];
+                }
+                means[r] = resampled / numUsers;
+            }
+            return count;
+        }).sum();
+
+        Arrays.sort(means);
+        double alpha = 1.0 - this.confidence;
+        double lower = this.numResamples > 0 ? means[(int) Math.floor(alpha / 2.0 * (this.numResamples - 1))] : Double.NaN;
+        double upper = this.numResamples > 0 ? means[(int) Math.ceil((1.0 - alpha / 2.0) * (this.numResamples - 1))] : Double.NaN;
+        double pValue = (extreme + 1.0) / (this.numResamples + 1.0);
+
+        return new Result(numUsers, sum / numUsers, pValue, lower, upper);
+    }
+
+    /**
+     * Tests the difference between many pairs of systems in parallel.
+     *
+     * @param <K>    type of the identifiers of the pairs of systems.
+     * @param first  the value of the metric for each user in the first system of each pair.
+     * @param second the value of the metric for each user in the second system of each pair.
+     *
+     * @return the result of the test for each pair appearing in both maps.
+     */
+    public <K> Map<K, Result> testAll(Map<K, double[]> first, Map<K, double[]> second)
+    {
+        Map<K, Result> results = new ConcurrentHashMap<>();
+        first.keySet().parallelStream().filter(second::containsKey).forEach(key -> results.put(key, this.test(first.get(key), second.get(key))));
+        return results;
+    }
+
+    /**
+     * Result of a paired significance test.
+     */
+    public static class Result
+    {
+        /**
+         * Number of users compared.
+         */
+        private final int numUsers;
+        /**
+         * Mean difference between the first and the second system.
+         */
+        private final double meanDifference;
+        /**
+         * Two-sided p-value of the randomization test.
+         */
+        private final double pValue;
+        /**
+         * Lower bound of the confidence interval for the mean difference.
+         */
+        private final double lowerBound;
+        /**
+         * Upper bound of the confidence interval for the mean difference.
+         */
+        private final double upperBound;
+
+        /**
+         * Constructor.
+         *
+         * @param numUsers       number of users compared.
+         * @param meanDifference mean difference between the first and the second system.
+         * @param pValue         two-sided p-value of the randomization test.
+         * @param lowerBound     lower bound of the confidence interval for the mean difference.
+         * @param upperBound     upper bound of the confidence interval for the mean difference.
+         */
+        public Result(int numUsers, double meanDifference, double pValue, double lowerBound, double upperBound)
+        {
+            this.numUsers = numUsers;
+            this.meanDifference = meanDifference;
+            this.pValue = pValue;
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+        }
+
+        /**
+         * Obtains the number of users compared.
+         *
+         * @return the number of users.
+         */
+        public int getNumUsers()
+        {
+            return this.numUsers;
+        }
+
+        /**
+         * Obtains the mean difference between the first and the second system.
+         *
+         * @return the mean difference.
+         */
+        public double getMeanDifference()
+        {
+            return this.meanDifference;
+        }
+
+        /**
+         * Obtains the two-sided p-value of the randomization test.
+         *
+         * @return the p-value.
+         */
+        public double getPValue()
+        {
+            return this.pValue;
+        }
+
+        /**
+         * Obtains the lower bound of the confidence interval for the mean difference.
+         *
+         * @return the lower bound.
+         */
+        public double getLowerBound()
+        {
+            return this.lowerBound;
+        }
+
+        /**
+         * Obtains the upper bound of the confidence interval for the mean difference.
+         *
+         * @return the upper bound.
+         */
+        public double getUpperBound()
+        {
+            return this.upperBound;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.metrics;
+
+import es.uam.eps.ir.contactrecaxioms.data.TestFastPreferenceData;
+import es.uam.eps.ir.ranksys.metrics.rel.IdealRelevanceModel;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Binary relevance model backed by the test edges: a candidate user is relevant to a target user
+ * if the edge between them appears in the test set. Relevance is checked by binary search over the
+ * test edges, so no per-user map is built.
+ *
+ * @param <U> Type of the users.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class TestRelevanceModel<U> extends IdealRelevanceModel<U, U>
+{
+    /**
+     * The test edges.
+     */
+    private final TestFastPreferenceData<U> testData;
+
+    /**
+     * Constructor.
+     *
+     * @param testData the test edges.
+     */
+    public TestRelevanceModel(TestFastPreferenceData<U> testData)
+    {
+        super(false, Stream.empty());
+        this.testData = testData;
+    }
+
+    @Override
+    protected UserTestRelevanceModel get(U u)
+    {
+        return new UserTestRelevanceModel(this.testData.user2uidx(u));
+    }
+
+    @Override
+    public UserTestRelevanceModel getModel(U u)
+    {
+        return (UserTestRelevanceModel) super.getModel(u);
+    }
+
+    /**
+     * Relevance model for a single target user.
+     */
+    public class UserTestRelevanceModel implements IdealRelevanceModel.UserIdealRelevanceModel<U, U>
+    {
+        /**
+         * Identifier of the target user (-1 if the user is not in the index).
+         */
+        private final int uidx;
+
+        /**
+         * Constructor.
+         *
+         * @param uidx identifier of the target user.
+         */
+        public UserTestRelevanceModel(int uidx)
+        {
+            this.uidx = uidx;
+        }
+
+        /**
+         * Checks whether a candidate user is relevant, using identifiers.
+         *
+         * @param iidx identifier of the candidate user.
+         *
+         * @return true if the candidate user is relevant, false otherwise.
+         */
+        public boolean isRelevant(int iidx)
+        {
+            return this.uidx >= 0 && iidx >= 0 && testData.containsPreference(this.uidx, iidx);
+        }
+
+        @Override
+        public boolean isRelevant(U v)
+        {
+            return this.isRelevant(testData.item2iidx(v));
+        }
+
+        @Override
+        public double gain(U v)
+        {
+            return this.isRelevant(v) ? 1.0 : 0.0;
+        }
+
+        /**
+         * Obtains the number of relevant users for the target user.
+         *
+         * @return the number of relevant users.
+         */
+        public int getNumRelevant()
+        {
+            return this.uidx >= 0 ? testData.numItems(this.uidx) : 0;
+        }
+
+        @Override
+        public Set<U> getRelevantItems()
+        {
+            if (this.uidx < 0)
+            {
+                return new HashSet<>();
+            }
+            return testData.getUidxPreferences(this.uidx).map(pref -> testData.iidx2item(pref.v1)).collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary columnar store for the values of a metric for each user and recommender configuration, so that
+ * later analyses (significance tests, breakdowns by user groups) do not need to run the recommenders again.
+ * <p>
+ * The file starts with a header (a magic number and the number of users), followed by one column for each
+ * configuration: the length of its name, the name (UTF-8, padded to a multiple of four bytes) and the value
+ * of the metric for each user, as floats indexed by the identifier of the user (NaN if the user was not
+ * evaluated). Columns are appended as configurations finish, and the reader maps them into memory.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class UserMetricStore
+{
+    /**
+     * Magic number identifying the files ("UMV1").
+     */
+    private static final int MAGIC = 0x554D5631;
+    /**
+     * Size of the header of the file (in bytes).
+     */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * Private constructor, to prevent instantiation.
+     */
+    private UserMetricStore()
+    {
+    }
+
+    /**
+     * Writes the values of a metric for each user into a file, one column per configuration. Columns can
+     * be written by different threads.
+     */
+    public static class Writer implements Closeable
+    {
+        /**
+         * The file channel.
+         */
+        private final FileChannel channel;
+        /**
+         * Number of users in each column.
+         */
+        private final int numUsers;
+
+        /**
+         * Constructor. Creates (or overwrites) the file.
+         *
+         * @param file     the file.
+         * @param numUsers number of users in each column.
+         *
+         * @throws IOException if something fails while creating the file.
+         */
+        public Writer(String file, int numUsers) throws IOException
+        {
+            this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.numUsers = numUsers;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(numUsers).flip();
+            this.writeFully(header);
+        }
+
+        /**
+         * Appends the column of a configuration.
+         *
+         * @param configuration the name of the configuration.
+         * @param values        the value of the metric for each user (NaN if the user was not evaluated).
+         *
+         * @throws IOException if something fails while writing the column.
+         */
+        public synchronized void write(String configuration, double[] values) throws IOException
+        {
+            if (values.length != this.numUsers)
+            {
+                throw new IllegalArgumentException("Expected " + this.numUsers + " values, found " + values.length);
+            }
+
+            byte[] name = configuration.getBytes(StandardCharsets.UTF_8);
+            int nameSize = (name.length + Integer.BYTES - 1) / Integer.BYTES * Integer.BYTES;
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + nameSize + Float.BYTES * this.numUsers);
+            buffer.putInt(name.length).put(name);
+            buffer.position(Integer.BYTES + nameSize);
+            for (double value : values)
+            {
+                buffer.putFloat((float) value);
+            }
+            buffer.flip();
+            this.writeFully(buffer);
+        }
+
+        /**
+         * Writes a buffer into the file.
+         *
+         * @param buffer the buffer.
+         *
+         * @throws IOException if something fails while writing.
+         */
+        private void writeFully(ByteBuffer buffer) throws IOException
+        {
+            while (buffer.hasRemaining())
+            {
+                this.channel.write(buffer);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException
+        {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Reads the values of a metric for each user from a file. The columns are mapped into memory when
+     * they are first accessed.
+     */
+    public static class Reader implements Closeable
+    {
+        /**
+         * The file channel.
+         */
+        private final FileChannel channel;
+        /**
+         * Number of users in each column.
+         */
+        private final int numUsers;
+        /**
+         * Position of the values of each configuration in the file, in order of appearance.
+         */
+        private final Map<String, Long> offsets;
+        /**
+         * Columns already mapped into memory.
+         */
+        private final Map<String, FloatBuffer> columns;
+
+        /**
+         * Constructor. Reads the names of the configurations in the file.
+         *
+         * @param file the file.
+         *
+         * @throws IOException if something fails while reading the file, or it is not a valid file.
+         */
+        public Reader(String file) throws IOException
+        {
+            this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+            this.offsets = new LinkedHashMap<>();
+            this.columns = new ConcurrentHashMap<>();
+
+            ByteBuffer header = this.read(0L, HEADER_SIZE);
+            if (header.getInt() != MAGIC)
+            {
+                this.channel.close();
+                throw new IOException("Invalid file " + file);
+            }
+            this.numUsers = header.getInt();
+
+            long columnSize = Float.BYTES * (long) this.numUsers;
+            long position = HEADER_SIZE;
+            long size = this.channel.size();
+            while (position + Integer.BYTES <= size)
+            {
+                int nameLength = this.read(position, Integer.BYTES).getInt();
+                ByteBuffer name = this.read(position + Integer.BYTES, nameLength);
+                int nameSize = (nameLength + Integer.BYTES - 1) / Integer.BYTES * Integer.BYTES;
+                long offset = position + Integer.BYTES + nameSize;
+                if (offset + columnSize > size) // Incomplete column (for instance, if the writer was interrupted).
+                {
+                    break;
+                }
+                this.offsets.put(new String(name.array(), StandardCharsets.UTF_8), offset);
+                position = offset + columnSize;
+            }
+        }
+
+        /**
+         * Reads a fragment of the file.
+         *
+         * @param position the position of the fragment.
+         * @param length   the length of the fragment.
+         *
+         * @return a buffer containing the fragment.
+         *
+         * @throws IOException if something fails while reading.
+         */
+        private ByteBuffer read(long position, int length) throws IOException
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining())
+            {
+                if (this.channel.read(buffer, position + buffer.position()) < 0)
+                {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        /**
+         * Obtains the number of users in each column.
+         *
+         * @return the number of users.
+         */
+        public int numUsers()
+        {
+            return this.numUsers;
+        }
+
+        /**
+         * Obtains the names of the configurations in the file.
+         *
+         * @return the names of the configurations, in the order in which they were written.
+         */
+        public List<String> getConfigurations()
+        {
+            return Collections.unmodifiableList(new ArrayList<>(this.offsets.keySet()));
+        }
+
+        /**
+         * Checks whether the file contains a configuration.
+         *
+         * @param configuration the name of the configuration.
+         *
+         * @return true if the file contains the configuration, false otherwise.
+         */
+        public boolean contains(String configuration)
+        {
+            return this.offsets.containsKey(configuration);
+        }
+
+        /**
+         * Obtains the column of a configuration, mapping it into memory if necessary.
+         *
+         * @param configuration the name of the configuration.
+         *
+         * @return the column.
+         */
+        private FloatBuffer column(String configuration)
+        {
+            Long offset = this.offsets.get(configuration);
+            if (offset == null)
+            {
+                throw new IllegalArgumentException("Unknown configuration " + configuration);
+            }
+
+            return this.columns.computeIfAbsent(configuration, conf ->
+            {
+                try
+                {
+                    return this.channel.map(FileChannel.MapMode.READ_ONLY, offset, Float.BYTES * (long) this.numUsers).asFloatBuffer();
+                }
+                catch (IOException ioe)
+                {
+                    throw new IllegalStateException("Could not map the column of " + conf, ioe);
+                }
+            });
+        }
+
+        /**
+         * Obtains the value of the metric for a user.
+         *
+         * @param configuration the name of the configuration.
+         * @param uidx          identifier of the user.
+         *
+         * @return the value of the metric (NaN if the user was not evaluated).
+         */
+        public float getValue(String configuration, int uidx)
+        {
+            return this.column(configuration).get(uidx);
+        }
+
+        /**
+         * Obtains the value of the metric for every user.
+         *
+         * @param configuration the name of the configuration.
+         *
+         * @return the values, indexed by the identifier of the user.
+         */
+        public float[] getValues(String configuration)
+        {
+            float[] values = new float[this.numUsers];
+            this.column(configuration).duplicate().get(values);
+            return values;
+        }
+
+        /**
+         * Obtains the value of the metric for a group of users.
+         *
+         * @param configuration the name of the configuration.
+         * @param uidxs         identifiers of the users in the group.
+         *
+         * @return the values, in the order of the users in the group.
+         */
+        public float[] getValues(String configuration, int[] uidxs)
+        {
+            FloatBuffer column = this.column(configuration);
+            float[] values = new float[uidxs.length];
+            for (int i = 0; i < uidxs.length; ++i)
+            {
+                values[i] = column.get(uidxs[i]);
+            }
+            return values;
+        }
+
+        /**
+         * Computes the average value of the metric over a group of users, ignoring the users that were not
+         * evaluated.
+         *
+         * @param configuration the name of the configuration.
+         * @param uidxs         identifiers of the users in the group.
+         *
+         * @return the average value (NaN if no user in the group was evaluated).
+         */
+        public double getMean(String configuration, int[] uidxs)
+        {
+            FloatBuffer column = this.column(configuration);
+            double sum = 0.0;
+            int count = 0;
+            for (int uidx : uidxs)
+            {
+                float value = column.get(uidx);
+                if (!Float.isNaN(value))
+                {
+                    sum += value;
+                    count++;
+                }
+            }
+            return count > 0 ? sum / count : Double.NaN;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.columns.clear();
+            this.channel.close();
+        }
+    }
+}
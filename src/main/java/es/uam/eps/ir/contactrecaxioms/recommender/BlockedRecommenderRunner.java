@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.recommender;
+
+import es.uam.eps.ir.contactrecaxioms.data.GraphIndex;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.ranksys.core.Recommendation;
+import es.uam.eps.ir.ranksys.fast.FastRecommendation;
+import es.uam.eps.ir.ranksys.rec.Recommender;
+import es.uam.eps.ir.ranksys.rec.runner.RecommenderRunner;
+import es.uam.eps.ir.ranksys.rec.runner.fast.FastFilterRecommenderRunner;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.ranksys.core.util.tuples.Tuple2od;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Recommender runner that generates the recommendations for blocks of target users at once. Target users
+ * are grouped by their most popular neighbor, so the users in a block are likely to share intermediate users,
+ * and recommenders supporting block scoring (see {@link UserFastRankingRecommender#isBlockScoring()}) only
+ * have to read the neighborhood of each shared intermediate user once per block. Blocks are processed in
+ * parallel. Recommenders without block scoring are run for each target user separately. When most of the users
+ * are targets, and both the recommender (see {@link UserFastRankingRecommender#isSymmetric()}) and the filter
+ * are symmetric, all recommendations are generated at once, scoring each pair of users only once.
+ *
+ * @param <U> Type of the users.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class BlockedRecommenderRunner<U> implements RecommenderRunner<U, U>
+{
+    /**
+     * Default number of target users in each block.
+     */
+    private static final int DEFAULT_BLOCK_SIZE = 64;
+    /**
+     * Minimum fraction of target users for scoring each pair of users only once in symmetric recommenders.
+     */
+    private static final double MIN_SYMMETRIC_FRACTION = 0.5;
+
+    /**
+     * The user index.
+     */
+    private final GraphIndex<U> index;
+    /**
+     * The target users.
+     */
+    private final List<U> users;
+    /**
+     * The filter for the candidate users of each target user.
+     */
+    private final Function<U, IntPredicate> filter;
+    /**
+     * Whether the filter is symmetric or not.
+     */
+    private final boolean symmetricFilter;
+    /**
+     * Maximum length of the recommendations.
+     */
+    private final int maxLength;
+    /**
+     * Number of target users in each block.
+     */
+    private final int blockSize;
+
+    /**
+     * Constructor.
+     *
+     * @param index     the user index.
+     * @param users     the target users.
+     * @param filter    the filter for the candidate users of each target user.
+     * @param maxLength maximum length of the recommendations.
+     */
+    public BlockedRecommenderRunner(GraphIndex<U> index, Stream<U> users, Function<U, IntPredicate> filter, int maxLength)
+    {
+        this(index, users, filter, false, maxLength);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param index           the user index.
+     * @param users           the target users.
+     * @param filter          the filter for the candidate users of each target user.
+     * @param symmetricFilter true if the filter is symmetric (v passes the filter of u if and only if u passes
+     *                        the filter of v, as when the neighbors in the UND orientation are excluded), false otherwise.
+     * @param maxLength       maximum length of the recommendations.
+     */
+    public BlockedRecommenderRunner(GraphIndex<U> index, Stream<U> users, Function<U, IntPredicate> filter, boolean symmetricFilter, int maxLength)
+    {
+        this(index, users, filter, symmetricFilter, maxLength, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param index           the user index.
+     * @param users           the target users.
+     * @param filter          the filter for the candidate users of each target user.
+     * @param symmetricFilter true if the filter is symmetric, false otherwise.
+     * @param maxLength       maximum length of the recommendations.
+     * @param blockSize       number of target users in each block.
+     */
+    public BlockedRecommenderRunner(GraphIndex<U> index, Stream<U> users, Function<U, IntPredicate> filter, boolean symmetricFilter, int maxLength, int blockSize)
+    {
+        this.index = index;
+        this.users = users.sorted().collect(Collectors.toList());
+        this.filter = filter;
+        this.symmetricFilter = symmetricFilter;
+        this.maxLength = maxLength;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public void run(Recommender<U, U> recommender, Consumer<Recommendation<U, U>> consumer)
+    {
+        if (!(recommender instanceof UserFastRankingRecommender) || !((UserFastRankingRecommender<U>) recommender).isBlockScoring())
+        {
+            new FastFilterRecommenderRunner<>(index, index, users.stream(), filter, maxLength).run(recommender, consumer);
+            return;
+        }
+
+        UserFastRankingRecommender<U> rec = (UserFastRankingRecommender<U>) recommender;
+
+        // Users out of the index receive an empty recommendation.
+        users.stream().filter(u -> !index.containsUser(u)).forEach(u -> consumer.accept(new Recommendation<>(u, Collections.emptyList())));
+
+        // Filters are created when needed, so they are never kept for all the target users at once.
+        if (symmetricFilter && rec.isSymmetric() && users.size() >= MIN_SYMMETRIC_FRACTION * index.numUsers())
+        {
+            int[] uidxs = users.stream().filter(index::containsUser).mapToInt(index::user2uidx).toArray();
+            List<FastRecommendation> recs = rec.getSymmetricRecommendations(uidxs, maxLength, uidx -> filter.apply(index.uidx2user(uidx)));
+            if (recs != null)
+            {
+                this.consume(recs, consumer);
+                return;
+            }
+        }
+
+        int[] uidxs = this.groupUsers(rec.getGraph());
+
+        int numBlocks = (uidxs.length + blockSize - 1) / blockSize;
+        IntStream.range(0, numBlocks).parallel().forEach(block ->
+        {
+            int[] blockUidxs = Arrays.copyOfRange(uidxs, block * blockSize, Math.min(uidxs.length, (block + 1) * blockSize));
+            IntPredicate[] filters = new IntPredicate[blockUidxs.length];
+            for (int i = 0; i < blockUidxs.length; ++i)
+            {
+                filters[i] = filter.apply(index.uidx2user(blockUidxs[i]));
+            }
+
+            this.consume(rec.getRecommendations(blockUidxs, maxLength, filters), consumer);
+        });
+    }
+
+    /**
+     * Sends a list of recommendations to the consumer.
+     *
+     * @param recs     the recommendations.
+     * @param consumer the consumer.
+     */
+    private void consume(List<FastRecommendation> recs, Consumer<Recommendation<U, U>> consumer)
+    {
+        for (FastRecommendation fastRec : recs)
+        {
+            U u = index.uidx2user(fastRec.getUidx());
+            List<Tuple2od<U>> items = fastRec.getIidxs().stream()
+                    .map(iv -> new Tuple2od<>(index.iidx2item(iv.v1), iv.v2))
+                    .collect(Collectors.toList());
+            consumer.accept(new Recommendation<>(u, items));
+        }
+    }
+
+    /**
+     * Sorts the target users so that users sharing their most popular neighbor are contiguous.
+     *
+     * @param graph the graph.
+     *
+     * @return the identifiers of the target users, in order.
+     */
+    private int[] groupUsers(FastGraph<U> graph)
+    {
+        int[] uidxs = users.stream().filter(index::containsUser).mapToInt(index::user2uidx).toArray();
+        int[] hubs = new int[uidxs.length];
+        for (int i = 0; i < uidxs.length; ++i)
+        {
+            hubs[i] = graph.getNeighborhood(uidxs[i], EdgeOrientation.UND)
+                    .max((w, z) ->
+                    {
+                        int cmp = Long.compare(graph.getNeighborhoodSize(w, EdgeOrientation.UND), graph.getNeighborhoodSize(z, EdgeOrientation.UND));
+                        return cmp != 0 ? cmp : Integer.compare(z, w);
+                    }).orElse(-1);
+        }
+
+        int[] order = new int[uidxs.length];
+        for (int i = 0; i < order.length; ++i)
+        {
+            order[i] = i;
+        }
+        IntArrays.quickSort(order, (x, y) ->
+        {
+            int cmp = Integer.compare(hubs[x], hubs[y]);
+            return cmp != 0 ? cmp : Integer.compare(uidxs[x], uidxs[y]);
+        });
+
+        int[] sorted = new int[uidxs.length];
+        for (int i = 0; i < order.length; ++i)
+        {
+            sorted[i] = uidxs[order[i]];
+        }
+        return sorted;
+    }
+}
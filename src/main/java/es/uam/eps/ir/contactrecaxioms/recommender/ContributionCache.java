@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.recommender;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.EdgeWeightFunction;
+import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded cache for the contributions of the intermediate users to the scores of their candidate users. In
+ * neighborhood-based recommenders, the contribution of an intermediate user to a candidate user usually does not
+ * depend on the target user, so the contributions of hubs (which appear in the neighborhoods of many target users)
+ * are computed once, and reused by every target user (and every thread) until they are evicted.
+ *
+ * <p>Each recommender owns its cache, so entries are identified by the intermediate user, and they are released
+ * along with the recommender (or explicitly, see {@link #clear()}) once its run finishes. Only intermediate users
+ * with, at least, a minimum number of candidates are cached. The cache is split into segments, each of them
+ * holding a fraction of the memory, where the least recently used entries are evicted first.</p>
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class ContributionCache
+{
+    /**
+     * Default maximum memory used by the cache (in bytes).
+     */
+    public static final long DEFAULT_MAX_MEMORY = 256L * 1024L * 1024L;
+    /**
+     * Default minimum number of candidates of an intermediate user for caching its contributions.
+     */
+    public static final int DEFAULT_MIN_DEGREE = 1024;
+    /**
+     * Number of segments of the cache.
+     */
+    private static final int NUM_SEGMENTS = 16;
+
+    /**
+     * The segments of the cache.
+     */
+    private final Segment[] segments;
+    /**
+     * Minimum number of candidates of an intermediate user for caching its contributions.
+     */
+    private final int minDegree;
+    /**
+     * Number of requests answered by the cache.
+     */
+    private final LongAdder hits = new LongAdder();
+    /**
+     * Number of requests where the contributions had to be computed.
+     */
+    private final LongAdder misses = new LongAdder();
+    /**
+     * Number of evicted entries.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param maxMemory maximum memory used by the cache (in bytes).
+     * @param minDegree minimum number of candidates of an intermediate user for caching its contributions.
+     */
+    public ContributionCache(long maxMemory, int minDegree)
+    {
+        this.minDegree = minDegree;
+        this.segments = new Segment[NUM_SEGMENTS];
+        for (int i = 0; i < NUM_SEGMENTS; ++i)
+        {
+            this.segments[i] = new Segment(maxMemory / NUM_SEGMENTS);
+        }
+    }
+
+    /**
+     * Constructor. It uses the default maximum memory and minimum number of candidates.
+     */
+    public ContributionCache()
+    {
+        this(DEFAULT_MAX_MEMORY, DEFAULT_MIN_DEGREE);
+    }
+
+    /**
+     * Checks whether the contributions of an intermediate user are cached, given its number of candidates.
+     *
+     * @param degree the number of candidates of the intermediate user.
+     *
+     * @return true if the contributions are cached, false if they have to be computed each time.
+     */
+    public boolean accepts(double degree)
+    {
+        return degree >= this.minDegree;
+    }
+
+    /**
+     * Finds the intermediate users whose contributions are cached. Recommenders find them once, as the size of
+     * some neighborhoods (undirected or mutual ones) is only obtained by walking them.
+     *
+     * @param graph       the graph.
+     * @param orientation the selection of the candidates of the intermediate users.
+     *
+     * @return the identifiers of the intermediate users whose contributions are cached.
+     */
+    public BitSet hubs(FastGraph<?> graph, EdgeOrientation orientation)
+    {
+        BitSet hubs = new BitSet((int) graph.getVertexCount());
+        graph.getAllNodesIds().filter(widx -> this.accepts(graph.getNeighborhoodSize(widx, orientation))).forEach(hubs::set);
+        return hubs;
+    }
+
+    /**
+     * Obtains the contributions of an intermediate user, computing them if they are not in the cache.
+     *
+     * @param widx   identifier of the intermediate user.
+     * @param loader function for computing the contributions.
+     *
+     * @return the contributions.
+     */
+    public Contributions get(int widx, Supplier<Contributions> loader)
+    {
+        Segment segment = this.segments[(widx & 0x7FFFFFFF) % NUM_SEGMENTS];
+
+        Contributions contributions = segment.get(widx);
+        if (contributions != null)
+        {
+            this.hits.increment();
+            return contributions;
+        }
+
+        // Computed out of the lock: concurrent misses on the same entry might compute it more than once.
+        this.misses.increment();
+        contributions = loader.get();
+        this.evictions.add(segment.put(widx, contributions));
+        return contributions;
+    }
+
+    /**
+     * Obtains the number of requests answered by the cache.
+     *
+     * @return the number of hits.
+     */
+    public long getHits()
+    {
+        return this.hits.sum();
+    }
+
+    /**
+     * Obtains the number of requests where the contributions had to be computed.
+     *
+     * @return the number of misses.
+     */
+    public long getMisses()
+    {
+        return this.misses.sum();
+    }
+
+    /**
+     * Obtains the number of entries evicted from the cache.
+     *
+     * @return the number of evictions.
+     */
+    public long getEvictions()
+    {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Obtains the memory currently used by the cached contributions.
+     *
+     * @return the memory (in bytes).
+     */
+    public long getMemoryUsage()
+    {
+        long memory = 0L;
+        for (Segment segment : this.segments)
+        {
+            memory += segment.getMemoryUsage();
+        }
+        return memory;
+    }
+
+    /**
+     * Removes all the entries of the cache.
+     */
+    public void clear()
+    {
+        for (Segment segment : this.segments)
+        {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Contributions of an intermediate user to the scores of its candidate users.
+     */
+    public static class Contributions
+    {
+        /**
+         * The candidate users.
+         */
+        private final int[] candidates;
+        /**
+         * The contribution to each candidate user.
+         */
+        private final double[] values;
+
+        /**
+         * Constructor.
+         *
+         * @param candidates the candidate users.
+         * @param values     the contribution to each candidate user, in the same order.
+         */
+        public Contributions(int[] candidates, double[] values)
+        {
+            this.candidates = candidates;
+            this.values = values;
+        }
+
+        /**
+         * Computes the contributions of an intermediate user.
+         *
+         * @param <U>    type of the users.
+         * @param graph  the graph.
+         * @param widx   identifier of the intermediate user.
+         * @param vSel   the neighborhood selection of the intermediate user containing the candidate users.
+         * @param impact function for computing the contribution from the edge between the intermediate and candidate users.
+         *
+         * @return the contributions.
+         */
+        public static <U> Contributions of(FastGraph<U> graph, int widx, EdgeOrientation vSel, EdgeWeightFunction impact)
+        {
+            List<IdxPref> neighbors = graph.getNeighborhoodWeights(widx, vSel).collect(Collectors.toList());
+            int[] candidates = new int[neighbors.size()];
+            double[] values = new double[neighbors.size()];
+            for (int i = 0; i < candidates.length; ++i)
+            {
+                IdxPref pref = neighbors.get(i);
+                candidates[i] = pref.v1;
+                values[i] = impact.apply(widx, pref.v1, pref.v2);
+            }
+            return new Contributions(candidates, values);
+        }
+
+        /**
+         * Obtains the number of candidate users.
+         *
+         * @return the number of candidate users.
+         */
+        public int size()
+        {
+            return this.candidates.length;
+        }
+
+        /**
+         * Obtains a candidate user.
+         *
+         * @param i the position of the candidate user.
+         *
+         * @return the identifier of the candidate user.
+         */
+        public int candidate(int i)
+        {
+            return this.candidates[i];
+        }
+
+        /**
+         * Obtains the contribution to a candidate user.
+         *
+         * @param i the position of the candidate user.
+         *
+         * @return the contribution.
+         */
+        public double value(int i)
+        {
+            return this.values[i];
+        }
+
+        /**
+         * Obtains the memory used by the contributions.
+         *
+         * @return the memory (in bytes).
+         */
+        long getMemoryUsage()
+        {
+            return (Integer.BYTES + Double.BYTES) * (long) this.candidates.length;
+        }
+    }
+
+    /**
+     * Segment of the cache, where the least recently used entries are evicted when the memory is exceeded.
+     */
+    private static class Segment
+    {
+        /**
+         * The entries, in access order.
+         */
+        private final LinkedHashMap<Integer, Contributions> entries = new LinkedHashMap<>(16, 0.75f, true);
+        /**
+         * Maximum memory used by the segment.
+         */
+        private final long maxMemory;
+        /**
+         * Memory currently used by the segment.
+         */
+        private long memory = 0L;
+
+        /**
+         * Constructor.
+         *
+         * @param maxMemory maximum memory used by the segment.
+         */
+        Segment(long maxMemory)
+        {
+            this.maxMemory = maxMemory;
+        }
+
+        /**
+         * Obtains an entry.
+         *
+         * @param widx identifier of the intermediate user.
+         *
+         * @return the contributions, or null if they are not in the segment.
+         */
+        synchronized Contributions get(int widx)
+        {
+            return this.entries.get(widx);
+        }
+
+        /**
+         * Adds an entry, evicting the least recently used ones if the memory is exceeded. Entries larger
+         * than the segment are not stored.
+         *
+         * @param widx          identifier of the intermediate user.
+         * @param contributions the contributions.
+         *
+         * @return the number of evicted entries.
+         */
+        synchronized int put(int widx, Contributions contributions)
+        {
+            long size = contributions.getMemoryUsage();
+            if (size > this.maxMemory)
+            {
+                return 0;
+            }
+
+            Contributions previous = this.entries.put(widx, contributions);
+            this.memory += size - (previous != null ? previous.getMemoryUsage() : 0L);
+
+            int evicted = 0;
+            Iterator<Map.Entry<Integer, Contributions>> it = this.entries.entrySet().iterator();
+            while (this.memory > this.maxMemory && it.hasNext())
+            {
+                Map.Entry<Integer, Contributions> eldest = it.next();
+                if (eldest.getKey() == widx)
+                {
+                    continue;
+                }
+                this.memory -= eldest.getValue().getMemoryUsage();
+                it.remove();
+                ++evicted;
+            }
+            return evicted;
+        }
+
+        /**
+         * Obtains the memory used by the segment.
+         *
+         * @return the memory (in bytes).
+         */
+        synchronized long getMemoryUsage()
+        {
+            return this.memory;
+        }
+
+        /**
+         * Removes all the entries of the segment.
+         */
+        synchronized void clear()
+        {
+            this.entries.clear();
+            this.memory = 0L;
+        }
+    }
+}
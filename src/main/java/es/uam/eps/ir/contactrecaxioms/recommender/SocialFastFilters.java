@@ -10,8 +10,10 @@
 package es.uam.eps.ir.contactrecaxioms.recommender;
 
 import es.uam.eps.ir.contactrecaxioms.data.GraphIndex;
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 
+import java.util.BitSet;
 import java.util.function.Function;
 import java.util.function.IntPredicate;
 
@@ -36,7 +38,11 @@ public class SocialFastFilters
      */
     public static <U> Function<U, IntPredicate> notInTrain(FastGraph<U> trainGraph, GraphIndex<U> gindex)
     {
-        return uidx -> iidx -> !trainGraph.containsEdge(uidx, gindex.uidx2user(iidx));
+        return u ->
+        {
+            BitSet excluded = excluded(trainGraph, gindex.user2uidx(u), EdgeOrientation.OUT, false);
+            return iidx -> !excluded.get(iidx);
+        };
     }
 
     /**
@@ -64,7 +70,58 @@ public class SocialFastFilters
      */
     public static <U> Function<U, IntPredicate> notReciprocal(FastGraph<U> trainGraph, GraphIndex<U> gindex)
     {
-        return uidx -> iidx -> !trainGraph.containsEdge(gindex.uidx2user(iidx), uidx);
+        return u ->
+        {
+            BitSet excluded = excluded(trainGraph, gindex.user2uidx(u), EdgeOrientation.IN, false);
+            return iidx -> !excluded.get(iidx);
+        };
+    }
+
+    /**
+     * Prevents recommenders from recommending users to themselves, and from recommending the neighbors
+     * of the target user in the training graph. For each target user, the excluded users are computed
+     * once from its neighborhood, so every candidate is checked in constant time. Using the UND orientation,
+     * it is equivalent to combining the notSelf, notInTrain and notReciprocal filters.
+     *
+     * @param <U>         Type of the users.
+     * @param trainGraph  the original graph.
+     * @param gindex      the graph index (built over the original graph).
+     * @param orientation the orientation of the neighborhood to exclude.
+     *
+     * @return the filter.
+     */
+    public static <U> Function<U, IntPredicate> notInNeighbourhood(FastGraph<U> trainGraph, GraphIndex<U> gindex, EdgeOrientation orientation)
+    {
+        return u ->
+        {
+            BitSet excluded = excluded(trainGraph, gindex.user2uidx(u), orientation, true);
+            return iidx -> !excluded.get(iidx);
+        };
+    }
+
+    /**
+     * Obtains the set of users in the neighborhood of a target user.
+     *
+     * @param <U>         Type of the users.
+     * @param trainGraph  the original graph.
+     * @param uidx        identifier of the target user.
+     * @param orientation the orientation of the neighborhood.
+     * @param self        whether to include the target user in the set.
+     *
+     * @return a bitset containing the identifiers of the users in the neighborhood.
+     */
+    private static <U> BitSet excluded(FastGraph<U> trainGraph, int uidx, EdgeOrientation orientation, boolean self)
+    {
+        BitSet excluded = new BitSet();
+        if (uidx >= 0)
+        {
+            trainGraph.getNeighborhood(uidx, orientation).forEach(excluded::set);
+            if (self)
+            {
+                excluded.set(uidx);
+            }
+        }
+        return excluded;
     }
 
     /**
@@ -13,7 +13,16 @@ import es.uam.eps.ir.contactrecaxioms.data.FastGraphIndex;
 import es.uam.eps.ir.contactrecaxioms.data.GraphIndex;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SimilarityJoin;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SpGEMMScorer;
+import es.uam.eps.ir.ranksys.fast.FastRecommendation;
 import es.uam.eps.ir.ranksys.rec.fast.FastRankingRecommender;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
 
 /**
  * Abstract class for user recommendation in social networks.
@@ -29,6 +38,22 @@ public abstract class UserFastRankingRecommender<U> extends FastRankingRecommend
      * The graph which represents the social network relations.
      */
     protected final FastGraph<U> graph;
+    /**
+     * The sparse matrix formulation of the recommender (null if it does not exist).
+     */
+    private volatile SpGEMMScorer scorer;
+    /**
+     * Whether the sparse matrix formulation has already been built.
+     */
+    private volatile boolean scorerBuilt = false;
+    /**
+     * The similarity join formulation of the recommender (null if it does not exist).
+     */
+    private volatile SimilarityJoin join;
+    /**
+     * Whether the similarity join formulation has already been built.
+     */
+    private volatile boolean joinBuilt = false;
 
     /**
      * Constructor.
@@ -62,6 +87,191 @@ public abstract class UserFastRankingRecommender<U> extends FastRankingRecommend
         return this.graph;
     }
 
+    /**
+     * Builds the sparse matrix formulation of the recommender, if it exists (see {@link SpGEMMScorer}).
+     * By default, recommenders do not have a sparse matrix formulation.
+     *
+     * @return the sparse matrix scorer, or null if the recommender cannot be expressed as a sparse matrix product.
+     */
+    protected SpGEMMScorer createSparseScorer()
+    {
+        return null;
+    }
+
+    /**
+     * Obtains the sparse matrix formulation of the recommender. It is only built the first time it is needed.
+     *
+     * @return the sparse matrix scorer, or null if the recommender cannot be expressed as a sparse matrix product.
+     */
+    public SpGEMMScorer getSparseScorer()
+    {
+        if (!this.scorerBuilt)
+        {
+            synchronized (this)
+            {
+                if (!this.scorerBuilt)
+                {
+                    this.scorer = this.createSparseScorer();
+                    this.scorerBuilt = true;
+                }
+            }
+        }
+        return this.scorer;
+    }
+
+    /**
+     * Builds the similarity join formulation of the recommender, if it exists (see {@link SimilarityJoin}).
+     * By default, recommenders do not have a similarity join formulation.
+     *
+     * @return the similarity join, or null if the recommender cannot be expressed as a similarity join.
+     */
+    protected SimilarityJoin createSimilarityJoin()
+    {
+        return null;
+    }
+
+    /**
+     * Obtains the similarity join formulation of the recommender. It is only built the first time it is needed.
+     *
+     * @return the similarity join, or null if the recommender cannot be expressed as a similarity join.
+     */
+    public SimilarityJoin getSimilarityJoin()
+    {
+        if (!this.joinBuilt)
+        {
+            synchronized (this)
+            {
+                if (!this.joinBuilt)
+                {
+                    this.join = this.createSimilarityJoin();
+                    this.joinBuilt = true;
+                }
+            }
+        }
+        return this.join;
+    }
+
+    /**
+     * Obtains the memory used by the edge impacts precomputed by the recommender, if any.
+     *
+     * @return the memory used by the impacts (in bytes), or 0 if the recommender does not precompute them.
+     */
+    public long getImpactMemory()
+    {
+        return 0L;
+    }
+
+    /**
+     * Obtains the cache for the contributions of the hub intermediate users used by the recommender, if any
+     * (see {@link ContributionCache}).
+     *
+     * @return the cache, or null if the recommender does not cache contributions.
+     */
+    public ContributionCache getContributionCache()
+    {
+        return null;
+    }
+
+    /**
+     * Indicates whether the recommender scores blocks of target users together (see {@link #getScoresMaps(int[])}).
+     * Otherwise, block recommendation just recommends to each target user separately.
+     *
+     * @return true if blocks of target users are scored together, false otherwise.
+     */
+    public boolean isBlockScoring()
+    {
+        return this.getSimilarityJoin() != null || this.getSparseScorer() != null;
+    }
+
+    /**
+     * Obtains the scores for a block of target users. By default, each target user is scored separately.
+     *
+     * @param uidxs identifiers of the target users.
+     *
+     * @return the scores map of each target user, in the same order as the identifiers.
+     */
+    public Int2DoubleMap[] getScoresMaps(int[] uidxs)
+    {
+        SpGEMMScorer sparseScorer = this.getSparseScorer();
+        if (sparseScorer != null)
+        {
+            return sparseScorer.getScoresMaps(uidxs);
+        }
+
+        Int2DoubleMap[] maps = new Int2DoubleMap[uidxs.length];
+        for (int i = 0; i < uidxs.length; ++i)
+        {
+            maps[i] = this.getScoresMap(uidxs[i]);
+        }
+        return maps;
+    }
+
+    /**
+     * Generates the recommendations for a block of target users.
+     *
+     * @param uidxs     identifiers of the target users.
+     * @param maxLength maximum length of each recommendation.
+     * @param filters   the filter for the candidates of each target user, in the same order as the identifiers.
+     *
+     * @return the recommendation for each target user, in the same order as the identifiers.
+     */
+    public List<FastRecommendation> getRecommendations(int[] uidxs, int maxLength, IntPredicate[] filters)
+    {
+        SimilarityJoin similarityJoin = this.getSimilarityJoin();
+        if (similarityJoin != null)
+        {
+            return similarityJoin.getRecommendations(uidxs, maxLength, filters);
+        }
+
+        SpGEMMScorer sparseScorer = this.getSparseScorer();
+        if (sparseScorer != null)
+        {
+            return sparseScorer.getRecommendations(uidxs, maxLength, filters);
+        }
+
+        List<FastRecommendation> recs = new ArrayList<>(uidxs.length);
+        for (int i = 0; i < uidxs.length; ++i)
+        {
+            recs.add(this.getRecommendation(uidxs[i], maxLength, filters[i]));
+        }
+        return recs;
+    }
+
+    /**
+     * Indicates whether the scores of the recommender are symmetric, i.e. the score of a candidate user v for a
+     * target user u is equal to the score of u for v. By default, recommenders are not symmetric.
+     *
+     * @return true if the scores are symmetric, false otherwise.
+     */
+    public boolean isSymmetric()
+    {
+        return false;
+    }
+
+    /**
+     * Generates the recommendations for a large set of target users, scoring each pair of users only once
+     * (see {@link SpGEMMScorer#getSymmetricRecommendations(int[], int, IntFunction)}). It is only possible when the
+     * recommender is symmetric and it is computed as a sparse matrix product which is not a similarity join (which
+     * prunes most of the pairs).
+     *
+     * @param uidxs     identifiers of the target users.
+     * @param maxLength maximum length of each recommendation.
+     * @param filter    function providing the filter for the candidates of any user. It must be symmetric, i.e.
+     *                  v passes the filter of u if and only if u passes the filter of v.
+     *
+     * @return the recommendation for each target user, in the same order as the identifiers, or null if the pairs
+     *         of users cannot be scored only once.
+     */
+    public List<FastRecommendation> getSymmetricRecommendations(int[] uidxs, int maxLength, IntFunction<IntPredicate> filter)
+    {
+        if (!this.isSymmetric() || this.getSimilarityJoin() != null)
+        {
+            return null;
+        }
+        SpGEMMScorer sparseScorer = this.getSparseScorer();
+        return sparseScorer != null ? sparseScorer.getSymmetricRecommendations(uidxs, maxLength, filter) : null;
+    }
+
     /**
      * Obtains the weight of an edge.
      *
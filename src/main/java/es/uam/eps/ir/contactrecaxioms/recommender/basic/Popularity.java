@@ -12,11 +12,19 @@ package es.uam.eps.ir.contactrecaxioms.recommender.basic;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.ranksys.fast.FastRecommendation;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.ranksys.core.util.tuples.Tuple2id;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
 
 /**
- * Popularity recommender. Recommends users according to their degree.
+ * Popularity recommender. Recommends users according to their degree. The ranking of the candidate
+ * users is computed once, when the recommender is built, and shared by all target users.
  *
  * @param <U> Type of the users.
  *
@@ -31,6 +39,14 @@ public class Popularity<U> extends UserFastRankingRecommender<U>
      * Link orientation for selecting the neighbours of the candidate node.
      */
     private final EdgeOrientation vSel;
+    /**
+     * Popularity of each candidate user.
+     */
+    private final double[] popularity;
+    /**
+     * Identifiers of the candidate users, sorted by decreasing popularity.
+     */
+    private final int[] ranking;
 
     /**
      * Constructor for recommendation mode.
@@ -42,6 +58,21 @@ public class Popularity<U> extends UserFastRankingRecommender<U>
     {
         super(graph);
         this.vSel = vSel;
+
+        this.popularity = new double[this.numItems()];
+        this.getAllUsers().forEach(v -> this.popularity[this.item2iidx(v)] = graph.getNeighborhoodSize(graph.object2idx(v), vSel) + 0.0);
+
+        // Ties are broken as in the top-N selection of ranking recommenders: greater identifiers go first.
+        this.ranking = new int[this.numItems()];
+        for (int iidx = 0; iidx < this.ranking.length; ++iidx)
+        {
+            this.ranking[iidx] = iidx;
+        }
+        IntArrays.parallelQuickSort(this.ranking, (x, y) ->
+        {
+            int cmp = Double.compare(this.popularity[y], this.popularity[x]);
+            return cmp != 0 ? cmp : Integer.compare(y, x);
+        });
     }
 
     /**
@@ -51,21 +82,40 @@ public class Popularity<U> extends UserFastRankingRecommender<U>
      */
     public Popularity(FastGraph<U> graph)
     {
-        super(graph);
-        this.vSel = EdgeOrientation.IN;
+        this(graph, EdgeOrientation.IN);
     }
 
     @Override
     public Int2DoubleMap getScoresMap(int uidx)
     {
-        U u = this.uidx2user(uidx);
-
         Int2DoubleMap scoresMap = new Int2DoubleOpenHashMap();
         scoresMap.defaultReturnValue(-1.0);
 
-        this.getAllUsers().forEach(v -> scoresMap.put(this.item2iidx(v), this.getGraph().getNeighbourhoodSize(v, vSel) + 0.0));
+        for (int iidx = 0; iidx < this.popularity.length; ++iidx)
+        {
+            scoresMap.put(iidx, this.popularity[iidx]);
+        }
         return scoresMap;
     }
 
+    @Override
+    public FastRecommendation getRecommendation(int uidx, int maxLength, IntPredicate filter)
+    {
+        List<Tuple2id> items = new ArrayList<>();
+        if (uidx == -1)
+        {
+            return new FastRecommendation(uidx, items);
+        }
 
+        // Scan the global ranking, skipping the filtered candidates.
+        for (int i = 0; i < this.ranking.length && items.size() < maxLength; ++i)
+        {
+            int iidx = this.ranking[i];
+            if (filter.test(iidx))
+            {
+                items.add(new Tuple2id(iidx, this.popularity[iidx]));
+            }
+        }
+        return new FastRecommendation(uidx, items);
+    }
 }
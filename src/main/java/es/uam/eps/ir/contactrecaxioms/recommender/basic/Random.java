@@ -11,11 +11,22 @@ package es.uam.eps.ir.contactrecaxioms.recommender.basic;
 
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.ranksys.fast.FastRecommendation;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.ranksys.core.util.tuples.Tuple2id;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
 
 /**
- * Recommends users randomly.
+ * Recommends users randomly. Each target user has its own random number generator, derived from
+ * a global seed and the identifier of the user, so recommendations do not depend on the order
+ * in which target users are processed.
  *
  * @param <U> type of the users
  *
@@ -27,9 +38,9 @@ import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 public class Random<U> extends UserFastRankingRecommender<U>
 {
     /**
-     * Random number generator.
+     * Global seed for the random number generators.
      */
-    private final java.util.Random random;
+    private final long seed;
 
     /**
      * Constructor.
@@ -50,7 +61,23 @@ public class Random<U> extends UserFastRankingRecommender<U>
     public Random(FastGraph<U> graph, long seed)
     {
         super(graph);
-        this.random = new java.util.Random(seed);
+        this.seed = seed;
+    }
+
+    /**
+     * Obtains the random number generator for a target user.
+     *
+     * @param uidx identifier of the target user.
+     *
+     * @return the random number generator.
+     */
+    private SplittableRandom getRandom(int uidx)
+    {
+        // Mix the seed and the user, so that close users do not get overlapping sequences.
+        long z = this.seed + 0x9E3779B97F4A7C15L * (uidx + 1L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new SplittableRandom(z ^ (z >>> 31));
     }
 
     @Override
@@ -58,11 +85,39 @@ public class Random<U> extends UserFastRankingRecommender<U>
     {
         Int2DoubleMap map = new Int2DoubleOpenHashMap();
         map.defaultReturnValue(Double.NEGATIVE_INFINITY);
-        U u = uIndex.uidx2user(i);
 
+        SplittableRandom random = this.getRandom(i);
         iIndex.getAllIidx().forEach(iidx -> map.put(iidx, random.nextDouble()));
 
         return map;
     }
 
+    @Override
+    public FastRecommendation getRecommendation(int uidx, int maxLength, IntPredicate filter)
+    {
+        List<Tuple2id> items = new ArrayList<>();
+        if (uidx == -1)
+        {
+            return new FastRecommendation(uidx, items);
+        }
+
+        // Lazy Fisher-Yates shuffle: only the swapped positions are stored, so the cost
+        // depends on the number of sampled candidates, and not on the number of users.
+        SplittableRandom random = this.getRandom(uidx);
+        Int2IntMap swapped = new Int2IntOpenHashMap();
+        int numItems = this.numItems();
+        for (int i = 0; i < numItems && items.size() < maxLength; ++i)
+        {
+            int j = i + random.nextInt(numItems - i);
+            int iidx = swapped.getOrDefault(j, j);
+            swapped.put(j, swapped.getOrDefault(i, i));
+
+            if (filter.test(iidx))
+            {
+                items.add(new Tuple2id(iidx, maxLength - items.size()));
+            }
+        }
+
+        return new FastRecommendation(uidx, items);
+    }
 }
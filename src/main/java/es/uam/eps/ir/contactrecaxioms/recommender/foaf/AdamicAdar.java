@@ -12,6 +12,9 @@ package es.uam.eps.ir.contactrecaxioms.recommender.foaf;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.CSRMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.ImpactOrderedScorer;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SpGEMMScorer;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 
@@ -63,7 +66,7 @@ public class AdamicAdar<U> extends UserFastRankingRecommender<U>
         this.vSel = vSel.invertSelection();
         this.wSel = wSel;
 
-        this.getAllUidx().forEach(widx -> wSizes.put(widx, graph.getNeighborhood(widx, wSel).count() + 0.0));
+        this.getAllUidx().forEach(widx -> wSizes.put(widx, graph.getNeighborhoodSize(widx, wSel) + 0.0));
     }
 
     @Override
@@ -80,4 +83,18 @@ public class AdamicAdar<U> extends UserFastRankingRecommender<U>
 
         return scoresMap;
     }
+
+    @Override
+    public boolean isSymmetric()
+    {
+        return !graph.isDirected() || uSel.equals(vSel.invertSelection());
+    }
+
+    @Override
+    protected SpGEMMScorer createSparseScorer()
+    {
+        CSRMatrix a = CSRMatrix.adjacency(graph, uSel, (uidx, widx, weight) -> 1.0 / Math.log(wSizes.get(widx) + 2.0));
+        CSRMatrix b = CSRMatrix.adjacency(graph, vSel, (widx, vidx, weight) -> 1.0);
+        return new ImpactOrderedScorer(a, b);
+    }
 }
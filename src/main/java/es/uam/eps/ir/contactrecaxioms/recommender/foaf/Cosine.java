@@ -12,6 +12,9 @@ package es.uam.eps.ir.contactrecaxioms.recommender.foaf;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.CSRMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SimilarityJoin;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SpGEMMScorer;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 
@@ -66,26 +69,26 @@ public class Cosine<U> extends UserFastRankingRecommender<U>
 
         if (!graph.isWeighted())
         {
-            graph.getAllNodes().forEach(u -> uSizes.put(graph.object2idx(u), graph.getNeighbourhoodSize(u, uSel) + 0.0));
+            graph.getAllNodes().forEach(u -> uSizes.put(graph.object2idx(u), graph.getNeighborhoodSize(graph.object2idx(u), uSel) + 0.0));
             if (uSel.equals(vSel) || !graph.isDirected())
             {
                 vSizes.putAll(uSizes);
             }
             else
             {
-                graph.getAllNodes().forEach(v -> vSizes.put(graph.object2idx(v), graph.getNeighbourhoodSize(v, vSel) + 0.0));
+                graph.getAllNodes().forEach(v -> vSizes.put(graph.object2idx(v), graph.getNeighborhoodSize(graph.object2idx(v), vSel) + 0.0));
             }
         }
         else
         {
-            graph.getAllNodes().forEach(u -> uSizes.put(graph.object2idx(u), graph.getNeighborhoodWeights(graph.object2idx(u), uSel).mapToDouble(x -> x.v2).sum()));
+            graph.getAllNodes().forEach(u -> uSizes.put(graph.object2idx(u), graph.getNeighborhoodWeightSum(graph.object2idx(u), uSel)));
             if (uSel.equals(vSel) || !graph.isDirected())
             {
                 vSizes.putAll(uSizes);
             }
             else
             {
-                graph.getAllNodes().forEach(v -> vSizes.put(graph.object2idx(v), graph.getNeighborhoodWeights(graph.object2idx(v), vSel).mapToDouble(x -> x.v2).sum()));
+                graph.getAllNodes().forEach(v -> vSizes.put(graph.object2idx(v), graph.getNeighborhoodWeightSum(graph.object2idx(v), vSel)));
             }
         }
     }
@@ -106,5 +109,35 @@ public class Cosine<U> extends UserFastRankingRecommender<U>
         return scoresMap;
     }
 
+    @Override
+    public boolean isSymmetric()
+    {
+        return !graph.isDirected() || uSel.equals(vSel.invertSelection());
+    }
+
+    @Override
+    protected SpGEMMScorer createSparseScorer()
+    {
+        CSRMatrix a = CSRMatrix.adjacency(graph, uSel, (uidx, widx, weight) -> weight);
+        CSRMatrix b = CSRMatrix.adjacency(graph, vSel, (widx, vidx, weight) -> weight);
+        return new SpGEMMScorer(a, b, (uidx, vidx, sim) -> sim / Math.sqrt(this.vSizes.get(vidx) * this.uSizes.get(uidx)));
+    }
 
+    @Override
+    protected SimilarityJoin createSimilarityJoin()
+    {
+        // Prefix and length filtering are not valid for weighted neighborhoods, so the sparse matrix product is cheaper.
+        // The same happens with undirected neighborhoods in directed graphs, where reciprocal edges weigh twice.
+        if (graph.isWeighted() || (graph.isDirected() && (uSel == EdgeOrientation.UND || vSel == EdgeOrientation.UND)))
+        {
+            return null;
+        }
+
+        CSRMatrix a = CSRMatrix.adjacency(graph, uSel, (uidx, widx, weight) -> weight);
+        CSRMatrix b = CSRMatrix.adjacency(graph, vSel, (widx, vidx, weight) -> weight);
+        CSRMatrix bt = CSRMatrix.adjacency(graph, vSel.invertSelection(), (vidx, widx, weight) -> weight);
+        // A candidate sharing k intermediate users has, at most, similarity sqrt(k / |N(u)|).
+        return new SimilarityJoin(a, b, bt, (uidx, vidx, sim) -> sim / Math.sqrt(this.vSizes.get(vidx) * this.uSizes.get(uidx)),
+                                  (uidx, overlap) -> Math.sqrt(overlap / this.uSizes.get(uidx)));
+    }
 }
@@ -12,6 +12,9 @@ package es.uam.eps.ir.contactrecaxioms.recommender.foaf;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.CSRMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SimilarityJoin;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SpGEMMScorer;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 
@@ -63,7 +66,7 @@ public class Jaccard<U> extends UserFastRankingRecommender<U>
 
         if (uSel.equals(vSel) || !graph.isDirected())
         {
-            this.getAllUidx().forEach(uidx -> uSizes.put(uidx, graph.getNeighborhood(uidx, uSel).count() + 0.0));
+            this.getAllUidx().forEach(uidx -> uSizes.put(uidx, graph.getNeighborhoodSize(uidx, uSel) + 0.0));
             vSizes = uSizes;
         }
         else
@@ -71,8 +74,8 @@ public class Jaccard<U> extends UserFastRankingRecommender<U>
             vSizes = new Int2DoubleOpenHashMap();
             this.getAllUidx().forEach(uidx ->
             {
-                uSizes.put(uidx, graph.getNeighborhood(uidx, uSel).count() + 0.0);
-                vSizes.put(uidx, graph.getNeighborhood(uidx, vSel).count() + 0.0);
+                uSizes.put(uidx, graph.getNeighborhoodSize(uidx, uSel) + 0.0);
+                vSizes.put(uidx, graph.getNeighborhoodSize(uidx, vSel) + 0.0);
             });
         }
     }
@@ -90,4 +93,29 @@ public class Jaccard<U> extends UserFastRankingRecommender<U>
         scoresMap.replaceAll((vidx, sim) -> sim / (uSize + this.vSizes.get((int) vidx) - sim));
         return scoresMap;
     }
+
+    @Override
+    public boolean isSymmetric()
+    {
+        return !graph.isDirected() || uSel.equals(vSel.invertSelection());
+    }
+
+    @Override
+    protected SpGEMMScorer createSparseScorer()
+    {
+        CSRMatrix a = CSRMatrix.adjacency(graph, uSel, (uidx, widx, weight) -> 1.0);
+        CSRMatrix b = CSRMatrix.adjacency(graph, vSel, (widx, vidx, weight) -> 1.0);
+        return new SpGEMMScorer(a, b, (uidx, vidx, sim) -> sim / (this.uSizes.get(uidx) + this.vSizes.get(vidx) - sim));
+    }
+
+    @Override
+    protected SimilarityJoin createSimilarityJoin()
+    {
+        CSRMatrix a = CSRMatrix.adjacency(graph, uSel, (uidx, widx, weight) -> 1.0);
+        CSRMatrix b = CSRMatrix.adjacency(graph, vSel, (widx, vidx, weight) -> 1.0);
+        CSRMatrix bt = CSRMatrix.adjacency(graph, vSel.invertSelection(), (vidx, widx, weight) -> 1.0);
+        // A candidate sharing k intermediate users has, at most, similarity k / |N(u)|.
+        return new SimilarityJoin(a, b, bt, (uidx, vidx, sim) -> sim / (this.uSizes.get(uidx) + this.vSizes.get(vidx) - sim),
+                                  (uidx, overlap) -> overlap / this.uSizes.get(uidx));
+    }
 }
@@ -12,6 +12,8 @@ package es.uam.eps.ir.contactrecaxioms.recommender.foaf;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.CSRMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SpGEMMScorer;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 
@@ -66,4 +68,18 @@ public class MostCommonNeighbors<U> extends UserFastRankingRecommender<U>
 
         return scoresMap;
     }
+
+    @Override
+    public boolean isSymmetric()
+    {
+        return !graph.isDirected() || uSel.equals(vSel.invertSelection());
+    }
+
+    @Override
+    protected SpGEMMScorer createSparseScorer()
+    {
+        CSRMatrix a = CSRMatrix.adjacency(graph, uSel, (uidx, widx, weight) -> 1.0);
+        CSRMatrix b = CSRMatrix.adjacency(graph, vSel, (widx, vidx, weight) -> 1.0);
+        return new SpGEMMScorer(a, b);
+    }
 }
@@ -12,6 +12,10 @@ package es.uam.eps.ir.contactrecaxioms.recommender.ir;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.CSRMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.ImpactMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.ImpactOrderedScorer;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SpGEMMScorer;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 
@@ -71,6 +75,15 @@ public class BM25<U> extends UserFastRankingRecommender<U>
 
     private final Int2DoubleOpenHashMap wLengths;
 
+    /**
+     * Precomputed impacts of the edges between target and intermediate users (null if they are not precomputed).
+     */
+    private final CSRMatrix uImpacts;
+    /**
+     * Precomputed impacts of the edges between intermediate and candidate users (null if they are not precomputed).
+     */
+    private final CSRMatrix vImpacts;
+
     /**
      * Constructor.
      *
@@ -82,6 +95,22 @@ public class BM25<U> extends UserFastRankingRecommender<U>
      * @param k     parameter of the algorithm.
      */
     public BM25(FastGraph<U> graph, EdgeOrientation uSel, EdgeOrientation vSel, EdgeOrientation dlSel, double b, double k)
+    {
+        this(graph, uSel, vSel, dlSel, b, k, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param graph   Graph
+     * @param uSel    Selection of the neighbours of the target user
+     * @param vSel    Selection of the neighbours of the candidate user
+     * @param dlSel   Selection of the neighbours for the document length
+     * @param b       Tunes the effect of the neighborhood size. Between 0 and 1.
+     * @param k       parameter of the algorithm.
+     * @param impacts true if the impacts of the edges are precomputed, false otherwise.
+     */
+    public BM25(FastGraph<U> graph, EdgeOrientation uSel, EdgeOrientation vSel, EdgeOrientation dlSel, double b, double k, boolean impacts)
     {
         super(graph);
 
@@ -98,25 +127,41 @@ public class BM25<U> extends UserFastRankingRecommender<U>
         OptionalDouble opt = this.getAllUidx().mapToDouble(vidx ->
         {
             // Compute RSJ
-            double rsjV = graph.getNeighborhood(vidx, this.vSel).count();
+            double rsjV = graph.getNeighborhoodSize(vidx, this.vSel);
             this.wLengths.put(vidx, rsjV);
             rsjV = Math.log((numUsers - rsjV + 0.5) / (rsjV + 0.5));
             this.rsj.put(vidx, rsjV);
 
 
             // Compute size
-            double val = graph.getNeighborhoodWeights(vidx, dlSel).mapToDouble(widx -> widx.v2).sum();
+            double val = graph.getNeighborhoodWeightSum(vidx, dlSel);
 
             this.size.put(vidx, val);
             return val;
         }).average();
 
         this.avgSize = opt.isPresent() ? opt.getAsDouble() : 0.0;
+
+        if (impacts)
+        {
+            this.uImpacts = ImpactMatrix.impacts(graph, uSel, this::uImpact);
+            this.vImpacts = ImpactMatrix.impacts(graph, this.vSel, this::vImpact);
+        }
+        else
+        {
+            this.uImpacts = null;
+            this.vImpacts = null;
+        }
     }
 
     @Override
     public Int2DoubleMap getScoresMap(int uidx)
     {
+        if (this.uImpacts != null)
+        {
+            return this.getSparseScorer().getScoresMap(uidx);
+        }
+
         Int2DoubleOpenHashMap scoresMap = new Int2DoubleOpenHashMap();
         scoresMap.defaultReturnValue(0.0);
 
@@ -158,4 +203,64 @@ public class BM25<U> extends UserFastRankingRecommender<U>
 
         return scoresMap;
     }
+
+
+    @Override
+    protected SpGEMMScorer createSparseScorer()
+    {
+        if (this.uImpacts != null)
+        {
+            return new ImpactOrderedScorer(this.uImpacts, this.vImpacts);
+        }
+
+        CSRMatrix uMatrix = CSRMatrix.adjacency(graph, uSel, this::uImpact);
+        CSRMatrix vMatrix = CSRMatrix.adjacency(graph, vSel, this::vImpact);
+        return new ImpactOrderedScorer(uMatrix, vMatrix);
+    }
+
+    @Override
+    public long getImpactMemory()
+    {
+        return this.uImpacts != null ? this.uImpacts.getMemoryUsage() + this.vImpacts.getMemoryUsage() : 0L;
+    }
+
+    /**
+     * Computes the impact of the edge between a target and an intermediate user.
+     *
+     * @param uidx   identifier of the target user.
+     * @param widx   identifier of the intermediate user.
+     * @param weight weight of the edge.
+     *
+     * @return the impact of the edge.
+     */
+    private double uImpact(int uidx, int widx, double weight)
+    {
+        return 1.0;
+    }
+
+    /**
+     * Computes the impact of the edge between an intermediate and a candidate user.
+     *
+     * @param widx   identifier of the intermediate user.
+     * @param vidx   identifier of the candidate user.
+     * @param weight weight of the edge.
+     *
+     * @return the impact of the edge.
+     */
+    private double vImpact(int widx, int vidx, double weight)
+    {
+        double s = this.size.get(vidx);
+        if (Double.isFinite(this.k))
+        {
+            double num = (this.k + 1.0) * weight * this.rsj.get(widx);
+            double den = this.k * (1 - b + (b * s / avgSize)) + weight;
+            return num / den;
+        }
+        else
+        {
+            double num = weight * this.rsj.get(widx);
+            double den = (1 - b + (b * s / avgSize));
+            return num / den;
+        }
+    }
 }
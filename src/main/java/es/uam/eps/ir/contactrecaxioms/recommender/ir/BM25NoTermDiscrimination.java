@@ -91,7 +91,7 @@ public class BM25NoTermDiscrimination<U> extends UserFastRankingRecommender<U>
         OptionalDouble opt = this.getAllUidx().mapToDouble(vidx ->
         {
             // Compute size
-            double val = graph.getNeighborhoodWeights(vidx, dlSel).mapToDouble(widx -> widx.v2).sum();
+            double val = graph.getNeighborhoodWeightSum(vidx, dlSel);
 
             this.size.put(vidx, val);
             return val;
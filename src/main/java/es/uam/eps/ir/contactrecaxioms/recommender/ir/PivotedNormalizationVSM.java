@@ -12,6 +12,9 @@ package es.uam.eps.ir.contactrecaxioms.recommender.ir;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.CSRMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.ImpactMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SpGEMMScorer;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 
@@ -59,6 +62,15 @@ public class PivotedNormalizationVSM<U> extends UserFastRankingRecommender<U>
      */
     private final Int2DoubleMap idfs;
 
+    /**
+     * Precomputed impacts of the edges between target and intermediate users (null if they are not precomputed).
+     */
+    private final CSRMatrix uImpacts;
+    /**
+     * Precomputed impacts of the edges between intermediate and candidate users (null if they are not precomputed).
+     */
+    private final CSRMatrix vImpacts;
+
     /**
      * Constructor.
      *
@@ -68,6 +80,20 @@ public class PivotedNormalizationVSM<U> extends UserFastRankingRecommender<U>
      * @param s     parameter for balancing the importance of the document length.
      */
     public PivotedNormalizationVSM(FastGraph<U> graph, EdgeOrientation uSel, EdgeOrientation vSel, double s)
+    {
+        this(graph, uSel, vSel, s, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param graph   the training network.
+     * @param uSel    neighborhood orientation selected for the target user.
+     * @param vSel    neighborhood orientation selected for the candidate user.
+     * @param s       parameter for balancing the importance of the document length.
+     * @param impacts true if the impacts of the edges are precomputed, false otherwise.
+     */
+    public PivotedNormalizationVSM(FastGraph<U> graph, EdgeOrientation uSel, EdgeOrientation vSel, double s, boolean impacts)
     {
         super(graph);
 
@@ -82,21 +108,37 @@ public class PivotedNormalizationVSM<U> extends UserFastRankingRecommender<U>
 
         OptionalDouble opt = this.getAllUidx().mapToDouble(vidx ->
         {
-            double idf = graph.getNeighborhood(vidx, this.vSel).count();
+            double idf = graph.getNeighborhoodSize(vidx, this.vSel);
             idf = (numUsers + 1.0) / (idf);
             this.idfs.put(vidx, idf);
             // User length.
-            double len = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(widx -> widx.v2).sum();
+            double len = graph.getNeighborhoodWeightSum(vidx, vSel);
             this.lengths.put(vidx, len);
 
             return len;
         }).average();
         this.avgSize = opt.isPresent() ? opt.getAsDouble() : 0.0;
+
+        if (impacts)
+        {
+            this.uImpacts = ImpactMatrix.impacts(graph, uSel, this::uImpact);
+            this.vImpacts = ImpactMatrix.impacts(graph, this.vSel, this::vImpact);
+        }
+        else
+        {
+            this.uImpacts = null;
+            this.vImpacts = null;
+        }
     }
 
     @Override
     public Int2DoubleMap getScoresMap(int uidx)
     {
+        if (this.uImpacts != null)
+        {
+            return this.getSparseScorer().getScoresMap(uidx);
+        }
+
         Int2DoubleOpenHashMap scoresMap = new Int2DoubleOpenHashMap();
         scoresMap.defaultReturnValue(0.0);
 
@@ -117,4 +159,66 @@ public class PivotedNormalizationVSM<U> extends UserFastRankingRecommender<U>
 
         return scoresMap;
     }
+
+
+    @Override
+    protected SpGEMMScorer createSparseScorer()
+    {
+        if (this.uImpacts != null)
+        {
+            return new SpGEMMScorer(this.uImpacts, this.vImpacts, this::score);
+        }
+
+        CSRMatrix uMatrix = CSRMatrix.adjacency(graph, uSel, this::uImpact);
+        CSRMatrix vMatrix = CSRMatrix.adjacency(graph, vSel, this::vImpact);
+        return new SpGEMMScorer(uMatrix, vMatrix, this::score);
+    }
+
+    @Override
+    public long getImpactMemory()
+    {
+        return this.uImpacts != null ? this.uImpacts.getMemoryUsage() + this.vImpacts.getMemoryUsage() : 0L;
+    }
+
+    /**
+     * Computes the impact of the edge between a target and an intermediate user.
+     *
+     * @param uidx   identifier of the target user.
+     * @param widx   identifier of the intermediate user.
+     * @param weight weight of the edge.
+     *
+     * @return the impact of the edge.
+     */
+    private double uImpact(int uidx, int widx, double weight)
+    {
+        return (1 + Math.log(1 + Math.log(weight))) * weight * Math.log(this.idfs.get(widx));
+    }
+
+    /**
+     * Computes the impact of the edge between an intermediate and a candidate user.
+     *
+     * @param widx   identifier of the intermediate user.
+     * @param vidx   identifier of the candidate user.
+     * @param weight weight of the edge.
+     *
+     * @return the impact of the edge.
+     */
+    private double vImpact(int widx, int vidx, double weight)
+    {
+        return 1.0;
+    }
+
+    /**
+     * Computes the final score of a candidate user from the sum of the impacts.
+     *
+     * @param uidx identifier of the target user.
+     * @param vidx identifier of the candidate user.
+     * @param val  the sum of the impacts.
+     *
+     * @return the score of the candidate user.
+     */
+    private double score(int uidx, int vidx, double val)
+    {
+        return val / (1 - s + s * lengths.get(vidx) / avgSize);
+    }
 }
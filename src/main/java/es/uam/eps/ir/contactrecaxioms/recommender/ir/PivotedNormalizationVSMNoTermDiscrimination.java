@@ -75,7 +75,7 @@ public class PivotedNormalizationVSMNoTermDiscrimination<U> extends UserFastRank
         OptionalDouble opt = this.getAllUidx().mapToDouble(vidx ->
         {
             // User length.
-            double len = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(widx -> widx.v2).sum();
+            double len = graph.getNeighborhoodWeightSum(vidx, vSel);
             this.lengths.put(vidx, len);
 
             return len;
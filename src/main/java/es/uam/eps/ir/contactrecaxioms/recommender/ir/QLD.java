@@ -11,10 +11,16 @@ package es.uam.eps.ir.contactrecaxioms.recommender.ir;
 
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.contactrecaxioms.recommender.ContributionCache;
+import es.uam.eps.ir.contactrecaxioms.recommender.ContributionCache.Contributions;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.CSRMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.ImpactMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SpGEMMScorer;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import org.ranksys.core.util.tuples.Tuple2id;
+
+import java.util.BitSet;
 
 /**
  * Adaptation of the Query Likelihood Information Retrieval method, with Dirichlet regularization.
@@ -62,6 +68,23 @@ public class QLD<U> extends UserFastRankingRecommender<U>
      */
     private final EdgeOrientation vSel;
 
+    /**
+     * Precomputed impacts of the edges between target and intermediate users (null if they are not precomputed).
+     */
+    private final CSRMatrix uImpacts;
+    /**
+     * Precomputed impacts of the edges between intermediate and candidate users (null if they are not precomputed).
+     */
+    private final CSRMatrix vImpacts;
+    /**
+     * Cache for the contributions of the hub intermediate users.
+     */
+    private final ContributionCache cache = new ContributionCache();
+    /**
+     * Intermediate users whose contributions are cached.
+     */
+    private final BitSet hubs;
+
     /**
      * Constructor.
      *
@@ -71,6 +94,20 @@ public class QLD<U> extends UserFastRankingRecommender<U>
      * @param mu    Parameter which controls the trade-off between the regularization term and the original probability.
      */
     public QLD(FastGraph<U> graph, EdgeOrientation uSel, EdgeOrientation vSel, double mu)
+    {
+        this(graph, uSel, vSel, mu, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param graph   The original social network graph.
+     * @param uSel    Neighborhood selection for the target user.
+     * @param vSel    Neighborhood selection for the candidate user.
+     * @param mu      Parameter which controls the trade-off between the regularization term and the original probability.
+     * @param impacts true if the impacts of the edges are precomputed, false otherwise.
+     */
+    public QLD(FastGraph<U> graph, EdgeOrientation uSel, EdgeOrientation vSel, double mu, boolean impacts)
     {
         super(graph);
 
@@ -84,7 +121,7 @@ public class QLD<U> extends UserFastRankingRecommender<U>
         {
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
                 this.uSize.put(vidx, uS);
                 return uS;
             }).sum();
@@ -96,8 +133,8 @@ public class QLD<U> extends UserFastRankingRecommender<U>
             this.pc = new Int2DoubleOpenHashMap();
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double wS = graph.getNeighborhoodWeights(vidx, wSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double wS = graph.getNeighborhoodWeightSum(vidx, wSel);
                 this.uSize.put(vidx, uS);
                 this.pc.put(vidx, wS);
                 return uS;
@@ -109,8 +146,8 @@ public class QLD<U> extends UserFastRankingRecommender<U>
             this.vSize = new Int2DoubleOpenHashMap();
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double wS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double wS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 this.uSize.put(vidx, uS);
                 this.vSize.put(vidx, wS);
                 return uS;
@@ -122,8 +159,8 @@ public class QLD<U> extends UserFastRankingRecommender<U>
             this.vSize = new Int2DoubleOpenHashMap();
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 this.uSize.put(vidx, uS);
                 this.vSize.put(vidx, vS);
                 return uS;
@@ -136,8 +173,8 @@ public class QLD<U> extends UserFastRankingRecommender<U>
             this.pc = new Int2DoubleOpenHashMap();
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 double wS = uS - vS; // Considering that weight(UND,x,y) = weight(x,y) + weight(y,x)
                 this.uSize.put(vidx, uS);
                 this.vSize.put(vidx, vS);
@@ -145,11 +182,29 @@ public class QLD<U> extends UserFastRankingRecommender<U>
                 return uS;
             }).sum();
         }
+
+        if (impacts)
+        {
+            this.uImpacts = ImpactMatrix.impacts(graph, uSel, this::uImpact);
+            this.vImpacts = ImpactMatrix.impacts(graph, this.vSel, this::vImpact);
+            this.hubs = new BitSet();
+        }
+        else
+        {
+            this.uImpacts = null;
+            this.vImpacts = null;
+            this.hubs = this.cache.hubs(graph, this.vSel);
+        }
     }
 
     @Override
     public Int2DoubleMap getScoresMap(int uidx)
     {
+        if (this.uImpacts != null)
+        {
+            return this.getSparseScorer().getScoresMap(uidx);
+        }
+
         Int2DoubleOpenHashMap scoresMap = new Int2DoubleOpenHashMap();
         scoresMap.defaultReturnValue(0.0);
 
@@ -158,6 +213,17 @@ public class QLD<U> extends UserFastRankingRecommender<U>
         {
             double uWeight = w.v2;
             int widx = w.v1;
+            if (this.hubs.get(widx))
+            {
+                Contributions contributions = this.cache.get(widx, () -> Contributions.of(graph, widx, vSel, this::vImpact));
+                for (int i = 0; i < contributions.size(); ++i)
+                {
+                    double val = uWeight * contributions.value(i);
+                    scoresMap.addTo(contributions.candidate(i), Double.isFinite(val) ? val : Double.NEGATIVE_INFINITY);
+                }
+                return;
+            }
+
             double wPc = this.fullSize / (this.mu * this.pc.get(widx));
 
             graph.getNeighborhoodWeights(widx, vSel).forEach(v ->
@@ -174,4 +240,67 @@ public class QLD<U> extends UserFastRankingRecommender<U>
 
         return scoresMap;
     }
+
+    @Override
+    protected SpGEMMScorer createSparseScorer()
+    {
+        return this.uImpacts != null ? new SpGEMMScorer(this.uImpacts, this.vImpacts, this::score) : null;
+    }
+
+    @Override
+    public long getImpactMemory()
+    {
+        return this.uImpacts != null ? this.uImpacts.getMemoryUsage() + this.vImpacts.getMemoryUsage() : 0L;
+    }
+
+    @Override
+    public ContributionCache getContributionCache()
+    {
+        return this.cache;
+    }
+
+    /**
+     * Computes the impact of the edge between a target and an intermediate user.
+     *
+     * @param uidx   identifier of the target user.
+     * @param widx   identifier of the intermediate user.
+     * @param weight weight of the edge.
+     *
+     * @return the impact of the edge.
+     */
+    private double uImpact(int uidx, int widx, double weight)
+    {
+        return weight;
+    }
+
+    /**
+     * Computes the impact of the edge between an intermediate and a candidate user.
+     *
+     * @param widx   identifier of the intermediate user.
+     * @param vidx   identifier of the candidate user.
+     * @param weight weight of the edge.
+     *
+     * @return the impact of the edge.
+     */
+    private double vImpact(int widx, int vidx, double weight)
+    {
+        // As in the query-time computation, non-finite contributions are replaced by minus infinity.
+        double wPc = this.fullSize / (this.mu * this.pc.get(widx));
+        double val = Math.log(weight * wPc + 1.0);
+        return Double.isFinite(val) ? val : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Computes the final score of a candidate user from the sum of the impacts.
+     *
+     * @param uidx identifier of the target user.
+     * @param vidx identifier of the candidate user.
+     * @param val  the sum of the impacts.
+     *
+     * @return the score of the candidate user.
+     */
+    private double score(int uidx, int vidx, double val)
+    {
+        return val - this.uSize.get(uidx) * Math.log(1.0 + this.vSize.get(vidx) / mu);
+    }
 }
@@ -14,7 +14,6 @@ import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import org.ranksys.core.util.tuples.Tuple2id;
 
 /**
  * Adaptation of the Query Likelihood Information Retrieval method, with Dirichlet regularization, and without
@@ -85,7 +84,7 @@ public class QLDNoLengthNormalization<U> extends UserFastRankingRecommender<U>
         {
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
                 this.uSize.put(vidx, uS);
                 return uS;
             }).sum();
@@ -97,8 +96,8 @@ public class QLDNoLengthNormalization<U> extends UserFastRankingRecommender<U>
             this.pc = new Int2DoubleOpenHashMap();
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double wS = graph.getNeighborhoodWeights(vidx, wSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double wS = graph.getNeighborhoodWeightSum(vidx, wSel);
                 this.uSize.put(vidx, uS);
                 this.pc.put(vidx, wS);
                 return uS;
@@ -110,8 +109,8 @@ public class QLDNoLengthNormalization<U> extends UserFastRankingRecommender<U>
             this.vSize = new Int2DoubleOpenHashMap();
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double wS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double wS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 this.uSize.put(vidx, uS);
                 this.vSize.put(vidx, wS);
                 return uS;
@@ -123,8 +122,8 @@ public class QLDNoLengthNormalization<U> extends UserFastRankingRecommender<U>
             this.vSize = new Int2DoubleOpenHashMap();
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 this.uSize.put(vidx, uS);
                 this.vSize.put(vidx, vS);
                 return uS;
@@ -137,8 +136,8 @@ public class QLDNoLengthNormalization<U> extends UserFastRankingRecommender<U>
             this.pc = new Int2DoubleOpenHashMap();
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 double wS = uS - vS; // Considering that weight(UND,x,y) = weight(x,y) + weight(y,x)
                 this.uSize.put(vidx, uS);
                 this.vSize.put(vidx, vS);
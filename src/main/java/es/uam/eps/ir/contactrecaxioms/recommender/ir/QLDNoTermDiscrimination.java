@@ -14,7 +14,6 @@ import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import org.ranksys.core.util.tuples.Tuple2id;
 
 /**
  * Adaptation of the Query Likelihood Information Retrieval method, with Dirichlet regularization, and without
@@ -76,7 +75,7 @@ public class QLDNoTermDiscrimination<U> extends UserFastRankingRecommender<U>
         {
             this.getAllUidx().forEach(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
                 this.uSize.put(vidx, uS);
             });
             this.vSize = uSize;
@@ -85,7 +84,7 @@ public class QLDNoTermDiscrimination<U> extends UserFastRankingRecommender<U>
         {
             this.getAllUidx().forEach(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
                 this.uSize.put(vidx, uS);
             });
             this.vSize = uSize;
@@ -95,8 +94,8 @@ public class QLDNoTermDiscrimination<U> extends UserFastRankingRecommender<U>
             this.vSize = new Int2DoubleOpenHashMap();
             this.getAllUidx().forEach(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double wS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double wS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 this.uSize.put(vidx, uS);
                 this.vSize.put(vidx, wS);
             });
@@ -106,8 +105,8 @@ public class QLDNoTermDiscrimination<U> extends UserFastRankingRecommender<U>
             this.vSize = new Int2DoubleOpenHashMap();
             this.getAllUidx().forEach(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 this.uSize.put(vidx, uS);
                 this.vSize.put(vidx, vS);
             });
@@ -117,8 +116,8 @@ public class QLDNoTermDiscrimination<U> extends UserFastRankingRecommender<U>
             this.vSize = new Int2DoubleOpenHashMap();
             this.getAllUidx().forEach(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 this.uSize.put(vidx, uS);
                 this.vSize.put(vidx, vS);
             });
@@ -11,10 +11,13 @@ package es.uam.eps.ir.contactrecaxioms.recommender.ir;
 
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.contactrecaxioms.recommender.ContributionCache;
+import es.uam.eps.ir.contactrecaxioms.recommender.ContributionCache.Contributions;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import org.ranksys.core.util.tuples.Tuple2id;
+
+import java.util.BitSet;
 
 /**
  * Adaptation of the Query Likelihood Information Retrieval method, with Jelinek-Mercer regularization.
@@ -57,6 +60,14 @@ public class QLJM<U> extends UserFastRankingRecommender<U>
      * Neighborhood selection for the candidate users.
      */
     private final EdgeOrientation vSel;
+    /**
+     * Cache for the contributions of the hub intermediate users.
+     */
+    private final ContributionCache cache = new ContributionCache();
+    /**
+     * Intermediate users whose contributions are cached.
+     */
+    private final BitSet hubs;
 
     /**
      * Constructor.
@@ -79,7 +90,7 @@ public class QLJM<U> extends UserFastRankingRecommender<U>
         {
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 this.size.put(vidx, vS);
                 return vS;
             }).sum();
@@ -90,14 +101,16 @@ public class QLJM<U> extends UserFastRankingRecommender<U>
             this.pc = new Int2DoubleOpenHashMap();
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
-                double wS = graph.getNeighborhoodWeights(vidx, wSel).mapToDouble(Tuple2id::v2).sum();
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
+                double wS = graph.getNeighborhoodWeightSum(vidx, wSel);
 
                 this.size.put(vidx, vS);
                 this.pc.put(vidx, wS);
                 return vS;
             }).sum();
         }
+
+        this.hubs = this.cache.hubs(graph, this.vSel);
     }
 
     @Override
@@ -110,6 +123,17 @@ public class QLJM<U> extends UserFastRankingRecommender<U>
         {
             double uW = w.v2;
             int widx = w.v1;
+            if (this.hubs.get(widx))
+            {
+                Contributions contributions = this.cache.get(widx, () -> Contributions.of(graph, widx, vSel, this::vImpact));
+                for (int i = 0; i < contributions.size(); ++i)
+                {
+                    double c = contributions.value(i);
+                    scoresMap.addTo(contributions.candidate(i), c == Double.NEGATIVE_INFINITY ? c : uW * c);
+                }
+                return;
+            }
+
             double wPc = this.fullSize / (this.pc.get(widx));
 
             graph.getNeighborhoodWeights(widx, vSel).forEach(v ->
@@ -123,4 +147,27 @@ public class QLJM<U> extends UserFastRankingRecommender<U>
 
         return scoresMap;
     }
+
+    @Override
+    public ContributionCache getContributionCache()
+    {
+        return this.cache;
+    }
+
+    /**
+     * Computes the impact of the edge between an intermediate and a candidate user.
+     *
+     * @param widx   identifier of the intermediate user.
+     * @param vidx   identifier of the candidate user.
+     * @param weight weight of the edge.
+     *
+     * @return the impact of the edge.
+     */
+    private double vImpact(int widx, int vidx, double weight)
+    {
+        // As in the query-time computation, non-finite values are replaced by minus infinity.
+        double wPc = this.fullSize / (this.pc.get(widx));
+        double val = lambda * wPc * (weight / this.size.getOrDefault(vidx, 0.0));
+        return Double.isFinite(val) ? Math.log(val + 1.0) : Double.NEGATIVE_INFINITY;
+    }
 }
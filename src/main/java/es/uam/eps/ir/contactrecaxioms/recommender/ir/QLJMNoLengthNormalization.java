@@ -14,7 +14,6 @@ import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import org.ranksys.core.util.tuples.Tuple2id;
 
 /**
  * Adaptation of the Query Likelihood Information Retrieval method, with Jelinek-Mercer regularization, without length normalization.
@@ -79,7 +78,7 @@ public class QLJMNoLengthNormalization<U> extends UserFastRankingRecommender<U>
         {
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 this.size.put(vidx, vS);
                 return vS;
             }).sum();
@@ -90,8 +89,8 @@ public class QLJMNoLengthNormalization<U> extends UserFastRankingRecommender<U>
             this.pc = new Int2DoubleOpenHashMap();
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
-                double wS = graph.getNeighborhoodWeights(vidx, wSel).mapToDouble(Tuple2id::v2).sum();
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
+                double wS = graph.getNeighborhoodWeightSum(vidx, wSel);
 
                 this.size.put(vidx, vS);
                 this.pc.put(vidx, wS);
@@ -14,7 +14,6 @@ import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import org.ranksys.core.util.tuples.Tuple2id;
 
 /**
  * Adaptation of the Query Likelihood Information Retrieval method, with Jelinek-Mercer regularization, without term discrimination.
@@ -70,7 +69,7 @@ public class QLJMNoTermDiscrimination<U> extends UserFastRankingRecommender<U>
         {
             this.getAllUidx().forEach(vidx ->
             {
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 this.size.put(vidx, vS);
             });
         }
@@ -78,7 +77,7 @@ public class QLJMNoTermDiscrimination<U> extends UserFastRankingRecommender<U>
         {
             this.getAllUidx().forEach(vidx ->
             {
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
                 this.size.put(vidx, vS);
             });
         }
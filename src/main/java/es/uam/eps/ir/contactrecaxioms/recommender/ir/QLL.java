@@ -12,9 +12,11 @@ package es.uam.eps.ir.contactrecaxioms.recommender.ir;
 import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
 import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
 import es.uam.eps.ir.contactrecaxioms.recommender.UserFastRankingRecommender;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.CSRMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.ImpactMatrix;
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SpGEMMScorer;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import org.ranksys.core.util.tuples.Tuple2id;
 
 /**
  * Adaptation of the Query Likelihood Information Retrieval method, with Laplace regularization.
@@ -56,6 +58,15 @@ public class QLL<U> extends UserFastRankingRecommender<U>
 
     private final double fullSize;
 
+    /**
+     * Precomputed impacts of the edges between target and intermediate users (null if they are not precomputed).
+     */
+    private final CSRMatrix uImpacts;
+    /**
+     * Precomputed impacts of the edges between intermediate and candidate users (null if they are not precomputed).
+     */
+    private final CSRMatrix vImpacts;
+
     /**
      * Constructor.
      *
@@ -65,6 +76,20 @@ public class QLL<U> extends UserFastRankingRecommender<U>
      * @param gamma Regularization parameter
      */
     public QLL(FastGraph<U> graph, EdgeOrientation uSel, EdgeOrientation vSel, double gamma)
+    {
+        this(graph, uSel, vSel, gamma, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param graph   The original social network graph.
+     * @param uSel    Neighborhood selection for the target user.
+     * @param vSel    Neighborhood selection for the candidate user.
+     * @param gamma   Regularization parameter
+     * @param impacts true if the impacts of the edges are precomputed, false otherwise.
+     */
+    public QLL(FastGraph<U> graph, EdgeOrientation uSel, EdgeOrientation vSel, double gamma, boolean impacts)
     {
         super(graph);
         this.uSel = uSel;
@@ -77,7 +102,7 @@ public class QLL<U> extends UserFastRankingRecommender<U>
         {
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double s = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
+                double s = graph.getNeighborhoodWeightSum(vidx, uSel);
                 this.uSize.put(vidx, s);
                 return s;
             }).sum();
@@ -88,19 +113,35 @@ public class QLL<U> extends UserFastRankingRecommender<U>
             this.vSize = new Int2DoubleOpenHashMap();
             this.fullSize = this.getAllUidx().mapToDouble(vidx ->
             {
-                double uS = graph.getNeighborhoodWeights(vidx, uSel).mapToDouble(Tuple2id::v2).sum();
-                double vS = graph.getNeighborhoodWeights(vidx, vSel).mapToDouble(Tuple2id::v2).sum();
+                double uS = graph.getNeighborhoodWeightSum(vidx, uSel);
+                double vS = graph.getNeighborhoodWeightSum(vidx, vSel);
 
                 this.uSize.put(vidx, uS);
                 this.vSize.put(vidx, vS);
                 return vS;
             }).sum();
         }
+
+        if (impacts)
+        {
+            this.uImpacts = ImpactMatrix.impacts(graph, uSel, this::uImpact);
+            this.vImpacts = ImpactMatrix.impacts(graph, this.vSel, this::vImpact);
+        }
+        else
+        {
+            this.uImpacts = null;
+            this.vImpacts = null;
+        }
     }
 
     @Override
     public Int2DoubleMap getScoresMap(int uidx)
     {
+        if (this.uImpacts != null)
+        {
+            return this.getSparseScorer().getScoresMap(uidx);
+        }
+
         Int2DoubleOpenHashMap scoresMap = new Int2DoubleOpenHashMap();
         scoresMap.defaultReturnValue(0.0);
 
@@ -124,4 +165,66 @@ public class QLL<U> extends UserFastRankingRecommender<U>
 
         return scoresMap;
     }
+
+
+    @Override
+    protected SpGEMMScorer createSparseScorer()
+    {
+        if (this.uImpacts != null)
+        {
+            return new SpGEMMScorer(this.uImpacts, this.vImpacts, this::score);
+        }
+
+        CSRMatrix uMatrix = CSRMatrix.adjacency(graph, uSel, this::uImpact);
+        CSRMatrix vMatrix = CSRMatrix.adjacency(graph, vSel, this::vImpact);
+        return new SpGEMMScorer(uMatrix, vMatrix, this::score);
+    }
+
+    @Override
+    public long getImpactMemory()
+    {
+        return this.uImpacts != null ? this.uImpacts.getMemoryUsage() + this.vImpacts.getMemoryUsage() : 0L;
+    }
+
+    /**
+     * Computes the impact of the edge between a target and an intermediate user.
+     *
+     * @param uidx   identifier of the target user.
+     * @param widx   identifier of the intermediate user.
+     * @param weight weight of the edge.
+     *
+     * @return the impact of the edge.
+     */
+    private double uImpact(int uidx, int widx, double weight)
+    {
+        return weight;
+    }
+
+    /**
+     * Computes the impact of the edge between an intermediate and a candidate user.
+     *
+     * @param widx   identifier of the intermediate user.
+     * @param vidx   identifier of the candidate user.
+     * @param weight weight of the edge.
+     *
+     * @return the impact of the edge.
+     */
+    private double vImpact(int widx, int vidx, double weight)
+    {
+        return Math.log((weight + this.gamma) / this.gamma);
+    }
+
+    /**
+     * Computes the final score of a candidate user from the sum of the impacts.
+     *
+     * @param uidx identifier of the target user.
+     * @param vidx identifier of the candidate user.
+     * @param val  the sum of the impacts.
+     *
+     * @return the score of the candidate user.
+     */
+    private double score(int uidx, int vidx, double val)
+    {
+        return val + this.uSize.get(uidx) * Math.log(this.gamma / (this.vSize.get(vidx) + gamma * this.numUsers()));
+    }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.recommender.sparse;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
+
+import java.util.Iterator;
+import java.util.stream.IntStream;
+
+/**
+ * Square sparse matrix stored in compressed sparse row (CSR) format. The columns of each row are
+ * stored in increasing order.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class CSRMatrix
+{
+    /**
+     * Position of the first value of each row (plus one final position).
+     */
+    protected final int[] offsets;
+    /**
+     * Columns of the values, sorted by row.
+     */
+    protected final int[] columns;
+    /**
+     * The values, sorted by row.
+     */
+    private final double[] values;
+
+    /**
+     * Constructor.
+     *
+     * @param offsets position of the first value of each row (plus one final position).
+     * @param columns columns of the values, sorted by row.
+     * @param values  the values, sorted by row.
+     */
+    public CSRMatrix(int[] offsets, int[] columns, double[] values)
+    {
+        this.offsets = offsets;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * Builds the weighted adjacency matrix of a graph: the row of each user contains its neighborhood,
+     * and the value of each cell is computed from the weight of the corresponding edge.
+     *
+     * @param <U>    Type of the users.
+     * @param graph  the graph.
+     * @param orient the neighborhood selection.
+     * @param weight function for computing the value of each edge.
+     *
+     * @return the weighted adjacency matrix.
+     */
+    public static <U> CSRMatrix adjacency(FastGraph<U> graph, EdgeOrientation orient, EdgeWeightFunction weight)
+    {
+        int[] offsets = CSRMatrix.offsets(graph, orient);
+        int[] columns = new int[offsets[offsets.length - 1]];
+        double[] values = new double[columns.length];
+        CSRMatrix.fill(graph, orient, offsets, (pos, orig, dest, w) ->
+        {
+            columns[pos] = dest;
+            values[pos] = weight.apply(orig, dest, w);
+        });
+
+        return new CSRMatrix(offsets, columns, values);
+    }
+
+    /**
+     * Builds the position of the first value of each row in the adjacency matrix of a graph. The sizes of the
+     * rows are counted from the neighborhoods, as the precomputed neighborhood sizes of the graph might describe
+     * a larger network (see {@link FastGraph#setNeighborhoodStatistics}).
+     *
+     * @param <U>    Type of the users.
+     * @param graph  the graph.
+     * @param orient the neighborhood selection.
+     *
+     * @return the position of the first value of each row (plus one final position).
+     */
+    protected static <U> int[] offsets(FastGraph<U> graph, EdgeOrientation orient)
+    {
+        int numRows = Long.valueOf(graph.getVertexCount()).intValue();
+
+        int[] offsets = new int[numRows + 1];
+        IntStream.range(0, numRows).parallel().forEach(uidx -> offsets[uidx + 1] = Long.valueOf(graph.getNeighborhood(uidx, orient).count()).intValue());
+        for (int uidx = 0; uidx < numRows; ++uidx)
+        {
+            offsets[uidx + 1] += offsets[uidx];
+        }
+        return offsets;
+    }
+
+    /**
+     * Visits the cells of the adjacency matrix of a graph, so that the arrays of the matrix are filled in place.
+     * Rows are visited in parallel.
+     *
+     * @param <U>     Type of the users.
+     * @param graph   the graph.
+     * @param orient  the neighborhood selection.
+     * @param offsets the position of the first value of each row (plus one final position).
+     * @param cell    the action to perform on each cell.
+     */
+    protected static <U> void fill(FastGraph<U> graph, EdgeOrientation orient, int[] offsets, CellConsumer cell)
+    {
+        IntStream.range(0, offsets.length - 1).parallel().forEach(uidx ->
+        {
+            Iterator<IdxPref> neighbors = graph.getNeighborhoodWeights(uidx, orient).iterator();
+            for (int pos = offsets[uidx]; pos < offsets[uidx + 1]; ++pos)
+            {
+                IdxPref pref = neighbors.next();
+                cell.accept(pos, uidx, pref.v1, pref.v2);
+            }
+        });
+    }
+
+    /**
+     * Obtains the number of rows (and columns) of the matrix.
+     *
+     * @return the number of rows.
+     */
+    public int numRows()
+    {
+        return this.offsets.length - 1;
+    }
+
+    /**
+     * Obtains the number of non-zero cells in the matrix.
+     *
+     * @return the number of non-zero cells.
+     */
+    public int numValues()
+    {
+        return this.columns.length;
+    }
+
+    /**
+     * Obtains the position of the first value of a row.
+     *
+     * @param row the row.
+     *
+     * @return the position of the first value of the row.
+     */
+    public int rowStart(int row)
+    {
+        return this.offsets[row];
+    }
+
+    /**
+     * Obtains the position after the last value of a row.
+     *
+     * @param row the row.
+     *
+     * @return the position after the last value of the row.
+     */
+    public int rowEnd(int row)
+    {
+        return this.offsets[row + 1];
+    }
+
+    /**
+     * Obtains the column of the value at a position.
+     *
+     * @param pos the position.
+     *
+     * @return the column.
+     */
+    public int column(int pos)
+    {
+        return this.columns[pos];
+    }
+
+    /**
+     * Obtains the amount of memory used by the arrays of the matrix.
+     *
+     * @return the memory used by the matrix (in bytes).
+     */
+    public long getMemoryUsage()
+    {
+        return Integer.BYTES * ((long) this.offsets.length + this.columns.length) + Double.BYTES * (long) this.values.length;
+    }
+
+    /**
+     * Obtains the value at a position.
+     *
+     * @param pos the position.
+     *
+     * @return the value.
+     */
+    public double value(int pos)
+    {
+        return this.values[pos];
+    }
+
+    /**
+     * Action to perform on a cell of an adjacency matrix.
+     */
+    @FunctionalInterface
+    protected interface CellConsumer
+    {
+        /**
+         * Performs the action.
+         *
+         * @param pos    the position of the cell in the arrays of the matrix.
+         * @param orig   identifier of the origin of the edge.
+         * @param dest   identifier of the destination of the edge.
+         * @param weight weight of the edge in the graph.
+         */
+        void accept(int pos, int orig, int dest, double weight);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.recommender.sparse;
+
+/**
+ * Function for computing the value of an edge in a weighted adjacency matrix.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+@FunctionalInterface
+public interface EdgeWeightFunction
+{
+    /**
+     * Computes the value of an edge.
+     *
+     * @param orig   identifier of the origin of the edge.
+     * @param dest   identifier of the destination of the edge.
+     * @param weight weight of the edge in the graph.
+     *
+     * @return the value of the edge.
+     */
+    double apply(int orig, int dest, double weight);
+}
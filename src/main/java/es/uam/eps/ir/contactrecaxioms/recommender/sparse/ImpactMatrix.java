@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.recommender.sparse;
+
+import es.uam.eps.ir.contactrecaxioms.graph.edges.EdgeOrientation;
+import es.uam.eps.ir.contactrecaxioms.graph.fast.FastGraph;
+
+/**
+ * Sparse matrix storing precomputed edge impacts as single precision values, in the order of the
+ * adjacency of the graph. It halves the memory needed for the values, at the cost of rounding them to
+ * single precision.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class ImpactMatrix extends CSRMatrix
+{
+    /**
+     * The impacts, sorted by row.
+     */
+    private final float[] impacts;
+
+    /**
+     * Constructor.
+     *
+     * @param offsets position of the first impact of each row (plus one final position).
+     * @param columns columns of the impacts, sorted by row.
+     * @param impacts the impacts, sorted by row.
+     */
+    public ImpactMatrix(int[] offsets, int[] columns, float[] impacts)
+    {
+        super(offsets, columns, null);
+        this.impacts = impacts;
+    }
+
+    /**
+     * Precomputes the impacts of the edges of a graph: the row of each user contains its neighborhood,
+     * and the value of each cell is the impact of the corresponding edge.
+     *
+     * @param <U>    Type of the users.
+     * @param graph  the graph.
+     * @param orient the neighborhood selection.
+     * @param impact function for computing the impact of each edge.
+     *
+     * @return the impact matrix.
+     */
+    public static <U> ImpactMatrix impacts(FastGraph<U> graph, EdgeOrientation orient, EdgeWeightFunction impact)
+    {
+        // The impacts are stored directly in single precision, so no double precision copy is ever built.
+        int[] offsets = CSRMatrix.offsets(graph, orient);
+        int[] columns = new int[offsets[offsets.length - 1]];
+        float[] impacts = new float[columns.length];
+        CSRMatrix.fill(graph, orient, offsets, (pos, orig, dest, w) ->
+        {
+            columns[pos] = dest;
+            impacts[pos] = (float) impact.apply(orig, dest, w);
+        });
+
+        return new ImpactMatrix(offsets, columns, impacts);
+    }
+
+    @Override
+    public long getMemoryUsage()
+    {
+        return Integer.BYTES * ((long) this.offsets.length + this.columns.length) + Float.BYTES * (long) this.impacts.length;
+    }
+
+    @Override
+    public double value(int pos)
+    {
+        return this.impacts[pos];
+    }
+}
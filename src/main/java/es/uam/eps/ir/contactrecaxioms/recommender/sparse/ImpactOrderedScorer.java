@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.recommender.sparse;
+
+import es.uam.eps.ir.ranksys.fast.FastRecommendation;
+import es.uam.eps.ir.ranksys.fast.utils.topn.IntDoubleTopN;
+import it.unimi.dsi.fastutil.doubles.DoubleHeapPriorityQueue;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntHeapPriorityQueue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * Sparse matrix scorer which, in addition to the rows of B sorted by column, keeps a copy of them sorted by
+ * decreasing impact. Recommendations are computed score-at-a-time: the postings of the intermediate users
+ * are processed in decreasing order of contribution, and the processing stops once no unseen candidate
+ * can reach the top of the ranking. Then, the remaining candidates are scored exactly, adding the
+ * contributions in increasing order of intermediate user, so both the top candidates and their scores are
+ * identical to those computed by {@link SpGEMMScorer}.
+ *
+ * <p>The final score of a candidate is the value of the matrix product. Intermediate users with negative or
+ * non-finite contributions cannot be bounded, so their postings are always processed completely.</p>
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class ImpactOrderedScorer extends SpGEMMScorer
+{
+    /**
+     * Default minimum number of postings of a target user for using early termination.
+     */
+    private static final int DEFAULT_MIN_POSTINGS = 4096;
+    /**
+     * Number of postings processed before checking (for the first time) whether the processing can stop.
+     */
+    private static final int FIRST_CHECK = 64;
+    /**
+     * Number of postings of an intermediate user processed at once.
+     */
+    private static final int CHUNK = 32;
+    /**
+     * Relative tolerance for absorbing the rounding errors of the partial scores.
+     */
+    private static final double SLACK = 1e-9;
+    /**
+     * Fraction of the postings of a target user after which, if the processing cannot stop yet, it is
+     * abandoned, and the row is computed as in {@link SpGEMMScorer}.
+     */
+    private static final double MAX_FRACTION = 0.25;
+    /**
+     * Number of target users processed before deciding whether early termination pays off.
+     */
+    private static final int MIN_ATTEMPTS = 256;
+    /**
+     * Minimum fraction of target users where the processing stops early for continuing to use early termination.
+     */
+    private static final double MIN_SUCCESS_RATE = 0.25;
+
+    /**
+     * Candidates of each intermediate user, sorted by decreasing impact.
+     */
+    private final int[] orderedColumns;
+    /**
+     * Impacts of the candidates of each intermediate user, sorted by decreasing impact.
+     */
+    private final double[] orderedValues;
+    /**
+     * Whether all the impacts of each intermediate user are finite and non-negative.
+     */
+    private final boolean[] bounded;
+    /**
+     * Minimum number of postings of a target user for using early termination.
+     */
+    private final int minPostings;
+    /**
+     * Number of target users where early termination has been attempted.
+     */
+    private final AtomicLong attempts = new AtomicLong();
+    /**
+     * Number of target users where the processing has stopped early.
+     */
+    private final AtomicLong successes = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param a matrix containing the weights between target and intermediate users.
+     * @param b matrix containing the weights between intermediate and candidate users.
+     */
+    public ImpactOrderedScorer(CSRMatrix a, CSRMatrix b)
+    {
+        this(a, b, DEFAULT_MIN_POSTINGS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param a           matrix containing the weights between target and intermediate users.
+     * @param b           matrix containing the weights between intermediate and candidate users.
+     * @param minPostings minimum number of postings of a target user for using early termination (below it,
+     *                    the rows are computed as in {@link SpGEMMScorer}).
+     */
+    public ImpactOrderedScorer(CSRMatrix a, CSRMatrix b, int minPostings)
+    {
+        super(a, b);
+        this.minPostings = minPostings;
+
+        int numRows = b.numRows();
+        this.orderedColumns = new int[b.numValues()];
+        this.orderedValues = new double[b.numValues()];
+        this.bounded = new boolean[numRows];
+        for (int widx = 0; widx < numRows; ++widx)
+        {
+            int start = b.rowStart(widx);
+            int end = b.rowEnd(widx);
+
+            int[] order = new int[end - start];
+            boolean rowBounded = true;
+            for (int i = 0; i < order.length; ++i)
+            {
+                order[i] = start + i;
+                double val = b.value(start + i);
+                rowBounded &= Double.isFinite(val) && val >= 0.0;
+            }
+            IntArrays.quickSort(order, (x, y) ->
+            {
+                int cmp = Double.compare(b.value(y), b.value(x));
+                return cmp != 0 ? cmp : Integer.compare(b.column(x), b.column(y));
+            });
+
+            for (int i = 0; i < order.length; ++i)
+            {
+                this.orderedColumns[start + i] = b.column(order[i]);
+                this.orderedValues[start + i] = b.value(order[i]);
+            }
+            this.bounded[widx] = rowBounded;
+        }
+    }
+
+    @Override
+    public FastRecommendation getRecommendation(int uidx, int maxLength, IntPredicate filter)
+    {
+        int uStart = a.rowStart(uidx);
+        int numLists = a.rowEnd(uidx) - uStart;
+
+        long totalPostings = 0;
+        for (int i = 0; i < numLists; ++i)
+        {
+            int widx = a.column(uStart + i);
+            totalPostings += b.rowEnd(widx) - b.rowStart(widx);
+        }
+        if (maxLength <= 0 || totalPostings < minPostings || !this.isWorthwhile())
+        {
+            return super.getRecommendation(uidx, maxLength, filter);
+        }
+        this.attempts.incrementAndGet();
+
+        Accumulator acc = Accumulator.acquire(b.numRows());
+
+        // Positions and current contribution (upper bound of the rest of the postings) of each intermediate user.
+        int[] positions = new int[numLists];
+        double[] heads = new double[numLists];
+        boolean[] active = new boolean[numLists];
+        IntHeapPriorityQueue queue = new IntHeapPriorityQueue((x, y) -> Double.compare(heads[y], heads[x]));
+        long processed = 0;
+
+        for (int i = 0; i < numLists; ++i)
+        {
+            int widx = a.column(uStart + i);
+            double uW = a.value(uStart + i);
+            positions[i] = b.rowStart(widx);
+            if (this.bounded[widx] && Double.isFinite(uW) && uW >= 0.0)
+            {
+                if (positions[i] < b.rowEnd(widx))
+                {
+                    heads[i] = uW * this.orderedValues[positions[i]];
+                    active[i] = true;
+                    queue.enqueue(i);
+                }
+            }
+            else // Unbounded intermediate users are processed completely.
+            {
+                for (int j = positions[i]; j < b.rowEnd(widx); ++j)
+                {
+                    double val = uW * this.orderedValues[j];
+                    if (!Double.isFinite(val))
+                    {
+                        acc.release();
+                        return super.getRecommendation(uidx, maxLength, filter);
+                    }
+                    acc.add(this.orderedColumns[j], val);
+                }
+                processed += b.rowEnd(widx) - positions[i];
+                positions[i] = b.rowEnd(widx);
+            }
+        }
+
+        // Score-at-a-time processing of the bounded intermediate users.
+        long nextCheck = FIRST_CHECK;
+        long maxProcessed = (long) (MAX_FRACTION * totalPostings);
+        IntArrayList candidates = null;
+        while (!queue.isEmpty() && candidates == null && processed <= maxProcessed)
+        {
+            int i = queue.dequeueInt();
+            int widx = a.column(uStart + i);
+            double uW = a.value(uStart + i);
+            int end = Math.min(b.rowEnd(widx), positions[i] + CHUNK);
+            for (int j = positions[i]; j < end; ++j)
+            {
+                acc.add(this.orderedColumns[j], uW * this.orderedValues[j]);
+            }
+            processed += end - positions[i];
+            positions[i] = end;
+            if (end < b.rowEnd(widx))
+            {
+                heads[i] = uW * this.orderedValues[end];
+                queue.enqueue(i);
+            }
+            else
+            {
+                active[i] = false;
+            }
+
+            if (processed >= nextCheck)
+            {
+                nextCheck *= 4;
+                candidates = this.candidates(acc, maxLength, filter, this.remaining(active, heads), uStart, numLists, totalPostings - processed);
+            }
+        }
+
+        if (candidates == null) // Nothing was pruned, or too many postings had to be processed.
+        {
+            acc.release();
+            return super.getRecommendation(uidx, maxLength, filter);
+        }
+        this.successes.incrementAndGet();
+
+        // Score the candidates exactly, adding the contributions in the same order as the sparse matrix product.
+        // For each intermediate user, we either search the candidates in its postings, or scan its postings.
+        // The partial scores are no longer needed, so the accumulator keeps the position of each candidate.
+        int numCandidates = candidates.size();
+        acc.clear();
+        for (int c = 0; c < numCandidates; ++c)
+        {
+            acc.add(candidates.getInt(c), c);
+        }
+
+        double[] values = new double[numCandidates];
+        for (int i = 0; i < numLists; ++i)
+        {
+            int widx = a.column(uStart + i);
+            double uW = a.value(uStart + i);
+            int start = b.rowStart(widx);
+            int end = b.rowEnd(widx);
+            if (searchCost(numCandidates, end - start) < end - start)
+            {
+                for (int c = 0; c < numCandidates; ++c)
+                {
+                    int pos = Arrays.binarySearch(b.columns, start, end, candidates.getInt(c));
+                    if (pos >= 0)
+                    {
+                        values[c] += uW * b.value(pos);
+                    }
+                }
+            }
+            else
+            {
+                for (int j = start; j < end; ++j)
+                {
+                    int vidx = b.column(j);
+                    if (acc.contains(vidx))
+                    {
+                        values[(int) acc.values[vidx]] += uW * b.value(j);
+                    }
+                }
+            }
+        }
+        acc.release();
+
+        IntDoubleTopN topN = new IntDoubleTopN(Math.min(maxLength, numCandidates));
+        for (int c = 0; c < numCandidates; ++c)
+        {
+            topN.add(candidates.getInt(c), values[c]);
+        }
+        topN.sort();
+
+        return new FastRecommendation(uidx, topN.reverseStream().collect(Collectors.toList()));
+    }
+
+    /**
+     * Checks whether early termination pays off, i.e. whether the processing stops early for enough target users.
+     * Otherwise, the (partial) score-at-a-time processing only adds work to the computation of the rows.
+     *
+     * @return true if early termination has to be attempted, false otherwise.
+     */
+    private boolean isWorthwhile()
+    {
+        long numAttempts = this.attempts.get();
+        return numAttempts < MIN_ATTEMPTS || this.successes.get() >= MIN_SUCCESS_RATE * numAttempts;
+    }
+
+    /**
+     * Selects the candidates which might still reach the top of the ranking, if it is cheaper to score them
+     * exactly than to keep processing the postings.
+     *
+     * @param acc       the accumulator containing the partial scores.
+     * @param k         the number of candidates to recommend.
+     * @param filter    the filter for the candidates.
+     * @param remaining the upper bound of the unprocessed contributions.
+     * @param uStart    the position of the first intermediate user of the target user in A.
+     * @param numLists  the number of intermediate users of the target user.
+     * @param unseen    the number of unprocessed postings.
+     *
+     * @return the candidates, or null if the processing cannot stop yet.
+     */
+    private IntArrayList candidates(Accumulator acc, int k, IntPredicate filter, double remaining, int uStart, int numLists, long unseen)
+    {
+        // Find the k-th best partial score among the candidates which pass the filter.
+        DoubleHeapPriorityQueue best = new DoubleHeapPriorityQueue(Math.min(k, acc.size + 1));
+        for (int i = 0; i < acc.size; ++i)
+        {
+            int vidx = acc.touched[i];
+            double val = acc.values[vidx];
+            if ((best.size() < k || val > best.firstDouble()) && filter.test(vidx))
+            {
+                best.enqueue(val);
+                if (best.size() > k)
+                {
+                    best.dequeueDouble();
+                }
+            }
+        }
+        if (best.size() < k)
+        {
+            return null;
+        }
+
+        double threshold = best.firstDouble();
+        double slack = SLACK * (Math.abs(threshold) + remaining) + Double.MIN_NORMAL;
+        if (threshold - slack <= remaining) // Unseen candidates might still reach the top of the ranking.
+        {
+            return null;
+        }
+
+        double minValue = threshold - slack - remaining;
+        IntArrayList candidates = new IntArrayList();
+        for (int i = 0; i < acc.size; ++i)
+        {
+            int vidx = acc.touched[i];
+            if (acc.values[vidx] >= minValue && filter.test(vidx))
+            {
+                candidates.add(vidx);
+            }
+        }
+
+        long cost = 0;
+        for (int i = 0; i < numLists; ++i)
+        {
+            int widx = a.column(uStart + i);
+            int deg = b.rowEnd(widx) - b.rowStart(widx);
+            cost += Math.min(deg, searchCost(candidates.size(), deg));
+        }
+        return cost < unseen ? candidates : null;
+    }
+
+    /**
+     * Estimates the cost of searching several candidates in the postings of an intermediate user.
+     *
+     * @param numCandidates the number of candidates.
+     * @param length        the number of postings.
+     *
+     * @return the estimated cost.
+     */
+    private static long searchCost(int numCandidates, int length)
+    {
+        return (long) numCandidates * (32 - Integer.numberOfLeadingZeros(length));
+    }
+
+    /**
+     * Obtains an upper bound for the contributions which have not been processed yet.
+     *
+     * @param active whether each intermediate user has postings left.
+     * @param heads  the current contribution of each intermediate user.
+     *
+     * @return the upper bound.
+     */
+    private double remaining(boolean[] active, double[] heads)
+    {
+        double remaining = 0.0;
+        for (int i = 0; i < heads.length; ++i)
+        {
+            if (active[i])
+            {
+                remaining += heads[i];
+            }
+        }
+        return remaining;
+    }
+}
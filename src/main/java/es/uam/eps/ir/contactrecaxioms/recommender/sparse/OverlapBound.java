@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.recommender.sparse;
+
+/**
+ * Upper bound of the similarity between a target user and any candidate user sharing, at most, a given
+ * number of intermediate users with it. It is used for prefix filtering in {@link SimilarityJoin}.
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+@FunctionalInterface
+public interface OverlapBound
+{
+    /**
+     * Computes the upper bound of the similarity.
+     *
+     * @param uidx    identifier of the target user.
+     * @param overlap maximum number of intermediate users shared by the target and candidate users.
+     *
+     * @return the upper bound.
+     */
+    double apply(int uidx, int overlap);
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.recommender.sparse;
+
+/**
+ * Function for computing the final score of a candidate user from the value accumulated in
+ * the matrix product (for instance, scaling it by the sizes of the target and candidate users).
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+@FunctionalInterface
+public interface ScoreFunction
+{
+    /**
+     * Computes the final score of a candidate user.
+     *
+     * @param uidx identifier of the target user.
+     * @param vidx identifier of the candidate user.
+     * @param val  value of the matrix product for the pair.
+     *
+     * @return the score of the candidate user.
+     */
+    double apply(int uidx, int vidx, double val);
+}
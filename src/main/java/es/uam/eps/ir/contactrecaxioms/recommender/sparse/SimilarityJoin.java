@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.recommender.sparse;
+
+import es.uam.eps.ir.contactrecaxioms.recommender.sparse.SpGEMMScorer.Accumulator;
+import es.uam.eps.ir.ranksys.fast.FastRecommendation;
+import es.uam.eps.ir.ranksys.fast.utils.topn.IntDoubleTopN;
+import it.unimi.dsi.fastutil.doubles.DoubleHeapPriorityQueue;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * All-pairs similarity join between target and candidate users, for similarities (as Jaccard or cosine) which
+ * only depend on the intermediate users shared by both, and on the sizes of their neighborhoods. The
+ * neighborhoods of the target users are the rows of A, and B is an inverted index, containing the candidate
+ * users for each intermediate user. The top candidates of each target user are found with prefix and length
+ * filtering (as in the AllPairs and PPJoin algorithms):
+ * <ul>
+ *     <li>The intermediate users of the target user are visited from the least to the most popular one.
+ *     When the candidates which do not share any of the visited intermediate users cannot reach the minimum
+ *     similarity or the current top of the ranking, the rest of the inverted index is not read.</li>
+ *     <li>Candidates whose neighborhood size prevents them from reaching the threshold are discarded without
+ *     computing their similarity.</li>
+ * </ul>
+ * The similarity of the remaining candidates is computed exactly, by intersecting the neighborhoods of the
+ * target and candidate users in increasing order of intermediate user, so scores are identical to those
+ * computed by {@link SpGEMMScorer}. Target users are processed in parallel.
+ *
+ * <p>Both filters rely on the overlap bound, so they are only applied when it is provided (for instance,
+ * they are not valid for weighted similarities).</p>
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class SimilarityJoin
+{
+    /**
+     * Relative tolerance for absorbing the rounding errors of the bounds.
+     */
+    private static final double SLACK = 1e-9;
+
+    /**
+     * Matrix containing the weights between target and intermediate users.
+     */
+    private final CSRMatrix a;
+    /**
+     * Matrix containing the weights between intermediate and candidate users.
+     */
+    private final CSRMatrix b;
+    /**
+     * Transpose of B, containing the weights between candidate and intermediate users.
+     */
+    private final CSRMatrix bt;
+    /**
+     * Function for computing the similarity from the value of the matrix product.
+     */
+    private final ScoreFunction score;
+    /**
+     * Upper bound of the similarity given the number of shared intermediate users (null if there is none).
+     */
+    private final OverlapBound bound;
+
+    /**
+     * Constructor.
+     *
+     * @param a     matrix containing the weights between target and intermediate users.
+     * @param b     matrix containing the weights between intermediate and candidate users.
+     * @param bt    transpose of B.
+     * @param score function for computing the similarity from the value of the matrix product. For a fixed pair of
+     *              users, it must not decrease with the value of the product.
+     * @param bound upper bound of the similarity given the number of shared intermediate users, or null if
+     *              the candidates cannot be filtered.
+     */
+    public SimilarityJoin(CSRMatrix a, CSRMatrix b, CSRMatrix bt, ScoreFunction score, OverlapBound bound)
+    {
+        this.a = a;
+        this.b = b;
+        this.bt = bt;
+        this.score = score;
+        this.bound = bound;
+    }
+
+    /**
+     * Obtains the best candidate users for several target users.
+     *
+     * @param uidxs     identifiers of the target users.
+     * @param maxLength maximum number of candidate users.
+     * @param filters   the filter for the candidate users of each target user.
+     *
+     * @return the recommendation for each target user, in the same order as the identifiers.
+     */
+    public List<FastRecommendation> getRecommendations(int[] uidxs, int maxLength, IntPredicate[] filters)
+    {
+        return this.getRecommendations(uidxs, maxLength, 0.0, filters);
+    }
+
+    /**
+     * Obtains the best candidate users for several target users, among those whose similarity is, at least,
+     * a minimum value.
+     *
+     * @param uidxs         identifiers of the target users.
+     * @param maxLength     maximum number of candidate users.
+     * @param minSimilarity minimum similarity of the candidate users.
+     * @param filters       the filter for the candidate users of each target user.
+     *
+     * @return the recommendation for each target user, in the same order as the identifiers.
+     */
+    public List<FastRecommendation> getRecommendations(int[] uidxs, int maxLength, double minSimilarity, IntPredicate[] filters)
+    {
+        FastRecommendation[] recs = new FastRecommendation[uidxs.length];
+        IntStream.range(0, uidxs.length).parallel().forEach(i -> recs[i] = this.getRecommendation(uidxs[i], maxLength, minSimilarity, filters[i]));
+        return Arrays.asList(recs);
+    }
+
+    /**
+     * Obtains the best candidate users for a target user, among those whose similarity is, at least, a minimum value.
+     *
+     * @param uidx          identifier of the target user.
+     * @param maxLength     maximum number of candidate users.
+     * @param minSimilarity minimum similarity of the candidate users.
+     * @param filter        the filter for the candidate users.
+     *
+     * @return the recommendation.
+     */
+    public FastRecommendation getRecommendation(int uidx, int maxLength, double minSimilarity, IntPredicate filter)
+    {
+        if (maxLength <= 0)
+        {
+            return new FastRecommendation(uidx, Collections.emptyList());
+        }
+
+        int uStart = a.rowStart(uidx);
+        int uSize = a.rowEnd(uidx) - uStart;
+
+        // Intermediate users, from the least to the most popular.
+        int[] order = new int[uSize];
+        for (int i = 0; i < uSize; ++i)
+        {
+            order[i] = uStart + i;
+        }
+        IntArrays.quickSort(order, (x, y) ->
+        {
+            int cmp = Integer.compare(this.length(b, a.column(x)), this.length(b, a.column(y)));
+            return cmp != 0 ? cmp : Integer.compare(x, y);
+        });
+
+        // Checked candidates: their similarity, or NaN if they have been discarded.
+        Accumulator checked = Accumulator.acquire(b.numRows());
+        DoubleHeapPriorityQueue best = new DoubleHeapPriorityQueue();
+        for (int i = 0; i < uSize; ++i)
+        {
+            double threshold = best.size() >= maxLength ? Math.max(minSimilarity, best.firstDouble()) : minSimilarity;
+            if (bound != null && bound.apply(uidx, uSize - i) * (1.0 + SLACK) < threshold)
+            {
+                break;
+            }
+
+            int widx = a.column(order[i]);
+            for (int j = b.rowStart(widx); j < b.rowEnd(widx); ++j)
+            {
+                int vidx = b.column(j);
+                if (checked.stamps[vidx] == checked.stamp)
+                {
+                    continue;
+                }
+
+                if (!filter.test(vidx) || (bound != null && score.apply(uidx, vidx, Math.min(uSize, this.length(bt, vidx))) * (1.0 + SLACK) < threshold))
+                {
+                    checked.add(vidx, Double.NaN);
+                    continue;
+                }
+
+                double sim = score.apply(uidx, vidx, this.product(uidx, vidx));
+                checked.add(vidx, sim);
+                if (sim >= threshold)
+                {
+                    best.enqueue(sim);
+                    if (best.size() > maxLength)
+                    {
+                        best.dequeueDouble();
+                    }
+                    threshold = best.size() >= maxLength ? Math.max(minSimilarity, best.firstDouble()) : minSimilarity;
+                }
+            }
+        }
+
+        IntDoubleTopN topN = new IntDoubleTopN(Math.min(maxLength, best.size()));
+        for (int i = 0; i < checked.size; ++i)
+        {
+            int vidx = checked.touched[i];
+            double sim = checked.values[vidx];
+            if (sim >= minSimilarity) // Discarded candidates (NaN) are skipped.
+            {
+                topN.add(vidx, sim);
+            }
+        }
+        checked.release();
+        topN.sort();
+
+        return new FastRecommendation(uidx, topN.reverseStream().collect(Collectors.toList()));
+    }
+
+    /**
+     * Computes a cell of the matrix product, intersecting the row of the target user in A and the row of the
+     * candidate user in the transpose of B.
+     *
+     * @param uidx identifier of the target user.
+     * @param vidx identifier of the candidate user.
+     *
+     * @return the value of the cell.
+     */
+    private double product(int uidx, int vidx)
+    {
+        double val = 0.0;
+        int i = a.rowStart(uidx);
+        int j = bt.rowStart(vidx);
+        while (i < a.rowEnd(uidx) && j < bt.rowEnd(vidx))
+        {
+            int cmp = Integer.compare(a.column(i), bt.column(j));
+            if (cmp == 0)
+            {
+                val += a.value(i) * bt.value(j);
+                ++i;
+                ++j;
+            }
+            else if (cmp < 0)
+            {
+                ++i;
+            }
+            else
+            {
+                ++j;
+            }
+        }
+        return val;
+    }
+
+    /**
+     * Obtains the number of values in a row of a matrix.
+     *
+     * @param matrix the matrix.
+     * @param row    the row.
+     *
+     * @return the number of values.
+     */
+    private int length(CSRMatrix matrix, int row)
+    {
+        return matrix.rowEnd(row) - matrix.rowStart(row);
+    }
+}
@@ -0,0 +1,526 @@
+/*
+ * Copyright (C) 2020 Information Retrieval Group at Universidad Autónoma
+ * de Madrid, http://ir.ii.uam.es and Terrier Team at University of Glasgow,
+ * http://terrierteam.dcs.gla.ac.uk/.
+ *
+ *  This Source Code Form is subject to the terms of the Mozilla Public
+ *  License, v. 2.0. If a copy of the MPL was not distributed with this
+ *  file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.contactrecaxioms.recommender.sparse;
+
+import es.uam.eps.ir.ranksys.fast.FastRecommendation;
+import es.uam.eps.ir.ranksys.fast.utils.topn.IntDoubleTopN;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Scores neighborhood-based recommendation algorithms as a sparse matrix product. The score of
+ * a candidate user v for a target user u is computed as f(u, v, (A·B)(u,v)), where A contains the weights
+ * between target and intermediate users, B the weights between intermediate and candidate users,
+ * and f is a final scaling or normalization of the value. Rows are computed with Gustavson's algorithm,
+ * accumulating them over a dense array, and only the top candidates of each row are kept. Blocks of rows
+ * are computed in parallel.
+ *
+ * <p>Intermediate users are visited in increasing order, so the values of each cell are summed in the same
+ * order as when they are accumulated in a map over the neighborhoods of the graph.</p>
+ *
+ * <p>When the product is symmetric, i.e. a(u,w)·b(w,v) = a(v,w)·b(w,u), recommendations for the whole population
+ * can be computed visiting each pair of users only once (see {@link #getSymmetricRecommendations(int[], int, IntFunction)}).</p>
+ *
+ * @author Javier Sanz-Cruzado (javier.sanz-cruzado@uam.es)
+ * @author Craig Macdonald (craig.macdonald@glasgow.ac.uk)
+ * @author Iadh Ounis (iadh.ounis@glasgow.ac.uk)
+ * @author Pablo Castells (pablo.castells@uam.es)
+ */
+public class SpGEMMScorer
+{
+    /**
+     * Number of rows in each block.
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * Matrix containing the weights between target and intermediate users.
+     */
+    protected final CSRMatrix a;
+    /**
+     * Matrix containing the weights between intermediate and candidate users.
+     */
+    protected final CSRMatrix b;
+    /**
+     * Function for computing the final scores.
+     */
+    private final ScoreFunction score;
+
+    /**
+     * Constructor, where the final score is the value of the matrix product.
+     *
+     * @param a matrix containing the weights between target and intermediate users.
+     * @param b matrix containing the weights between intermediate and candidate users.
+     */
+    public SpGEMMScorer(CSRMatrix a, CSRMatrix b)
+    {
+        this(a, b, (uidx, vidx, val) -> val);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param a     matrix containing the weights between target and intermediate users.
+     * @param b     matrix containing the weights between intermediate and candidate users.
+     * @param score function for computing the final scores from the value of the matrix product.
+     */
+    public SpGEMMScorer(CSRMatrix a, CSRMatrix b, ScoreFunction score)
+    {
+        this.a = a;
+        this.b = b;
+        this.score = score;
+    }
+
+    /**
+     * Obtains the scores of the candidate users for a target user.
+     *
+     * @param uidx identifier of the target user.
+     *
+     * @return the scores of the candidate users.
+     */
+    public Int2DoubleMap getScoresMap(int uidx)
+    {
+        Accumulator acc = Accumulator.acquire(b.numRows());
+        this.accumulate(uidx, acc);
+
+        Int2DoubleOpenHashMap scoresMap = new Int2DoubleOpenHashMap(acc.size);
+        scoresMap.defaultReturnValue(0.0);
+        for (int i = 0; i < acc.size; ++i)
+        {
+            int vidx = acc.touched[i];
+            scoresMap.put(vidx, score.apply(uidx, vidx, acc.values[vidx]));
+        }
+        acc.release();
+        return scoresMap;
+    }
+
+    /**
+     * Obtains the scores of the candidate users for several target users.
+     *
+     * @param uidxs identifiers of the target users.
+     *
+     * @return the scores of the candidate users for each target user, in the same order as the identifiers.
+     */
+    public Int2DoubleMap[] getScoresMaps(int[] uidxs)
+    {
+        Int2DoubleMap[] maps = new Int2DoubleMap[uidxs.length];
+        this.blocks(uidxs.length).forEach(block ->
+        {
+            for (int i = block * BLOCK_SIZE; i < Math.min(uidxs.length, (block + 1) * BLOCK_SIZE); ++i)
+            {
+                maps[i] = this.getScoresMap(uidxs[i]);
+            }
+        });
+        return maps;
+    }
+
+    /**
+     * Obtains the best candidate users for a target user.
+     *
+     * @param uidx      identifier of the target user.
+     * @param maxLength maximum number of candidate users.
+     * @param filter    the filter for the candidate users.
+     *
+     * @return the recommendation.
+     */
+    public FastRecommendation getRecommendation(int uidx, int maxLength, IntPredicate filter)
+    {
+        Accumulator acc = Accumulator.acquire(b.numRows());
+        this.accumulate(uidx, acc);
+
+        IntDoubleTopN topN = new IntDoubleTopN(Math.min(maxLength, acc.size));
+        for (int i = 0; i < acc.size; ++i)
+        {
+            int vidx = acc.touched[i];
+            if (filter.test(vidx))
+            {
+                topN.add(vidx, score.apply(uidx, vidx, acc.values[vidx]));
+            }
+        }
+        acc.release();
+        topN.sort();
+
+        return new FastRecommendation(uidx, topN.reverseStream().collect(Collectors.toList()));
+    }
+
+    /**
+     * Obtains the best candidate users for several target users.
+     *
+     * @param uidxs     identifiers of the target users.
+     * @param maxLength maximum number of candidate users.
+     * @param filters   the filter for the candidate users of each target user.
+     *
+     * @return the recommendation for each target user, in the same order as the identifiers.
+     */
+    public List<FastRecommendation> getRecommendations(int[] uidxs, int maxLength, IntPredicate[] filters)
+    {
+        FastRecommendation[] recs = new FastRecommendation[uidxs.length];
+        this.blocks(uidxs.length).forEach(block ->
+        {
+            for (int i = block * BLOCK_SIZE; i < Math.min(uidxs.length, (block + 1) * BLOCK_SIZE); ++i)
+            {
+                recs[i] = this.getRecommendation(uidxs[i], maxLength, filters[i]);
+            }
+        });
+        return Arrays.asList(recs);
+    }
+
+    /**
+     * Obtains the best candidate users for several target users, when the matrix product is symmetric. Each row
+     * of the product is only computed for the candidates with an identifier greater or equal than the row, and
+     * every value is used for both ends of the pair, so the number of visited cells is halved when all the users
+     * are targets. Intermediate users are still visited in increasing order, so the values are identical to those
+     * computed by {@link #getRecommendations(int[], int, IntPredicate[])}.
+     *
+     * <p>The filter must be symmetric too, i.e. v passes the filter of u if and only if u passes the filter of v,
+     * so each pair is checked with the filter of the row where it is computed. Filters are created for each row
+     * when it is computed, and discarded afterwards. Rows are computed in blocks by a fixed number of workers,
+     * each one keeping its own top candidates of every target user, so no locking is needed. The top candidates
+     * of the workers are merged at the end.</p>
+     *
+     * @param uidxs     identifiers of the target users.
+     * @param maxLength maximum number of candidate users.
+     * @param filter    function providing the (symmetric) filter for the candidate users of any user.
+     *
+     * @return the recommendation for each target user, in the same order as the identifiers.
+     */
+    public List<FastRecommendation> getSymmetricRecommendations(int[] uidxs, int maxLength, IntFunction<IntPredicate> filter)
+    {
+        int numRows = a.numRows();
+        int[] targets = new int[numRows];
+        Arrays.fill(targets, -1);
+        for (int i = 0; i < uidxs.length; ++i)
+        {
+            targets[uidxs[i]] = i;
+        }
+
+        int numBlocks = (numRows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int numWorkers = Math.max(1, Math.min(numBlocks, ForkJoinPool.getCommonPoolParallelism()));
+        IntDoubleTopN[][] workerTopNs = new IntDoubleTopN[numWorkers][];
+        AtomicInteger nextBlock = new AtomicInteger();
+        IntStream workers = IntStream.range(0, numWorkers);
+        (numWorkers > 1 ? workers.parallel() : workers).forEach(worker ->
+        {
+            IntDoubleTopN[] topNs = new IntDoubleTopN[uidxs.length];
+            Accumulator acc = Accumulator.acquire(b.numRows());
+            int block;
+            while ((block = nextBlock.getAndIncrement()) < numBlocks)
+            {
+                for (int uidx = block * BLOCK_SIZE; uidx < Math.min(numRows, (block + 1) * BLOCK_SIZE); ++uidx)
+                {
+                    this.accumulateUpper(uidx, acc);
+                    int ut = targets[uidx];
+                    IntPredicate rowFilter = null;
+                    for (int i = 0; i < acc.size; ++i)
+                    {
+                        int vidx = acc.touched[i];
+                        int vt = vidx != uidx ? targets[vidx] : -1;
+                        if (ut < 0 && vt < 0)
+                        {
+                            continue;
+                        }
+                        if (rowFilter == null)
+                        {
+                            rowFilter = filter.apply(uidx);
+                        }
+                        if (!rowFilter.test(vidx))
+                        {
+                            continue;
+                        }
+
+                        double val = acc.values[vidx];
+                        if (ut >= 0)
+                        {
+                            this.topN(topNs, ut, uidxs, maxLength).add(vidx, score.apply(uidx, vidx, val));
+                        }
+                        if (vt >= 0)
+                        {
+                            this.topN(topNs, vt, uidxs, maxLength).add(uidx, score.apply(vidx, uidx, val));
+                        }
+                    }
+                }
+            }
+            acc.release();
+            workerTopNs[worker] = topNs;
+        });
+
+        FastRecommendation[] recs = new FastRecommendation[uidxs.length];
+        this.blocks(uidxs.length).forEach(block ->
+        {
+            for (int t = block * BLOCK_SIZE; t < Math.min(uidxs.length, (block + 1) * BLOCK_SIZE); ++t)
+            {
+                IntDoubleTopN topN = new IntDoubleTopN((int) Math.min(maxLength, this.numPostings(uidxs[t])));
+                for (IntDoubleTopN[] topNs : workerTopNs)
+                {
+                    if (topNs[t] != null)
+                    {
+                        topNs[t].forEach(iv -> topN.add(iv.v1, iv.v2));
+                        topNs[t] = null;
+                    }
+                }
+                topN.sort();
+                recs[t] = new FastRecommendation(uidxs[t], topN.reverseStream().collect(Collectors.toList()));
+            }
+        });
+        return Arrays.asList(recs);
+    }
+
+    /**
+     * Obtains the top candidates of a target user kept by a worker, creating them if they do not exist yet.
+     *
+     * @param topNs     the top candidates of each target user kept by the worker.
+     * @param t         the position of the target user.
+     * @param uidxs     identifiers of the target users.
+     * @param maxLength maximum number of candidate users.
+     *
+     * @return the top candidates of the target user.
+     */
+    private IntDoubleTopN topN(IntDoubleTopN[] topNs, int t, int[] uidxs, int maxLength)
+    {
+        if (topNs[t] == null)
+        {
+            topNs[t] = new IntDoubleTopN((int) Math.min(maxLength, this.numPostings(uidxs[t])));
+        }
+        return topNs[t];
+    }
+
+    /**
+     * Obtains the number of cells of B visited for computing a row of the matrix product. It bounds the number
+     * of non-empty cells in the row.
+     *
+     * @param uidx the row.
+     *
+     * @return the number of visited cells.
+     */
+    private long numPostings(int uidx)
+    {
+        long postings = 0;
+        for (int i = a.rowStart(uidx); i < a.rowEnd(uidx); ++i)
+        {
+            int widx = a.column(i);
+            postings += b.rowEnd(widx) - b.rowStart(widx);
+        }
+        return postings;
+    }
+
+    /**
+     * Obtains the blocks of rows to compute.
+     *
+     * @param numRows the number of rows.
+     *
+     * @return the stream of blocks, which is parallel if there is more than one block.
+     */
+    private IntStream blocks(int numRows)
+    {
+        int numBlocks = (numRows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream blocks = IntStream.range(0, numBlocks);
+        return numBlocks > 1 ? blocks.parallel() : blocks;
+    }
+
+    /**
+     * Accumulates a row of the matrix product in an empty dense accumulator.
+     *
+     * @param uidx the row.
+     * @param acc  the accumulator.
+     */
+    private void accumulate(int uidx, Accumulator acc)
+    {
+        for (int i = a.rowStart(uidx); i < a.rowEnd(uidx); ++i)
+        {
+            int widx = a.column(i);
+            double uW = a.value(i);
+            for (int j = b.rowStart(widx); j < b.rowEnd(widx); ++j)
+            {
+                acc.add(b.column(j), uW * b.value(j));
+            }
+        }
+    }
+
+    /**
+     * Accumulates the upper triangular part of a row of the matrix product (the columns greater or equal than
+     * the row) in a dense accumulator, which is emptied first.
+     *
+     * @param uidx the row.
+     * @param acc  the accumulator.
+     */
+    private void accumulateUpper(int uidx, Accumulator acc)
+    {
+        acc.clear();
+        for (int i = a.rowStart(uidx); i < a.rowEnd(uidx); ++i)
+        {
+            int widx = a.column(i);
+            double uW = a.value(i);
+            for (int j = this.lowerBound(widx, uidx); j < b.rowEnd(widx); ++j)
+            {
+                acc.add(b.column(j), uW * b.value(j));
+            }
+        }
+    }
+
+    /**
+     * Finds the first position of a row of B whose column is greater or equal than a given one.
+     *
+     * @param row the row.
+     * @param col the column.
+     *
+     * @return the position.
+     */
+    private int lowerBound(int row, int col)
+    {
+        int low = b.rowStart(row);
+        int high = b.rowEnd(row);
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (b.column(mid) < col)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Dense accumulator for a row of the matrix product. It keeps the list of non-empty cells, so it
+     * can be cleared without traversing the whole row. Accumulators take 16 bytes per column, so, instead of
+     * keeping one for each scorer and thread, they are taken from a pool shared by all the scorers, and
+     * returned to it after computing each row or block of rows. The pool never holds more accumulators than
+     * the number of rows computed at once.
+     */
+    protected static class Accumulator
+    {
+        /**
+         * Accumulators which are not in use.
+         */
+        private static final Queue<Accumulator> POOL = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The values of the row.
+         */
+        final double[] values;
+        /**
+         * Last row where each cell was used.
+         */
+        final int[] stamps;
+        /**
+         * Non-empty cells of the row, in order of appearance.
+         */
+        final int[] touched;
+        /**
+         * Number of non-empty cells.
+         */
+        int size;
+        /**
+         * Identifier of the current row.
+         */
+        int stamp;
+
+        /**
+         * Constructor. The accumulator is created empty.
+         *
+         * @param numColumns the number of columns.
+         */
+        Accumulator(int numColumns)
+        {
+            this.values = new double[numColumns];
+            this.stamps = new int[numColumns];
+            this.touched = new int[numColumns];
+            this.size = 0;
+            this.stamp = 1;
+        }
+
+        /**
+         * Takes an empty accumulator from the pool, or creates a new one if the pool has none with enough columns.
+         * Accumulators with too few columns are discarded.
+         *
+         * @param numColumns the number of columns.
+         *
+         * @return the accumulator.
+         */
+        static Accumulator acquire(int numColumns)
+        {
+            Accumulator acc;
+            while ((acc = POOL.poll()) != null)
+            {
+                if (acc.values.length >= numColumns)
+                {
+                    acc.clear();
+                    return acc;
+                }
+            }
+            return new Accumulator(numColumns);
+        }
+
+        /**
+         * Returns the accumulator to the pool. It must not be used afterwards.
+         */
+        void release()
+        {
+            POOL.offer(this);
+        }
+
+        /**
+         * Checks whether a cell is not empty.
+         *
+         * @param col the column of the cell.
+         *
+         * @return true if the cell has been used since the accumulator was emptied, false otherwise.
+         */
+        boolean contains(int col)
+        {
+            return this.stamps[col] == this.stamp;
+        }
+
+        /**
+         * Empties the accumulator.
+         */
+        void clear()
+        {
+            this.size = 0;
+            if (++this.stamp == 0)
+            {
+                Arrays.fill(this.stamps, 0);
+                this.stamp = 1;
+            }
+        }
+
+        /**
+         * Adds a value to a cell.
+         *
+         * @param col the column of the cell.
+         * @param val the value.
+         */
+        void add(int col, double val)
+        {
+            if (this.stamps[col] != this.stamp)
+            {
+                this.stamps[col] = this.stamp;
+                this.values[col] = 0.0;
+                this.touched[this.size++] = col;
+            }
+            this.values[col] += val;
+        }
+    }
+}